@@ -0,0 +1,70 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.lang.management.*;
+
+import org.openjdk.jmh.annotations.*;
+
+// Reports the bytes allocated per row by the benchmark thread, measured
+// with the HotSpot per-thread allocation counter. Reports zero on JVMs
+// that don't provide one; "-prof gc" gives the allocation per operation
+// either way.
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class AllocationCounter {
+    private static final ThreadMXBean THREADS =
+        ManagementFactory.getThreadMXBean();
+
+    private long bytes;
+    private long rows;
+    private long mark;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        this.bytes = 0;
+        this.rows = 0;
+    }
+
+    public double bytesPerRow() {
+        return this.rows > 0 ? (double) this.bytes / this.rows : 0;
+    }
+
+    void begin() {
+        this.mark = allocatedBytes();
+    }
+
+    void end(final long rowCount) {
+        this.bytes += allocatedBytes() - this.mark;
+        this.rows += rowCount;
+    }
+
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) THREADS)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,199 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+// Deterministic datasets shared by the benchmarks. Orgs form a random tree
+// with one root per ROOT_SPACING orgs; every other org's parent is picked
+// uniformly from the orgs before it. Data files are generated once and
+// kept in the directory named by the javakata.benchmark.data system
+// property (a temporary directory by default), since the largest take
+// minutes to write.
+final class BenchmarkDatasets {
+    static final int MIN_ORGS = 1000;
+    static final int MAX_ORGS = 1000000;
+    static final int USERS_PER_ORG = 4;
+
+    private static final long SEED = 42;
+    private static final int ROOT_SPACING = 10000;
+
+    private BenchmarkDatasets() {
+        // Prevent instantiation
+    }
+
+    // The number of orgs in the org file that goes with a user file of the
+    // given size: one org per ten users, within [MIN_ORGS, MAX_ORGS]
+    static int orgsFor(final long userRows) {
+        return (int) Math.max(MIN_ORGS, Math.min(MAX_ORGS, userRows / 10));
+    }
+
+    // Returns the parent of each org, indexed by id - 1
+    static int[] parents(final int orgs) {
+        Random random = new Random(SEED);
+        int roots = Math.max(1, orgs / ROOT_SPACING);
+
+        int[] parents = new int[orgs];
+        for (int i = 0; i < orgs; i++) {
+            parents[i] = i < roots
+                ? OrgCollectionBuilder.NO_PARENT
+                : 1 + random.nextInt(i);
+        }
+
+        return parents;
+    }
+
+    // Loads orgs in id order, which is always parent first, and gives each
+    // org USERS_PER_ORG users
+    static OrgCollection build(final String collection, final int orgs) {
+        OrgCollectionBuilder builder = collection.equals("columnar")
+            ? new ColumnarOrgCollection.Builder(orgs)
+            : new OrgCollectionImpl();
+
+        int[] parents = parents(orgs);
+        for (int i = 0; i < orgs; i++) {
+            builder.addOrg(i + 1, parents[i]);
+        }
+
+        Random random = new Random(SEED);
+        for (int i = 0; i < orgs; i++) {
+            int files = 1 + random.nextInt(100);
+            builder.addUsers(
+                i + 1,
+                USERS_PER_ORG,
+                files * USERS_PER_ORG,
+                files * 4096L * USERS_PER_ORG
+            );
+        }
+
+        return builder.build();
+    }
+
+    // Org records are written in a shuffled order, so that many children
+    // are defined before their parents
+    static File orgFile(final int orgs) throws IOException {
+        File file = new File(directory(), "orgs-" + orgs + ".data");
+        if (file.exists()) {
+            return file;
+        }
+
+        int[] parents = parents(orgs);
+        int[] order = new int[orgs];
+        for (int i = 0; i < orgs; i++) {
+            order[i] = i;
+        }
+
+        Random random = new Random(SEED);
+        for (int i = orgs - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temp = order[i];
+            order[i] = order[j];
+            order[j] = temp;
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer out = open(temp)) {
+            for (int i : order) {
+                out.write(Integer.toString(i + 1));
+                out.write(", ");
+                out.write(parents[i] == OrgCollectionBuilder.NO_PARENT
+                    ? "null"
+                    : Integer.toString(parents[i]));
+                out.write(", Org ");
+                out.write(Integer.toString(i + 1));
+                out.write('\n');
+            }
+        }
+
+        return publish(temp, file);
+    }
+
+    static File userFile(final long rows, final int orgs) throws IOException {
+        File file = new File(
+            directory(),
+            "users-" + rows + "-" + orgs + ".data"
+        );
+
+        if (file.exists()) {
+            return file;
+        }
+
+        Random random = new Random(SEED);
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer out = open(temp)) {
+            for (long row = 1; row <= rows; row++) {
+                int files = random.nextInt(100);
+
+                out.write(Long.toString(row));
+                out.write(", ");
+                out.write(Integer.toString(1 + random.nextInt(orgs)));
+                out.write(", ");
+                out.write(Integer.toString(files));
+                out.write(", ");
+                out.write(Integer.toString(files * random.nextInt(65536)));
+                out.write('\n');
+            }
+        }
+
+        return publish(temp, file);
+    }
+
+    private static File directory() throws IOException {
+        File dir = new File(System.getProperty(
+            "javakata.benchmark.data",
+            new File(
+                System.getProperty("java.io.tmpdir"),
+                "javakata-benchmarks"
+            ).getPath()
+        ));
+
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory: " + dir);
+        }
+
+        return dir;
+    }
+
+    private static Writer open(final File file) throws IOException {
+        return new BufferedWriter(
+            new OutputStreamWriter(
+                new FileOutputStream(file),
+                StandardCharsets.US_ASCII
+            ),
+            1 << 20
+        );
+    }
+
+    private static File publish(final File temp, final File file)
+        throws IOException {
+
+        if (!temp.renameTo(file)) {
+            throw new IOException("Could not create data file: " + file);
+        }
+
+        return file;
+    }
+}
@@ -0,0 +1,118 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+// Measures parsing and loading of org and user data files. `rows` is the
+// number of user records; the org file has BenchmarkDatasets.orgsFor(rows)
+// records. User records are loaded into an already loaded collection.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoadBenchmark {
+    @Param({"10000", "1000000", "100000000"})
+    public long rows;
+
+    private int orgs;
+    private File orgFile;
+    private File userFile;
+    private OrgCollectionImpl loaded;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.orgs = BenchmarkDatasets.orgsFor(this.rows);
+        this.orgFile = BenchmarkDatasets.orgFile(this.orgs);
+        this.userFile = BenchmarkDatasets.userFile(this.rows, this.orgs);
+
+        this.loaded = new OrgCollectionImpl();
+        DataLoader.loadOrgData(
+            new MappedLineIterable(this.orgFile),
+            this.loaded,
+            new ObservationCounter()
+        );
+    }
+
+    @Benchmark
+    public OrgCollectionImpl loadOrgData(final RowCounter counter,
+                                         final AllocationCounter allocation)
+        throws IOException {
+
+        allocation.begin();
+
+        OrgCollectionImpl target = new OrgCollectionImpl();
+        DataLoader.loadOrgData(
+            new MappedLineIterable(this.orgFile),
+            target,
+            new ObservationCounter()
+        );
+
+        allocation.end(this.orgs);
+        counter.rows += this.orgs;
+
+        return target;
+    }
+
+    @Benchmark
+    public ObservationCounter loadUserData(final RowCounter counter,
+                                           final AllocationCounter allocation)
+        throws IOException {
+
+        allocation.begin();
+
+        ObservationCounter observations = new ObservationCounter();
+        DataLoader.loadUserData(
+            new MappedLineIterable(this.userFile),
+            this.loaded,
+            observations
+        );
+
+        allocation.end(this.rows);
+        counter.rows += this.rows;
+
+        return observations;
+    }
+
+    // Allocation is only measured on the calling thread, so it is not
+    // reported for the parallel load
+    @Benchmark
+    public ObservationCounter loadUserDataParallel(final RowCounter counter)
+        throws IOException {
+
+        ObservationCounter observations = new ObservationCounter();
+        new ParallelUserLoader(
+            this.userFile,
+            Runtime.getRuntime().availableProcessors()
+        ).load(this.loaded, observations);
+
+        counter.rows += this.rows;
+
+        return observations;
+    }
+}
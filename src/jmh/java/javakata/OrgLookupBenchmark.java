@@ -0,0 +1,125 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+// Compares org identifier lookups through IntObjectMap with the
+// HashMap<Integer, OrgImpl> OrgCollectionImpl used previously, for compact
+// (1..N, shuffled) and sparse (random) identifiers.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrgLookupBenchmark {
+    private static final int LOOKUPS = 1024;
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    @Param({"compact", "sparse"})
+    public String keys;
+
+    private int[] ids;
+    private int[] lookups;
+
+    private HashMap<Integer, OrgImpl> hashMap;
+    private IntObjectMap<OrgImpl> intObjectMap;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+
+        this.ids = new int[this.size];
+        for (int i = 0; i < this.size; i++) {
+            this.ids[i] = this.keys.equals("compact")
+                ? i + 1
+                : 1 + random.nextInt(Integer.MAX_VALUE - 1);
+        }
+
+        for (int i = this.size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temp = this.ids[i];
+            this.ids[i] = this.ids[j];
+            this.ids[j] = temp;
+        }
+
+        this.lookups = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            this.lookups[i] = this.ids[random.nextInt(this.size)];
+        }
+
+        this.hashMap = this.populateHashMap();
+        this.intObjectMap = this.populateIntObjectMap();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void hashMapGet(final Blackhole bh) {
+        for (int id : this.lookups) {
+            bh.consume(this.hashMap.get(id));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void intObjectMapGet(final Blackhole bh) {
+        for (int id : this.lookups) {
+            bh.consume(this.intObjectMap.get(id));
+        }
+    }
+
+    @Benchmark
+    public HashMap<Integer, OrgImpl> hashMapPopulate() {
+        return this.populateHashMap();
+    }
+
+    @Benchmark
+    public IntObjectMap<OrgImpl> intObjectMapPopulate() {
+        return this.populateIntObjectMap();
+    }
+
+    private HashMap<Integer, OrgImpl> populateHashMap() {
+        HashMap<Integer, OrgImpl> map = new HashMap<Integer, OrgImpl>();
+        for (int id : this.ids) {
+            map.putIfAbsent(id, new OrgImpl(id));
+        }
+
+        return map;
+    }
+
+    private IntObjectMap<OrgImpl> populateIntObjectMap() {
+        IntObjectMap<OrgImpl> map = new IntObjectMap<OrgImpl>();
+        for (int id : this.ids) {
+            map.putIfAbsent(id, new OrgImpl(id));
+        }
+
+        return map;
+    }
+}
@@ -0,0 +1,102 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+// Measures getOrgTree for whole trees and for random subtrees, including
+// iterating over the returned orgs. Rows are the orgs returned.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrgTreeBenchmark {
+    private static final int QUERIES = 256;
+
+    @Param({"10000", "1000000", "10000000"})
+    public int orgs;
+
+    @Param({"object", "columnar"})
+    public String collection;
+
+    private OrgCollection data;
+    private int rootId;
+    private int[] queries;
+
+    @Setup
+    public void setUp() {
+        this.data = BenchmarkDatasets.build(this.collection, this.orgs);
+        this.rootId = this.data.getRootOrgs().iterator().next().getId();
+
+        Random random = new Random(7);
+        this.queries = new int[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            this.queries[i] = 1 + random.nextInt(this.orgs);
+        }
+
+        // build any lazily built index outside of the measurement
+        this.data.getOrgTree(this.rootId, true);
+    }
+
+    @Benchmark
+    public void wholeTree(final RowCounter counter,
+                          final AllocationCounter allocation,
+                          final Blackhole bh) {
+        allocation.begin();
+
+        List<Org> tree = this.data.getOrgTree(this.rootId, true);
+        for (Org org : tree) {
+            bh.consume(org.getId());
+        }
+
+        allocation.end(tree.size());
+        counter.rows += tree.size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void randomSubtrees(final RowCounter counter,
+                               final AllocationCounter allocation,
+                               final Blackhole bh) {
+        allocation.begin();
+
+        long returned = 0;
+        for (int id : this.queries) {
+            List<Org> tree = this.data.getOrgTree(id, false);
+            for (Org org : tree) {
+                bh.consume(org.getId());
+            }
+
+            returned += tree.size();
+        }
+
+        allocation.end(Math.max(1, returned));
+        counter.rows += returned;
+    }
+}
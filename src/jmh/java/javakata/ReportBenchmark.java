@@ -0,0 +1,94 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+// Measures writing the full report, with totals already computed, to a
+// channel that discards its input. Rows are the orgs written.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReportBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int orgs;
+
+    @Param({"object", "columnar"})
+    public String collection;
+
+    private OrgCollection data;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.data = BenchmarkDatasets.build(this.collection, this.orgs);
+
+        // compute any cached totals outside of the measurement
+        DataTextReporter.writeReport(this.data, new DiscardingChannel());
+    }
+
+    @Benchmark
+    public long writeReport(final RowCounter counter,
+                            final AllocationCounter allocation)
+        throws IOException {
+
+        allocation.begin();
+
+        DiscardingChannel channel = new DiscardingChannel();
+        DataTextReporter.writeReport(this.data, channel);
+
+        allocation.end(this.orgs);
+        counter.rows += this.orgs;
+
+        return channel.written;
+    }
+
+    private static final class DiscardingChannel
+        implements WritableByteChannel {
+
+        private long written;
+
+        public int write(final ByteBuffer src) {
+            int count = src.remaining();
+            src.position(src.limit());
+            this.written += count;
+
+            return count;
+        }
+
+        public boolean isOpen() {
+            return true;
+        }
+
+        public void close() {
+            // nothing to release
+        }
+    }
+}
@@ -0,0 +1,143 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+// Measures the OrgImpl subtree total getters: the first read after a load,
+// which computes every total; reads of cached totals; and the cost of
+// keeping totals current as users are added.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RollupBenchmark {
+    private static final int UPDATES = 1024;
+
+    @Param({"10000", "1000000", "10000000"})
+    public int orgs;
+
+    private OrgCollectionImpl collection;
+    private OrgImpl[] all;
+    private OrgImpl[] updated;
+
+    @Setup
+    public void setUp() {
+        this.collection =
+            (OrgCollectionImpl) BenchmarkDatasets.build("object", this.orgs);
+
+        this.all = new OrgImpl[this.orgs];
+        for (int i = 0; i < this.orgs; i++) {
+            this.all[i] = this.collection.getOrg(i + 1);
+        }
+
+        Random random = new Random(7);
+        this.updated = new OrgImpl[UPDATES];
+        for (int i = 0; i < UPDATES; i++) {
+            this.updated[i] = this.all[random.nextInt(this.orgs)];
+        }
+
+        // compute every total once, so the cached benchmarks start clean
+        for (Org root : this.collection.getRootOrgs()) {
+            root.getTotalNumUsers();
+        }
+    }
+
+    // A freshly loaded collection, whose totals have never been read
+    @State(Scope.Thread)
+    public static class Fresh {
+        OrgCollectionImpl collection;
+
+        @Setup(Level.Invocation)
+        public void setUp(final RollupBenchmark benchmark) {
+            this.collection = (OrgCollectionImpl) BenchmarkDatasets.build(
+                "object",
+                benchmark.orgs
+            );
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public void firstRead(final Fresh fresh,
+                          final RowCounter counter,
+                          final AllocationCounter allocation,
+                          final Blackhole bh) {
+        allocation.begin();
+
+        for (Org root : fresh.collection.getRootOrgs()) {
+            bh.consume(root.getTotalNumBytes());
+        }
+
+        allocation.end(this.orgs);
+        counter.rows += this.orgs;
+    }
+
+    @Benchmark
+    public void cachedReads(final RowCounter counter,
+                            final AllocationCounter allocation,
+                            final Blackhole bh) {
+        allocation.begin();
+
+        for (OrgImpl org : this.all) {
+            bh.consume(org.getTotalNumUsers());
+            bh.consume(org.getTotalNumFiles());
+            bh.consume(org.getTotalNumBytes());
+        }
+
+        allocation.end(this.orgs);
+        counter.rows += this.orgs;
+    }
+
+    // Adds a user to an org and reads the totals of its tree's root, so
+    // the change is pushed up through every ancestor
+    @Benchmark
+    @OperationsPerInvocation(UPDATES)
+    public void addUserThenRead(final RowCounter counter,
+                                final AllocationCounter allocation,
+                                final Blackhole bh) {
+        allocation.begin();
+
+        for (OrgImpl org : this.updated) {
+            org.addUser(1, 1);
+
+            OrgImpl root = org;
+            while (root.getParent() != null) {
+                root = root.getParent();
+            }
+
+            bh.consume(root.getTotalNumBytes());
+        }
+
+        allocation.end(UPDATES);
+        counter.rows += UPDATES;
+    }
+}
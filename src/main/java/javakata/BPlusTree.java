@@ -0,0 +1,388 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.nio.*;
+
+// A B+tree from long keys to fixed-size values, stored in the pages of a
+// PageCache. Several trees can share one page file. Entries are never
+// removed, so every node except an empty root leaf is non-empty.
+//
+// Leaf pages hold sorted (key, value) entries and a link to the next leaf,
+// so that keys can be scanned in order. Internal pages hold n keys and
+// n + 1 child pages; child i holds the keys from key i - 1 (inclusive) up
+// to key i (exclusive).
+//
+//   leaf      type, count, next leaf, unused, (key, value) * count
+//   internal  type, count, child 0, unused, (key, child i + 1) * count
+//
+// Values are copied in and out of caller buffers, as a page is only valid
+// until the next page is fetched (see PageCache). Lookups only use local
+// state, so they may run concurrently with each other.
+final class BPlusTree {
+    static final long NO_KEY = Long.MIN_VALUE;
+
+    private static final byte LEAF = 1;
+    private static final byte INTERNAL = 2;
+
+    private static final int TYPE = 0;
+    private static final int COUNT = 4;
+    private static final int LINK = 8;
+    private static final int ENTRIES = 16;
+    private static final int NO_PAGE = -1;
+
+    private final PageCache pages;
+    private final int valueSize;
+    private final int leafEntrySize;
+    private final int maxLeafEntries;
+    private final int maxInternalEntries;
+
+    private int root;
+
+    // the result of splitting a node, handed back up the tree
+    private long splitKey;
+    private int splitPage;
+
+    BPlusTree(final PageCache pages, final int root, final int valueSize) {
+        if (pages == null) {
+            throw new IllegalArgumentException("pages argument is null");
+        }
+
+        this.pages = pages;
+        this.root = root;
+        this.valueSize = valueSize;
+        this.leafEntrySize = 8 + valueSize;
+
+        // one spare entry is left so that a node can overflow by one entry
+        // before it is split
+        int space = pages.getPageSize() - ENTRIES;
+        this.maxLeafEntries = space / this.leafEntrySize - 1;
+        this.maxInternalEntries = space / 12 - 1;
+
+        if (this.maxLeafEntries < 3) {
+            throw new IllegalArgumentException(
+                "Values are too large for the page size."
+            );
+        }
+    }
+
+    // Allocates the root page of a new, empty tree
+    static int create(final PageCache pages) {
+        PageCache.Page page = pages.allocate();
+        ByteBuffer data = page.getData();
+
+        data.put(TYPE, LEAF);
+        data.putInt(COUNT, 0);
+        data.putInt(LINK, NO_PAGE);
+        return page.getId();
+    }
+
+    int getRoot() {
+        return this.root;
+    }
+
+    boolean contains(final long key) {
+        return this.get(key, null);
+    }
+
+    // Copies the value for the key into the buffer, if the buffer is not
+    // null. Returns false if the key is not present.
+    boolean get(final long key, final ByteBuffer value) {
+        ByteBuffer data = this.pages.page(this.findLeaf(key)).getData();
+
+        int i = this.search(data, key);
+        if (i < 0) {
+            return false;
+        }
+
+        if (value != null) {
+            this.copyOut(data, i, value);
+        }
+
+        return true;
+    }
+
+    // Returns the smallest key greater than or equal to the key, copying
+    // its value into the buffer, or NO_KEY if there is no such key
+    long ceiling(final long key, final ByteBuffer value) {
+        int id = this.findLeaf(key);
+        ByteBuffer data = this.pages.page(id).getData();
+
+        int i = this.search(data, key);
+        if (i < 0) {
+            i = -i - 1;
+        }
+
+        while (i >= data.getInt(COUNT)) {
+            id = data.getInt(LINK);
+            if (id == NO_PAGE) {
+                return NO_KEY;
+            }
+
+            data = this.pages.page(id).getData();
+            i = 0;
+        }
+
+        if (value != null) {
+            this.copyOut(data, i, value);
+        }
+
+        return this.leafKey(data, i);
+    }
+
+    // Associates the value with the key, replacing any existing value
+    void put(final long key, final ByteBuffer value) {
+        if (value.remaining() != this.valueSize) {
+            throw new IllegalArgumentException(
+                "Values must be " + this.valueSize + " bytes."
+            );
+        }
+
+        if (!this.insert(this.root, key, value)) {
+            return;
+        }
+
+        // the root was split, so the tree grows by one level
+        PageCache.Page page = this.pages.allocate();
+        ByteBuffer data = page.getData();
+
+        data.put(TYPE, INTERNAL);
+        data.putInt(COUNT, 1);
+        data.putInt(LINK, this.root);
+        data.putLong(ENTRIES, this.splitKey);
+        data.putInt(ENTRIES + 8, this.splitPage);
+
+        this.root = page.getId();
+    }
+
+    private int findLeaf(final long key) {
+        int id = this.root;
+        ByteBuffer data = this.pages.page(id).getData();
+
+        while (data.get(TYPE) == INTERNAL) {
+            id = this.child(data, this.childIndex(data, key));
+            data = this.pages.page(id).getData();
+        }
+
+        return id;
+    }
+
+    // Inserts into the subtree at the page. Returns true if the page was
+    // split, leaving the new right sibling in splitKey and splitPage.
+    private boolean insert(final int id,
+                           final long key,
+                           final ByteBuffer value) {
+        PageCache.Page page = this.pages.page(id);
+        ByteBuffer data = page.getData();
+
+        if (data.get(TYPE) == LEAF) {
+            int i = this.search(data, key);
+            if (i >= 0) {
+                this.copyIn(data, i, value);
+                page.markDirty();
+                return false;
+            }
+
+            i = -i - 1;
+            int count = data.getInt(COUNT);
+            this.shift(data, this.leafEntrySize, i, count);
+
+            data.putLong(ENTRIES + i * this.leafEntrySize, key);
+            this.copyIn(data, i, value);
+            data.putInt(COUNT, count + 1);
+            page.markDirty();
+
+            return count + 1 > this.maxLeafEntries && this.splitLeaf(id);
+        }
+
+        int index = this.childIndex(data, key);
+        if (!this.insert(this.child(data, index), key, value)) {
+            return false;
+        }
+
+        // the child was split; the page may have been evicted meanwhile
+        long newKey = this.splitKey;
+        int newPage = this.splitPage;
+
+        page = this.pages.page(id);
+        data = page.getData();
+
+        int count = data.getInt(COUNT);
+        this.shift(data, 12, index, count);
+
+        data.putLong(ENTRIES + index * 12, newKey);
+        data.putInt(ENTRIES + index * 12 + 8, newPage);
+        data.putInt(COUNT, count + 1);
+        page.markDirty();
+
+        return count + 1 > this.maxInternalEntries && this.splitInternal(id);
+    }
+
+    private boolean splitLeaf(final int id) {
+        PageCache.Page right = this.pages.allocate();
+        PageCache.Page left = this.pages.page(id);
+
+        ByteBuffer from = left.getData();
+        ByteBuffer to = right.getData();
+
+        int count = from.getInt(COUNT);
+        int keep = count / 2;
+
+        this.copyEntries(from, keep, to, 0, count - keep, this.leafEntrySize);
+
+        to.put(TYPE, LEAF);
+        to.putInt(COUNT, count - keep);
+        to.putInt(LINK, from.getInt(LINK));
+
+        from.putInt(COUNT, keep);
+        from.putInt(LINK, right.getId());
+        left.markDirty();
+
+        this.splitKey = to.getLong(ENTRIES);
+        this.splitPage = right.getId();
+        return true;
+    }
+
+    private boolean splitInternal(final int id) {
+        PageCache.Page right = this.pages.allocate();
+        PageCache.Page left = this.pages.page(id);
+
+        ByteBuffer from = left.getData();
+        ByteBuffer to = right.getData();
+
+        // the middle key moves up; its child becomes the right's first
+        int count = from.getInt(COUNT);
+        int middle = count / 2;
+
+        to.put(TYPE, INTERNAL);
+        to.putInt(COUNT, count - middle - 1);
+        to.putInt(LINK, from.getInt(ENTRIES + middle * 12 + 8));
+        this.copyEntries(from, middle + 1, to, 0, count - middle - 1, 12);
+
+        from.putInt(COUNT, middle);
+        left.markDirty();
+
+        this.splitKey = from.getLong(ENTRIES + middle * 12);
+        this.splitPage = right.getId();
+        return true;
+    }
+
+    // Returns the index of the key in a leaf, or (-(insertion point) - 1)
+    private int search(final ByteBuffer data, final long key) {
+        int low = 0;
+        int high = data.getInt(COUNT) - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long current = this.leafKey(data, middle);
+
+            if (current < key) {
+                low = middle + 1;
+            }
+            else if (current > key) {
+                high = middle - 1;
+            }
+            else {
+                return middle;
+            }
+        }
+
+        return -(low + 1);
+    }
+
+    // Returns the index of the child that may hold the key: the number of
+    // keys in the internal page that are less than or equal to it
+    private int childIndex(final ByteBuffer data, final long key) {
+        int low = 0;
+        int high = data.getInt(COUNT);
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (data.getLong(ENTRIES + middle * 12) <= key) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private int child(final ByteBuffer data, final int index) {
+        return index == 0
+            ? data.getInt(LINK)
+            : data.getInt(ENTRIES + (index - 1) * 12 + 8);
+    }
+
+    private long leafKey(final ByteBuffer data, final int index) {
+        return data.getLong(ENTRIES + index * this.leafEntrySize);
+    }
+
+    private void copyIn(final ByteBuffer data,
+                        final int index,
+                        final ByteBuffer value) {
+        int offset = ENTRIES + index * this.leafEntrySize + 8;
+        int start = value.position();
+
+        for (int i = 0; i < this.valueSize; i++) {
+            data.put(offset + i, value.get(start + i));
+        }
+    }
+
+    private void copyOut(final ByteBuffer data,
+                         final int index,
+                         final ByteBuffer value) {
+        int offset = ENTRIES + index * this.leafEntrySize + 8;
+        int start = value.position();
+
+        for (int i = 0; i < this.valueSize; i++) {
+            value.put(start + i, data.get(offset + i));
+        }
+    }
+
+    // Moves entries index through count - 1 up by one entry
+    private void shift(final ByteBuffer data,
+                       final int entrySize,
+                       final int index,
+                       final int count) {
+        this.copyEntries(data, index, data, index + 1, count - index,
+                         entrySize);
+    }
+
+    private void copyEntries(final ByteBuffer from,
+                             final int fromIndex,
+                             final ByteBuffer to,
+                             final int toIndex,
+                             final int count,
+                             final int entrySize) {
+        byte[] source = from.array();
+        byte[] target = to.array();
+
+        System.arraycopy(
+            source, ENTRIES + fromIndex * entrySize,
+            target, ENTRIES + toIndex * entrySize,
+            count * entrySize
+        );
+    }
+}
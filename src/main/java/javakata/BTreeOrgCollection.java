@@ -0,0 +1,663 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+// An OrgCollection kept in a page file on disk rather than on the heap, so
+// that the number of orgs is limited by disk space. Only a bounded cache
+// of pages (see PageCache) is held in memory.
+//
+// The file holds two B+trees. The org tree maps each org identifier to a
+// fixed-size record of its parent, its own data and its subtree totals.
+// The child tree holds one entry per org, keyed by its parent identifier
+// in the high 32 bits and its input position in the low 32 bits, so the
+// children of an org are one range scan, in input order. Roots are filed
+// under parent zero, which no org can have.
+//
+// Orgs whose parents were never added, and those in parent cycles, are
+// reported when parents are resolved, by a scan of the org tree and walks
+// up from each org that mark the orgs they pass in their records.
+//
+// Subtree totals are computed once, when the collection is built, by a
+// post-order walk that only keeps the current path in memory. Orgs that
+// are part of (or beneath) a parent cycle do not belong to any tree; their
+// totals only reflect their own data.
+//
+// Org instances handed out by the collection are lightweight views over
+// an identifier, which read the file whenever they are queried. Queries
+// may run concurrently.
+final class BTreeOrgCollection implements OrgCollection, Closeable {
+    static final int PAGE_SIZE = 8192;
+    static final int DEFAULT_CACHE_PAGES = 8192;
+
+    private static final int MAGIC = 0x4A4B4254;
+    private static final int VERSION = 1;
+
+    // header page fields
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_PAGE_SIZE = 8;
+    private static final int HEADER_ORG_ROOT = 12;
+    private static final int HEADER_CHILD_ROOT = 16;
+    private static final int HEADER_COUNT = 20;
+
+    // org record fields
+    private static final int PARENT = 0;
+    private static final int POSITION = 4;
+    private static final int USERS = 8;
+    private static final int FILES = 12;
+    private static final int BYTES = 16;
+    private static final int TOTAL_USERS = 24;
+    private static final int TOTAL_FILES = 28;
+    private static final int TOTAL_BYTES = 32;
+    private static final int FLAGS = 40;
+    private static final int WALK = 44;
+    private static final int RECORD_SIZE = 48;
+
+    private static final int IN_TREE = 1;
+
+    private final PageCache pages;
+    private final BPlusTree orgs;
+    private final BPlusTree children;
+    private final int count;
+
+    private BTreeOrgCollection(final PageCache pages,
+                               final BPlusTree orgs,
+                               final BPlusTree children,
+                               final int count) {
+        this.pages = pages;
+        this.orgs = orgs;
+        this.children = children;
+        this.count = count;
+    }
+
+    // Opens a collection that was built into the file before
+    public static BTreeOrgCollection open(final File file,
+                                          final int cachePages)
+        throws IOException {
+
+        if (file == null) {
+            throw new IllegalArgumentException("file argument is null");
+        }
+
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+
+        try {
+            if (channel.size() < PAGE_SIZE) {
+                throw new IOException("Not an org collection file: " + file);
+            }
+
+            PageCache pages = new PageCache(channel, PAGE_SIZE, cachePages);
+            ByteBuffer header = pages.page(0).getData();
+
+            if (header.getInt(HEADER_MAGIC) != MAGIC) {
+                throw new IOException("Not an org collection file: " + file);
+            }
+
+            if (header.getInt(HEADER_VERSION) != VERSION
+                || header.getInt(HEADER_PAGE_SIZE) != PAGE_SIZE) {
+                throw new IOException(
+                    "Unsupported org collection file version: " + file
+                );
+            }
+
+            return new BTreeOrgCollection(
+                pages,
+                new BPlusTree(
+                    pages,
+                    header.getInt(HEADER_ORG_ROOT),
+                    RECORD_SIZE
+                ),
+                new BPlusTree(pages, header.getInt(HEADER_CHILD_ROOT), 4),
+                header.getInt(HEADER_COUNT)
+            );
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Iterable<Org> getRootOrgs() {
+        return this.childOrgs(0);
+    }
+
+    public Org getOrg(final int orgId) {
+        return orgId > 0 && this.orgs.contains(orgId)
+            ? new BTreeOrg(orgId)
+            : null;
+    }
+
+    public List<Org> getOrgTree(final int orgId, final boolean inclusive) {
+        ByteBuffer record = newRecord();
+        if (orgId < 1 || !this.orgs.get(orgId, record)) {
+            return Collections.emptyList();
+        }
+
+        // only orgs outside of every tree can reach a cycle
+        Set<Integer> visited = (record.getInt(FLAGS) & IN_TREE) == 0
+            ? new HashSet<Integer>()
+            : null;
+
+        final List<Org> tree = new ArrayList<Org>();
+        ByteBuffer child = newChild();
+
+        int[] ids = new int[16];
+        long[] cursors = new long[16];
+        int depth = 0;
+
+        if (inclusive) {
+            tree.add(new BTreeOrg(orgId));
+        }
+
+        if (visited != null) {
+            visited.add(orgId);
+        }
+
+        ids[depth] = orgId;
+        cursors[depth++] = childKey(orgId, 0);
+
+        while (depth > 0) {
+            int top = depth - 1;
+            long next = this.children.ceiling(cursors[top], child);
+
+            if (next == BPlusTree.NO_KEY
+                || next >= childKey(ids[top] + 1L, 0)) {
+                depth--;
+                continue;
+            }
+
+            cursors[top] = next + 1;
+
+            int id = child.getInt(0);
+            if (visited != null && !visited.add(id)) {
+                continue;
+            }
+
+            tree.add(new BTreeOrg(id));
+
+            if (depth == ids.length) {
+                ids = Arrays.copyOf(ids, depth * 2);
+                cursors = Arrays.copyOf(cursors, depth * 2);
+            }
+
+            ids[depth] = id;
+            cursors[depth++] = childKey(id, 0);
+        }
+
+        return tree;
+    }
+
+    public int size() {
+        return this.count;
+    }
+
+    // Number of pages read from and written to the file so far
+    long getPageReads() {
+        return this.pages.getReads();
+    }
+
+    long getPageWrites() {
+        return this.pages.getWrites();
+    }
+
+    public void close() throws IOException {
+        this.pages.close();
+    }
+
+    private List<Org> childOrgs(final long parentId) {
+        List<Org> orgList = new ArrayList<Org>();
+        ByteBuffer child = newChild();
+
+        long end = childKey(parentId + 1, 0);
+        long next = this.children.ceiling(childKey(parentId, 0), child);
+
+        while (next != BPlusTree.NO_KEY && next < end) {
+            orgList.add(new BTreeOrg(child.getInt(0)));
+            next = this.children.ceiling(next + 1, child);
+        }
+
+        return orgList;
+    }
+
+    private ByteBuffer record(final int orgId) {
+        ByteBuffer record = newRecord();
+        this.orgs.get(orgId, record);
+        return record;
+    }
+
+    private static long childKey(final long parentId, final int position) {
+        return parentId << 32 | position;
+    }
+
+    private static ByteBuffer newRecord() {
+        return ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer newChild() {
+        return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private final class BTreeOrg implements Org {
+        private final int id;
+
+        BTreeOrg(final int id) {
+            this.id = id;
+        }
+
+        public int getId() {
+            return this.id;
+        }
+
+        public int getTotalNumUsers() {
+            return BTreeOrgCollection.this.record(this.id)
+                .getInt(TOTAL_USERS);
+        }
+
+        public int getTotalNumFiles() {
+            return BTreeOrgCollection.this.record(this.id)
+                .getInt(TOTAL_FILES);
+        }
+
+        public long getTotalNumBytes() {
+            return BTreeOrgCollection.this.record(this.id)
+                .getLong(TOTAL_BYTES);
+        }
+
+        public List<Org> getChildOrgs() {
+            return BTreeOrgCollection.this.childOrgs(this.id);
+        }
+
+        private BTreeOrgCollection owner() {
+            return BTreeOrgCollection.this;
+        }
+
+        public boolean equals(final Object other) {
+            if (!(other instanceof BTreeOrg)) {
+                return false;
+            }
+
+            BTreeOrg org = (BTreeOrg) other;
+            return org.owner() == this.owner() && org.id == this.id;
+        }
+
+        public int hashCode() {
+            return this.id;
+        }
+
+        public String toString() {
+            return "Org " + Integer.toString(this.id);
+        }
+    }
+
+    // Loads orgs and users straight into a new file, replacing anything
+    // already in it. Only containsOrg and addUsers may be called
+    // concurrently; they are synchronized, since adding users writes pages
+    // that a concurrent lookup could be reading.
+    static final class Builder implements OrgCollectionBuilder {
+        private final PageCache pages;
+        private final BPlusTree orgs;
+        private final BPlusTree children;
+
+        private final ByteBuffer record = newRecord();
+        private final ByteBuffer child = newChild();
+
+        private int count;
+        private boolean built;
+
+        Builder(final File file) throws IOException {
+            this(file, DEFAULT_CACHE_PAGES);
+        }
+
+        Builder(final File file, final int cachePages) throws IOException {
+            if (file == null) {
+                throw new IllegalArgumentException("file argument is null");
+            }
+
+            FileChannel channel = new RandomAccessFile(file, "rw")
+                .getChannel();
+
+            try {
+                channel.truncate(0);
+                this.pages = new PageCache(channel, PAGE_SIZE, cachePages);
+            }
+            catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+
+            // the header page is written when the collection is built
+            this.pages.allocate();
+
+            this.orgs = new BPlusTree(
+                this.pages,
+                BPlusTree.create(this.pages),
+                RECORD_SIZE
+            );
+            this.children = new BPlusTree(
+                this.pages,
+                BPlusTree.create(this.pages),
+                4
+            );
+        }
+
+        public void addOrg(final int orgId, final int parentOrgId) {
+            ObservationCode error = this.tryAddOrg(orgId, parentOrgId);
+            if (error != null) {
+                throw new IllegalArgumentException(error.getDetail(orgId));
+            }
+        }
+
+        public ObservationCode tryAddOrg(final int orgId,
+                                         final int parentOrgId) {
+            this.ensureNotBuilt();
+
+            if (orgId < 1) {
+                return ObservationCode.ORG_INVALID_ID;
+            }
+
+            if (parentOrgId < 0 && parentOrgId != NO_PARENT) {
+                return ObservationCode.ORG_INVALID_PARENT;
+            }
+
+            if (this.orgs.contains(orgId)) {
+                return ObservationCode.ORG_DUPLICATE;
+            }
+
+            if (this.count == Integer.MAX_VALUE) {
+                throw new IllegalStateException("Too many orgs.");
+            }
+
+            ByteBuffer data = this.record;
+            for (int i = 0; i < RECORD_SIZE; i += 4) {
+                data.putInt(i, 0);
+            }
+
+            data.putInt(PARENT, parentOrgId);
+            data.putInt(POSITION, this.count);
+            this.orgs.put(orgId, data);
+
+            // an org whose parent is zero can never be resolved
+            if (parentOrgId != 0) {
+                this.child.putInt(0, orgId);
+                this.children.put(
+                    childKey(parentOrgId == NO_PARENT ? 0 : parentOrgId,
+                             this.count),
+                    this.child
+                );
+            }
+
+            this.count++;
+            return null;
+        }
+
+        public synchronized boolean containsOrg(final int orgId) {
+            this.ensureNotBuilt();
+            return orgId > 0 && this.orgs.contains(orgId);
+        }
+
+        // Children are found by parent when the collection is built, so
+        // this only reports the orgs that cannot be placed. As in
+        // ColumnarOrgCollection, each org is walked up from until the walk
+        // reaches a top or an org an earlier walk passed; a walk that
+        // reaches an org it passed itself has found a cycle.
+        public void resolveParents(final UnplacedOrgObserver observer) {
+            this.ensureNotBuilt();
+
+            if (observer == null) {
+                return;
+            }
+
+            ByteBuffer data = this.record;
+
+            long id = this.orgs.ceiling(1, data);
+            while (id != BPlusTree.NO_KEY) {
+                int parent = data.getInt(PARENT);
+                if (parent != NO_PARENT && !this.containsOrg(parent)) {
+                    observer.unplaced(
+                        ObservationCode.ORG_UNKNOWN_PARENT,
+                        (int) id,
+                        parent
+                    );
+                }
+
+                if (data.getInt(WALK) == 0) {
+                    this.walkUp((int) id, observer);
+                }
+
+                id = this.orgs.ceiling(id + 1, data);
+            }
+        }
+
+        // Marks the orgs from `start` up with its identifier, stopping at
+        // a top or at an org that is already marked
+        private void walkUp(final int start,
+                            final UnplacedOrgObserver observer) {
+            ByteBuffer data = newRecord();
+
+            int id = start;
+            this.orgs.get(id, data);
+            while (true) {
+                int walk = data.getInt(WALK);
+                if (walk != 0) {
+                    if (walk == start) {
+                        this.reportCycle(id, observer);
+                    }
+
+                    return;
+                }
+
+                data.putInt(WALK, start);
+                this.orgs.put(id, data);
+
+                int parent = data.getInt(PARENT);
+                if (parent < 1 || !this.orgs.get(parent, data)) {
+                    return;
+                }
+
+                id = parent;
+            }
+        }
+
+        // Reports the orgs of the cycle through `start` that were added
+        // before their parents; an org can be its own parent
+        private void reportCycle(final int start,
+                                 final UnplacedOrgObserver observer) {
+            ByteBuffer data = newRecord();
+            ByteBuffer parentData = newRecord();
+
+            int id = start;
+            do {
+                this.orgs.get(id, data);
+                int parent = data.getInt(PARENT);
+                this.orgs.get(parent, parentData);
+
+                if (parentData.getInt(POSITION) >= data.getInt(POSITION)) {
+                    observer.unplaced(
+                        ObservationCode.ORG_PARENT_CYCLE,
+                        id,
+                        parent
+                    );
+                }
+
+                id = parent;
+            }
+            while (id != start);
+        }
+
+        public synchronized boolean addUsers(final int orgId,
+                                             final int userCount,
+                                             final int fileCount,
+                                             final long byteCount) {
+            this.ensureNotBuilt();
+
+            ByteBuffer data = this.record;
+            if (orgId < 1 || !this.orgs.get(orgId, data)) {
+                return false;
+            }
+
+            data.putInt(USERS, data.getInt(USERS) + userCount);
+            data.putInt(FILES, data.getInt(FILES) + fileCount);
+            data.putLong(BYTES, data.getLong(BYTES) + byteCount);
+            this.orgs.put(orgId, data);
+            return true;
+        }
+
+        public BTreeOrgCollection build() {
+            this.ensureNotBuilt();
+            this.built = true;
+
+            try {
+                this.computeTotals();
+                this.writeHeader();
+                this.pages.flush();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            return new BTreeOrgCollection(
+                this.pages,
+                this.orgs,
+                this.children,
+                this.count
+            );
+        }
+
+        // Rolls up every tree from its top: a root, or an org whose parent
+        // was never defined. Whatever is left is in or beneath a cycle.
+        private void computeTotals() {
+            ByteBuffer data = this.record;
+
+            long id = this.orgs.ceiling(1, data);
+            while (id != BPlusTree.NO_KEY) {
+                int parent = data.getInt(PARENT);
+                if (parent < 1 || !this.orgs.contains(parent)) {
+                    this.rollUp((int) id);
+                }
+
+                id = this.orgs.ceiling(id + 1, data);
+            }
+
+            id = this.orgs.ceiling(1, data);
+            while (id != BPlusTree.NO_KEY) {
+                if ((data.getInt(FLAGS) & IN_TREE) == 0) {
+                    data.putInt(TOTAL_USERS, data.getInt(USERS));
+                    data.putInt(TOTAL_FILES, data.getInt(FILES));
+                    data.putLong(TOTAL_BYTES, data.getLong(BYTES));
+                    this.orgs.put(id, data);
+                }
+
+                id = this.orgs.ceiling(id + 1, data);
+            }
+        }
+
+        // Walks the tree in post-order, keeping each org on the current
+        // path with a cursor into its children and its running totals
+        private void rollUp(final int top) {
+            ByteBuffer data = newRecord();
+
+            int[] ids = new int[16];
+            long[] cursors = new long[16];
+            int[] users = new int[16];
+            int[] files = new int[16];
+            long[] bytes = new long[16];
+            int depth = 0;
+
+            int next = top;
+            while (true) {
+                if (next > 0) {
+                    if (depth == ids.length) {
+                        int capacity = depth * 2;
+                        ids = Arrays.copyOf(ids, capacity);
+                        cursors = Arrays.copyOf(cursors, capacity);
+                        users = Arrays.copyOf(users, capacity);
+                        files = Arrays.copyOf(files, capacity);
+                        bytes = Arrays.copyOf(bytes, capacity);
+                    }
+
+                    this.orgs.get(next, data);
+                    ids[depth] = next;
+                    cursors[depth] = childKey(next, 0);
+                    users[depth] = data.getInt(USERS);
+                    files[depth] = data.getInt(FILES);
+                    bytes[depth] = data.getLong(BYTES);
+                    depth++;
+                }
+
+                int current = depth - 1;
+                long key = this.children.ceiling(cursors[current], this.child);
+
+                if (key != BPlusTree.NO_KEY
+                    && key < childKey(ids[current] + 1L, 0)) {
+                    cursors[current] = key + 1;
+                    next = this.child.getInt(0);
+                    continue;
+                }
+
+                // every child is done, so the totals are complete
+                this.orgs.get(ids[current], data);
+                data.putInt(TOTAL_USERS, users[current]);
+                data.putInt(TOTAL_FILES, files[current]);
+                data.putLong(TOTAL_BYTES, bytes[current]);
+                data.putInt(FLAGS, data.getInt(FLAGS) | IN_TREE);
+                this.orgs.put(ids[current], data);
+
+                depth--;
+                if (depth == 0) {
+                    return;
+                }
+
+                users[depth - 1] += users[current];
+                files[depth - 1] += files[current];
+                bytes[depth - 1] += bytes[current];
+                next = 0;
+            }
+        }
+
+        private void writeHeader() {
+            PageCache.Page page = this.pages.page(0);
+            ByteBuffer header = page.getData();
+
+            header.putInt(HEADER_MAGIC, MAGIC);
+            header.putInt(HEADER_VERSION, VERSION);
+            header.putInt(HEADER_PAGE_SIZE, PAGE_SIZE);
+            header.putInt(HEADER_ORG_ROOT, this.orgs.getRoot());
+            header.putInt(HEADER_CHILD_ROOT, this.children.getRoot());
+            header.putInt(HEADER_COUNT, this.count);
+            page.markDirty();
+        }
+
+        private void ensureNotBuilt() {
+            if (this.built) {
+                throw new IllegalStateException(
+                    "Collection has already been built."
+                );
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.nio.*;
+import java.nio.charset.*;
+
+// A reusable, zero-copy view of a single line held in a ByteBuffer. Bytes
+// are exposed as ISO-8859-1 characters, which is all the record scanner
+// needs; toString() decodes the line as UTF-8 and is only expected to be
+// called when a line has to be reported.
+final class ByteLine implements CharSequence {
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+    private long position = -1;
+    private int terminatorLength;
+
+    public void set(final ByteBuffer source,
+                    final int start,
+                    final int count) {
+        this.set(source, start, count, -1);
+    }
+
+    // The position is that of the line's first byte within its file
+    public void set(final ByteBuffer source,
+                    final int start,
+                    final int count,
+                    final long position) {
+        this.set(source, start, count, position, 0);
+    }
+
+    // The terminator length is the number of bytes of the "\n", "\r" or
+    // "\r\n" that ended the line in its file, or 0 if none did
+    public void set(final ByteBuffer source,
+                    final int start,
+                    final int count,
+                    final long position,
+                    final int terminatorLength) {
+        if (source == null) {
+            throw new IllegalArgumentException("source argument is null");
+        }
+
+        if (start < 0 || count < 0 || start + count > source.limit()) {
+            throw new IllegalArgumentException(
+                "Line bounds are outside of the buffer."
+            );
+        }
+
+        if (terminatorLength < 0 || terminatorLength > 2) {
+            throw new IllegalArgumentException(
+                "Terminator length must be between 0 and 2."
+            );
+        }
+
+        this.buffer = source;
+        this.offset = start;
+        this.length = count;
+        this.position = position;
+        this.terminatorLength = terminatorLength;
+    }
+
+    // Returns the position of the line within its file, or -1 if unknown
+    public long getPosition() {
+        return this.position;
+    }
+
+    // Returns the number of bytes the line took up in its file, including
+    // its terminator
+    public int getByteCount() {
+        return this.length + this.terminatorLength;
+    }
+
+    public int length() {
+        return this.length;
+    }
+
+    public char charAt(final int index) {
+        if (index < 0 || index >= this.length) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+
+        return (char) (this.buffer.get(this.offset + index) & 0xFF);
+    }
+
+    public CharSequence subSequence(final int start, final int end) {
+        return this.toString().subSequence(start, end);
+    }
+
+    public String toString() {
+        byte[] bytes = new byte[this.length];
+        for (int i = 0; i < this.length; i++) {
+            bytes[i] = this.buffer.get(this.offset + i);
+        }
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,435 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+
+// Wraps an OrgCollectionBuilder, caching the results of getOrg and
+// getOrgTree for the orgs that are queried most. This pays off for
+// collections whose queries do real work, such as a BTreeOrgCollection
+// that reads pages or a large subtree walked on every request, when a few
+// orgs get most of the queries.
+//
+// The cache holds at most a given weight of results: one per org, plus
+// one per org in a tree. Eviction follows W-TinyLFU. New results enter a
+// small LRU window; what falls out of the window competes for a place in
+// the main cache against its least recently used entry, and whichever has
+// been queried less often, according to a FrequencySketch, is evicted.
+// The main cache is a segmented LRU, so entries that were hit again are
+// protected from entries that were hit once.
+//
+// Because orgs and users must be added through this class, it knows every
+// org's parent, and an update removes exactly the cached results that it
+// changes: those of the org itself and of each of its ancestors.
+//
+// A collection must show updates as soon as they are made, so a
+// VersionedOrgCollection, which shows them when they are published, is
+// not supported; its versions never change and can be cached as they are.
+//
+// The cache is safe for concurrent queries, but the wrapped collection's
+// own thread-safety rules still apply.
+final class CachingOrgCollection
+    implements OrgCollection, OrgCollectionBuilder {
+
+    private static final int ORG = 0;
+    private static final int TREE = 1;
+    private static final int INCLUSIVE_TREE = 2;
+
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final OrgCollectionBuilder target;
+    private final long maxWeight;
+    private final long maxWindowWeight;
+    private final long maxProtectedWeight;
+
+    private final IntIntMap parents;
+    private final Map<Long, Entry> entries;
+    private final FrequencySketch sketch;
+    private final Entry[] queues;
+    private final long[] weights;
+
+    private volatile OrgCollection orgs;
+
+    // changes whenever results are removed, so a result computed while an
+    // update was made is not cached
+    private long generation;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public CachingOrgCollection(final OrgCollectionBuilder target,
+                                final long maxWeight) {
+        if (target == null) {
+            throw new IllegalArgumentException("target argument is null");
+        }
+
+        if (target instanceof VersionedOrgCollection) {
+            throw new IllegalArgumentException(
+                "Versioned collections cannot be cached."
+            );
+        }
+
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException(
+                "Maximum weight must be greater than or equal to one."
+            );
+        }
+
+        this.target = target;
+        this.maxWeight = maxWeight;
+        this.maxWindowWeight = Math.max(1, maxWeight * WINDOW_PERCENT / 100);
+        this.maxProtectedWeight =
+            (maxWeight - this.maxWindowWeight) * PROTECTED_PERCENT / 100;
+
+        this.parents = new IntIntMap();
+        this.entries = new HashMap<Long, Entry>();
+        this.sketch = new FrequencySketch(
+            (int) Math.min(maxWeight, Integer.MAX_VALUE)
+        );
+
+        this.queues = new Entry[3];
+        this.weights = new long[3];
+        for (int i = 0; i < this.queues.length; i++) {
+            this.queues[i] = new Entry(Long.MIN_VALUE, null, 0);
+        }
+
+        // a builder that is also a collection can be queried while loading
+        if (target instanceof OrgCollection) {
+            this.orgs = (OrgCollection) target;
+        }
+    }
+
+    public Iterable<Org> getRootOrgs() {
+        return this.collection().getRootOrgs();
+    }
+
+    public Org getOrg(final int orgId) {
+        return (Org) this.query(orgId, ORG);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Org> getOrgTree(final int orgId, final boolean inclusive) {
+        List<Org> tree = (List<Org>) this.query(
+            orgId,
+            inclusive ? INCLUSIVE_TREE : TREE
+        );
+
+        return tree != null ? tree : Collections.<Org>emptyList();
+    }
+
+    public void addOrg(final int orgId, final int parentOrgId) {
+        ObservationCode error = this.tryAddOrg(orgId, parentOrgId);
+        if (error != null) {
+            throw new IllegalArgumentException(error.getDetail(orgId));
+        }
+    }
+
+    public ObservationCode tryAddOrg(final int orgId, final int parentOrgId) {
+        ObservationCode error = this.target.tryAddOrg(orgId, parentOrgId);
+        if (error != null) {
+            return error;
+        }
+
+        if (parentOrgId > 0) {
+            synchronized (this) {
+                this.parents.put(orgId, parentOrgId);
+            }
+        }
+
+        // results for the org itself can exist if it was queried before
+        // it was added
+        this.invalidate(orgId);
+        return null;
+    }
+
+    public boolean containsOrg(final int orgId) {
+        return this.target.containsOrg(orgId);
+    }
+
+    public void resolveParents(final UnplacedOrgObserver observer) {
+        this.target.resolveParents(observer);
+
+        // linking deferred orgs changes the trees above them
+        synchronized (this) {
+            this.clear();
+        }
+    }
+
+    public boolean addUsers(final int orgId,
+                            final int users,
+                            final int files,
+                            final long bytes) {
+        if (!this.target.addUsers(orgId, users, files, bytes)) {
+            return false;
+        }
+
+        this.invalidate(orgId);
+        return true;
+    }
+
+    public OrgCollection build() {
+        OrgCollection built = this.target.build();
+
+        synchronized (this) {
+            this.orgs = built;
+            this.clear();
+        }
+
+        return this;
+    }
+
+    // The totals are the same once computed, so nothing cached changes
+    public void computeTotals(final int parallelism) {
+        this.target.computeTotals(parallelism);
+    }
+
+    public synchronized long getHitCount() {
+        return this.hits;
+    }
+
+    public synchronized long getMissCount() {
+        return this.misses;
+    }
+
+    // Number of results removed to make room for others
+    public synchronized long getEvictionCount() {
+        return this.evictions;
+    }
+
+    // Number of results removed because an update changed them
+    public synchronized long getInvalidationCount() {
+        return this.invalidations;
+    }
+
+    // Total weight of the cached results
+    public synchronized long getWeight() {
+        return this.weights[WINDOW]
+             + this.weights[PROBATION]
+             + this.weights[PROTECTED];
+    }
+
+    private OrgCollection collection() {
+        OrgCollection col = this.orgs;
+        if (col == null) {
+            throw new IllegalStateException(
+                "Collection cannot be queried until it is built."
+            );
+        }
+
+        return col;
+    }
+
+    private Object query(final int orgId, final int kind) {
+        OrgCollection col = this.collection();
+        long key = ((long) orgId << 2) | kind;
+        long generation;
+
+        synchronized (this) {
+            this.sketch.increment(key);
+
+            Entry entry = this.entries.get(key);
+            if (entry != null) {
+                this.hits++;
+                this.onHit(entry);
+                return entry.value;
+            }
+
+            this.misses++;
+            generation = this.generation;
+        }
+
+        // computed outside the lock, so one slow query does not hold up
+        // the others
+        Object value;
+        int weight;
+        if (kind == ORG) {
+            value = col.getOrg(orgId);
+            weight = 1;
+        }
+        else {
+            List<Org> tree = col.getOrgTree(orgId, kind == INCLUSIVE_TREE);
+            value = Collections.unmodifiableList(new ArrayList<Org>(tree));
+            weight = 1 + tree.size();
+        }
+
+        synchronized (this) {
+            if (value != null
+                && weight <= this.maxWeight - this.maxWindowWeight
+                && generation == this.generation
+                && !this.entries.containsKey(key)) {
+
+                this.add(new Entry(key, value, weight));
+            }
+        }
+
+        return value;
+    }
+
+    private void onHit(final Entry entry) {
+        if (entry.queue == PROBATION) {
+            this.move(entry, PROTECTED);
+
+            // the protected segment is kept to its share of the main cache
+            while (this.weights[PROTECTED] > this.maxProtectedWeight) {
+                this.move(this.queues[PROTECTED].next, PROBATION);
+            }
+        }
+        else {
+            this.move(entry, entry.queue);
+        }
+    }
+
+    private void add(final Entry entry) {
+        this.entries.put(entry.key, entry);
+        this.link(entry, WINDOW);
+
+        while (this.weights[WINDOW] > this.maxWindowWeight) {
+            Entry candidate = this.queues[WINDOW].next;
+            this.move(candidate, PROBATION);
+            this.admit(candidate);
+        }
+    }
+
+    // Makes room in the main cache for an entry that left the window,
+    // evicting it instead if it is used less than the entries it would
+    // replace
+    private void admit(final Entry candidate) {
+        long maxMainWeight = this.maxWeight - this.maxWindowWeight;
+        int frequency = this.sketch.frequency(candidate.key);
+
+        while (this.weights[PROBATION] + this.weights[PROTECTED]
+               > maxMainWeight) {
+
+            Entry victim = this.queues[PROBATION].next;
+            if (victim == candidate) {
+                victim = victim.next;
+            }
+
+            if (victim == this.queues[PROBATION]) {
+                victim = this.queues[PROTECTED].next;
+            }
+
+            if (victim == this.queues[PROTECTED]
+                || this.sketch.frequency(victim.key) >= frequency) {
+                this.evict(candidate);
+                return;
+            }
+
+            this.evict(victim);
+        }
+    }
+
+    private void evict(final Entry entry) {
+        this.remove(entry);
+        this.evictions++;
+    }
+
+    // Removes the results for the org and every org above it
+    private void invalidate(final int orgId) {
+        synchronized (this) {
+            this.generation++;
+
+            if (this.entries.isEmpty()) {
+                return;
+            }
+
+            // a cycle of parents is walked at most once
+            int steps = this.parents.size() + 1;
+            for (int id = orgId; id > 0 && steps-- > 0; ) {
+                for (int kind = ORG; kind <= INCLUSIVE_TREE; kind++) {
+                    Entry entry = this.entries.get(((long) id << 2) | kind);
+                    if (entry != null) {
+                        this.remove(entry);
+                        this.invalidations++;
+                    }
+                }
+
+                id = this.parents.get(id);
+            }
+        }
+    }
+
+    private void clear() {
+        this.generation++;
+        this.entries.clear();
+        for (int i = 0; i < this.queues.length; i++) {
+            this.queues[i].next = this.queues[i];
+            this.queues[i].previous = this.queues[i];
+            this.weights[i] = 0;
+        }
+    }
+
+    private void remove(final Entry entry) {
+        this.entries.remove(entry.key);
+        this.unlink(entry);
+    }
+
+    // Moves the entry to the most recently used end of a queue
+    private void move(final Entry entry, final int queue) {
+        this.unlink(entry);
+        this.link(entry, queue);
+    }
+
+    private void link(final Entry entry, final int queue) {
+        Entry head = this.queues[queue];
+        entry.queue = queue;
+        entry.previous = head.previous;
+        entry.next = head;
+        head.previous.next = entry;
+        head.previous = entry;
+        this.weights[queue] += entry.weight;
+    }
+
+    private void unlink(final Entry entry) {
+        entry.previous.next = entry.next;
+        entry.next.previous = entry.previous;
+        this.weights[entry.queue] -= entry.weight;
+    }
+
+    // A cached result in one of the three LRU queues. Each queue is a
+    // circular list through a sentinel, from least to most recently used.
+    private static final class Entry {
+        final long key;
+        final Object value;
+        final int weight;
+
+        int queue;
+        Entry previous;
+        Entry next;
+
+        Entry(final long key, final Object value, final int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.previous = this;
+            this.next = this;
+        }
+    }
+}
@@ -0,0 +1,616 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.io.*;
+import java.util.*;
+
+// An immutable OrgCollection stored as parallel primitive arrays rather
+// than one object per org. Orgs are addressed by a dense index assigned in
+// depth-first pre-order, so the subtree of org i is exactly the index range
+// i through subtreeEnds[i] - 1. Children are kept in compressed sparse row
+// form, where the children of org i are children[childOffsets[i]] through
+// children[childOffsets[i + 1] - 1], in input order.
+//
+// Instead of per-org values and totals, the collection keeps prefix sums of
+// each org's own data in index order, so subtree totals are the difference
+// of two prefix sums. The int sums may wrap around, but the differences are
+// exact whenever the subtree total itself fits in an int.
+//
+// Orgs that are part of (or beneath) a parent cycle do not belong to any
+// tree. They are indexed after every tree, from treeCount onwards, and
+// their totals only reflect their own data.
+//
+// Org instances handed out by the collection are lightweight views over an
+// index; they are created on demand and compare equal by index.
+final class ColumnarOrgCollection implements OrgCollection {
+    static final int ROOT = -1;
+    static final int UNRESOLVED = -2;
+
+    private final IntIntMap indexes;
+
+    private final int[] ids;
+    private final int[] childOffsets;
+    private final int[] children;
+    private final int[] subtreeEnds;
+    private final int[] roots;
+    private final int treeCount;
+
+    private final int[] prefixUsers;
+    private final int[] prefixFiles;
+    private final long[] prefixBytes;
+
+    private ColumnarOrgCollection(final Builder builder) {
+        int count = builder.size;
+
+        // resolve parent identifiers to input positions, counting children
+        int[] parents = new int[count];
+        int[] offsets = new int[count + 1];
+        int rootCount = 0;
+
+        for (int i = 0; i < count; i++) {
+            int parentId = builder.parentIds[i];
+            int parent = ROOT;
+
+            if (parentId != OrgCollectionBuilder.NO_PARENT) {
+                parent = builder.indexes.get(parentId);
+                if (parent == IntIntMap.NO_VALUE) {
+                    parent = UNRESOLVED;
+                }
+            }
+
+            parents[i] = parent;
+            if (parent >= 0) {
+                offsets[parent + 1]++;
+            }
+            else if (parent == ROOT) {
+                rootCount++;
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        int[] inputChildren = new int[offsets[count]];
+        int[] next = Arrays.copyOf(offsets, count);
+
+        for (int i = 0; i < count; i++) {
+            if (parents[i] >= 0) {
+                inputChildren[next[parents[i]]++] = i;
+            }
+        }
+
+        // number every org reachable from the top of a tree (a root, or an
+        // org whose parent was never defined) in pre-order; children are
+        // pushed in reverse so siblings are numbered in input order
+        int[] order = new int[count];
+        int[] positions = new int[count];
+        Arrays.fill(positions, -1);
+
+        int[] stack = next;
+        int numbered = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (parents[i] >= 0) {
+                continue;
+            }
+
+            int depth = 0;
+            stack[depth++] = i;
+
+            while (depth > 0) {
+                int current = stack[--depth];
+                positions[current] = numbered;
+                order[numbered++] = current;
+
+                for (int c = offsets[current + 1] - 1;
+                     c >= offsets[current];
+                     c--) {
+                    stack[depth++] = inputChildren[c];
+                }
+            }
+        }
+
+        this.treeCount = numbered;
+
+        for (int i = 0; i < count; i++) {
+            if (positions[i] < 0) {
+                positions[i] = numbered;
+                order[numbered++] = i;
+            }
+        }
+
+        // lay out every column in index order
+        this.ids = new int[count];
+        this.roots = new int[rootCount];
+        this.childOffsets = new int[count + 1];
+        this.prefixUsers = new int[count + 1];
+        this.prefixFiles = new int[count + 1];
+        this.prefixBytes = new long[count + 1];
+
+        this.indexes = builder.indexes;
+        int nextRoot = 0;
+
+        for (int index = 0; index < count; index++) {
+            int input = order[index];
+
+            this.ids[index] = builder.ids[input];
+            this.indexes.put(builder.ids[input], index);
+
+            this.prefixUsers[index + 1] =
+                this.prefixUsers[index] + builder.users[input];
+            this.prefixFiles[index + 1] =
+                this.prefixFiles[index] + builder.files[input];
+            this.prefixBytes[index + 1] =
+                this.prefixBytes[index] + builder.bytes[input];
+
+            if (parents[input] >= 0) {
+                this.childOffsets[positions[parents[input]] + 1]++;
+            }
+            else if (parents[input] == ROOT) {
+                this.roots[nextRoot++] = index;
+            }
+        }
+
+        for (int index = 0; index < count; index++) {
+            this.childOffsets[index + 1] += this.childOffsets[index];
+        }
+
+        // children are placed in index order, which is input order among
+        // siblings
+        this.children = new int[this.childOffsets[count]];
+        next = Arrays.copyOf(this.childOffsets, count);
+
+        for (int index = 0; index < count; index++) {
+            int parent = parents[order[index]];
+            if (parent >= 0) {
+                this.children[next[positions[parent]]++] = index;
+            }
+        }
+
+        // a subtree ends where its last descendant does; descendants have
+        // higher indexes than their ancestors, so one backwards pass works
+        this.subtreeEnds = new int[count];
+        for (int index = 0; index < count; index++) {
+            this.subtreeEnds[index] = index + 1;
+        }
+
+        for (int index = this.treeCount - 1; index >= 0; index--) {
+            int parent = parents[order[index]];
+            if (parent >= 0) {
+                int parentIndex = positions[parent];
+                this.subtreeEnds[parentIndex] = Math.max(
+                    this.subtreeEnds[parentIndex],
+                    this.subtreeEnds[index]
+                );
+            }
+        }
+    }
+
+    public Iterable<Org> getRootOrgs() {
+        return new OrgList(this.roots, 0, this.roots.length);
+    }
+
+    public Org getOrg(final int orgId) {
+        int index = this.indexes.get(orgId);
+        return index != IntIntMap.NO_VALUE ? new ColumnarOrg(index) : null;
+    }
+
+    public List<Org> getOrgTree(final int orgId, final boolean inclusive) {
+        int index = this.indexes.get(orgId);
+        if (index == IntIntMap.NO_VALUE) {
+            return Collections.emptyList();
+        }
+
+        if (index >= this.treeCount) {
+            return this.walkOrgTree(index, inclusive);
+        }
+
+        return new OrgRange(
+            inclusive ? index : index + 1,
+            this.subtreeEnds[index]
+        );
+    }
+
+    public int size() {
+        return this.ids.length;
+    }
+
+    // Saves the collection as a snapshot that SnapshotOrgCollection can
+    // map, replacing the file if it exists
+    public void writeSnapshot(final File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file argument is null");
+        }
+
+        try (SnapshotOrgCollection.Writer writer =
+                 new SnapshotOrgCollection.Writer(
+                     file,
+                     this.ids.length,
+                     this.treeCount,
+                     this.roots.length,
+                     this.children.length
+                 )) {
+
+            writer.putLongs(this.prefixBytes);
+            writer.putInts(this.ids);
+            writer.putInts(this.subtreeEnds);
+            writer.putInts(this.childOffsets);
+            writer.putInts(this.children);
+            writer.putInts(this.roots);
+            writer.putInts(this.prefixUsers);
+            writer.putInts(this.prefixFiles);
+            writer.finish(this.ids);
+        }
+    }
+
+    // Orgs outside of every tree are walked directly in pre-order. Each org
+    // is visited at most once, so the walk stops where a cycle closes.
+    private List<Org> walkOrgTree(final int index, final boolean inclusive) {
+        BitSet visited = new BitSet();
+
+        int[] tree = new int[16];
+        int treeSize = 0;
+
+        int[] stack = new int[16];
+        int depth = 0;
+        stack[depth++] = index;
+
+        while (depth > 0) {
+            int current = stack[--depth];
+            if (visited.get(current)) {
+                continue;
+            }
+
+            visited.set(current);
+
+            if (current != index || inclusive) {
+                if (treeSize == tree.length) {
+                    tree = Arrays.copyOf(tree, treeSize * 2);
+                }
+                tree[treeSize++] = current;
+            }
+
+            int first = this.childOffsets[current];
+            int last = this.childOffsets[current + 1];
+
+            if (depth + (last - first) > stack.length) {
+                stack = Arrays.copyOf(
+                    stack,
+                    Math.max(stack.length * 2, depth + (last - first))
+                );
+            }
+
+            for (int c = last - 1; c >= first; c--) {
+                stack[depth++] = this.children[c];
+            }
+        }
+
+        return new OrgList(tree, 0, treeSize);
+    }
+
+    private final class ColumnarOrg implements Org {
+        private final int index;
+
+        ColumnarOrg(final int index) {
+            this.index = index;
+        }
+
+        public int getId() {
+            return ColumnarOrgCollection.this.ids[this.index];
+        }
+
+        public int getTotalNumUsers() {
+            int[] prefix = ColumnarOrgCollection.this.prefixUsers;
+            return prefix[this.end()] - prefix[this.index];
+        }
+
+        public int getTotalNumFiles() {
+            int[] prefix = ColumnarOrgCollection.this.prefixFiles;
+            return prefix[this.end()] - prefix[this.index];
+        }
+
+        public long getTotalNumBytes() {
+            long[] prefix = ColumnarOrgCollection.this.prefixBytes;
+            return prefix[this.end()] - prefix[this.index];
+        }
+
+        private int end() {
+            return ColumnarOrgCollection.this.subtreeEnds[this.index];
+        }
+
+        public List<Org> getChildOrgs() {
+            int[] offsets = ColumnarOrgCollection.this.childOffsets;
+
+            return new OrgList(
+                ColumnarOrgCollection.this.children,
+                offsets[this.index],
+                offsets[this.index + 1]
+            );
+        }
+
+        private ColumnarOrgCollection owner() {
+            return ColumnarOrgCollection.this;
+        }
+
+        public boolean equals(final Object other) {
+            if (!(other instanceof ColumnarOrg)) {
+                return false;
+            }
+
+            ColumnarOrg org = (ColumnarOrg) other;
+            return org.owner() == this.owner() && org.index == this.index;
+        }
+
+        public int hashCode() {
+            return this.index;
+        }
+
+        public String toString() {
+            return "Org " + Integer.toString(this.getId());
+        }
+    }
+
+    // A read-only list of org views over a range of an index array
+    private final class OrgList extends AbstractList<Org>
+        implements RandomAccess {
+
+        private final int[] indexes;
+        private final int from;
+        private final int to;
+
+        OrgList(final int[] indexes, final int from, final int to) {
+            this.indexes = indexes;
+            this.from = from;
+            this.to = to;
+        }
+
+        public Org get(final int i) {
+            if (i < 0 || i >= this.size()) {
+                throw new IndexOutOfBoundsException(Integer.toString(i));
+            }
+
+            return new ColumnarOrg(this.indexes[this.from + i]);
+        }
+
+        public int size() {
+            return this.to - this.from;
+        }
+    }
+
+    // A read-only list of org views over a contiguous range of indexes
+    private final class OrgRange extends AbstractList<Org>
+        implements RandomAccess {
+
+        private final int from;
+        private final int to;
+
+        OrgRange(final int from, final int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        public Org get(final int i) {
+            if (i < 0 || i >= this.size()) {
+                throw new IndexOutOfBoundsException(Integer.toString(i));
+            }
+
+            return new ColumnarOrg(this.from + i);
+        }
+
+        public int size() {
+            return this.to - this.from;
+        }
+    }
+
+    static final class Builder implements OrgCollectionBuilder {
+        private IntIntMap indexes;
+
+        private int[] ids;
+        private int[] parentIds;
+        private int[] users;
+        private int[] files;
+        private long[] bytes;
+        private int size;
+
+        Builder() {
+            this(1024);
+        }
+
+        Builder(final int expectedOrgs) {
+            if (expectedOrgs < 0) {
+                throw new IllegalArgumentException(
+                    "Expected number of orgs cannot be negative."
+                );
+            }
+
+            int capacity = Math.max(16, expectedOrgs);
+
+            this.indexes = new IntIntMap(expectedOrgs);
+            this.ids = new int[capacity];
+            this.parentIds = new int[capacity];
+            this.users = new int[capacity];
+            this.files = new int[capacity];
+            this.bytes = new long[capacity];
+        }
+
+        public void addOrg(final int orgId, final int parentOrgId) {
+            ObservationCode error = this.tryAddOrg(orgId, parentOrgId);
+            if (error != null) {
+                throw new IllegalArgumentException(error.getDetail(orgId));
+            }
+        }
+
+        public ObservationCode tryAddOrg(final int orgId,
+                                         final int parentOrgId) {
+            this.ensureNotBuilt();
+
+            if (orgId < 1) {
+                return ObservationCode.ORG_INVALID_ID;
+            }
+
+            if (parentOrgId < 0 && parentOrgId != NO_PARENT) {
+                return ObservationCode.ORG_INVALID_PARENT;
+            }
+
+            if (this.indexes.putIfAbsent(orgId, this.size)
+                != IntIntMap.NO_VALUE) {
+                return ObservationCode.ORG_DUPLICATE;
+            }
+
+            if (this.size == this.ids.length) {
+                this.grow();
+            }
+
+            this.ids[this.size] = orgId;
+            this.parentIds[this.size] = parentOrgId;
+            this.size++;
+
+            return null;
+        }
+
+        public boolean containsOrg(final int orgId) {
+            this.ensureNotBuilt();
+            return this.indexes.get(orgId) != IntIntMap.NO_VALUE;
+        }
+
+        // Orgs are linked when the collection is built; this only looks for
+        // the orgs that cannot be placed. Every parent cycle contains an
+        // org added before its parent, so walking up from each of those
+        // finds every cycle; an org reached in an earlier walk is not
+        // walked again.
+        public void resolveParents(final UnplacedOrgObserver observer) {
+            this.ensureNotBuilt();
+
+            int[] walks = new int[this.size];
+            for (int i = 0; i < this.size; i++) {
+                int parent = this.parentOf(i);
+                if (parent == UNRESOLVED) {
+                    observer.unplaced(
+                        ObservationCode.ORG_UNKNOWN_PARENT,
+                        this.ids[i],
+                        this.parentIds[i]
+                    );
+                }
+
+                if (parent < i) {
+                    continue;
+                }
+
+                int walk = i + 1;
+                int index = i;
+                while (index >= 0 && walks[index] == 0) {
+                    walks[index] = walk;
+                    index = this.parentOf(index);
+                }
+
+                if (index >= 0 && walks[index] == walk) {
+                    this.reportCycle(index, observer);
+                }
+            }
+        }
+
+        private void reportCycle(final int start,
+                                 final UnplacedOrgObserver observer) {
+            int index = start;
+            do {
+                // an org can be its own parent
+                int parent = this.parentOf(index);
+                if (parent >= index) {
+                    observer.unplaced(
+                        ObservationCode.ORG_PARENT_CYCLE,
+                        this.ids[index],
+                        this.parentIds[index]
+                    );
+                }
+
+                index = parent;
+            }
+            while (index != start);
+        }
+
+        // Returns the index of an org's parent, ROOT or UNRESOLVED
+        private int parentOf(final int index) {
+            int parentId = this.parentIds[index];
+            if (parentId == NO_PARENT) {
+                return ROOT;
+            }
+
+            int parent = this.indexes.get(parentId);
+            return parent != IntIntMap.NO_VALUE ? parent : UNRESOLVED;
+        }
+
+        public boolean addUsers(final int orgId,
+                                final int userCount,
+                                final int fileCount,
+                                final long byteCount) {
+            this.ensureNotBuilt();
+
+            int index = this.indexes.get(orgId);
+            if (index == IntIntMap.NO_VALUE) {
+                return false;
+            }
+
+            this.users[index] += userCount;
+            this.files[index] += fileCount;
+            this.bytes[index] += byteCount;
+            return true;
+        }
+
+        public ColumnarOrgCollection build() {
+            this.ensureNotBuilt();
+
+            ColumnarOrgCollection collection =
+                new ColumnarOrgCollection(this);
+
+            // the collection owns the index now; release the rest
+            this.indexes = null;
+            this.ids = null;
+            this.parentIds = null;
+            this.users = null;
+            this.files = null;
+            this.bytes = null;
+
+            return collection;
+        }
+
+        private void grow() {
+            int capacity = this.ids.length * 2;
+
+            this.ids = Arrays.copyOf(this.ids, capacity);
+            this.parentIds = Arrays.copyOf(this.parentIds, capacity);
+            this.users = Arrays.copyOf(this.users, capacity);
+            this.files = Arrays.copyOf(this.files, capacity);
+            this.bytes = Arrays.copyOf(this.bytes, capacity);
+        }
+
+        private void ensureNotBuilt() {
+            if (this.ids == null) {
+                throw new IllegalStateException(
+                    "Collection has already been built."
+                );
+            }
+        }
+    }
+}
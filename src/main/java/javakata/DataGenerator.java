@@ -0,0 +1,790 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+
+// Generates synthetic org and user data files. Orgs are generated breadth
+// first, so a hierarchy of any size is produced with constant memory;
+// records are encoded straight into a byte buffer that is drained to the
+// file channel. The same settings and seed always produce the same files.
+//
+// Each org draws its number of children from the fan-out distribution,
+// until the hierarchy reaches the maximum depth or the org count. If every
+// tree dies out first, another root is started. Users are spread over the
+// orgs following a Zipf distribution, so that a few orgs have most users.
+final class DataGenerator {
+    enum FanOut {
+        FIXED,
+        UNIFORM,
+        GEOMETRIC
+    }
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int MAX_LINE_LENGTH = 128;
+    private static final int MAX_ORGS = 1000000000;
+
+    private static final byte[] SEPARATOR = ascii(", ");
+    private static final byte[] NULL = ascii("null");
+    private static final byte[] NAME = ascii(", Org ");
+
+    private static final byte[][] MALFORMED_ORGS = {
+        ascii(""),
+        ascii("not an org record"),
+        ascii("17x, null, Org"),
+        ascii("42"),
+        ascii(", 7, Org")
+    };
+
+    private static final byte[][] MALFORMED_USERS = {
+        ascii(""),
+        ascii("not a user record"),
+        ascii("1, 2, 3"),
+        ascii("1, 2, -3, 4"),
+        ascii("1, two, 3, 4")
+    };
+
+    private int orgs = 1000;
+    private long users = -1;
+    private int roots = 1;
+    private int maxDepth = 12;
+    private double fanOut = 4;
+    private FanOut fanOutDistribution = FanOut.GEOMETRIC;
+    private double userSkew = 1;
+    private double outOfOrder;
+    private double orphans;
+    private double duplicates;
+    private double malformed;
+    private long seed = 1;
+
+    public void setOrgs(final int orgs) {
+        if (orgs < 1 || orgs > MAX_ORGS) {
+            throw new IllegalArgumentException(
+                "Org count must be between 1 and " + MAX_ORGS + "."
+            );
+        }
+
+        this.orgs = orgs;
+    }
+
+    public void setUsers(final long users) {
+        if (users < 0) {
+            throw new IllegalArgumentException(
+                "User count cannot be negative."
+            );
+        }
+
+        this.users = users;
+    }
+
+    public void setRoots(final int roots) {
+        if (roots < 1) {
+            throw new IllegalArgumentException(
+                "Root count must be greater than or equal to one."
+            );
+        }
+
+        this.roots = roots;
+    }
+
+    public void setMaxDepth(final int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException(
+                "Maximum depth must be greater than or equal to one."
+            );
+        }
+
+        this.maxDepth = maxDepth;
+    }
+
+    public void setFanOut(final double fanOut,
+                          final FanOut distribution) {
+        if (!(fanOut >= 0) || Double.isInfinite(fanOut)) {
+            throw new IllegalArgumentException(
+                "Fan-out must be zero or more."
+            );
+        }
+
+        if (distribution == null) {
+            throw new IllegalArgumentException(
+                "distribution argument is null"
+            );
+        }
+
+        this.fanOut = fanOut;
+        this.fanOutDistribution = distribution;
+    }
+
+    // A skew of zero spreads users uniformly over the orgs
+    public void setUserSkew(final double userSkew) {
+        if (!(userSkew >= 0) || Double.isInfinite(userSkew)) {
+            throw new IllegalArgumentException(
+                "User skew must be zero or more."
+            );
+        }
+
+        this.userSkew = userSkew;
+    }
+
+    // Fraction of org records written after all of the others, and so
+    // usually after their children
+    public void setOutOfOrder(final double fraction) {
+        this.outOfOrder = checkFraction(fraction);
+    }
+
+    // Fraction of non-root orgs whose parent is never defined
+    public void setOrphans(final double fraction) {
+        this.orphans = checkFraction(fraction);
+    }
+
+    // Fraction of org records that are written twice
+    public void setDuplicates(final double fraction) {
+        this.duplicates = checkFraction(fraction);
+    }
+
+    // Chance of a malformed line being written before each record
+    public void setMalformed(final double fraction) {
+        this.malformed = checkFraction(fraction);
+    }
+
+    public void setSeed(final long seed) {
+        this.seed = seed;
+    }
+
+    public Summary generate(final File orgFile, final File userFile)
+        throws IOException {
+
+        if (orgFile == null) {
+            throw new IllegalArgumentException("orgFile argument is null");
+        }
+
+        if (userFile == null) {
+            throw new IllegalArgumentException("userFile argument is null");
+        }
+
+        Summary summary = new Summary();
+
+        try (Output out = new Output(orgFile)) {
+            this.writeOrgs(out, new SplittableRandom(this.seed), summary);
+        }
+
+        try (Output out = new Output(userFile)) {
+            this.writeUsers(
+                out,
+                new SplittableRandom(this.seed).split(),
+                summary
+            );
+        }
+
+        return summary;
+    }
+
+    private void writeOrgs(final Output out,
+                           final SplittableRandom random,
+                           final Summary summary)
+        throws IOException {
+
+        OrgRecords deferred = new OrgRecords();
+        int rootCount = Math.min(this.roots, this.orgs);
+
+        for (int id = 1; id <= rootCount; id++) {
+            this.writeOrg(out, random, id, OrgCollectionBuilder.NO_PARENT,
+                          deferred, summary);
+        }
+
+        summary.roots = rootCount;
+
+        // Orgs up to levelEnd are at `depth`; `parent` walks the orgs in
+        // id order, which is breadth-first order, handing out new ids to
+        // its children.
+        long nextId = rootCount + 1;
+        long parent = 1;
+        long levelEnd = rootCount;
+        int depth = 0;
+
+        while (nextId <= this.orgs) {
+            if (parent == nextId) {
+                // every tree so far has died out; start another one
+                this.writeOrg(out, random, (int) nextId,
+                              OrgCollectionBuilder.NO_PARENT,
+                              deferred, summary);
+                summary.roots++;
+
+                levelEnd = nextId;
+                depth = 0;
+                nextId++;
+            }
+
+            if (parent > levelEnd) {
+                depth++;
+                levelEnd = nextId - 1;
+                summary.depth = Math.max(summary.depth, depth + 1);
+            }
+
+            int children = depth + 1 < this.maxDepth
+                ? this.drawFanOut(random)
+                : 0;
+
+            for (int i = 0; i < children && nextId <= this.orgs; i++) {
+                int parentId = (int) parent;
+                if (random.nextDouble() < this.orphans) {
+                    // ids above the org count are never defined
+                    parentId = this.orgs + (int) nextId;
+                    summary.orphans++;
+                }
+
+                this.writeOrg(out, random, (int) nextId, parentId,
+                              deferred, summary);
+                nextId++;
+            }
+
+            parent++;
+        }
+
+        summary.depth = Math.max(summary.depth, 1);
+        summary.outOfOrder = deferred.size;
+
+        for (int i = deferred.size - 1; i >= 0; i--) {
+            this.writeOrgRecord(out, random, deferred.ids[i],
+                                deferred.parents[i], summary);
+        }
+    }
+
+    private void writeOrg(final Output out,
+                          final SplittableRandom random,
+                          final int id,
+                          final int parentId,
+                          final OrgRecords deferred,
+                          final Summary summary)
+        throws IOException {
+
+        if (random.nextDouble() < this.outOfOrder) {
+            deferred.add(id, parentId);
+            return;
+        }
+
+        this.writeOrgRecord(out, random, id, parentId, summary);
+    }
+
+    private void writeOrgRecord(final Output out,
+                                final SplittableRandom random,
+                                final int id,
+                                final int parentId,
+                                final Summary summary)
+        throws IOException {
+
+        if (random.nextDouble() < this.malformed) {
+            out.line(MALFORMED_ORGS[random.nextInt(MALFORMED_ORGS.length)]);
+            summary.malformedOrgLines++;
+        }
+
+        int copies = 1;
+        if (random.nextDouble() < this.duplicates) {
+            copies = 2;
+            summary.duplicates++;
+        }
+
+        for (int i = 0; i < copies; i++) {
+            out.begin();
+            out.number(id);
+            out.bytes(SEPARATOR);
+            if (parentId == OrgCollectionBuilder.NO_PARENT) {
+                out.bytes(NULL);
+            }
+            else {
+                out.number(parentId);
+            }
+            out.bytes(NAME);
+            out.number(id);
+            out.end();
+        }
+
+        summary.orgs++;
+    }
+
+    private void writeUsers(final Output out,
+                            final SplittableRandom random,
+                            final Summary summary)
+        throws IOException {
+
+        long count = this.users >= 0 ? this.users : this.orgs * 10L;
+
+        ZipfSampler sampler = new ZipfSampler(this.orgs, this.userSkew);
+        long stride = stride(this.orgs);
+
+        for (long userId = 1; userId <= count; userId++) {
+            if (random.nextDouble() < this.malformed) {
+                out.line(
+                    MALFORMED_USERS[random.nextInt(MALFORMED_USERS.length)]
+                );
+                summary.malformedUserLines++;
+            }
+
+            // ranks are scattered over the org ids, so the busiest orgs
+            // are not all at the top of the hierarchy
+            int rank = sampler.sample(random);
+            long orgId = (rank - 1) * stride % this.orgs + 1;
+
+            long files = (long) (-Math.log(1 - random.nextDouble()) * 20);
+            long bytes = files == 0
+                ? 0
+                : Math.min(
+                    Integer.MAX_VALUE,
+                    files * (1 + random.nextInt(1 << 20))
+                );
+
+            out.begin();
+            out.number(userId);
+            out.bytes(SEPARATOR);
+            out.number(orgId);
+            out.bytes(SEPARATOR);
+            out.number(Math.min(files, Integer.MAX_VALUE));
+            out.bytes(SEPARATOR);
+            out.number(bytes);
+            out.end();
+        }
+
+        summary.users = count;
+    }
+
+    private int drawFanOut(final SplittableRandom random) {
+        switch (this.fanOutDistribution) {
+            case FIXED:
+                return (int) Math.round(this.fanOut);
+            case UNIFORM:
+                return random.nextInt((int) Math.round(this.fanOut * 2) + 1);
+            default:
+                // geometric on {0, 1, ...} with the configured mean
+                double p = 1 / (1 + this.fanOut);
+                return (int) Math.min(
+                    Integer.MAX_VALUE,
+                    Math.floor(
+                        Math.log(1 - random.nextDouble()) / Math.log(1 - p)
+                    )
+                );
+        }
+    }
+
+    // Returns a multiplier that is coprime with n, so that multiplying by
+    // it modulo n permutes 0..n-1
+    private static long stride(final int n) {
+        long stride = 2654435761L % n;
+        while (stride < 1 || gcd(stride, n) != 1) {
+            stride++;
+        }
+
+        return stride;
+    }
+
+    private static long gcd(final long a, final long b) {
+        long x = a;
+        long y = b;
+        while (y != 0) {
+            long t = x % y;
+            x = y;
+            y = t;
+        }
+
+        return x;
+    }
+
+    private static double checkFraction(final double fraction) {
+        if (!(fraction >= 0 && fraction <= 1)) {
+            throw new IllegalArgumentException(
+                "Fractions must be between zero and one."
+            );
+        }
+
+        return fraction;
+    }
+
+    private static byte[] ascii(final String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public static void main(final String[] args) {
+        DataGenerator generator = new DataGenerator();
+        List<String> paths = new ArrayList<String>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--")) {
+                    paths.add(arg);
+                    continue;
+                }
+
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException(
+                        "Missing value for " + arg
+                    );
+                }
+
+                String value = args[++i];
+                switch (arg) {
+                    case "--orgs":
+                        generator.setOrgs(Integer.parseInt(value));
+                        break;
+                    case "--users":
+                        generator.setUsers(Long.parseLong(value));
+                        break;
+                    case "--roots":
+                        generator.setRoots(Integer.parseInt(value));
+                        break;
+                    case "--max-depth":
+                        generator.setMaxDepth(Integer.parseInt(value));
+                        break;
+                    case "--fan-out":
+                        generator.setFanOut(
+                            Double.parseDouble(value),
+                            generator.fanOutDistribution
+                        );
+                        break;
+                    case "--fan-out-distribution":
+                        generator.setFanOut(
+                            generator.fanOut,
+                            FanOut.valueOf(value.toUpperCase(Locale.ROOT))
+                        );
+                        break;
+                    case "--user-skew":
+                        generator.setUserSkew(Double.parseDouble(value));
+                        break;
+                    case "--out-of-order":
+                        generator.setOutOfOrder(Double.parseDouble(value));
+                        break;
+                    case "--orphans":
+                        generator.setOrphans(Double.parseDouble(value));
+                        break;
+                    case "--duplicates":
+                        generator.setDuplicates(Double.parseDouble(value));
+                        break;
+                    case "--malformed":
+                        generator.setMalformed(Double.parseDouble(value));
+                        break;
+                    case "--seed":
+                        generator.setSeed(Long.parseLong(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException(
+                            "Unknown option: " + arg
+                        );
+                }
+            }
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            printUsage();
+            System.exit(1);
+            return;
+        }
+
+        if (paths.size() != 2) {
+            printUsage();
+            System.exit(1);
+            return;
+        }
+
+        try {
+            Summary summary = generator.generate(
+                new File(paths.get(0)),
+                new File(paths.get(1))
+            );
+
+            System.out.println(summary);
+        }
+        catch (IOException e) {
+            System.err.println("Could not write data files: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println(
+            "You must provide two arguments: "
+            + "{path-to-org-file} {path-to-user-file}"
+        );
+        System.out.println("Options:");
+        System.out.println(
+            "  --orgs {n}                  number of orgs (1000)"
+        );
+        System.out.println(
+            "  --users {n}                 number of users (10 per org)"
+        );
+        System.out.println(
+            "  --roots {n}                 number of roots to start with (1)"
+        );
+        System.out.println(
+            "  --max-depth {n}             levels in the hierarchy (12)"
+        );
+        System.out.println(
+            "  --fan-out {x}               mean children per org (4)"
+        );
+        System.out.println(
+            "  --fan-out-distribution {d}  fixed, uniform or geometric"
+        );
+        System.out.println(
+            "  --user-skew {x}             Zipf exponent of users per org (1)"
+        );
+        System.out.println(
+            "  --out-of-order {f}          fraction of orgs written last (0)"
+        );
+        System.out.println(
+            "  --orphans {f}               fraction of orgs with no parent (0)"
+        );
+        System.out.println(
+            "  --duplicates {f}            fraction of orgs written twice (0)"
+        );
+        System.out.println(
+            "  --malformed {f}             chance of a malformed line (0)"
+        );
+        System.out.println(
+            "  --seed {n}                  random seed (1)"
+        );
+    }
+
+    // What was generated, as counts
+    static final class Summary {
+        private int orgs;
+        private int roots;
+        private int depth;
+        private int outOfOrder;
+        private int orphans;
+        private int duplicates;
+        private long malformedOrgLines;
+        private long users;
+        private long malformedUserLines;
+
+        public int getOrgs() {
+            return this.orgs;
+        }
+
+        public int getRoots() {
+            return this.roots;
+        }
+
+        public int getDepth() {
+            return this.depth;
+        }
+
+        public int getOutOfOrder() {
+            return this.outOfOrder;
+        }
+
+        public int getOrphans() {
+            return this.orphans;
+        }
+
+        public int getDuplicates() {
+            return this.duplicates;
+        }
+
+        public long getMalformedOrgLines() {
+            return this.malformedOrgLines;
+        }
+
+        public long getUsers() {
+            return this.users;
+        }
+
+        public long getMalformedUserLines() {
+            return this.malformedUserLines;
+        }
+
+        public String toString() {
+            return String.format(
+                "orgs: %d, roots: %d, depth: %d, out of order: %d, "
+              + "orphans: %d, duplicates: %d, malformed org lines: %d\n"
+              + "users: %d, malformed user lines: %d",
+                this.orgs,
+                this.roots,
+                this.depth,
+                this.outOfOrder,
+                this.orphans,
+                this.duplicates,
+                this.malformedOrgLines,
+                this.users,
+                this.malformedUserLines
+            );
+        }
+    }
+
+    // A growable list of org records held back to be written last
+    private static final class OrgRecords {
+        private int[] ids = new int[16];
+        private int[] parents = new int[16];
+        private int size;
+
+        void add(final int id, final int parentId) {
+            if (this.size == this.ids.length) {
+                this.ids = Arrays.copyOf(this.ids, this.size * 2);
+                this.parents = Arrays.copyOf(this.parents, this.size * 2);
+            }
+
+            this.ids[this.size] = id;
+            this.parents[this.size] = parentId;
+            this.size++;
+        }
+    }
+
+    // Buffers lines of ASCII text and drains them to a file channel
+    private static final class Output implements Closeable {
+        private final FileChannel channel;
+        private final byte[] buffer;
+        private final ByteBuffer view;
+        private int position;
+
+        Output(final File file) throws IOException {
+            this.channel = new FileOutputStream(file).getChannel();
+            this.buffer = new byte[BUFFER_SIZE];
+            this.view = ByteBuffer.wrap(this.buffer);
+        }
+
+        // Makes room for a line of up to MAX_LINE_LENGTH bytes
+        void begin() throws IOException {
+            if (this.buffer.length - this.position < MAX_LINE_LENGTH) {
+                this.drain();
+            }
+        }
+
+        void number(final long value) {
+            this.position = ReportWriter.putLong(
+                this.buffer,
+                this.position,
+                value
+            );
+        }
+
+        void bytes(final byte[] text) {
+            System.arraycopy(
+                text, 0,
+                this.buffer, this.position,
+                text.length
+            );
+            this.position += text.length;
+        }
+
+        void end() {
+            this.buffer[this.position++] = '\n';
+        }
+
+        void line(final byte[] text) throws IOException {
+            this.begin();
+            this.bytes(text);
+            this.end();
+        }
+
+        public void close() throws IOException {
+            try {
+                this.drain();
+            }
+            finally {
+                this.channel.close();
+            }
+        }
+
+        private void drain() throws IOException {
+            this.view.clear();
+            this.view.limit(this.position);
+
+            while (this.view.hasRemaining()) {
+                this.channel.write(this.view);
+            }
+
+            this.position = 0;
+        }
+    }
+
+    // Samples ranks 1..n with probability proportional to 1 / rank^s, in
+    // constant time and memory, by rejection-inversion (Hormann and
+    // Derflinger, 1996)
+    private static final class ZipfSampler {
+        private final int n;
+        private final double s;
+        private final double hIntegralX1;
+        private final double hIntegralN;
+        private final double threshold;
+
+        ZipfSampler(final int n, final double s) {
+            this.n = n;
+            this.s = s;
+            this.hIntegralX1 = this.hIntegral(1.5) - 1;
+            this.hIntegralN = this.hIntegral(n + 0.5);
+            this.threshold =
+                2 - this.hIntegralInverse(this.hIntegral(2.5) - this.h(2));
+        }
+
+        int sample(final SplittableRandom random) {
+            if (this.s == 0) {
+                return 1 + random.nextInt(this.n);
+            }
+
+            while (true) {
+                double u = this.hIntegralN + random.nextDouble()
+                    * (this.hIntegralX1 - this.hIntegralN);
+                double x = this.hIntegralInverse(u);
+
+                int k = (int) Math.max(1, Math.min(this.n, x + 0.5));
+                if (k - x <= this.threshold
+                    || u >= this.hIntegral(k + 0.5) - this.h(k)) {
+                    return k;
+                }
+            }
+        }
+
+        private double h(final double x) {
+            return Math.exp(-this.s * Math.log(x));
+        }
+
+        private double hIntegral(final double x) {
+            double logX = Math.log(x);
+            return expm1Ratio((1 - this.s) * logX) * logX;
+        }
+
+        private double hIntegralInverse(final double x) {
+            double t = Math.max(-1, x * (1 - this.s));
+            return Math.exp(log1pRatio(t) * x);
+        }
+
+        // log(1 + x) / x, accurate near zero
+        private static double log1pRatio(final double x) {
+            if (Math.abs(x) > 1e-8) {
+                return Math.log1p(x) / x;
+            }
+
+            return 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+        }
+
+        // (exp(x) - 1) / x, accurate near zero
+        private static double expm1Ratio(final double x) {
+            if (Math.abs(x) > 1e-8) {
+                return Math.expm1(x) / x;
+            }
+
+            return 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+        }
+    }
+}
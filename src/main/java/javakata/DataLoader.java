@@ -24,24 +24,8 @@ package javakata;
 
 import java.io.*;
 import java.util.*;
-import java.util.regex.*;
 
 final class DataLoader {
-    static final Pattern ORG_LINE_PATTERN = Pattern.compile(
-        "^\\s*"
-      + "(?<orgId>\\d+)\\s*,\\s*"
-      + "(?<parentOrgId>(\\d+|null))\\s*,\\s*"
-      + "(?<name>[\\w ]*?)\\s*?\\r?(\\n|$)"
-    );
-
-    static final Pattern USER_LINE_PATTERN = Pattern.compile(
-        "^\\s*"
-      + "(?<userId>\\d+)\\s*,\\s*"
-      + "(?<orgId>(\\d+|null))\\s*,\\s*"
-      + "(?<files>(\\d+|null))\\s*,\\s*"
-      + "(?<bytes>(\\d+|null))\\s*?\\r?(\\n|$)"
-    );
-
     private DataLoader() {
         // Prevent instantiation
     }
@@ -51,6 +35,87 @@ final class DataLoader {
         final File userFile)
         throws FileNotFoundException {
 
+        return load(orgFile, userFile, 1);
+    }
+
+    // A parallelism greater than one scans both files on that many
+    // threads.
+    public static Result<OrgCollection, String> load(
+        final File orgFile,
+        final File userFile,
+        final int parallelism)
+        throws FileNotFoundException {
+
+        return load(orgFile, userFile, parallelism, new OrgCollectionImpl());
+    }
+
+    public static Result<OrgCollection, String> load(
+        final File orgFile,
+        final File userFile,
+        final int parallelism,
+        final OrgCollectionBuilder target)
+        throws FileNotFoundException {
+
+        List<String> observations = new LinkedList<String>();
+
+        OrgCollection orgs = load(
+            orgFile,
+            userFile,
+            parallelism,
+            target,
+            collectInto(observations)
+        );
+
+        return new Result<OrgCollection, String>(orgs, observations);
+    }
+
+    // Pushes each observation to the sink as soon as it is found, rather
+    // than collecting them, so dirty data doesn't accumulate in memory.
+    public static OrgCollection load(
+        final File orgFile,
+        final File userFile,
+        final int parallelism,
+        final OrgCollectionBuilder target,
+        final ObservationSink sink)
+        throws FileNotFoundException {
+
+        return load(
+            orgFile,
+            userFile,
+            parallelism,
+            target,
+            sink,
+            new LoadStats()
+        );
+    }
+
+    // Records the time taken by each phase of the load, and what it read,
+    // in the stats
+    static OrgCollection load(
+        final File orgFile,
+        final File userFile,
+        final int parallelism,
+        final OrgCollectionBuilder target,
+        final ObservationSink sink,
+        final LoadStats stats)
+        throws FileNotFoundException {
+
+        return load(orgFile, userFile, parallelism, target, sink, stats, 0);
+    }
+
+    // The threads that scan the user file share the memory budget for the
+    // user totals they hold before adding them to the target, or hold them
+    // all if it is zero
+    static OrgCollection load(
+        final File orgFile,
+        final File userFile,
+        final int parallelism,
+        final OrgCollectionBuilder target,
+        final ObservationSink sink,
+        final LoadStats stats,
+        final long userMemoryBudget)
+        throws FileNotFoundException {
+
         if (orgFile == null) {
             throw new IllegalArgumentException("orgFile argument is null");
         }
@@ -59,14 +124,108 @@ final class DataLoader {
             throw new IllegalArgumentException("userFile argument is null");
         }
 
-        return load(new TextLineIterable(orgFile),
-                    new TextLineIterable(userFile));
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(
+                "Parallelism must be greater than or equal to one."
+            );
+        }
+
+        if (target == null) {
+            throw new IllegalArgumentException("target argument is null");
+        }
+
+        if (sink == null) {
+            throw new IllegalArgumentException("sink argument is null");
+        }
+
+        if (stats == null) {
+            throw new IllegalArgumentException("stats argument is null");
+        }
+
+        if (userMemoryBudget < 0) {
+            throw new IllegalArgumentException(
+                "Memory budget cannot be negative."
+            );
+        }
+
+        Iterable<ByteLine> orgData = null;
+        ParallelOrgLoader parallelOrgLoader = null;
+        Iterable<ByteLine> userData = null;
+        ParallelUserLoader parallelUserLoader = null;
+        if (parallelism > 1) {
+            parallelOrgLoader = new ParallelOrgLoader(orgFile, parallelism);
+            parallelUserLoader = new ParallelUserLoader(
+                userFile,
+                parallelism,
+                ParallelUserLoader.MIN_CHUNK_SIZE,
+                userMemoryBudget
+            );
+        }
+        else {
+            orgData = openLines(orgFile);
+            userData = openLines(userFile);
+        }
+
+        ObservationSink counted = stats.counting(sink);
+        if (parallelOrgLoader != null) {
+            loadOrgData(orgFile, parallelOrgLoader, target, counted, stats);
+        }
+        else {
+            loadOrgData(orgData, target, counted, stats);
+        }
+
+        if (parallelUserLoader != null) {
+            stats.start(LoadStats.Phase.USER_AGGREGATION);
+            parallelUserLoader.load(target, counted);
+            stats.finish(
+                LoadStats.Phase.USER_AGGREGATION,
+                parallelUserLoader.getLineCount(),
+                parallelUserLoader.getByteCount()
+            );
+        }
+        else {
+            loadUserData(userData, target, counted, stats);
+        }
+
+        stats.start(LoadStats.Phase.BUILD);
+        OrgCollection orgs = target.build();
+
+        // the in-memory collection would otherwise compute its totals when
+        // they are first read, which may be on many threads at once when
+        // it is served
+        target.computeTotals(parallelism);
+
+        stats.finish(LoadStats.Phase.BUILD, 0, 0);
+
+        return orgs;
     }
 
     public static Result<OrgCollection, String> load(
         final Iterable<String> orgData,
         final Iterable<String> userData) {
 
+        return load(orgData, userData, new OrgCollectionImpl());
+    }
+
+    public static Result<OrgCollection, String> load(
+        final Iterable<String> orgData,
+        final Iterable<String> userData,
+        final OrgCollectionBuilder target) {
+
+        List<String> observations = new LinkedList<String>();
+
+        OrgCollection orgs =
+            load(orgData, userData, target, collectInto(observations));
+
+        return new Result<OrgCollection, String>(orgs, observations);
+    }
+
+    public static OrgCollection load(
+        final Iterable<String> orgData,
+        final Iterable<String> userData,
+        final OrgCollectionBuilder target,
+        final ObservationSink sink) {
+
         if (orgData == null) {
             throw new IllegalArgumentException("orgData argument is null");
         }
@@ -75,103 +234,336 @@ final class DataLoader {
             throw new IllegalArgumentException("userData argument is null");
         }
 
-        List<String> observations = new LinkedList<String>();
-        OrgCollectionImpl orgs = new OrgCollectionImpl();
+        if (target == null) {
+            throw new IllegalArgumentException("target argument is null");
+        }
+
+        if (sink == null) {
+            throw new IllegalArgumentException("sink argument is null");
+        }
 
-        loadOrgData(orgData, orgs, observations);
-        loadUserData(userData, orgs, observations);
+        loadOrgData(orgData, target, sink);
+        loadUserData(userData, target, sink);
 
-        return new Result<OrgCollection, String>(orgs, observations);
+        return target.build();
     }
 
-    static void loadOrgData(final Iterable<String> orgData,
-                            final OrgCollectionImpl orgs,
-                            final List<String> observations) {
-        int lineNumber = 0;
-        for (String line : orgData) {
-            lineNumber++;
+    // Reads the lines of a file in place, or as they are decompressed if
+    // it is a gzip file
+    static Iterable<ByteLine> openLines(final File f)
+        throws FileNotFoundException {
 
-            Matcher match = ORG_LINE_PATTERN.matcher(line);
-            if (!match.matches()) {
-                observations.add(String.format(
-                    "ERROR (line: %d) - "
-                  + "Organization record did not match expected format: '%s'",
-                  lineNumber,
-                  line
-                ));
-                continue;
-            }
+        if (GzipLineIterable.isGzip(f)) {
+            return new GzipLineIterable(f);
+        }
+
+        return new MappedLineIterable(f);
+    }
+
+    static void loadOrgData(final Iterable<? extends CharSequence> orgData,
+                            final OrgCollectionBuilder orgs,
+                            final ObservationSink sink) {
+        loadOrgData(orgData, orgs, sink, new LoadStats());
+    }
 
-            int id = Integer.parseInt(match.group("orgId"));
-            String parentIdString = match.group("parentOrgId");
+    static void loadOrgData(final Iterable<? extends CharSequence> orgData,
+                            final OrgCollectionBuilder orgs,
+                            final ObservationSink sink,
+                            final LoadStats stats) {
+        stats.start(LoadStats.Phase.ORG_PARSING);
 
-            Integer parentId = !parentIdString.equals("null")
-                ? Integer.parseInt(parentIdString)
-                : null;
+        RecordScanner scanner = new RecordScanner();
+        long deferred = 0;
+        long bytes = 0;
 
-            try {
-                OrgImpl org = new OrgImpl(id);
-                orgs.addOrg(org, parentId);
+        long lineNumber = 0;
+        for (CharSequence line : orgData) {
+            lineNumber++;
+            bytes += byteCountOf(line);
+
+            ObservationCode error = scanOrgRecord(scanner, line);
+            if (error == null) {
+                int orgId = (int) scanner.getOrgId();
+                int parentOrgId = parentOf(scanner);
+
+                boolean parentPending =
+                    parentOrgId != OrgCollectionBuilder.NO_PARENT
+                    && !orgs.containsOrg(parentOrgId);
+
+                error = orgs.tryAddOrg(orgId, parentOrgId);
+                if (error == null && parentPending) {
+                    deferred++;
+                }
             }
-            catch (Exception e) {
-                observations.add(String.format(
-                    "ERROR (line: %d) - "
-                  + "Organization record data could not be interpreted: '%s'\n"
-                  + "  Message: %s",
-                  lineNumber,
-                  line,
-                  e.getMessage()
-                ));
+
+            if (error != null) {
+                sink.observe(error, lineNumber, positionOf(line), line);
             }
         }
+
+        stats.finish(LoadStats.Phase.ORG_PARSING, lineNumber, bytes);
+        stats.setPendingParents(deferred);
+
+        if (deferred > 0) {
+            stats.start(LoadStats.Phase.PARENT_RESOLUTION);
+            resolveParents(orgData, orgs, sink);
+            stats.finish(LoadStats.Phase.PARENT_RESOLUTION, deferred, 0);
+        }
+    }
+
+    static void loadOrgData(final File orgFile,
+                            final ParallelOrgLoader loader,
+                            final OrgCollectionBuilder orgs,
+                            final ObservationSink sink,
+                            final LoadStats stats)
+        throws FileNotFoundException {
+
+        stats.start(LoadStats.Phase.ORG_PARSING);
+        loader.load(orgs, sink);
+        stats.finish(
+            LoadStats.Phase.ORG_PARSING,
+            loader.getLineCount(),
+            loader.getByteCount()
+        );
+
+        long deferred = loader.getPendingCount();
+        stats.setPendingParents(deferred);
+
+        if (deferred > 0) {
+            stats.start(LoadStats.Phase.PARENT_RESOLUTION);
+            resolveParents(openLines(orgFile), orgs, sink);
+            stats.finish(LoadStats.Phase.PARENT_RESOLUTION, deferred, 0);
+        }
+    }
+
+    // Scans an org record. Returns why it could not be read, or null if it
+    // was; the scanner then holds identifiers that fit in an int.
+    static ObservationCode scanOrgRecord(final RecordScanner scanner,
+                                         final CharSequence line) {
+        if (!scanner.scanOrg(line)) {
+            return ObservationCode.ORG_MISMATCH;
+        }
+
+        if (scanner.getOrgId() > Integer.MAX_VALUE
+            || scanner.getParentOrgId() > Integer.MAX_VALUE) {
+            return ObservationCode.ORG_OUT_OF_RANGE;
+        }
+
+        return null;
+    }
+
+    // The parent identifier of the scanned org record
+    static int parentOf(final RecordScanner scanner) {
+        return scanner.getParentOrgId() == RecordScanner.NULL_VALUE
+            ? OrgCollectionBuilder.NO_PARENT
+            : (int) scanner.getParentOrgId();
+    }
+
+    static void loadUserData(final Iterable<? extends CharSequence> userData,
+                             final OrgCollectionBuilder orgs,
+                             final ObservationSink sink) {
+        loadUserData(userData, orgs, sink, new LoadStats());
     }
 
-    static void loadUserData(final Iterable<String> userData,
-                             final OrgCollectionImpl orgs,
-                             final List<String> observations) {
-        int lineNumber = 0;
-        for (String line : userData) {
+    static void loadUserData(final Iterable<? extends CharSequence> userData,
+                             final OrgCollectionBuilder orgs,
+                             final ObservationSink sink,
+                             final LoadStats stats) {
+        stats.start(LoadStats.Phase.USER_AGGREGATION);
+
+        RecordScanner scanner = new RecordScanner();
+        long bytes = 0;
+
+        long lineNumber = 0;
+        for (CharSequence line : userData) {
             lineNumber++;
+            bytes += byteCountOf(line);
+
+            ObservationCode error = addUserRecord(scanner, line, orgs);
+            if (error != null) {
+                sink.observe(error, lineNumber, positionOf(line), line);
+            }
+        }
+
+        stats.finish(LoadStats.Phase.USER_AGGREGATION, lineNumber, bytes);
+    }
+
+    // Scans a user record and adds it to its org. Returns why it could not
+    // be added, or null if it was; the scanner then holds the record.
+    static ObservationCode addUserRecord(final RecordScanner scanner,
+                                         final CharSequence line,
+                                         final OrgCollectionBuilder orgs) {
+        if (!scanner.scanUser(line)) {
+            return ObservationCode.USER_MISMATCH;
+        }
+
+        ObservationCode error = checkUserRecord(scanner);
+        if (error != null) {
+            return error;
+        }
+
+        boolean added = orgs.addUsers(
+            (int) scanner.getOrgId(),
+            1,
+            (int) scanner.getFiles(),
+            scanner.getBytes()
+        );
+
+        return added ? null : ObservationCode.USER_UNKNOWN_ORG;
+    }
 
-            Matcher match = USER_LINE_PATTERN.matcher(line);
-            if (!match.matches()) {
-                observations.add(String.format(
-                    "ERROR (line: %d) - "
-                  + "User record did not match expected format: '%s'",
-                  lineNumber,
-                  line
-                ));
-                continue;
+    // Returns why the scanned user record can't be applied to an org, or
+    // null if it can. Whether the org exists is checked separately.
+    static ObservationCode checkUserRecord(final RecordScanner scanner) {
+        long orgId = scanner.getOrgId();
+        long files = scanner.getFiles();
+        long bytes = scanner.getBytes();
+
+        if (orgId == RecordScanner.NULL_VALUE
+            || files == RecordScanner.NULL_VALUE
+            || bytes == RecordScanner.NULL_VALUE) {
+            return ObservationCode.USER_MISSING_VALUE;
+        }
+
+        if (orgId > Integer.MAX_VALUE
+            || files > Integer.MAX_VALUE
+            || bytes > Integer.MAX_VALUE) {
+            return ObservationCode.USER_OUT_OF_RANGE;
+        }
+
+        return OrgImpl.checkUser((int) files, bytes);
+    }
+
+    // Returns the position of a line within its file, if it is known
+    static long positionOf(final CharSequence line) {
+        return line instanceof ByteLine
+            ? ((ByteLine) line).getPosition()
+            : Observation.UNKNOWN_OFFSET;
+    }
+
+    // The number of bytes a line took up in its file, with its terminator.
+    // Lines that were not read from a file are counted as their UTF-8
+    // encoding followed by a "\n".
+    static long byteCountOf(final CharSequence line) {
+        if (line instanceof ByteLine) {
+            return ((ByteLine) line).getByteCount();
+        }
+
+        long bytes = 1;
+        int length = line.length();
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            }
+            else if (c < 0x800) {
+                bytes += 2;
+            }
+            else if (Character.isHighSurrogate(c)
+                     && i + 1 < length
+                     && Character.isLowSurrogate(line.charAt(i + 1))) {
+                bytes += 4;
+                i++;
             }
+            else {
+                bytes += 3;
+            }
+        }
+
+        return bytes;
+    }
+
+    // Has the builder link the orgs that were added before their parents,
+    // then reports the ones it could not place. The org data is read again
+    // to find their records, so that nothing has to be kept per org while
+    // loading; this only happens if there are orgs to report. The data
+    // must read the same the second time.
+    static void resolveParents(
+        final Iterable<? extends CharSequence> orgData,
+        final OrgCollectionBuilder orgs,
+        final ObservationSink sink) {
+
+        // what the builder reported for each unplaced org
+        final IntIntMap parents = new IntIntMap();
+        final IntIntMap codes = new IntIntMap();
+
+        orgs.resolveParents((code, orgId, parentOrgId) -> {
+            parents.put(orgId, parentOrgId);
+            codes.put(orgId, code.ordinal());
+        });
 
-            int orgId = Integer.parseInt(match.group("orgId"));
-            int files = Integer.parseInt(match.group("files"));
-            int bytes = Integer.parseInt(match.group("bytes"));
-
-            try {
-                OrgImpl org = orgs.getOrg(orgId);
-                if (org == null) {
-                    observations.add(String.format(
-                          "ERROR (line: %d) - "
-                        + "User record references unknown organization: '%s'\n",
-                        lineNumber,
-                        line
-                    ));
+        int remaining = parents.size();
+        if (remaining == 0) {
+            return;
+        }
+
+        // the record an org was added from is the first one with its
+        // identifier and parent that could be read; later ones were
+        // rejected as duplicates
+        ObservationCode[] values = ObservationCode.values();
+        RecordScanner scanner = new RecordScanner();
+
+        long lineNumber = 0;
+        Iterator<? extends CharSequence> lines = orgData.iterator();
+        try {
+            while (lines.hasNext()) {
+                CharSequence line = lines.next();
+                lineNumber++;
+
+                if (scanOrgRecord(scanner, line) != null) {
                     continue;
                 }
 
-                org.addUser(files, bytes);
-            }
-            catch (Exception e) {
-                observations.add(String.format(
-                    "ERROR (line: %d) - "
-                  + "User record data could not be interpreted: '%s'\n"
-                  + "  Message: %s",
-                  lineNumber,
-                  line,
-                  e.getMessage()
-                ));
+                int orgId = (int) scanner.getOrgId();
+                int parent = parents.get(orgId);
+                if (parent == IntIntMap.NO_VALUE
+                    || parent != parentOf(scanner)) {
+                    continue;
+                }
+
+                // each org is reported once
+                parents.put(orgId, IntIntMap.NO_VALUE);
+                sink.observe(
+                    values[codes.get(orgId)],
+                    lineNumber,
+                    positionOf(line),
+                    line
+                );
+
+                if (--remaining == 0) {
+                    return;
+                }
             }
         }
+        finally {
+            close(lines);
+        }
+
+        throw new IllegalStateException(
+            "Org data changed while it was loaded."
+        );
+    }
+
+    // Closes an iterator of lines that holds the file open, for when it is
+    // left before its last line
+    static void close(final Iterator<?> lines) {
+        if (!(lines instanceof Closeable)) {
+            return;
+        }
+
+        try {
+            ((Closeable) lines).close();
+        }
+        catch (IOException e) {
+            // the lines were only read
+            return;
+        }
+    }
+
+    // A sink that formats every observation into the list, as the loader
+    // used to do before observations were streamed
+    static ObservationSink collectInto(final List<String> observations) {
+        return (code, lineNumber, byteOffset, record) ->
+            observations.add(Observation.format(code, lineNumber, record));
     }
 }
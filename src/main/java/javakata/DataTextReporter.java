@@ -23,7 +23,7 @@
 package javakata;
 
 import java.io.*;
-import java.util.*;
+import java.nio.channels.*;
 
 final class DataTextReporter {
     private DataTextReporter() {
@@ -33,25 +33,98 @@ final class DataTextReporter {
     public static void writeReport(final OrgCollection col,
                                    final PrintStream dest) {
 
-        for (Org org : col.getRootOrgs()) {
-            writeOrg(org, dest, 0);
+        try {
+            writeReport(col, Channels.newChannel(dest));
         }
+        catch (IOException e) {
+            // PrintStream never throws; errors are reported by checkError
+        }
+
+        dest.flush();
+    }
+
+    public static void writeReport(final OrgCollection col,
+                                   final WritableByteChannel dest)
+        throws IOException {
+
+        write(col, dest);
     }
 
-    private static void writeOrg(final Org org,
-                                 final PrintStream dest,
-                                 final int level) {
+    // Records the time taken, and the lines and bytes written, in the
+    // stats' report phase
+    static void writeReport(final OrgCollection col,
+                            final WritableByteChannel dest,
+                            final LoadStats stats)
+        throws IOException {
+
+        stats.start(LoadStats.Phase.REPORT);
+        ReportWriter writer = write(col, dest);
+        stats.finish(
+            LoadStats.Phase.REPORT,
+            writer.getLineCount(),
+            writer.getByteCount()
+        );
+    }
+
+    private static ReportWriter write(final OrgCollection col,
+                                      final WritableByteChannel dest)
+        throws IOException {
+
+        final ReportWriter writer = new ReportWriter(dest);
 
-        dest.print(String.join("", Collections.nCopies(level, "  ")));
-        dest.println(String.format("- %d, %d, %d, %d",
-            org.getId(),
-            org.getTotalNumUsers(),
-            org.getTotalNumFiles(),
-            org.getTotalNumBytes()
-        ));
+        OrgTraversal<Org> traversal = new OrgTraversal<Org>(Org::getChildOrgs);
+        OrgTraversal.Visitor<Org> visitor = new OrgTraversal.Visitor<Org>() {
+            public boolean preVisit(final Org org, final int level) {
+                try {
+                    writer.writeOrg(
+                        level,
+                        org.getId(),
+                        org.getTotalNumUsers(),
+                        org.getTotalNumFiles(),
+                        org.getTotalNumBytes()
+                    );
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
 
-        for (Org child : org.getChildOrgs()) {
-            writeOrg(child, dest, level + 1);
+                return true;
+            }
+
+            public void postVisit(final Org org, final int level) {
+                // each org is written before its children
+            }
+        };
+
+        try {
+            for (Org org : col.getRootOrgs()) {
+                traversal.traverse(org, visitor);
+            }
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
         }
+
+        writer.flush();
+        return writer;
+    }
+
+    // Writes one unindented line per org, in the order given
+    public static void writeOrgs(final Iterable<? extends Org> orgs,
+                                 final WritableByteChannel dest)
+        throws IOException {
+
+        ReportWriter writer = new ReportWriter(dest);
+        for (Org org : orgs) {
+            writer.writeOrg(
+                0,
+                org.getId(),
+                org.getTotalNumUsers(),
+                org.getTotalNumFiles(),
+                org.getTotalNumBytes()
+            );
+        }
+
+        writer.flush();
     }
 }
@@ -0,0 +1,121 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+// Estimates how often each key was seen recently, in a fixed amount of
+// memory. This is a count-min sketch of 4-bit counters packed sixteen to a
+// long: each key increments one counter in each of four rows, and its
+// estimate is the smallest of the four, so collisions can only make a key
+// look more popular than it is.
+//
+// Once the number of increments reaches ten times the number of counters,
+// every counter is halved, so the estimates follow changes in popularity
+// rather than counting forever.
+final class FrequencySketch {
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L,
+        0xb492b66fbe98f273L,
+        0x9ae16a3b2f90404fL,
+        0xcbf29ce484222325L
+    };
+
+    private final long[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    // Sizes the sketch to tell apart about the given number of keys
+    public FrequencySketch(final int expectedKeys) {
+        if (expectedKeys < 1) {
+            throw new IllegalArgumentException(
+                "Expected keys must be greater than or equal to one."
+            );
+        }
+
+        int length = Integer.highestOneBit(
+            Math.max(16, Math.min(expectedKeys, 1 << 26)) - 1
+        ) << 1;
+
+        this.table = new long[length];
+        this.mask = length - 1;
+        this.sampleSize = 10 * length;
+    }
+
+    public int frequency(final long key) {
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < SEEDS.length; row++) {
+            long hash = hash(key, row);
+            int shift = counterShift(hash, row);
+            int count = (int) ((this.table[this.index(hash)] >>> shift) & 15);
+            frequency = Math.min(frequency, count);
+        }
+
+        return frequency;
+    }
+
+    public void increment(final long key) {
+        boolean added = false;
+        for (int row = 0; row < SEEDS.length; row++) {
+            long hash = hash(key, row);
+            int index = this.index(hash);
+            int shift = counterShift(hash, row);
+
+            if (((this.table[index] >>> shift) & 15) < MAX_COUNT) {
+                this.table[index] += 1L << shift;
+                added = true;
+            }
+        }
+
+        if (added && ++this.additions == this.sampleSize) {
+            this.reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < this.table.length; i++) {
+            this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+        }
+
+        this.additions /= 2;
+    }
+
+    private int index(final long hash) {
+        return (int) (hash >>> 32) & this.mask;
+    }
+
+    // Each row uses its own four of the sixteen counters in a long, so
+    // the rows of one key never share a counter
+    private static int counterShift(final long hash, final int row) {
+        return ((row << 2) + (int) (hash & 3)) << 2;
+    }
+
+    private static long hash(final long key, final int row) {
+        long hash = (key + SEEDS[row]) * 0x9e3779b97f4a7c15L;
+        hash ^= hash >>> 29;
+        hash *= 0xbf58476d1ce4e5b9L;
+        return hash ^ (hash >>> 32);
+    }
+}
@@ -0,0 +1,428 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+// Iterates the lines of a gzip file as it is decompressed, so the data
+// never has to be written out in full. A file made of several members
+// (as written by bgzip, or by concatenating gzip files) is read as one
+// stream. The position of each line is that of its first byte in the
+// decompressed data, and each iterator decompresses the file again.
+//
+// A file of several members can also be split into parts, each a run of
+// whole members, so that the parts can be decompressed on separate
+// threads. Lines do not respect member boundaries, so each part but the
+// first leaves out its first line and each but the last holds back its
+// last; see StreamLineIterator.
+final class GzipLineIterable implements Iterable<ByteLine> {
+    private static final int MAGIC = 0x8b1f;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // header flags
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final int RESERVED = 0xe0;
+
+    private final File file;
+    private final long start;
+    private final long end;
+    private final boolean firstPart;
+    private final boolean lastPart;
+
+    private StreamLineIterator iterator;
+
+    public GzipLineIterable(final File f) throws FileNotFoundException {
+        this(f, 0, Long.MAX_VALUE, true, true);
+
+        if (!f.isFile()) {
+            throw new FileNotFoundException(f.getPath());
+        }
+    }
+
+    private GzipLineIterable(final File f,
+                             final long start,
+                             final long end,
+                             final boolean firstPart,
+                             final boolean lastPart) {
+        if (f == null) {
+            throw new IllegalArgumentException("f argument is null");
+        }
+
+        this.file = f;
+        this.start = start;
+        this.end = end;
+        this.firstPart = firstPart;
+        this.lastPart = lastPart;
+    }
+
+    // Whether the file is named as a gzip file or starts like one
+    public static boolean isGzip(final File f) throws FileNotFoundException {
+        if (f.getName().endsWith(".gz")) {
+            return true;
+        }
+
+        try (InputStream in = new FileInputStream(f)) {
+            int b0 = in.read();
+            int b1 = in.read();
+            return b1 >= 0 && (b0 | (b1 << 8)) == MAGIC;
+        }
+        catch (FileNotFoundException e) {
+            throw e;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Iterator<ByteLine> iterator() {
+        InputStream range = null;
+        try {
+            range = new RangeInputStream(
+                new RandomAccessFile(this.file, "r").getChannel(),
+                this.start,
+                this.end,
+                true
+            );
+
+            // reads the first member's header
+            InputStream in = new GZIPInputStream(range, BUFFER_SIZE);
+
+            this.iterator =
+                new StreamLineIterator(in, !this.firstPart, !this.lastPart);
+            return this.iterator;
+        }
+        catch (IOException e) {
+            closeQuietly(range);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // What the last iterator left out before its first line; see
+    // StreamLineIterator
+    byte[] getFirst() {
+        return this.iterator.getFirst();
+    }
+
+    // What the last iterator held back after its last line
+    byte[] getLast() {
+        return this.iterator.getLast();
+    }
+
+    // Whether a line ended in the decompressed data of the last iterator
+    boolean isTerminated() {
+        return this.iterator.isTerminated();
+    }
+
+    // The number of bytes decompressed by the last iterator
+    long getLength() {
+        return this.iterator.getLength();
+    }
+
+    // Splits the file into at most `count` parts of whole members, each
+    // roughly the same compressed size and no smaller than minPartSize.
+    // The member that starts each part is found on the executor's threads;
+    // a part in which none starts is merged into the one before it, so a
+    // file of a single member is a single part.
+    static List<GzipLineIterable> split(final File f,
+                                        final long count,
+                                        final long minPartSize,
+                                        final ExecutorService executor)
+        throws InterruptedException, ExecutionException {
+
+        long size = f.length();
+        final long partSize = Math.max(
+            minPartSize,
+            (size + count - 1) / Math.max(1, count)
+        );
+
+        List<Callable<Long>> searches = new ArrayList<Callable<Long>>();
+        for (long from = partSize; from < size; from += partSize) {
+            final long searchFrom = from;
+            final long searchTo = Math.min(size, from + partSize);
+            searches.add(() -> findMember(f, searchFrom, searchTo, partSize));
+        }
+
+        List<Long> starts = new ArrayList<Long>();
+        starts.add(0L);
+
+        for (Future<Long> found : executor.invokeAll(searches)) {
+            long member = found.get();
+            if (member >= 0) {
+                starts.add(member);
+            }
+        }
+
+        starts.add(Long.MAX_VALUE);
+
+        List<GzipLineIterable> parts = new ArrayList<GzipLineIterable>();
+        for (int i = 0; i + 1 < starts.size(); i++) {
+            parts.add(new GzipLineIterable(
+                f,
+                starts.get(i),
+                starts.get(i + 1),
+                i == 0,
+                i + 2 == starts.size()
+            ));
+        }
+
+        return parts;
+    }
+
+    // Returns the position of the first member that starts in [from, to),
+    // or -1 if none does. Compressed data can look like a member header,
+    // so a candidate is only taken once it has inflated to a trailer whose
+    // CRC and length match; that is given up on after `limit` bytes, which
+    // bounds the work done for each part.
+    private static long findMember(final File f,
+                                   final long from,
+                                   final long to,
+                                   final long limit)
+        throws IOException {
+
+        try (FileChannel channel =
+                 new RandomAccessFile(f, "r").getChannel()) {
+
+            ByteBuffer window = ByteBuffer.allocate(BUFFER_SIZE + 3);
+            for (long base = from; base < to; base += BUFFER_SIZE) {
+                window.clear();
+                while (window.hasRemaining()
+                       && channel.read(window, base + window.position()) > 0) {
+                    // fill the window, or read to the end of the file
+                }
+
+                int available = window.position();
+                int last = (int) Math.min(BUFFER_SIZE, to - base);
+
+                for (int i = 0; i < last && i + 3 < available; i++) {
+                    if ((window.get(i) & 0xff) == (MAGIC & 0xff)
+                        && (window.get(i + 1) & 0xff) == MAGIC >>> 8
+                        && window.get(i + 2) == Deflater.DEFLATED
+                        && (window.get(i + 3) & RESERVED) == 0
+                        && isMember(channel, base + i, limit)) {
+
+                        return base + i;
+                    }
+                }
+            }
+
+            return -1;
+        }
+    }
+
+    private static boolean isMember(final FileChannel channel,
+                                    final long position,
+                                    final long limit)
+        throws IOException {
+
+        InputStream in = new BufferedInputStream(
+            new RangeInputStream(channel, position, position + limit, false),
+            BUFFER_SIZE
+        );
+
+        if (!skipHeader(in)) {
+            return false;
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            byte[] input = new byte[BUFFER_SIZE];
+            byte[] output = new byte[BUFFER_SIZE];
+            CRC32 crc = new CRC32();
+            int read = 0;
+
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    read = in.read(input);
+                    if (read < 0) {
+                        return false;
+                    }
+
+                    inflater.setInput(input, 0, read);
+                }
+                else if (inflater.needsDictionary()) {
+                    return false;
+                }
+
+                int inflated = inflater.inflate(output);
+                crc.update(output, 0, inflated);
+            }
+
+            // the trailer follows the compressed data
+            byte[] trailer = new byte[8];
+            int remaining = Math.min(inflater.getRemaining(), 8);
+            System.arraycopy(
+                input, read - inflater.getRemaining(),
+                trailer, 0,
+                remaining
+            );
+
+            for (int i = remaining; i < 8; i++) {
+                int b = in.read();
+                if (b < 0) {
+                    return false;
+                }
+
+                trailer[i] = (byte) b;
+            }
+
+            ByteBuffer values =
+                ByteBuffer.wrap(trailer).order(ByteOrder.LITTLE_ENDIAN);
+
+            return (values.getInt(0) & 0xffffffffL) == crc.getValue()
+                && values.getInt(4) == (int) inflater.getBytesWritten();
+        }
+        catch (DataFormatException e) {
+            return false;
+        }
+        finally {
+            inflater.end();
+        }
+    }
+
+    private static void closeQuietly(final Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+
+        try {
+            closeable.close();
+        }
+        catch (IOException e) {
+            // the original failure is the one reported
+        }
+    }
+
+    // Reads past a member header, returning false if it is not valid
+    private static boolean skipHeader(final InputStream in)
+        throws IOException {
+
+        byte[] fixed = new byte[10];
+        for (int i = 0; i < fixed.length; i++) {
+            int b = in.read();
+            if (b < 0) {
+                return false;
+            }
+
+            fixed[i] = (byte) b;
+        }
+
+        int flags = fixed[3] & 0xff;
+
+        if ((flags & FEXTRA) != 0) {
+            int low = in.read();
+            int high = in.read();
+            if (high < 0) {
+                return false;
+            }
+
+            long length = low | (high << 8);
+            if (in.skip(length) != length) {
+                return false;
+            }
+        }
+
+        for (int field : new int[] {FNAME, FCOMMENT}) {
+            if ((flags & field) != 0) {
+                int b;
+                do {
+                    b = in.read();
+                }
+                while (b > 0);
+
+                if (b < 0) {
+                    return false;
+                }
+            }
+        }
+
+        if ((flags & FHCRC) != 0) {
+            return in.read() >= 0 && in.read() >= 0;
+        }
+
+        return true;
+    }
+
+    // Reads a byte range of a channel without moving its position. The
+    // stream reports the bytes left in the range as available, which is
+    // how GZIPInputStream decides whether another member follows.
+    private static final class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long end;
+        private final boolean ownChannel;
+        private long position;
+
+        RangeInputStream(final FileChannel channel,
+                         final long start,
+                         final long end,
+                         final boolean ownChannel) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+            this.ownChannel = ownChannel;
+        }
+
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return this.read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        public int read(final byte[] b, final int off, final int len)
+            throws IOException {
+
+            long left = Math.min(this.end, this.channel.size())
+                      - this.position;
+            if (left <= 0) {
+                return -1;
+            }
+
+            ByteBuffer target =
+                ByteBuffer.wrap(b, off, (int) Math.min(len, left));
+            int read = this.channel.read(target, this.position);
+            if (read > 0) {
+                this.position += read;
+            }
+
+            return read;
+        }
+
+        public int available() throws IOException {
+            long left = Math.min(this.end, this.channel.size())
+                      - this.position;
+            return (int) Math.max(0, Math.min(Integer.MAX_VALUE, left));
+        }
+
+        public void close() throws IOException {
+            if (this.ownChannel) {
+                this.channel.close();
+            }
+        }
+    }
+}
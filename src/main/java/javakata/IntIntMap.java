@@ -0,0 +1,143 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+// Open-addressing hash table from positive int keys to int values, using
+// linear probing over parallel primitive arrays. Keys are org identifiers,
+// which are always >= 1, so zero marks an empty slot.
+final class IntIntMap {
+    static final int NO_VALUE = -1;
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    public IntIntMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntIntMap(final int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException(
+                "Expected size cannot be negative."
+            );
+        }
+
+        this.allocate(capacityFor(expectedSize));
+    }
+
+    // Returns the value for the key, or NO_VALUE if the key is not present
+    public int get(final int key) {
+        if (key < 1) {
+            return NO_VALUE;
+        }
+
+        int slot = this.findSlot(key);
+        return this.keys[slot] != 0 ? this.values[slot] : NO_VALUE;
+    }
+
+    // Associates the value with the key if the key is not already present.
+    // Returns the existing value, or NO_VALUE if the value was added.
+    public int putIfAbsent(final int key, final int value) {
+        if (key < 1) {
+            throw new IllegalArgumentException(
+                "Keys must be greater than or equal to one."
+            );
+        }
+
+        int slot = this.findSlot(key);
+        if (this.keys[slot] != 0) {
+            return this.values[slot];
+        }
+
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        this.size++;
+
+        if (this.size * 4 > this.keys.length * 3) {
+            this.rehash(this.keys.length * 2);
+        }
+
+        return NO_VALUE;
+    }
+
+    // Associates the value with the key, replacing any existing value.
+    // Returns the previous value, or NO_VALUE if the key was not present.
+    public int put(final int key, final int value) {
+        int previous = this.putIfAbsent(key, value);
+        if (previous != NO_VALUE) {
+            this.values[this.findSlot(key)] = value;
+        }
+
+        return previous;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    private int findSlot(final int key) {
+        int hash = key * HASH_MULTIPLIER;
+        int slot = (hash ^ (hash >>> 16)) & this.mask;
+        while (this.keys[slot] != 0 && this.keys[slot] != key) {
+            slot = (slot + 1) & this.mask;
+        }
+
+        return slot;
+    }
+
+    private void allocate(final int capacity) {
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    private void rehash(final int capacity) {
+        int[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+
+        this.allocate(capacity);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = this.findSlot(oldKeys[i]);
+                this.keys[slot] = oldKeys[i];
+                this.values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int capacityFor(final int expectedSize) {
+        // keep the load factor at or below 3/4
+        long needed = Math.max(2L, (expectedSize * 4L + 2) / 3);
+        if (needed > (1 << 30)) {
+            throw new IllegalArgumentException("Expected size is too large.");
+        }
+
+        return Integer.highestOneBit((int) needed - 1) << 1;
+    }
+}
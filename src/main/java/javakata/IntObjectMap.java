@@ -0,0 +1,254 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.function.*;
+
+// Map from positive int keys to objects, built for org identifier lookups
+// without boxing. While the keys are compact, values are stored in a plain
+// array indexed by key; once the keys become too sparse for that, the map
+// switches to an open-addressing table with linear probing over parallel
+// key and value arrays. Org identifiers are always >= 1, so zero marks an
+// empty slot.
+final class IntObjectMap<V> {
+    // dense storage is used while the largest key is below this multiple
+    // of the number of entries (plus some slack for small maps)
+    private static final int DENSE_FACTOR = 2;
+    private static final int DENSE_SLACK = 64;
+
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
+    // null while the map is dense
+    private int[] keys;
+    private Object[] values;
+
+    private int size;
+    private int maxKey;
+    private int mask;
+
+    public IntObjectMap() {
+        this.values = new Object[DENSE_SLACK];
+    }
+
+    public V get(final int key) {
+        if (key < 1) {
+            return null;
+        }
+
+        if (this.keys == null) {
+            return key < this.values.length ? this.valueAt(key) : null;
+        }
+
+        int slot = this.findSlot(key);
+        return this.keys[slot] != 0 ? this.valueAt(slot) : null;
+    }
+
+    public boolean containsKey(final int key) {
+        return this.get(key) != null;
+    }
+
+    // Associates the value with the key if the key is not already present.
+    // Returns the existing value, or null if the value was added.
+    public V putIfAbsent(final int key, final V value) {
+        if (key < 1) {
+            throw new IllegalArgumentException(
+                "Keys must be greater than or equal to one."
+            );
+        }
+
+        if (value == null) {
+            throw new IllegalArgumentException("value argument is null");
+        }
+
+        if (this.keys == null) {
+            if (key < this.values.length) {
+                V existing = this.valueAt(key);
+                if (existing == null) {
+                    this.values[key] = value;
+                    this.added(key);
+                }
+
+                return existing;
+            }
+        }
+        else {
+            int slot = this.findSlot(key);
+            if (this.keys[slot] != 0) {
+                return this.valueAt(slot);
+            }
+
+            if ((this.size + 1) * 4 <= this.keys.length * 3) {
+                this.keys[slot] = key;
+                this.values[slot] = value;
+                this.added(key);
+                return null;
+            }
+        }
+
+        // out of room; rebuild with enough space for the new key
+        this.rebuild(this.size + 1, Math.max(this.maxKey, key));
+        return this.putIfAbsent(key, value);
+    }
+
+    public V remove(final int key) {
+        if (key < 1) {
+            return null;
+        }
+
+        if (this.keys == null) {
+            if (key >= this.values.length) {
+                return null;
+            }
+
+            V existing = this.valueAt(key);
+            if (existing != null) {
+                this.values[key] = null;
+                this.size--;
+            }
+
+            return existing;
+        }
+
+        int slot = this.findSlot(key);
+        if (this.keys[slot] == 0) {
+            return null;
+        }
+
+        V existing = this.valueAt(slot);
+
+        // backward-shift deletion keeps probe sequences unbroken without
+        // tombstones
+        int hole = slot;
+        int next = (hole + 1) & this.mask;
+        while (this.keys[next] != 0) {
+            int home = this.homeSlot(this.keys[next]);
+            if (((next - home) & this.mask) >= ((next - hole) & this.mask)) {
+                this.keys[hole] = this.keys[next];
+                this.values[hole] = this.values[next];
+                hole = next;
+            }
+
+            next = (next + 1) & this.mask;
+        }
+
+        this.keys[hole] = 0;
+        this.values[hole] = null;
+        this.size--;
+
+        return existing;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public void forEachValue(final Consumer<? super V> action) {
+        for (Object value : this.values) {
+            if (value != null) {
+                action.accept(this.cast(value));
+            }
+        }
+    }
+
+    boolean isDense() {
+        return this.keys == null;
+    }
+
+    private void added(final int key) {
+        this.size++;
+        if (key > this.maxKey) {
+            this.maxKey = key;
+        }
+    }
+
+    private V valueAt(final int index) {
+        return this.cast(this.values[index]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V cast(final Object value) {
+        return (V) value;
+    }
+
+    private int homeSlot(final int key) {
+        int hash = key * HASH_MULTIPLIER;
+        return (hash ^ (hash >>> 16)) & this.mask;
+    }
+
+    private int findSlot(final int key) {
+        int slot = this.homeSlot(key);
+        while (this.keys[slot] != 0 && this.keys[slot] != key) {
+            slot = (slot + 1) & this.mask;
+        }
+
+        return slot;
+    }
+
+    // Re-lays out the map for `needed` entries with keys up to
+    // `highestKey`, choosing dense storage when the keys are compact.
+    private void rebuild(final int needed, final int highestKey) {
+        int[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+
+        long denseLimit = (long) DENSE_FACTOR * needed + DENSE_SLACK;
+
+        if (highestKey < denseLimit) {
+            int length = (int) Math.min(
+                Integer.MAX_VALUE - 8,
+                Math.max(highestKey + 1L, Math.min(
+                    oldValues.length * 2L,
+                    denseLimit
+                ))
+            );
+
+            this.keys = null;
+            this.values = new Object[length];
+        }
+        else {
+            int capacity = Integer.highestOneBit(
+                Math.max(2, needed * 2) - 1
+            ) << 1;
+
+            this.keys = new int[capacity];
+            this.values = new Object[capacity];
+            this.mask = capacity - 1;
+        }
+
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == null) {
+                continue;
+            }
+
+            int key = oldKeys != null ? oldKeys[i] : i;
+
+            if (this.keys == null) {
+                this.values[key] = oldValues[i];
+            }
+            else {
+                int slot = this.findSlot(key);
+                this.keys[slot] = key;
+                this.values[slot] = oldValues[i];
+            }
+        }
+    }
+}
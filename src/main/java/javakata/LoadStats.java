@@ -0,0 +1,313 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+// Times each phase of a load and counts the rows and bytes it read, the
+// observations found and the orgs whose parents had to be resolved. Heap
+// and garbage collection figures come from the platform MXBeans, measured
+// from when the stats were created.
+//
+// Phases are recorded by the loading thread; the stats can be read from
+// any thread while they run, for example through JMX once registered.
+// Observation counts read during a load may lag slightly.
+final class LoadStats implements LoadStatsMXBean {
+    static final String OBJECT_NAME = "javakata:type=LoadStats";
+
+    enum Phase {
+        ORG_PARSING("orgParsing"),
+        PARENT_RESOLUTION("parentResolution"),
+        USER_AGGREGATION("userAggregation"),
+        BUILD("build"),
+        REPORT("report");
+
+        private final String key;
+
+        Phase(final String key) {
+            this.key = key;
+        }
+
+        String getKey() {
+            return this.key;
+        }
+    }
+
+    private static final int PHASES = Phase.values().length;
+
+    private final ObservationCounter observations;
+    private final AtomicLongArray nanos;
+    private final AtomicLongArray rows;
+    private final AtomicLongArray bytes;
+    private final AtomicLongArray runs;
+    private final long startGcMillis;
+    private final long startGcCount;
+
+    private volatile Phase phase;
+    private long phaseStart;
+    private volatile long pendingParents;
+
+    LoadStats() {
+        this.observations = new ObservationCounter();
+        this.nanos = new AtomicLongArray(PHASES);
+        this.rows = new AtomicLongArray(PHASES);
+        this.bytes = new AtomicLongArray(PHASES);
+        this.runs = new AtomicLongArray(PHASES);
+
+        this.startGcMillis = gcTotals()[0];
+        this.startGcCount = gcTotals()[1];
+    }
+
+    // Resets the peak usage of the heap pools, so that getPeakHeapBytes()
+    // covers what follows. The peaks belong to the whole JVM, so this is
+    // only done when the caller owns them.
+    void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    // Counts each observation by code before passing it on
+    ObservationSink counting(final ObservationSink next) {
+        if (next == null) {
+            throw new IllegalArgumentException("next argument is null");
+        }
+
+        return (code, lineNumber, byteOffset, record) -> {
+            this.observations.observe(code, lineNumber, byteOffset, record);
+            next.observe(code, lineNumber, byteOffset, record);
+        };
+    }
+
+    void start(final Phase phase) {
+        if (this.phase != null) {
+            throw new IllegalStateException(
+                "Phase " + this.phase.getKey() + " has not finished."
+            );
+        }
+
+        this.phase = phase;
+        this.phaseStart = System.nanoTime();
+    }
+
+    // Ends the running phase, adding to what it has recorded before
+    void finish(final Phase phase, final long rowCount, final long byteCount) {
+        if (this.phase != phase) {
+            throw new IllegalStateException(
+                "Phase " + phase.getKey() + " is not running."
+            );
+        }
+
+        int index = phase.ordinal();
+        this.nanos.addAndGet(index, System.nanoTime() - this.phaseStart);
+        this.rows.addAndGet(index, rowCount);
+        this.bytes.addAndGet(index, byteCount);
+        this.runs.incrementAndGet(index);
+        this.phase = null;
+    }
+
+    void setPendingParents(final long pendingParents) {
+        this.pendingParents = pendingParents;
+    }
+
+    // Registers the stats with the platform MBean server, replacing any
+    // registered by an earlier load in this process
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+
+            server.registerMBean(this, name);
+        }
+        catch (JMException e) {
+            throw new IllegalStateException("Could not register stats", e);
+        }
+    }
+
+    public String getPhase() {
+        Phase current = this.phase;
+        return current == null ? "" : current.getKey();
+    }
+
+    public Map<String, Long> getPhaseMillis() {
+        Map<String, Long> millis = new LinkedHashMap<String, Long>();
+        for (Phase p : this.ranPhases()) {
+            millis.put(p.getKey(), this.nanos.get(p.ordinal()) / 1000000);
+        }
+
+        return millis;
+    }
+
+    public Map<String, Long> getPhaseRows() {
+        return this.byPhase(this.rows);
+    }
+
+    public Map<String, Long> getPhaseBytes() {
+        return this.byPhase(this.bytes);
+    }
+
+    public Map<String, Double> getPhaseRowsPerSecond() {
+        return this.perSecond(this.rows);
+    }
+
+    public Map<String, Double> getPhaseBytesPerSecond() {
+        return this.perSecond(this.bytes);
+    }
+
+    public Map<String, Long> getObservations() {
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (ObservationCode code : ObservationCode.values()) {
+            long count = this.observations.getCount(code);
+            if (count > 0) {
+                counts.put(code.name(), count);
+            }
+        }
+
+        return counts;
+    }
+
+    public long getPendingParents() {
+        return this.pendingParents;
+    }
+
+    // The sum of each heap pool's peak since resetPeakHeap() was last
+    // called, or since the JVM started; the pools may have peaked at
+    // different times, so this can overstate the heap's own peak
+    public long getPeakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+
+        return peak;
+    }
+
+    public long getGcMillis() {
+        return gcTotals()[0] - this.startGcMillis;
+    }
+
+    public long getGcCount() {
+        return gcTotals()[1] - this.startGcCount;
+    }
+
+    // The stats as a single line of JSON
+    String toJson() {
+        StringBuilder json = new StringBuilder("{\"phases\":{");
+
+        Map<String, Long> millis = this.getPhaseMillis();
+        Map<String, Long> rowCounts = this.getPhaseRows();
+        Map<String, Long> byteCounts = this.getPhaseBytes();
+        Map<String, Double> rowRates = this.getPhaseRowsPerSecond();
+        Map<String, Double> byteRates = this.getPhaseBytesPerSecond();
+
+        String separator = "";
+        for (String key : millis.keySet()) {
+            json.append(separator)
+                .append('"').append(key).append("\":{")
+                .append("\"millis\":").append(millis.get(key))
+                .append(",\"rows\":").append(rowCounts.get(key))
+                .append(",\"bytes\":").append(byteCounts.get(key))
+                .append(",\"rowsPerSecond\":")
+                .append(Math.round(rowRates.get(key)))
+                .append(",\"bytesPerSecond\":")
+                .append(Math.round(byteRates.get(key)))
+                .append('}');
+            separator = ",";
+        }
+
+        json.append("},\"observations\":{");
+
+        separator = "";
+        for (Map.Entry<String, Long> count
+                 : this.getObservations().entrySet()) {
+            json.append(separator)
+                .append('"').append(count.getKey()).append("\":")
+                .append(count.getValue());
+            separator = ",";
+        }
+
+        return json.append("},\"pendingParents\":")
+            .append(this.getPendingParents())
+            .append(",\"peakHeapBytes\":").append(this.getPeakHeapBytes())
+            .append(",\"gcMillis\":").append(this.getGcMillis())
+            .append(",\"gcCount\":").append(this.getGcCount())
+            .append('}')
+            .toString();
+    }
+
+    private List<Phase> ranPhases() {
+        List<Phase> phases = new ArrayList<Phase>();
+        for (Phase p : Phase.values()) {
+            if (this.runs.get(p.ordinal()) > 0) {
+                phases.add(p);
+            }
+        }
+
+        return phases;
+    }
+
+    private Map<String, Long> byPhase(final AtomicLongArray values) {
+        Map<String, Long> byPhase = new LinkedHashMap<String, Long>();
+        for (Phase p : this.ranPhases()) {
+            byPhase.put(p.getKey(), values.get(p.ordinal()));
+        }
+
+        return byPhase;
+    }
+
+    private Map<String, Double> perSecond(final AtomicLongArray values) {
+        Map<String, Double> rates = new LinkedHashMap<String, Double>();
+        for (Phase p : this.ranPhases()) {
+            long elapsed = this.nanos.get(p.ordinal());
+            rates.put(
+                p.getKey(),
+                elapsed == 0 ? 0.0 : values.get(p.ordinal()) * 1e9 / elapsed
+            );
+        }
+
+        return rates;
+    }
+
+    // Total collection time in milliseconds, and count, of every collector
+    private static long[] gcTotals() {
+        long[] totals = new long[2];
+        for (GarbageCollectorMXBean gc
+                 : ManagementFactory.getGarbageCollectorMXBeans()) {
+            totals[0] += Math.max(0, gc.getCollectionTime());
+            totals[1] += Math.max(0, gc.getCollectionCount());
+        }
+
+        return totals;
+    }
+}
@@ -0,0 +1,57 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+
+// The management interface of LoadStats. Phases are keyed by name
+// (orgParsing, parentResolution, userAggregation, build, report) and only
+// include the phases that have run. The interface is public because JMX
+// only introspects public interfaces.
+public interface LoadStatsMXBean {
+    // The phase now running, or an empty string between phases
+    String getPhase();
+
+    Map<String, Long> getPhaseMillis();
+
+    Map<String, Long> getPhaseRows();
+
+    // Bytes of record data read, including line terminators
+    Map<String, Long> getPhaseBytes();
+
+    Map<String, Double> getPhaseRowsPerSecond();
+
+    Map<String, Double> getPhaseBytesPerSecond();
+
+    // Problems found in the input, keyed by observation code
+    Map<String, Long> getObservations();
+
+    // Orgs that were added before their parents, so had to be resolved
+    long getPendingParents();
+
+    long getPeakHeapBytes();
+
+    long getGcMillis();
+
+    long getGcCount();
+}
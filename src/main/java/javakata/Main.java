@@ -23,6 +23,8 @@
 package javakata;
 
 import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
 import java.util.*;
 
 final class Main {
@@ -31,21 +33,265 @@ final class Main {
     }
 
     public static void main(final String[] args) {
-        if (args.length != 2) {
+        int parallelism = 1;
+        boolean columnar = false;
+        boolean versioned = false;
+        int maxErrors = 0;
+        String snapshot = null;
+        String saveSnapshot = null;
+        String disk = null;
+        int spillMegabytes = 0;
+        int followSeconds = 0;
+        boolean changesOnly = false;
+        int servePort = 0;
+        int cacheWeight = 0;
+        boolean printStats = false;
+        int top = 0;
+        OrgMetric rankBy = null;
+        List<String> paths = new ArrayList<String>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                i++;
+                parallelism = parsePositive(args[i]);
+                if (parallelism < 1) {
+                    printUsage();
+                    return;
+                }
+            }
+            else if (args[i].equals("--max-errors") && i + 1 < args.length) {
+                i++;
+                maxErrors = parsePositive(args[i]);
+                if (maxErrors < 1) {
+                    printUsage();
+                    return;
+                }
+            }
+            else if (args[i].equals("--snapshot") && i + 1 < args.length) {
+                snapshot = args[++i];
+            }
+            else if (args[i].equals("--save-snapshot")
+                     && i + 1 < args.length) {
+                // snapshots are written from the columnar layout
+                saveSnapshot = args[++i];
+                columnar = true;
+            }
+            else if (args[i].equals("--spill-mb") && i + 1 < args.length) {
+                i++;
+                spillMegabytes = parsePositive(args[i]);
+                if (spillMegabytes < 1) {
+                    printUsage();
+                    return;
+                }
+            }
+            else if (args[i].equals("--follow") && i + 1 < args.length) {
+                i++;
+                followSeconds = parsePositive(args[i]);
+                if (followSeconds < 1) {
+                    printUsage();
+                    return;
+                }
+            }
+            else if (args[i].equals("--serve") && i + 1 < args.length) {
+                i++;
+                servePort = parsePositive(args[i]);
+                if (servePort < 1 || servePort > 65535) {
+                    printUsage();
+                    return;
+                }
+            }
+            else if (args[i].equals("--cache") && i + 1 < args.length) {
+                i++;
+                cacheWeight = parsePositive(args[i]);
+                if (cacheWeight < 1) {
+                    printUsage();
+                    return;
+                }
+            }
+            else if (args[i].equals("--top") && i + 1 < args.length) {
+                i++;
+                top = parsePositive(args[i]);
+                if (top < 1) {
+                    printUsage();
+                    return;
+                }
+            }
+            else if (args[i].equals("--by") && i + 1 < args.length) {
+                rankBy = OrgMetric.forKey(args[++i]);
+                if (rankBy == null) {
+                    printUsage();
+                    return;
+                }
+            }
+            else if (args[i].equals("--changes-only")) {
+                changesOnly = true;
+            }
+            else if (args[i].equals("--stats")) {
+                printStats = true;
+            }
+            else if (args[i].equals("--disk") && i + 1 < args.length) {
+                disk = args[++i];
+            }
+            else if (args[i].equals("--columnar")) {
+                columnar = true;
+            }
+            else if (args[i].equals("--versioned")) {
+                versioned = true;
+            }
+            else {
+                paths.add(args[i]);
+            }
+        }
+
+        // the top orgs are written in place of the report
+        if ((rankBy != null && top == 0) || (top > 0 && servePort > 0)) {
+            printUsage();
+            return;
+        }
+
+        if (rankBy == null) {
+            rankBy = OrgMetric.TOTAL_BYTES;
+        }
+
+        // the stats can be watched over JMX while the program runs
+        LoadStats stats = new LoadStats();
+        stats.register();
+        if (printStats) {
+            stats.resetPeakHeap();
+        }
+
+        if (snapshot != null) {
+            if (!paths.isEmpty()
+                || saveSnapshot != null
+                || followSeconds > 0) {
+                printUsage();
+                return;
+            }
+
+            try {
+                OrgCollection orgs =
+                    SnapshotOrgCollection.open(new File(snapshot));
+
+                if (servePort > 0) {
+                    serve(orgs, servePort);
+                }
+                else if (top > 0) {
+                    writeTop(orgs, rankBy, top);
+                }
+                else {
+                    writeReport(orgs, stats);
+                }
+
+                if (printStats) {
+                    System.err.println(stats.toJson());
+                }
+            }
+            catch (IOException e) {
+                System.err.println(
+                    "Could not open snapshot: " + e.getMessage()
+                );
+                System.exit(1);
+            }
+
+            return;
+        }
+
+        // the builders are mutually exclusive
+        int builders = (disk != null ? 1 : 0)
+                     + (columnar ? 1 : 0)
+                     + (versioned ? 1 : 0);
+
+        if (paths.size() != 2
+            || builders > 1
+            || (cacheWeight > 0 && (versioned || saveSnapshot != null))) {
             printUsage();
             return;
         }
 
-        File orgFile = new File(args[0]);
-        File userFile = new File(args[1]);
+        File orgFile = new File(paths.get(0));
+        File userFile = new File(paths.get(1));
+
+        // observations are written as they are found
+        ObservationSink sink = (code, lineNumber, byteOffset, record) ->
+            System.err.println(Observation.format(code, lineNumber, record));
+
+        SamplingObservationSink sampler = null;
+        if (maxErrors > 0) {
+            sampler = new SamplingObservationSink(sink, maxErrors, 0);
+            sink = sampler;
+        }
+
+        if (followSeconds > 0) {
+            if (servePort > 0) {
+                printUsage();
+                return;
+            }
+
+            // only the default collection can be updated once loaded
+            if (builders > 0
+                || spillMegabytes > 0
+                || cacheWeight > 0
+                || parallelism > 1
+                || printStats
+                || top > 0) {
+                printUsage();
+                return;
+            }
+
+            follow(orgFile, userFile, sink, followSeconds, changesOnly);
+            return;
+        }
 
-        Result<OrgCollection, String> result = null;
+        OrgCollection orgs = null;
 
         try {
-            result = DataLoader.load(orgFile, userFile);
+            OrgCollectionBuilder target;
+            if (disk != null) {
+                target = new BTreeOrgCollection.Builder(new File(disk));
+            }
+            else if (columnar) {
+                target = new ColumnarOrgCollection.Builder();
+            }
+            else if (versioned) {
+                target = new VersionedOrgCollection();
+            }
+            else {
+                target = new OrgCollectionImpl();
+            }
+
+            // a disk-backed collection is updated far faster in org order
+            if (spillMegabytes == 0 && disk != null) {
+                spillMegabytes = 64;
+            }
+
+            // with several threads, each sums user data in a table of its
+            // own before the aggregator does, so they get half the budget
+            long spillBudget = spillMegabytes * 1024L * 1024L;
+            long threadBudget = parallelism > 1 ? spillBudget / 2 : 0;
+
+            if (spillMegabytes > 0) {
+                target = new SpillingUserAggregator(
+                    target,
+                    spillBudget - threadBudget
+                );
+            }
+
+            if (cacheWeight > 0) {
+                target = new CachingOrgCollection(target, cacheWeight);
+            }
+
+            orgs = DataLoader.load(
+                orgFile,
+                userFile,
+                parallelism,
+                target,
+                sink,
+                stats,
+                threadBudget
+            );
 
-            for (String observation : result.getObservations()) {
-               System.err.println(observation);
+            if (sampler != null) {
+                printSuppressed(sampler);
             }
         }
         catch (FileNotFoundException e) {
@@ -67,7 +313,178 @@ final class Main {
             return;
         }
 
-        DataTextReporter.writeReport(result.getValue(), System.out);
+        if (saveSnapshot != null) {
+            try {
+                ((ColumnarOrgCollection) orgs)
+                    .writeSnapshot(new File(saveSnapshot));
+            }
+            catch (IOException e) {
+                System.err.println(
+                    "Could not save snapshot: " + e.getMessage()
+                );
+                System.exit(1);
+                return;
+            }
+        }
+
+        if (servePort > 0) {
+            serve(orgs, servePort);
+        }
+        else if (top > 0) {
+            writeTop(orgs, rankBy, top);
+        }
+        else {
+            writeReport(orgs, stats);
+        }
+
+        if (printStats) {
+            System.err.println(stats.toJson());
+        }
+    }
+
+    // Serves the collection over HTTP; the server's threads keep the
+    // program running after this returns
+    private static void serve(final OrgCollection orgs, final int port) {
+        try {
+            OrgQueryServer server =
+                new OrgQueryServer(orgs, new InetSocketAddress(port));
+
+            server.start();
+            System.err.println(
+                "Serving organizations at http://localhost:"
+              + Integer.toString(server.getPort())
+              + OrgQueryServer.CONTEXT
+            );
+        }
+        catch (IOException e) {
+            System.err.println("Could not start server: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Loads both files, writes the report, then polls the user file for
+    // appended records, writing the report (or only the orgs that
+    // changed) after each poll that found any. Runs until killed.
+    private static void follow(final File orgFile,
+                               final File userFile,
+                               final ObservationSink sink,
+                               final int intervalSeconds,
+                               final boolean changesOnly) {
+        OrgCollectionImpl orgs = new OrgCollectionImpl();
+
+        try (UserFileFollower follower =
+                 new UserFileFollower(userFile, orgs, sink)) {
+
+            DataLoader.loadOrgData(DataLoader.openLines(orgFile), orgs, sink);
+            follower.poll();
+            follower.takeChangedOrgs();
+            writeReport(orgs);
+
+            while (true) {
+                Thread.sleep(intervalSeconds * 1000L);
+
+                if (follower.poll() == 0) {
+                    continue;
+                }
+
+                List<Org> changed = follower.takeChangedOrgs();
+                if (changed.isEmpty()) {
+                    continue;
+                }
+
+                System.out.flush();
+                WritableByteChannel out =
+                    new FileOutputStream(FileDescriptor.out).getChannel();
+
+                if (changesOnly) {
+                    DataTextReporter.writeOrgs(changed, out);
+                }
+                else {
+                    DataTextReporter.writeReport(orgs, out);
+                }
+            }
+        }
+        catch (FileNotFoundException e) {
+            String[] lines = e.getMessage()
+                .split(System.getProperty("line.separator"));
+
+            System.err.println(
+                "Could not find one of the data files: "
+              + lines[0]
+            );
+            System.exit(1);
+        }
+        catch (IOException e) {
+            System.err.println("Could not follow user file: " + e.getMessage());
+            System.exit(1);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Writes straight to the standard output file descriptor, bypassing
+    // the character encoding and line flushing of System.out
+    private static void writeReport(final OrgCollection orgs) {
+        writeReport(orgs, new LoadStats());
+    }
+
+    private static void writeReport(final OrgCollection orgs,
+                                    final LoadStats stats) {
+        try {
+            System.out.flush();
+            DataTextReporter.writeReport(
+                orgs,
+                new FileOutputStream(FileDescriptor.out).getChannel(),
+                stats
+            );
+        }
+        catch (IOException e) {
+            System.err.println("Could not write report: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Writes the orgs with the most of the metric, one line each
+    private static void writeTop(final OrgCollection orgs,
+                                 final OrgMetric metric,
+                                 final int count) {
+        try {
+            System.out.flush();
+            DataTextReporter.writeOrgs(
+                new OrgRanking(orgs).getTopOrgs(metric, count),
+                new FileOutputStream(FileDescriptor.out).getChannel()
+            );
+        }
+        catch (IOException e) {
+            System.err.println("Could not write report: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void printSuppressed(final SamplingObservationSink sampler) {
+        for (ObservationCode code : ObservationCode.values()) {
+            long suppressed = sampler.getSuppressedCount(code);
+            if (suppressed > 0) {
+                System.err.println(String.format(
+                    "%s - %d more %s observations were not shown",
+                    code.getSeverity(),
+                    suppressed,
+                    code
+                ));
+            }
+        }
+    }
+
+    // Returns the parsed value, or -1 if it is not a positive integer
+    private static int parsePositive(final String value) {
+        try {
+            int parsed = Integer.parseInt(value);
+            return parsed > 0 ? parsed : -1;
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     private static void printUsage() {
@@ -75,5 +492,64 @@ final class Main {
             "You must provide two arguments: "
             + "{path-to-org-file} {path-to-user-file}"
         );
+        System.out.println("Options:");
+        System.out.println(
+            "  --threads {n}           load the files on n threads"
+        );
+        System.out.println(
+            "  --columnar              store orgs in compact primitive arrays"
+        );
+        System.out.println(
+            "  --versioned             store orgs as immutable, shared "
+            + "versions"
+        );
+        System.out.println(
+            "  --max-errors {n}        report at most n problems of each kind"
+        );
+        System.out.println(
+            "  --disk {file}           keep orgs in a B+tree file, not the "
+            + "heap"
+        );
+        System.out.println(
+            "  --spill-mb {n}          sum user data in n MB, spilling to "
+            + "disk"
+        );
+        System.out.println(
+            "  --follow {seconds}      keep reading lines appended to the "
+            + "user file"
+        );
+        System.out.println(
+            "  --changes-only          when following, write only changed "
+            + "orgs"
+        );
+        System.out.println(
+            "  --serve {port}          serve the loaded data as JSON over "
+            + "HTTP"
+        );
+        System.out.println(
+            "  --cache {n}             cache query results for up to n orgs"
+        );
+        System.out.println(
+            "  --top {n}               write only the n orgs with the most "
+            + "total bytes"
+        );
+        System.out.println(
+            "  --by {metric}           rank by totalUsers, totalFiles, "
+            + "totalBytes, users,"
+        );
+        System.out.println(
+            "                          files or bytes"
+        );
+        System.out.println(
+            "  --stats                 write load timings and counts as JSON "
+            + "to the error output"
+        );
+        System.out.println(
+            "  --save-snapshot {file}  save the loaded data as a snapshot"
+        );
+        System.out.println(
+            "  --snapshot {file}       report from a snapshot instead of "
+            + "the data files"
+        );
     }
 }
@@ -0,0 +1,279 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+// Iterates the lines of a file (or a byte range of a file) by memory
+// mapping it one window at a time, so files larger than a single mapping
+// can be read. Each call to next() returns the same ByteLine instance,
+// re-pointed at the next line in the mapped window; nothing is copied or
+// decoded. Lines are terminated the same way BufferedReader.readLine()
+// terminates them: "\n", "\r" or "\r\n". Each iterator reads the lines
+// from the start again, opening the file when it is created and closing it
+// once the last line is read. An iterator that is left before then is
+// Closeable, and should be closed.
+final class MappedLineIterable implements Iterable<ByteLine> {
+    static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final File file;
+    private final long start;
+    private final long end;
+    private final int windowSize;
+
+    public MappedLineIterable(final File f) throws FileNotFoundException {
+        this(f, 0, Long.MAX_VALUE, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedLineIterable(final File f,
+                              final long start,
+                              final long end,
+                              final int windowSize)
+        throws FileNotFoundException {
+
+        if (f == null) {
+            throw new IllegalArgumentException("f argument is null");
+        }
+
+        if (start < 0 || end < start) {
+            throw new IllegalArgumentException(
+                "Byte range must be non-negative and ordered."
+            );
+        }
+
+        if (windowSize < 1) {
+            throw new IllegalArgumentException(
+                "Window size must be greater than or equal to one."
+            );
+        }
+
+        // a file that cannot be read is reported here rather than by the
+        // first iterator, which opens it again
+        try {
+            new RandomAccessFile(f, "r").close();
+        }
+        catch (FileNotFoundException e) {
+            throw e;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        this.file = f;
+        this.start = start;
+        this.end = end;
+        this.windowSize = windowSize;
+    }
+
+    public Iterator<ByteLine> iterator() {
+        RandomAccessFile f;
+        try {
+            f = new RandomAccessFile(this.file, "r");
+        }
+        catch (FileNotFoundException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return new MappedLineIterator(
+            f.getChannel(),
+            this.start,
+            this.end,
+            this.windowSize
+        );
+    }
+
+    private static final class MappedLineIterator
+        implements Iterator<ByteLine>, Closeable {
+
+        private final ByteLine line;
+
+        private FileChannel channel;
+        private long end;
+        private int windowSize;
+
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long next;
+        private boolean hasLine;
+
+        MappedLineIterator(final FileChannel channel,
+                           final long start,
+                           final long end,
+                           final int windowSize) {
+            this.line = new ByteLine();
+            this.channel = channel;
+            this.next = start;
+            this.windowSize = windowSize;
+
+            try {
+                this.end = Math.min(end, channel.size());
+            }
+            catch (IOException e) {
+                this.close();
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public boolean hasNext() {
+            if (!this.hasLine) {
+                this.advance();
+            }
+
+            return this.hasLine;
+        }
+
+        public ByteLine next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            this.hasLine = false;
+            return this.line;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Remove not supported");
+        }
+
+        // Positions the shared line at the next record. This is deferred
+        // until the caller asks for another line, since the caller may
+        // still be using the line returned by the previous call to next().
+        private void advance() {
+            if (this.channel == null || this.next >= this.end) {
+                this.close();
+                return;
+            }
+
+            while (true) {
+                if (this.window == null
+                    || this.next >= this.windowStart + this.window.limit()) {
+                    this.map(this.next);
+                }
+
+                int from = (int) (this.next - this.windowStart);
+                int limit = this.window.limit();
+                boolean lastWindow =
+                    this.windowStart + limit >= this.end;
+
+                int i = from;
+                while (i < limit) {
+                    byte b = this.window.get(i);
+                    if (b == '\n' || b == '\r') {
+                        break;
+                    }
+                    i++;
+                }
+
+                int terminator = 0;
+                if (i < limit) {
+                    terminator = 1;
+                    if (this.window.get(i) == '\r') {
+                        if (i + 1 < limit) {
+                            if (this.window.get(i + 1) == '\n') {
+                                terminator = 2;
+                            }
+                        }
+                        else if (!lastWindow) {
+                            // can't tell if a "\n" follows the "\r"
+                            terminator = -1;
+                        }
+                    }
+                }
+                else if (!lastWindow) {
+                    terminator = -1;
+                }
+
+                if (terminator < 0) {
+                    // the line runs past the window, re-map from its start
+                    if (from == 0) {
+                        this.growWindow();
+                    }
+
+                    this.map(this.next);
+                    continue;
+                }
+
+                this.line.set(
+                    this.window,
+                    from,
+                    i - from,
+                    this.windowStart + from,
+                    terminator
+                );
+                this.next = this.windowStart + i + terminator;
+                this.hasLine = true;
+                return;
+            }
+        }
+
+        private void map(final long position) {
+            long size = Math.min(this.windowSize, this.end - position);
+
+            try {
+                this.window = this.channel.map(
+                    FileChannel.MapMode.READ_ONLY,
+                    position,
+                    size
+                );
+                this.windowStart = position;
+            }
+            catch (IOException e) {
+                this.close();
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void growWindow() {
+            if (this.windowSize == Integer.MAX_VALUE) {
+                this.close();
+                throw new IllegalStateException(
+                    "Line exceeds the maximum mappable size."
+                );
+            }
+
+            this.windowSize = (int) Math.min(
+                Integer.MAX_VALUE,
+                this.windowSize * 2L
+            );
+        }
+
+        public void close() {
+            FileChannel temp = this.channel;
+            this.channel = null;
+            this.window = null;
+            this.hasLine = false;
+            if (temp != null) {
+                try {
+                    temp.close();
+                }
+                catch (IOException e) {
+                    // we tried, perhaps some logging is needed here
+                    return;
+                }
+            }
+        }
+    }
+}
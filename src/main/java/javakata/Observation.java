@@ -0,0 +1,102 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+// A problem found while loading data: what it is, where it was found and
+// the record it was found in. The message is only formatted on request.
+public final class Observation {
+    public static final long UNKNOWN_OFFSET = -1;
+
+    private final ObservationCode code;
+    private final long lineNumber;
+    private final long byteOffset;
+    private final String record;
+
+    public Observation(final ObservationCode code,
+                       final long lineNumber,
+                       final long byteOffset,
+                       final CharSequence record) {
+        if (code == null) {
+            throw new IllegalArgumentException("code argument is null");
+        }
+
+        if (record == null) {
+            throw new IllegalArgumentException("record argument is null");
+        }
+
+        this.code = code;
+        this.lineNumber = lineNumber;
+        this.byteOffset = byteOffset;
+        this.record = record.toString();
+    }
+
+    public ObservationCode getCode() {
+        return this.code;
+    }
+
+    public Severity getSeverity() {
+        return this.code.getSeverity();
+    }
+
+    public long getLineNumber() {
+        return this.lineNumber;
+    }
+
+    // Position of the record's first byte in its file, or UNKNOWN_OFFSET
+    public long getByteOffset() {
+        return this.byteOffset;
+    }
+
+    public String getRecord() {
+        return this.record;
+    }
+
+    public String getMessage() {
+        return format(this.code, this.lineNumber, this.record);
+    }
+
+    public String toString() {
+        return this.getMessage();
+    }
+
+    // Formats an observation without creating one
+    public static String format(final ObservationCode code,
+                                final long lineNumber,
+                                final CharSequence record) {
+        long orgId = 0;
+        if (code == ObservationCode.ORG_DUPLICATE) {
+            RecordScanner scanner = new RecordScanner();
+            if (scanner.scanOrg(record)) {
+                orgId = scanner.getOrgId();
+            }
+        }
+
+        return String.format(
+            "%s (line: %d) - " + code.getTemplate(),
+            code.getSeverity(),
+            lineNumber,
+            record,
+            code.getDetail(orgId)
+        );
+    }
+}
@@ -0,0 +1,138 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+// Identifies each kind of problem that can be observed while loading data.
+// A code carries everything needed to describe the problem except the line
+// and the record it was found in, so no text has to be built until an
+// observation is actually reported.
+public enum ObservationCode {
+    ORG_MISMATCH(Text.ORG_MISMATCH, null),
+    ORG_OUT_OF_RANGE(Text.ORG_INVALID, Text.OUT_OF_RANGE),
+    ORG_INVALID_ID(
+        Text.ORG_INVALID,
+        "Org identifiers must be greater than or equal to one."
+    ),
+    ORG_INVALID_PARENT(
+        Text.ORG_INVALID,
+        "Parent org identifiers cannot be negative."
+    ),
+    ORG_DUPLICATE(Text.ORG_INVALID, "Duplicate organization detected. Id: "),
+
+    // found once every org is loaded; the record is the line the org was
+    // added from
+    ORG_UNKNOWN_PARENT(
+        Severity.WARNING,
+        Text.ORG_UNPLACED,
+        "Parent organization is not defined. The organization and those "
+      + "beneath it are left out of the report."
+    ),
+    ORG_PARENT_CYCLE(
+        Text.ORG_UNPLACED,
+        "Organization is beneath itself. The organizations in the cycle and "
+      + "those beneath them are left out of the report."
+    ),
+
+    USER_MISMATCH(Text.USER_MISMATCH, null),
+    USER_MISSING_VALUE(
+        Text.USER_INVALID,
+        "Record is missing a required numeric value."
+    ),
+    USER_OUT_OF_RANGE(Text.USER_INVALID, Text.OUT_OF_RANGE),
+    USER_NEGATIVE_FILES(
+        Text.USER_INVALID,
+        "Users cannot have a negative number of files."
+    ),
+    USER_NEGATIVE_BYTES(
+        Text.USER_INVALID,
+        "Users cannot have a negative number of bytes."
+    ),
+    USER_BYTES_WITHOUT_FILES(
+        Text.USER_INVALID,
+        "Users cannot have a non-zero number of bytes with zero files."
+    ),
+    USER_UNKNOWN_ORG(Text.USER_UNKNOWN_ORG, null);
+
+    private final Severity severity;
+    private final String template;
+    private final String detail;
+
+    ObservationCode(final String template, final String detail) {
+        this(Severity.ERROR, template, detail);
+    }
+
+    ObservationCode(final Severity severity,
+                    final String template,
+                    final String detail) {
+        this.severity = severity;
+        this.template = template;
+        this.detail = detail;
+    }
+
+    public Severity getSeverity() {
+        return this.severity;
+    }
+
+    // Describes the problem with a single record, or returns null if the
+    // code needs no further description. The org id is only used by codes
+    // that refer to a specific org.
+    public String getDetail(final long orgId) {
+        if (this == ORG_DUPLICATE) {
+            return this.detail + Long.toString(orgId);
+        }
+
+        return this.detail;
+    }
+
+    // The format of a report line: arguments are the severity, the line
+    // number, the record and the detail
+    String getTemplate() {
+        return this.template;
+    }
+
+    private static final class Text {
+        static final String ORG_MISMATCH =
+            "Organization record did not match expected format: '%3$s'";
+
+        static final String ORG_INVALID =
+            "Organization record data could not be interpreted: '%3$s'\n"
+          + "  Message: %4$s";
+
+        static final String ORG_UNPLACED =
+            "Organization could not be placed in the hierarchy: '%3$s'\n"
+          + "  Message: %4$s";
+
+        static final String USER_MISMATCH =
+            "User record did not match expected format: '%3$s'";
+
+        static final String USER_INVALID =
+            "User record data could not be interpreted: '%3$s'\n"
+          + "  Message: %4$s";
+
+        static final String USER_UNKNOWN_ORG =
+            "User record references unknown organization: '%3$s'\n";
+
+        static final String OUT_OF_RANGE =
+            "Record contains a numeric value that is out of range.";
+    }
+}
@@ -0,0 +1,64 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+// Counts observations by code, optionally passing each one on to another
+// sink. Counting allocates nothing, so it's cheap even for very dirty data.
+public final class ObservationCounter implements ObservationSink {
+    private final ObservationSink next;
+    private final long[] counts;
+    private long total;
+
+    public ObservationCounter() {
+        this(null);
+    }
+
+    public ObservationCounter(final ObservationSink next) {
+        this.next = next;
+        this.counts = new long[ObservationCode.values().length];
+    }
+
+    public void observe(final ObservationCode code,
+                        final long lineNumber,
+                        final long byteOffset,
+                        final CharSequence record) {
+        this.counts[code.ordinal()]++;
+        this.total++;
+
+        if (this.next != null) {
+            this.next.observe(code, lineNumber, byteOffset, record);
+        }
+    }
+
+    public long getCount(final ObservationCode code) {
+        if (code == null) {
+            throw new IllegalArgumentException("code argument is null");
+        }
+
+        return this.counts[code.ordinal()];
+    }
+
+    public long getTotal() {
+        return this.total;
+    }
+}
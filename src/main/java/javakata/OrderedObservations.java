@@ -0,0 +1,207 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+
+// Hands the observations of a file's chunks, found on several threads, to
+// a sink in file order. The first chunk that is not done reports straight
+// to the sink; a chunk ahead of it keeps its observations only until every
+// chunk before it is done, so the buffered observations are those of the
+// chunks scanned out of turn rather than of the whole file.
+//
+// Chunks number their lines from one, and their byte offsets are made
+// relative to the file with the chunk's start position. The sink is only
+// called under this object's lock, so it needs no locking of its own.
+final class OrderedObservations {
+
+    // Places a chunk whose start position is not known until every chunk
+    // before it is done, such as a run of a gzip file. Called under the
+    // lock, in file order, once the chunk is done itself; the placement
+    // reports any lines that lie between the chunk and the one before it
+    // and sets the chunk's start position, or returns false to leave the
+    // chunk out of the file.
+    interface Placement {
+        boolean place(int chunk, OrderedObservations observations);
+    }
+
+    private final ObservationSink sink;
+    private final Placement placement;
+
+    private final List<List<Observation>> pending;
+    private final long[] lineCounts;
+    private final long[] startPositions;
+    private final boolean[] done;
+
+    // the first chunk not yet reported in full, and whether it has been
+    // placed, so that it reports straight to the sink
+    private int head;
+    private boolean headPlaced;
+
+    // the lines before the head
+    private long lineOffset;
+
+    // Chunks whose byte offsets are already relative to the file
+    OrderedObservations(final ObservationSink sink, final int chunkCount) {
+        this(sink, chunkCount, null);
+    }
+
+    OrderedObservations(final ObservationSink sink,
+                        final int chunkCount,
+                        final Placement placement) {
+        if (sink == null) {
+            throw new IllegalArgumentException("sink argument is null");
+        }
+
+        if (chunkCount < 0) {
+            throw new IllegalArgumentException(
+                "Chunk count cannot be negative."
+            );
+        }
+
+        this.sink = sink;
+        this.placement = placement;
+        this.pending = new ArrayList<List<Observation>>(
+            Collections.<List<Observation>>nCopies(chunkCount, null)
+        );
+        this.lineCounts = new long[chunkCount];
+        this.startPositions = new long[chunkCount];
+        this.done = new boolean[chunkCount];
+        this.headPlaced = placement == null;
+    }
+
+    // A sink for the observations of one chunk
+    ObservationSink chunk(final int chunk) {
+        return (code, lineNumber, byteOffset, record) ->
+            this.observe(chunk, code, lineNumber, byteOffset, record);
+    }
+
+    synchronized void observe(final int chunk,
+                              final ObservationCode code,
+                              final long lineNumber,
+                              final long byteOffset,
+                              final CharSequence record) {
+        if (chunk == this.head && this.headPlaced) {
+            this.sink.observe(
+                code,
+                this.lineOffset + lineNumber,
+                this.startPositions[chunk] + byteOffset,
+                record
+            );
+            return;
+        }
+
+        List<Observation> observations = this.pending.get(chunk);
+        if (observations == null) {
+            observations = new ArrayList<Observation>();
+            this.pending.set(chunk, observations);
+        }
+
+        observations.add(
+            new Observation(code, lineNumber, byteOffset, record)
+        );
+    }
+
+    // Records that the chunk is done, reporting what it and the chunks
+    // after it kept once every chunk before it is done too
+    synchronized void finish(final int chunk, final long lineCount) {
+        this.lineCounts[chunk] = lineCount;
+        this.done[chunk] = true;
+
+        while (this.head < this.done.length) {
+            int next = this.head;
+
+            if (!this.headPlaced) {
+                if (this.placement != null) {
+                    if (!this.done[next]) {
+                        return;
+                    }
+
+                    if (!this.placement.place(next, this)) {
+                        this.pending.set(next, null);
+                        this.head++;
+                        continue;
+                    }
+                }
+
+                this.headPlaced = true;
+                this.flush(next);
+            }
+
+            if (!this.done[next]) {
+                return;
+            }
+
+            this.lineOffset += this.lineCounts[next];
+            this.head++;
+            this.headPlaced = false;
+        }
+    }
+
+    // For a placement: sets the position of the chunk's first byte
+    void setStartPosition(final int chunk, final long startPosition) {
+        this.startPositions[chunk] = startPosition;
+    }
+
+    // For a placement: reports a line that lies before the chunk being
+    // placed, numbered from the end of the chunk before it, with a byte
+    // offset relative to the file
+    void report(final ObservationCode code,
+                final long lineNumber,
+                final long byteOffset,
+                final CharSequence record) {
+        this.sink.observe(
+            code,
+            this.lineOffset + lineNumber,
+            byteOffset,
+            record
+        );
+    }
+
+    // For a placement: counts lines that lie before the chunk being placed
+    void skipLines(final long count) {
+        this.lineOffset += count;
+    }
+
+    // The number of lines of the chunks reported so far
+    synchronized long getLineCount() {
+        return this.lineOffset;
+    }
+
+    private void flush(final int chunk) {
+        List<Observation> observations = this.pending.get(chunk);
+        if (observations == null) {
+            return;
+        }
+
+        this.pending.set(chunk, null);
+        for (Observation o : observations) {
+            this.sink.observe(
+                o.getCode(),
+                this.lineOffset + o.getLineNumber(),
+                this.startPositions[chunk] + o.getByteOffset(),
+                o.getRecord()
+            );
+        }
+    }
+}
@@ -0,0 +1,63 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+// The target DataLoader loads org and user records into. Implementations
+// decide how the resulting OrgCollection is stored.
+interface OrgCollectionBuilder {
+    int NO_PARENT = -1;
+
+    // Receives the orgs that cannot be placed in the hierarchy
+    interface UnplacedOrgObserver {
+        void unplaced(ObservationCode code, int orgId, int parentOrgId);
+    }
+
+    // Throws IllegalArgumentException for invalid or duplicate orgs
+    void addOrg(int orgId, int parentOrgId);
+
+    // Adds the org if it is valid. Returns null if it was added, or the
+    // reason it was rejected, without throwing.
+    ObservationCode tryAddOrg(int orgId, int parentOrgId);
+
+    boolean containsOrg(int orgId);
+
+    // Adds pre-validated user data to an org. Returns false, without
+    // adding anything, if the org does not exist.
+    boolean addUsers(int orgId, int users, int files, long bytes);
+
+    // Called once every org has been added. Links the orgs that were added
+    // before their parents, if that has not been done already, and reports
+    // the orgs whose parent was never added (ORG_UNKNOWN_PARENT) and, for
+    // each parent cycle, the orgs in it that were added before their
+    // parents (ORG_PARENT_CYCLE).
+    void resolveParents(UnplacedOrgObserver observer);
+
+    OrgCollection build();
+
+    // Called after build. Computes the totals of every org on that many
+    // threads, so that reading the collection never has to. Builders whose
+    // collections have their totals by the time they are built do nothing.
+    default void computeTotals(int parallelism) {
+        // totals are computed by build
+    }
+}
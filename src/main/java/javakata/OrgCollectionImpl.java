@@ -24,14 +24,32 @@ package javakata;
 
 import java.util.*;
 
-final class OrgCollectionImpl implements OrgCollection {
-    private final HashMap<Integer, OrgImpl> orgs;
+final class OrgCollectionImpl
+    implements OrgCollection, OrgCollectionBuilder {
+
+    private final IntObjectMap<OrgImpl> orgs;
     private final LinkedList<OrgImpl> rootOrgs;
 
-    private Map<Integer, List<OrgImpl>> toResolve;
+    // Orgs added before their parents, as (child, parent) identifier pairs
+    // in the order they were added. They are linked in one pass once every
+    // org has been added, or on the first query.
+    private int[] pendingChildren;
+    private int[] pendingParents;
+    private int pendingCount;
+
+    // orgs found in or beneath a parent cycle
+    private int unplacedCount;
+
+    // Pre-order (Euler tour) index of every tree in the collection, so that
+    // each org's subtree is the contiguous range of treeOrder recorded on
+    // the org. Built by build(); a read that finds the structure changed
+    // since rebuilds it under the collection's lock, and the volatile flag
+    // publishes the index (and the ranges on the orgs) to other readers.
+    private volatile Org[] treeOrder;
+    private volatile boolean treeOrderStale = true;
 
     public OrgCollectionImpl() {
-        this.orgs = new HashMap<Integer, OrgImpl>();
+        this.orgs = new IntObjectMap<OrgImpl>();
         this.rootOrgs = new LinkedList<OrgImpl>();
     }
 
@@ -40,100 +58,423 @@ final class OrgCollectionImpl implements OrgCollection {
             throw new IllegalArgumentException("org argument is null");
         }
 
-        // Step 1: Verify org is not duplicate and ensure correct org exists
-        //         in the hashmap
+        ObservationCode error =
+            this.link(org, parentOrgId != null ? parentOrgId : NO_PARENT);
 
-        // just put the org in the collection and optimize for
-        // the case when there is usually no existing org
-        OrgImpl orig = this.orgs.put(org.getId(), org);
-        if (orig != null && orig != org) {
-            // should be edge case, put original org back in hashmap
-            this.orgs.put(org.getId(), orig);
+        if (error != null) {
+            throw new IllegalArgumentException(error.getDetail(org.getId()));
+        }
+    }
+
+    public void addOrg(final int orgId, final int parentOrgId) {
+        ObservationCode error = this.tryAddOrg(orgId, parentOrgId);
+        if (error != null) {
+            throw new IllegalArgumentException(error.getDetail(orgId));
+        }
+    }
+
+    public ObservationCode tryAddOrg(final int orgId, final int parentOrgId) {
+        if (orgId < 1) {
+            return ObservationCode.ORG_INVALID_ID;
+        }
+
+        if (this.orgs.containsKey(orgId)) {
+            return ObservationCode.ORG_DUPLICATE;
+        }
+
+        return this.link(new OrgImpl(orgId), parentOrgId);
+    }
 
-            throw new IllegalArgumentException(
-                "Duplicate organization detected. Id: "
-              + Integer.toString(org.getId())
-            );
+    public boolean containsOrg(final int orgId) {
+        return this.orgs.containsKey(orgId);
+    }
+
+    public boolean addUsers(final int orgId,
+                            final int users,
+                            final int files,
+                            final long bytes) {
+        OrgImpl org = this.orgs.get(orgId);
+        if (org == null) {
+            return false;
         }
 
-        // Step 2: Look up any children associated with org and
-        //         add the children to the org
-        List<OrgImpl> deferred = null;
-        if (this.toResolve != null) {
-            deferred = this.toResolve.get(org.getId());
+        org.addUsers(users, files, bytes);
+        return true;
+    }
+
+    public OrgCollection build() {
+        this.ensureTreeOrder();
+        return this;
+    }
+
+    // Resolves any pending parents and rebuilds the pre-order index if the
+    // structure changed since it was last built. Once built, reads find the
+    // flag clear and never touch the collection's state.
+    private void ensureTreeOrder() {
+        if (!this.treeOrderStale) {
+            return;
         }
 
-        if (deferred != null) {
-            for (OrgImpl child : deferred) {
-                org.addChildOrg(child);
+        synchronized (this) {
+            if (this.treeOrderStale) {
+                this.resolveParents(null);
+                this.buildTreeOrder(this.findTops());
             }
+        }
+    }
 
-            this.toResolve.remove(org.getId());
+    private ObservationCode link(final OrgImpl org, final int parentOrgId) {
+        this.treeOrderStale = true;
+
+        // Step 1: Verify org is not duplicate and ensure correct org exists
+        //         in the map
+
+        // putIfAbsent leaves the original org in place, so there is nothing
+        // to undo when a duplicate is detected
+        OrgImpl orig = this.orgs.putIfAbsent(org.getId(), org);
+        if (orig != null && orig != org) {
+            return ObservationCode.ORG_DUPLICATE;
         }
 
-        // Step 3: Essure this org is associated with its parent or
-        //         register it for future resolution
+        // Step 2: Essure this org is associated with its parent or
+        //         register it for resolution once every org is added
         OrgImpl parentOrg = null;
-        if (parentOrgId != null) {
+        if (parentOrgId != NO_PARENT) {
             parentOrg = this.orgs.get(parentOrgId);
         }
 
-        if (parentOrg != null) {
+        // an org that is its own parent is left for resolution, where
+        // the cycle is found
+        if (parentOrg != null && parentOrg != org) {
             parentOrg.addChildOrg(org);
         }
-        else if (parentOrgId != null) {
-            this.addForResolution(org, parentOrgId);
+        else if (parentOrgId != NO_PARENT) {
+            this.addForResolution(org.getId(), parentOrgId);
         }
         else {
             this.rootOrgs.add(org);
         }
+
+        return null;
+    }
+
+    private void addForResolution(final int orgId, final int parentOrgId) {
+        if (this.pendingChildren == null) {
+            this.pendingChildren = new int[16];
+            this.pendingParents = new int[16];
+        }
+        else if (this.pendingCount == this.pendingChildren.length) {
+            int capacity = this.pendingCount * 2;
+            this.pendingChildren =
+                Arrays.copyOf(this.pendingChildren, capacity);
+            this.pendingParents =
+                Arrays.copyOf(this.pendingParents, capacity);
+        }
+
+        this.pendingChildren[this.pendingCount] = orgId;
+        this.pendingParents[this.pendingCount] = parentOrgId;
+        this.pendingCount++;
+    }
+
+    public void resolveParents(final UnplacedOrgObserver observer) {
+        int count = this.pendingCount;
+        if (count == 0) {
+            return;
+        }
+
+        int[] children = this.pendingChildren;
+        int[] parents = this.pendingParents;
+
+        this.pendingChildren = null;
+        this.pendingParents = null;
+        this.pendingCount = 0;
+        this.treeOrderStale = true;
+
+        // sorting by parent, then by the order the children were added,
+        // groups each parent's children together in their original order
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = ((long) parents[i] << 32) | i;
+        }
+
+        Arrays.sort(order);
+
+        List<OrgImpl> group = new ArrayList<OrgImpl>();
+        for (int start = 0, end; start < count; start = end) {
+            int parentId = (int) (order[start] >>> 32);
+            OrgImpl parent = parentId > 0 ? this.orgs.get(parentId) : null;
+
+            group.clear();
+            for (end = start;
+                 end < count && (int) (order[end] >>> 32) == parentId;
+                 end++) {
+
+                int child = children[(int) order[end]];
+                if (parent != null) {
+                    group.add(this.orgs.get(child));
+                }
+                else if (observer != null) {
+                    observer.unplaced(
+                        ObservationCode.ORG_UNKNOWN_PARENT,
+                        child,
+                        parentId
+                    );
+                }
+            }
+
+            if (parent != null) {
+                parent.addDeferredChildren(group);
+            }
+        }
+
+        if (this.hasUnreachableOrgs()) {
+            this.unplaceCycles(children, count, observer);
+        }
     }
 
-    private void addForResolution(final OrgImpl org,
-                                  final Integer parentOrgId) {
-        if (this.toResolve == null) {
-            this.toResolve = new HashMap<Integer, List<OrgImpl>>();
+    // Orgs that cannot be reached from the top of a tree (a root, or an
+    // org whose parent was never defined) are in or beneath a cycle
+    private boolean hasUnreachableOrgs() {
+        final int[] reached = new int[1];
+        final OrgTraversal<OrgImpl> traversal =
+            new OrgTraversal<OrgImpl>(OrgImpl::getChildren);
+
+        final OrgTraversal.Visitor<OrgImpl> counter =
+            new OrgTraversal.Visitor<OrgImpl>() {
+                public boolean preVisit(final OrgImpl org, final int depth) {
+                    reached[0]++;
+                    return true;
+                }
+
+                public void postVisit(final OrgImpl org, final int depth) {
+                    // only orgs are counted
+                }
+            };
+
+        for (OrgImpl top : this.findTops()) {
+            traversal.traverse(top, counter);
+        }
+
+        return reached[0] + this.unplacedCount < this.orgs.size();
+    }
+
+    // Every parent cycle contains an org that was added before its parent,
+    // since an org linked as it is added has an older parent. So walking
+    // up from each of those finds every cycle; an org reached in an
+    // earlier walk is not walked again.
+    //
+    // Once every cycle is found (and reported, if there is an observer),
+    // its orgs are detached from each other, so that no walk down the
+    // hierarchy can go round a cycle, and they and the orgs beneath them
+    // are left out of every tree.
+    private void unplaceCycles(final int[] children,
+                               final int count,
+                               final UnplacedOrgObserver observer) {
+        int[] sorted = Arrays.copyOf(children, count);
+        Arrays.sort(sorted);
+
+        List<OrgImpl> members = new ArrayList<OrgImpl>();
+        IntIntMap walks = new IntIntMap();
+        for (int i = 0; i < count; i++) {
+            int walk = i + 1;
+
+            for (OrgImpl org = this.orgs.get(children[i]);
+                 org != null;
+                 org = org.getParent()) {
+
+                int previous = walks.putIfAbsent(org.getId(), walk);
+                if (previous == walk) {
+                    collectCycle(org, sorted, members, observer);
+                }
+
+                if (previous != IntIntMap.NO_VALUE) {
+                    break;
+                }
+            }
+        }
+
+        for (OrgImpl member : members) {
+            member.detachFromParent();
         }
 
-        List<OrgImpl> list = this.toResolve.get(parentOrgId);
-        if (list == null) {
-            list = new LinkedList<OrgImpl>();
-            this.toResolve.put(parentOrgId, list);
+        OrgTraversal<OrgImpl> traversal =
+            new OrgTraversal<OrgImpl>(OrgImpl::getChildren);
+
+        OrgTraversal.Visitor<OrgImpl> unplace =
+            new OrgTraversal.Visitor<OrgImpl>() {
+                public boolean preVisit(final OrgImpl org, final int depth) {
+                    if (org.isUnplaced()) {
+                        return false;
+                    }
+
+                    org.setUnplaced();
+                    OrgCollectionImpl.this.unplacedCount++;
+                    return true;
+                }
+
+                public void postVisit(final OrgImpl org, final int depth) {
+                    // orgs are unplaced on the way down
+                }
+            };
+
+        for (OrgImpl member : members) {
+            traversal.traverse(member, unplace);
         }
+    }
+
+    private static void collectCycle(final OrgImpl start,
+                                     final int[] sorted,
+                                     final List<OrgImpl> members,
+                                     final UnplacedOrgObserver observer) {
+        OrgImpl org = start;
+        do {
+            OrgImpl parent = org.getParent();
+            if (observer != null
+                && Arrays.binarySearch(sorted, org.getId()) >= 0) {
+                observer.unplaced(
+                    ObservationCode.ORG_PARENT_CYCLE,
+                    org.getId(),
+                    parent.getId()
+                );
+            }
+
+            members.add(org);
+            org = parent;
+        }
+        while (org != start);
+    }
+
+    // Computes the totals of every org in a tree on that many threads, so
+    // that they don't have to be computed when first read and reading the
+    // collection never changes it. Orgs in parent cycles already hold their
+    // own totals.
+    public void computeTotals(final int parallelism) {
+        this.ensureTreeOrder();
 
-        list.add(org);
+        List<OrgImpl> tops = this.findTops();
+        if (parallelism > 1) {
+            ParallelRollup.computeTotals(tops, parallelism);
+        }
+        else {
+            for (OrgImpl top : tops) {
+                top.ensureTotals();
+            }
+        }
     }
 
     public Iterable<Org> getRootOrgs() {
+        this.ensureTreeOrder();
         return (Iterable) this.rootOrgs;
     }
 
     public OrgImpl getOrg(final int orgId) {
+        this.ensureTreeOrder();
         return this.orgs.get(orgId);
     }
 
     public List<Org> getOrgTree(final int orgId, final boolean inclusive) {
-        List<Org> list = new LinkedList<Org>();
+        this.ensureTreeOrder();
 
         OrgImpl org = this.orgs.get(orgId);
         if (org == null) {
-            return list;
+            return Collections.emptyList();
         }
 
-        if (inclusive) {
-            list.add(org);
+        Org[] order = this.treeOrder;
+        int start = org.getTreeStart();
+        if (start < 0 || start >= order.length || order[start] != org) {
+            return walkOrgTree(org, inclusive);
         }
 
-        this.addChildren(org, list);
-        return list;
+        return Collections.unmodifiableList(
+            Arrays.asList(order).subList(
+                inclusive ? start : start + 1,
+                org.getTreeEnd()
+            )
+        );
+    }
+
+    // Numbers every org reachable from the top of a tree (a root, or an org
+    // whose parent was never defined) in depth-first pre-order.
+    private void buildTreeOrder(final List<OrgImpl> tops) {
+        TreeOrderVisitor visitor = new TreeOrderVisitor(this.orgs.size());
+        OrgTraversal<OrgImpl> traversal =
+            new OrgTraversal<OrgImpl>(OrgImpl::getChildren);
+
+        for (OrgImpl top : tops) {
+            traversal.traverse(top, visitor);
+        }
+
+        this.treeOrder = Arrays.copyOf(visitor.order, visitor.count);
+        this.treeOrderStale = false;
+    }
+
+    // The top of every tree: the roots, and the orgs whose parent was
+    // never defined
+    private List<OrgImpl> findTops() {
+        final List<OrgImpl> tops = new ArrayList<OrgImpl>();
+        this.orgs.forEachValue(org -> {
+            if (org.getParent() == null && !org.isUnplaced()) {
+                tops.add(org);
+            }
+        });
+
+        return tops;
     }
 
-    private void addChildren(final Org org, final List<Org> list) {
-        List<Org> children = org.getChildOrgs();
+    // Orgs in or beneath a parent cycle are not part of any tree, so they
+    // are walked directly in pre-order. Each org is visited at most once,
+    // so the walk stops where a cycle closes.
+    private static List<Org> walkOrgTree(final OrgImpl org,
+                                         final boolean inclusive) {
+        final Set<OrgImpl> visited =
+            Collections.newSetFromMap(new IdentityHashMap<OrgImpl, Boolean>());
+        final List<Org> tree = new ArrayList<Org>();
+
+        new OrgTraversal<OrgImpl>(OrgImpl::getChildren).traverse(
+            org,
+            new OrgTraversal.Visitor<OrgImpl>() {
+                public boolean preVisit(final OrgImpl current,
+                                        final int depth) {
+                    if (!visited.add(current)) {
+                        return false;
+                    }
+
+                    if (depth > 0 || inclusive) {
+                        tree.add(current);
+                    }
+
+                    return true;
+                }
+
+                public void postVisit(final OrgImpl current,
+                                      final int depth) {
+                    // nothing to do once the subtree has been walked
+                }
+            }
+        );
+
+        return tree;
+    }
+
+    private static final class TreeOrderVisitor
+        implements OrgTraversal.Visitor<OrgImpl> {
+
+        private final Org[] order;
+        private int count;
+
+        TreeOrderVisitor(final int capacity) {
+            this.order = new Org[capacity];
+        }
+
+        public boolean preVisit(final OrgImpl org, final int depth) {
+            org.setTreeRange(this.count, -1);
+            this.order[this.count++] = org;
+            return true;
+        }
 
-        for (Org child : children) {
-            list.add(child);
-            this.addChildren(child, list);
+        public void postVisit(final OrgImpl org, final int depth) {
+            org.setTreeRange(org.getTreeStart(), this.count);
         }
     }
 }
@@ -25,13 +25,48 @@ package javakata;
 import java.util.*;
 
 final class OrgImpl implements Org {
+    // Totals are recomputed on whichever thread reads them first
+    private static final ThreadLocal<OrgTraversal<OrgImpl>> TRAVERSAL =
+        ThreadLocal.withInitial(
+            () -> new OrgTraversal<OrgImpl>(OrgImpl::getChildren)
+        );
+
+    // Descends into dirty orgs only and recomputes them bottom-up
+    private static final OrgTraversal.Visitor<OrgImpl> RECOMPUTE =
+        new OrgTraversal.Visitor<OrgImpl>() {
+            public boolean preVisit(final OrgImpl org, final int depth) {
+                return org.dirty;
+            }
+
+            public void postVisit(final OrgImpl org, final int depth) {
+                org.recomputeTotals();
+            }
+        };
+
     private final int id;
-    private final LinkedList<OrgImpl> children;
+    private final ArrayList<OrgImpl> children;
 
     private int users;
     private int files;
     private long bytes;
 
+    // Subtree totals are cached. A dirty org has stale totals and will
+    // recompute them on demand; every ancestor of a dirty org is dirty too,
+    // so a clean org's totals (and those of its whole subtree) are exact.
+    private OrgImpl parent;
+    private boolean dirty;
+    private int totalUsers;
+    private int totalFiles;
+    private long totalBytes;
+
+    // Orgs in or beneath a parent cycle are not part of any tree; their
+    // totals only reflect their own data, and are never dirty
+    private boolean unplaced;
+
+    // Range of this org's subtree in its collection's pre-order index
+    private int treeStart = -1;
+    private int treeEnd = -1;
+
     public OrgImpl(final int id) {
         if (id < 1) {
             throw new IllegalArgumentException(
@@ -40,32 +75,54 @@ final class OrgImpl implements Org {
         }
 
         this.id = id;
-        this.children = new LinkedList<OrgImpl>();
+        this.children = new ArrayList<OrgImpl>(0);
     }
 
     public void addUser(final int files, final long bytes) {
-        if (files < 0) {
+        ObservationCode error = checkUser(files, bytes);
+        if (error != null) {
+            throw new IllegalArgumentException(error.getDetail(this.id));
+        }
+
+        // zero-length files are permitted
+        this.users++;
+        this.files += files;
+        this.bytes += bytes;
+
+        this.addToTotals(1, files, bytes);
+    }
+
+    // Adds the pre-validated, pre-aggregated data of one or more users
+    public void addUsers(final int users, final int files, final long bytes) {
+        if (users < 0) {
             throw new IllegalArgumentException(
-                "Users cannot have a negative number of files."
+                "Cannot add a negative number of users."
             );
         }
 
+        this.users += users;
+        this.files += files;
+        this.bytes += bytes;
+
+        this.addToTotals(users, files, bytes);
+    }
+
+    // Returns why the user data is invalid, or null if the data is valid.
+    // Allows callers to validate without exceptions.
+    static ObservationCode checkUser(final int files, final long bytes) {
+        if (files < 0) {
+            return ObservationCode.USER_NEGATIVE_FILES;
+        }
+
         if (bytes < 0) {
-            throw new IllegalArgumentException(
-                "Users cannot have a negative number of bytes."
-            );
+            return ObservationCode.USER_NEGATIVE_BYTES;
         }
 
         if (files == 0 && bytes > 0) {
-            throw new IllegalArgumentException(
-                "Users cannot have a non-zero number of bytes with zero files."
-            );
+            return ObservationCode.USER_BYTES_WITHOUT_FILES;
         }
 
-        // zero-length files are permitted
-        this.users++;
-        this.files += files;
-        this.bytes += bytes;
+        return null;
     }
 
     public void addChildOrg(final OrgImpl child) {
@@ -73,7 +130,78 @@ final class OrgImpl implements Org {
             throw new IllegalArgumentException("child argument is null");
         }
 
+        if (child.parent != null) {
+            throw new IllegalArgumentException(
+                "Child organization already has a parent. Id: "
+              + Integer.toString(child.getId())
+            );
+        }
+
+        child.parent = this;
         this.children.add(child);
+        this.markDirty();
+    }
+
+    // Adds children whose records came before this org's. They go ahead
+    // of the children added since, as if each had been added along with
+    // this org.
+    void addDeferredChildren(final List<OrgImpl> deferred) {
+        for (OrgImpl child : deferred) {
+            if (child.parent != null) {
+                throw new IllegalArgumentException(
+                    "Child organization already has a parent. Id: "
+                  + Integer.toString(child.getId())
+                );
+            }
+
+            child.parent = this;
+        }
+
+        this.children.addAll(0, deferred);
+        this.markDirty();
+    }
+
+    int getTreeStart() {
+        return this.treeStart;
+    }
+
+    int getTreeEnd() {
+        return this.treeEnd;
+    }
+
+    void setTreeRange(final int start, final int end) {
+        this.treeStart = start;
+        this.treeEnd = end;
+    }
+
+    OrgImpl getParent() {
+        return this.parent;
+    }
+
+    boolean isUnplaced() {
+        return this.unplaced;
+    }
+
+    // Takes this org out of its parent's children, breaking the parent
+    // cycle it is part of
+    void detachFromParent() {
+        if (this.parent != null) {
+            this.parent.children.remove(this);
+            this.parent = null;
+        }
+    }
+
+    // Leaves this org out of every tree, with its own data as its totals
+    void setUnplaced() {
+        this.unplaced = true;
+        this.dirty = false;
+        this.totalUsers = this.users;
+        this.totalFiles = this.files;
+        this.totalBytes = this.bytes;
+    }
+
+    List<OrgImpl> getChildren() {
+        return this.children;
     }
 
     public int getId() {
@@ -97,32 +225,79 @@ final class OrgImpl implements Org {
     }
 
     public int getTotalNumUsers() {
-        int sum = this.getNumUsers();
+        this.ensureTotals();
+        return this.totalUsers;
+    }
 
-        for (OrgImpl child : this.children) {
-            sum += child.getTotalNumUsers();
-        }
+    public int getTotalNumFiles() {
+        this.ensureTotals();
+        return this.totalFiles;
+    }
 
-        return sum;
+    public long getTotalNumBytes() {
+        this.ensureTotals();
+        return this.totalBytes;
     }
 
-    public int getTotalNumFiles() {
-        int sum = this.getNumFiles();
+    // Applies a change in this org's own data to the cached totals of this
+    // org and its ancestors. Propagation stops at the first dirty org,
+    // since it (and everything above it) will be recomputed anyway. During
+    // a bulk load most orgs are dirty, so this is usually O(1). An
+    // unplaced org's totals are its own, so nothing above it changes.
+    private void addToTotals(final int deltaUsers,
+                             final int deltaFiles,
+                             final long deltaBytes) {
+        OrgImpl org = this;
+        while (org != null && !org.dirty) {
+            org.totalUsers += deltaUsers;
+            org.totalFiles += deltaFiles;
+            org.totalBytes += deltaBytes;
+
+            if (org.unplaced) {
+                break;
+            }
 
-        for (OrgImpl child : this.children) {
-            sum += child.getTotalNumFiles();
+            org = org.parent;
         }
+    }
 
-        return sum;
+    private void markDirty() {
+        OrgImpl org = this;
+        while (org != null && !org.dirty && !org.unplaced) {
+            org.dirty = true;
+            org = org.parent;
+        }
     }
 
-    public long getTotalNumBytes() {
-        long sum = this.getNumBytes();
+    boolean isDirty() {
+        return this.dirty;
+    }
+
+    // Recomputes the totals of this org and every dirty org beneath it in
+    // a single post-order pass; clean subtrees are not revisited.
+    void ensureTotals() {
+        if (this.dirty) {
+            TRAVERSAL.get().traverse(this, RECOMPUTE);
+        }
+    }
+
+    // Every child is clean by the time its parent is recomputed
+    void recomputeTotals() {
+        int sumUsers = this.users;
+        int sumFiles = this.files;
+        long sumBytes = this.bytes;
+
+        for (int i = 0; i < this.children.size(); i++) {
+            OrgImpl child = this.children.get(i);
 
-        for (OrgImpl child : this.children) {
-            sum += child.getTotalNumBytes();
+            sumUsers += child.totalUsers;
+            sumFiles += child.totalFiles;
+            sumBytes += child.totalBytes;
         }
 
-        return sum;
+        this.totalUsers = sumUsers;
+        this.totalFiles = sumFiles;
+        this.totalBytes = sumBytes;
+        this.dirty = false;
     }
 }
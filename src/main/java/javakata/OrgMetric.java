@@ -0,0 +1,77 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+// What orgs can be ranked by: the totals of their subtrees, or their
+// own (direct) data, which is what their totals don't owe to their
+// children
+enum OrgMetric {
+    TOTAL_USERS("totalUsers", true),
+    TOTAL_FILES("totalFiles", true),
+    TOTAL_BYTES("totalBytes", true),
+    USERS("users", false),
+    FILES("files", false),
+    BYTES("bytes", false);
+
+    private final String key;
+    private final boolean total;
+
+    OrgMetric(final String key, final boolean total) {
+        this.key = key;
+        this.total = total;
+    }
+
+    String getKey() {
+        return this.key;
+    }
+
+    boolean isTotal() {
+        return this.total;
+    }
+
+    // Returns the metric with the key, or null if there is none
+    static OrgMetric forKey(final String key) {
+        for (OrgMetric metric : values()) {
+            if (metric.key.equals(key)) {
+                return metric;
+            }
+        }
+
+        return null;
+    }
+
+    // The org's total of what the metric measures, even for a direct
+    // metric
+    long totalOf(final Org org) {
+        switch (this) {
+            case TOTAL_USERS:
+            case USERS:
+                return org.getTotalNumUsers();
+            case TOTAL_FILES:
+            case FILES:
+                return org.getTotalNumFiles();
+            default:
+                return org.getTotalNumBytes();
+        }
+    }
+}
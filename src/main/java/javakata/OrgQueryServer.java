@@ -0,0 +1,489 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.sun.net.httpserver.*;
+
+// Serves a loaded OrgCollection over HTTP as compact JSON:
+//
+//   GET /orgs                       the root orgs
+//   GET /orgs/{id}                  one org
+//   GET /orgs/{id}/children         the children of an org
+//   GET /orgs/{id}/tree             an org and every org beneath it, in
+//                                   tree order; ?inclusive=false leaves
+//                                   out the org itself
+//   GET /orgs/top                   the orgs with the most of a metric;
+//                                   ?by={metric} (totalBytes by default),
+//                                   ?count={n} (10), ?under={id} ranks an
+//                                   org's subtree and ?depth={n} only the
+//                                   orgs n levels below it (or the roots)
+//
+// Each org is written as {"id":1,"totalNumUsers":1,"totalNumFiles":10,
+// "totalNumBytes":200}. Responses are encoded straight into a small byte
+// buffer; one that outgrows the buffer is sent with chunked encoding as it
+// is written, so a large subtree is never held in memory as JSON.
+//
+// The collection must be complete, with its totals computed, before it is
+// served, since requests only read it. It cannot change while it is served,
+// except for a VersionedOrgCollection, whose latest version is read once per
+// request.
+// Every response carries an ETag naming the collection (and version), and
+// a request whose If-None-Match matches it is answered with 304.
+//
+// Requests are handled on a virtual thread each when the JVM has them, and
+// on a cached thread pool otherwise.
+final class OrgQueryServer implements Closeable {
+    static final String CONTEXT = "/orgs";
+
+    private static final int BACKLOG = 1024;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final OrgCollection orgs;
+    private final String tag;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // the ranking of the collection (or version) last ranked
+    private volatile Ranked ranked;
+
+    public OrgQueryServer(final OrgCollection orgs,
+                          final InetSocketAddress address)
+        throws IOException {
+
+        if (orgs == null) {
+            throw new IllegalArgumentException("orgs argument is null");
+        }
+
+        if (address == null) {
+            throw new IllegalArgumentException("address argument is null");
+        }
+
+        this.orgs = orgs;
+
+        // tags from an earlier run of the server never match
+        this.tag = Long.toHexString(System.currentTimeMillis())
+            + Integer.toHexString(System.identityHashCode(orgs));
+
+        this.server = HttpServer.create(address, BACKLOG);
+        this.executor = newRequestExecutor();
+        this.server.setExecutor(this.executor);
+        this.server.createContext(CONTEXT, this::handle);
+    }
+
+    public void start() {
+        this.server.start();
+    }
+
+    // Returns the port the server listens on, which is useful when it was
+    // created with port zero
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    public void close() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    static ExecutorService newRequestExecutor() {
+        try {
+            Method factory =
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+
+            return (ExecutorService) factory.invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            // virtual threads need Java 21
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                sendError(exchange, 405, "Only GET is supported.");
+                return;
+            }
+
+            OrgCollection col = this.orgs;
+            String etag = this.tag;
+            if (col instanceof VersionedOrgCollection) {
+                VersionedOrgCollection.Version version =
+                    ((VersionedOrgCollection) col).snapshot();
+
+                col = version;
+                etag = etag + "." + Long.toString(version.getNumber());
+            }
+
+            etag = "\"" + etag + "\"";
+            this.route(exchange, col, etag);
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private void route(final HttpExchange exchange,
+                       final OrgCollection col,
+                       final String etag)
+        throws IOException {
+
+        String path = exchange.getRequestURI().getPath()
+            .substring(CONTEXT.length());
+
+        if (path.isEmpty() || path.equals("/")) {
+            if (!notModified(exchange, etag)) {
+                this.sendOrgs(exchange, etag, col.getRootOrgs());
+            }
+            return;
+        }
+
+        String[] segments = path.substring(1).split("/", -1);
+        if (segments.length == 1 && segments[0].equals("top")) {
+            this.sendTop(exchange, col, etag);
+            return;
+        }
+
+        int orgId = parseId(segments[0]);
+        Org org = orgId > 0 ? col.getOrg(orgId) : null;
+
+        if (org == null || segments.length > 2) {
+            sendError(exchange, 404, "No such organization.");
+            return;
+        }
+
+        String view = segments.length == 2 ? segments[1] : "";
+        if (!view.isEmpty()
+            && !view.equals("children")
+            && !view.equals("tree")) {
+            sendError(exchange, 404, "No such resource.");
+            return;
+        }
+
+        String inclusive = "true";
+        if (view.equals("tree")) {
+            inclusive = parseQuery(exchange.getRequestURI().getRawQuery())
+                .getOrDefault("inclusive", inclusive);
+
+            if (!inclusive.equals("true") && !inclusive.equals("false")) {
+                sendError(exchange, 400, "Invalid tree query.");
+                return;
+            }
+        }
+
+        if (notModified(exchange, etag)) {
+            return;
+        }
+
+        if (view.isEmpty()) {
+            JsonWriter writer = new JsonWriter(exchange, etag);
+            writer.writeOrg(org);
+            writer.finish();
+        }
+        else if (view.equals("children")) {
+            this.sendOrgs(exchange, etag, org.getChildOrgs());
+        }
+        else {
+            this.sendOrgs(
+                exchange,
+                etag,
+                col.getOrgTree(orgId, Boolean.parseBoolean(inclusive))
+            );
+        }
+    }
+
+    private void sendTop(final HttpExchange exchange,
+                         final OrgCollection col,
+                         final String etag)
+        throws IOException {
+
+        Map<String, String> query =
+            parseQuery(exchange.getRequestURI().getRawQuery());
+
+        OrgMetric metric = OrgMetric.forKey(
+            query.getOrDefault("by", OrgMetric.TOTAL_BYTES.getKey())
+        );
+        int count = parseCount(query.getOrDefault("count", "10"));
+        int under = query.containsKey("under")
+            ? parseId(query.get("under"))
+            : OrgRanking.ALL_ORGS;
+        int depth = query.containsKey("depth")
+            ? parseCount(query.get("depth"))
+            : OrgRanking.ANY_DEPTH;
+
+        if (metric == null
+            || count < 0
+            || under < 0
+            || (query.containsKey("depth") && depth < 0)) {
+            sendError(exchange, 400, "Invalid ranking query.");
+            return;
+        }
+
+        if (under != OrgRanking.ALL_ORGS && col.getOrg(under) == null) {
+            sendError(exchange, 404, "No such organization.");
+            return;
+        }
+
+        if (notModified(exchange, etag)) {
+            return;
+        }
+
+        this.sendOrgs(
+            exchange,
+            etag,
+            this.rankingOf(col).getTopOrgs(metric, count, under, depth)
+        );
+    }
+
+    // Ranks the collection, unless it was the last one ranked. Requests
+    // that race to rank a new version may each rank it.
+    private OrgRanking rankingOf(final OrgCollection col) {
+        Ranked current = this.ranked;
+        if (current != null && current.col == col) {
+            return current.ranking;
+        }
+
+        Ranked latest = new Ranked(col, new OrgRanking(col));
+        this.ranked = latest;
+        return latest.ranking;
+    }
+
+    private void sendOrgs(final HttpExchange exchange,
+                          final String etag,
+                          final Iterable<? extends Org> orgs)
+        throws IOException {
+
+        JsonWriter writer = new JsonWriter(exchange, etag);
+        writer.put((byte) '[');
+
+        boolean first = true;
+        for (Org org : orgs) {
+            if (!first) {
+                writer.put((byte) ',');
+            }
+
+            writer.writeOrg(org);
+            first = false;
+        }
+
+        writer.put((byte) ']');
+        writer.finish();
+    }
+
+    private static boolean notModified(final HttpExchange exchange,
+                                       final String etag)
+        throws IOException {
+
+        String match = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (match == null) {
+            return false;
+        }
+
+        for (String candidate : match.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.equals(etag) || trimmed.equals("*")) {
+                exchange.getResponseHeaders().set("ETag", etag);
+                exchange.sendResponseHeaders(304, -1);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static void sendError(final HttpExchange exchange,
+                                  final int status,
+                                  final String message)
+        throws IOException {
+
+        byte[] body = ("{\"error\":\"" + message + "\"}")
+            .getBytes(StandardCharsets.US_ASCII);
+
+        exchange.getResponseHeaders().set("Content-Type", JsonWriter.TYPE);
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    // Splits a raw query into its names and values; later values of a name
+    // replace earlier ones
+    private static Map<String, String> parseQuery(final String raw) {
+        Map<String, String> query = new HashMap<String, String>();
+        if (raw == null || raw.isEmpty()) {
+            return query;
+        }
+
+        for (String pair : raw.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                query.put(
+                    pair.substring(0, equals),
+                    pair.substring(equals + 1)
+                );
+            }
+        }
+
+        return query;
+    }
+
+    // Returns the count, or -1 if it is not a non-negative integer
+    private static int parseCount(final String value) {
+        try {
+            int parsed = Integer.parseInt(value);
+            return parsed >= 0 ? parsed : -1;
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Returns the identifier, or -1 if it is not a positive integer
+    private static int parseId(final String value) {
+        try {
+            int parsed = Integer.parseInt(value);
+            return parsed > 0 ? parsed : -1;
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Encodes a response body into a byte array. The headers are sent
+    // when the array first fills, with chunked encoding, or when the body
+    // is finished, with its length.
+    private static final class JsonWriter {
+        static final String TYPE = "application/json";
+
+        // the longest org: field names, punctuation and four numbers
+        private static final int MAX_ORG_LENGTH = 128;
+
+        private static final byte[] ID = ascii("{\"id\":");
+        private static final byte[] USERS = ascii(",\"totalNumUsers\":");
+        private static final byte[] FILES = ascii(",\"totalNumFiles\":");
+        private static final byte[] BYTES = ascii(",\"totalNumBytes\":");
+
+        private final HttpExchange exchange;
+        private final String etag;
+        private final byte[] buffer;
+
+        private int position;
+        private OutputStream body;
+
+        JsonWriter(final HttpExchange exchange, final String etag) {
+            this.exchange = exchange;
+            this.etag = etag;
+            this.buffer = new byte[BUFFER_SIZE];
+        }
+
+        void writeOrg(final Org org) throws IOException {
+            if (this.buffer.length - this.position < MAX_ORG_LENGTH) {
+                this.drain();
+            }
+
+            this.putBytes(ID);
+            this.putLong(org.getId());
+            this.putBytes(USERS);
+            this.putLong(org.getTotalNumUsers());
+            this.putBytes(FILES);
+            this.putLong(org.getTotalNumFiles());
+            this.putBytes(BYTES);
+            this.putLong(org.getTotalNumBytes());
+            this.buffer[this.position++] = '}';
+        }
+
+        void put(final byte value) throws IOException {
+            if (this.position == this.buffer.length) {
+                this.drain();
+            }
+
+            this.buffer[this.position++] = value;
+        }
+
+        void finish() throws IOException {
+            if (this.body == null) {
+                this.sendHeaders(this.position);
+            }
+
+            this.body.write(this.buffer, 0, this.position);
+            this.position = 0;
+            this.body.flush();
+        }
+
+        private void drain() throws IOException {
+            if (this.body == null) {
+                this.sendHeaders(0);
+            }
+
+            this.body.write(this.buffer, 0, this.position);
+            this.position = 0;
+        }
+
+        private void sendHeaders(final long length) throws IOException {
+            Headers headers = this.exchange.getResponseHeaders();
+            headers.set("Content-Type", TYPE);
+            headers.set("ETag", this.etag);
+
+            this.exchange.sendResponseHeaders(200, length);
+            this.body = this.exchange.getResponseBody();
+        }
+
+        private void putBytes(final byte[] bytes) {
+            System.arraycopy(
+                bytes, 0,
+                this.buffer, this.position,
+                bytes.length
+            );
+            this.position += bytes.length;
+        }
+
+        private void putLong(final long value) {
+            this.position = ReportWriter.putLong(
+                this.buffer,
+                this.position,
+                value
+            );
+        }
+
+        private static byte[] ascii(final String value) {
+            return value.getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    // A collection and its ranking
+    private static final class Ranked {
+        final OrgCollection col;
+        final OrgRanking ranking;
+
+        Ranked(final OrgCollection col, final OrgRanking ranking) {
+            this.col = col;
+            this.ranking = ranking;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+
+// Ranks the orgs of a collection, answering "which orgs have the most"
+// of a metric among all orgs, within a subtree, or at one depth of either.
+//
+// The orgs beneath the roots are laid out in pre-order, so that every
+// subtree is a contiguous range of positions, and again by depth, so that
+// the orgs of a subtree at a given depth are a contiguous range of their
+// level. For each metric, a segment tree over each layout gives the best
+// org of any range in logarithmic time. The best K orgs of a range are
+// found by taking the best org, splitting the range around it and
+// repeating with the best of the pieces, so a query costs O(K log N)
+// whatever the size of the range.
+//
+// The layouts are built when the ranking is created, and the trees for a
+// metric when it is first ranked by. Rankings reflect the collection as
+// it was when they were created. A ranking can be queried by several
+// threads at once.
+final class OrgRanking {
+    // Ranks every org beneath the roots
+    static final int ALL_ORGS = 0;
+
+    // Ranks orgs at every depth
+    static final int ANY_DEPTH = -1;
+
+    private final Org[] orgs;
+    private final int[] ids;
+    private final int[] parents;
+    private final int[] depths;
+    private final int[] ends;
+    private final IntIntMap positions;
+
+    // positions by depth, then in pre-order
+    private final int[] levelOrder;
+    private final int[] levelStarts;
+
+    private final Index[] indexes;
+
+    public OrgRanking(final OrgCollection col) {
+        if (col == null) {
+            throw new IllegalArgumentException("col argument is null");
+        }
+
+        Layout layout = new Layout();
+        OrgTraversal<Org> traversal =
+            new OrgTraversal<Org>(Org::getChildOrgs);
+
+        for (Org root : col.getRootOrgs()) {
+            traversal.traverse(root, layout);
+        }
+
+        int count = layout.count;
+        this.orgs = Arrays.copyOf(layout.orgs, count);
+        this.parents = Arrays.copyOf(layout.parents, count);
+        this.depths = Arrays.copyOf(layout.depths, count);
+        this.ends = Arrays.copyOf(layout.ends, count);
+        this.ids = new int[count];
+        this.positions = new IntIntMap();
+
+        int maxDepth = -1;
+        for (int p = 0; p < count; p++) {
+            this.ids[p] = this.orgs[p].getId();
+            this.positions.put(this.ids[p], p);
+            maxDepth = Math.max(maxDepth, this.depths[p]);
+        }
+
+        // a counting sort by depth keeps each level in pre-order
+        this.levelStarts = new int[maxDepth + 2];
+        for (int p = 0; p < count; p++) {
+            this.levelStarts[this.depths[p] + 1]++;
+        }
+
+        for (int d = 0; d <= maxDepth; d++) {
+            this.levelStarts[d + 1] += this.levelStarts[d];
+        }
+
+        this.levelOrder = new int[count];
+        int[] filled = Arrays.copyOf(this.levelStarts, maxDepth + 1);
+        for (int p = 0; p < count; p++) {
+            this.levelOrder[filled[this.depths[p]]++] = p;
+        }
+
+        this.indexes = new Index[OrgMetric.values().length];
+    }
+
+    // The number of orgs that can be ranked
+    int size() {
+        return this.orgs.length;
+    }
+
+    // Returns up to `count` orgs with the most of the metric, most first;
+    // orgs with the same value are ordered by identifier
+    public List<Org> getTopOrgs(final OrgMetric metric, final int count) {
+        return this.getTopOrgs(metric, count, ALL_ORGS, ANY_DEPTH);
+    }
+
+    // Ranks the org and the orgs beneath it, or every org if the org is
+    // ALL_ORGS. A depth other than ANY_DEPTH ranks only the orgs that far
+    // below the org (zero being the org itself), or below the roots. An
+    // org that is not beneath a root has no orgs to rank.
+    public List<Org> getTopOrgs(final OrgMetric metric,
+                                final int count,
+                                final int orgId,
+                                final int depth) {
+        if (metric == null) {
+            throw new IllegalArgumentException("metric argument is null");
+        }
+
+        if (count < 0) {
+            throw new IllegalArgumentException(
+                "Count must be greater than or equal to zero."
+            );
+        }
+
+        if (depth < ANY_DEPTH) {
+            throw new IllegalArgumentException(
+                "Depth must be greater than or equal to zero."
+            );
+        }
+
+        int start = 0;
+        int end = this.orgs.length;
+        int level = depth;
+
+        if (orgId != ALL_ORGS) {
+            start = this.positions.get(orgId);
+            if (start == IntIntMap.NO_VALUE) {
+                return new ArrayList<Org>();
+            }
+
+            end = this.ends[start];
+            if (depth != ANY_DEPTH) {
+                level = this.depths[start] + depth;
+            }
+        }
+
+        Index index = this.index(metric);
+
+        if (depth == ANY_DEPTH) {
+            return this.top(index.byPosition, start, end, count);
+        }
+
+        if (level + 1 >= this.levelStarts.length) {
+            return new ArrayList<Org>();
+        }
+
+        // the subtree's orgs at the level lie between these
+        int from = this.levelStarts[level];
+        int to = this.levelStarts[level + 1];
+
+        return this.top(
+            index.byLevel,
+            this.lowerBound(from, to, start),
+            this.lowerBound(from, to, end),
+            count
+        );
+    }
+
+    // The index of the first org of the level range at or after the
+    // position
+    private int lowerBound(final int from, final int to, final int position) {
+        int found = Arrays.binarySearch(this.levelOrder, from, to, position);
+        return found >= 0 ? found : -(found + 1);
+    }
+
+    private synchronized Index index(final OrgMetric metric) {
+        Index index = this.indexes[metric.ordinal()];
+        if (index == null) {
+            index = new Index(this.valuesOf(metric));
+            this.indexes[metric.ordinal()] = index;
+        }
+
+        return index;
+    }
+
+    // Each org's value of the metric, by position. An org's direct value
+    // is its total less the totals of its children.
+    private long[] valuesOf(final OrgMetric metric) {
+        long[] values = new long[this.orgs.length];
+        for (int p = 0; p < values.length; p++) {
+            values[p] = metric.totalOf(this.orgs[p]);
+        }
+
+        if (!metric.isTotal()) {
+            long[] totals = values.clone();
+            for (int p = 0; p < values.length; p++) {
+                if (this.parents[p] >= 0) {
+                    values[this.parents[p]] -= totals[p];
+                }
+            }
+        }
+
+        return values;
+    }
+
+    // The best `count` orgs of the tree's leaves from `from` to `to`
+    private List<Org> top(final RangeMax tree,
+                          final int from,
+                          final int to,
+                          final int count) {
+        if (count == 0 || from >= to) {
+            return new ArrayList<Org>();
+        }
+
+        List<Org> top = new ArrayList<Org>(Math.min(count, to - from));
+
+        // each candidate is the best leaf of a range not yet taken from
+        PriorityQueue<int[]> candidates = new PriorityQueue<int[]>(
+            (a, b) -> tree.isBetter(a[0], b[0]) ? -1 : 1
+        );
+
+        candidates.add(new int[] {tree.best(from, to), from, to});
+
+        while (top.size() < count && !candidates.isEmpty()) {
+            int[] candidate = candidates.poll();
+            int best = candidate[0];
+            top.add(this.orgs[tree.positionOf(best)]);
+
+            if (candidate[1] < best) {
+                candidates.add(new int[] {
+                    tree.best(candidate[1], best),
+                    candidate[1],
+                    best
+                });
+            }
+
+            if (best + 1 < candidate[2]) {
+                candidates.add(new int[] {
+                    tree.best(best + 1, candidate[2]),
+                    best + 1,
+                    candidate[2]
+                });
+            }
+        }
+
+        return top;
+    }
+
+    // The segment trees for one metric
+    private final class Index {
+        final RangeMax byPosition;
+        final RangeMax byLevel;
+
+        Index(final long[] values) {
+            this.byPosition = new RangeMax(values, null);
+            this.byLevel = new RangeMax(values, OrgRanking.this.levelOrder);
+        }
+    }
+
+    // A segment tree whose nodes hold the best leaf beneath them. Leaves
+    // are positions, or indexes into an array of positions.
+    private final class RangeMax {
+        private final long[] values;
+        private final int[] leaves;
+        private final int[] tree;
+        private final int size;
+
+        RangeMax(final long[] values, final int[] leaves) {
+            this.values = values;
+            this.leaves = leaves;
+            this.size = values.length;
+            this.tree = new int[this.size * 2];
+
+            for (int i = 0; i < this.size; i++) {
+                this.tree[this.size + i] = i;
+            }
+
+            for (int i = this.size - 1; i > 0; i--) {
+                this.tree[i] = this.better(
+                    this.tree[2 * i],
+                    this.tree[2 * i + 1]
+                );
+            }
+        }
+
+        int positionOf(final int leaf) {
+            return this.leaves == null ? leaf : this.leaves[leaf];
+        }
+
+        // The best leaf from `from` (inclusive) to `to` (exclusive)
+        int best(final int from, final int to) {
+            int best = -1;
+            for (int l = from + this.size, r = to + this.size;
+                 l < r;
+                 l >>= 1, r >>= 1) {
+                if ((l & 1) == 1) {
+                    best = this.better(best, this.tree[l++]);
+                }
+
+                if ((r & 1) == 1) {
+                    best = this.better(best, this.tree[--r]);
+                }
+            }
+
+            return best;
+        }
+
+        // More of the metric, or the same and a lower identifier
+        boolean isBetter(final int a, final int b) {
+            int pa = this.positionOf(a);
+            int pb = this.positionOf(b);
+
+            return this.values[pa] > this.values[pb]
+                || (this.values[pa] == this.values[pb]
+                    && OrgRanking.this.ids[pa] < OrgRanking.this.ids[pb]);
+        }
+
+        private int better(final int a, final int b) {
+            if (a < 0) {
+                return b;
+            }
+
+            return this.isBetter(b, a) ? b : a;
+        }
+    }
+
+    // Numbers the orgs in pre-order, recording where each subtree ends
+    private static final class Layout implements OrgTraversal.Visitor<Org> {
+        Org[] orgs = new Org[16];
+        int[] parents = new int[16];
+        int[] depths = new int[16];
+        int[] ends = new int[16];
+        int count;
+
+        // the position of each org on the current path
+        private int[] path = new int[16];
+
+        public boolean preVisit(final Org org, final int depth) {
+            if (this.count == this.orgs.length) {
+                int capacity = this.count * 2;
+                this.orgs = Arrays.copyOf(this.orgs, capacity);
+                this.parents = Arrays.copyOf(this.parents, capacity);
+                this.depths = Arrays.copyOf(this.depths, capacity);
+                this.ends = Arrays.copyOf(this.ends, capacity);
+            }
+
+            if (depth == this.path.length) {
+                this.path = Arrays.copyOf(this.path, depth * 2);
+            }
+
+            int position = this.count++;
+            this.orgs[position] = org;
+            this.parents[position] = depth > 0 ? this.path[depth - 1] : -1;
+            this.depths[position] = depth;
+            this.path[depth] = position;
+
+            return true;
+        }
+
+        public void postVisit(final Org org, final int depth) {
+            this.ends[this.path[depth]] = this.count;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+import java.util.function.*;
+
+// Depth-first traversal of an org hierarchy without recursion, so the depth
+// of a hierarchy is limited by the heap rather than by the call stack.
+//
+// The explicit stack holds each org on the current path, its list of
+// children and a primitive cursor into that list. It only grows with the
+// depth of the deepest path and is kept between traversals, so walking a
+// hierarchy allocates nothing per org. Child lists are read by index and
+// should support fast random access.
+//
+// An instance is not thread-safe and cannot be used re-entrantly.
+final class OrgTraversal<T> {
+    interface Visitor<T> {
+        // Called before the children of an org are visited. Returning false
+        // skips both the children and the post-order visit of the org.
+        boolean preVisit(T org, int depth);
+
+        // Called once every child of the org has been visited
+        void postVisit(T org, int depth);
+    }
+
+    private static final int INITIAL_DEPTH = 16;
+
+    private final Function<? super T, ? extends List<? extends T>> childrenOf;
+
+    private Object[] path;
+    private Object[] children;
+    private int[] cursors;
+    private boolean active;
+
+    public OrgTraversal(
+        final Function<? super T, ? extends List<? extends T>> childrenOf) {
+
+        if (childrenOf == null) {
+            throw new IllegalArgumentException("childrenOf argument is null");
+        }
+
+        this.childrenOf = childrenOf;
+        this.path = new Object[INITIAL_DEPTH];
+        this.children = new Object[INITIAL_DEPTH];
+        this.cursors = new int[INITIAL_DEPTH];
+    }
+
+    public void traverse(final T root, final Visitor<? super T> visitor) {
+        if (root == null) {
+            throw new IllegalArgumentException("root argument is null");
+        }
+
+        if (visitor == null) {
+            throw new IllegalArgumentException("visitor argument is null");
+        }
+
+        if (this.active) {
+            throw new IllegalStateException(
+                "Traversal is already in progress."
+            );
+        }
+
+        this.active = true;
+        int top = -1;
+
+        try {
+            if (!visitor.preVisit(root, 0)) {
+                return;
+            }
+
+            top = this.push(top, root);
+
+            while (top >= 0) {
+                List<? extends T> list = this.childrenAt(top);
+                int cursor = this.cursors[top];
+
+                if (cursor < list.size()) {
+                    this.cursors[top] = cursor + 1;
+
+                    T child = list.get(cursor);
+                    if (visitor.preVisit(child, top + 1)) {
+                        top = this.push(top, child);
+                    }
+                }
+                else {
+                    T org = this.orgAt(top);
+                    top = this.pop(top);
+                    visitor.postVisit(org, top + 1);
+                }
+            }
+        }
+        finally {
+            while (top >= 0) {
+                top = this.pop(top);
+            }
+
+            this.active = false;
+        }
+    }
+
+    private int push(final int top, final T org) {
+        int next = top + 1;
+        if (next == this.path.length) {
+            int capacity = this.path.length * 2;
+
+            this.path = Arrays.copyOf(this.path, capacity);
+            this.children = Arrays.copyOf(this.children, capacity);
+            this.cursors = Arrays.copyOf(this.cursors, capacity);
+        }
+
+        this.path[next] = org;
+        this.children[next] = this.childrenOf.apply(org);
+        this.cursors[next] = 0;
+
+        return next;
+    }
+
+    // Clears the references held by the top entry so that a finished
+    // traversal doesn't keep orgs reachable
+    private int pop(final int top) {
+        this.path[top] = null;
+        this.children[top] = null;
+
+        return top - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T orgAt(final int index) {
+        return (T) this.path[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<? extends T> childrenAt(final int index) {
+        return (List<? extends T>) this.children[index];
+    }
+}
@@ -0,0 +1,212 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+// A file of fixed-size pages, read and written through a bounded cache of
+// recently used pages. When the cache is full the least recently used
+// page is dropped, and written back first if it was changed.
+//
+// A page handed out by the cache is only guaranteed to stay cached until
+// the next call to page() or allocate(). Callers that change a page must
+// mark it dirty before fetching any other page, and must fetch a page
+// again, by id, rather than holding on to it across other page accesses.
+// Page access is synchronized, so pages may be read concurrently as long
+// as nothing is being written.
+final class PageCache implements Closeable {
+    static final int MIN_CAPACITY = 16;
+
+    private final FileChannel channel;
+    private final int pageSize;
+    private final LinkedHashMap<Integer, Page> cache;
+    private int pageCount;
+
+    private long reads;
+    private long writes;
+
+    PageCache(final FileChannel channel,
+              final int pageSize,
+              final int capacity) throws IOException {
+
+        if (channel == null) {
+            throw new IllegalArgumentException("channel argument is null");
+        }
+
+        if (pageSize < 64 || Integer.bitCount(pageSize) != 1) {
+            throw new IllegalArgumentException(
+                "Page size must be a power of two of at least 64 bytes."
+            );
+        }
+
+        if (capacity < MIN_CAPACITY) {
+            throw new IllegalArgumentException(
+                "Cache capacity must be at least " + MIN_CAPACITY + " pages."
+            );
+        }
+
+        this.channel = channel;
+        this.pageSize = pageSize;
+        this.pageCount = (int) (channel.size() / pageSize);
+
+        this.cache = new LinkedHashMap<Integer, Page>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(
+                final Map.Entry<Integer, Page> eldest) {
+
+                if (this.size() <= capacity) {
+                    return false;
+                }
+
+                PageCache.this.writeBack(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    int getPageSize() {
+        return this.pageSize;
+    }
+
+    synchronized int getPageCount() {
+        return this.pageCount;
+    }
+
+    synchronized long getReads() {
+        return this.reads;
+    }
+
+    synchronized long getWrites() {
+        return this.writes;
+    }
+
+    synchronized Page page(final int id) {
+        if (id < 0 || id >= this.pageCount) {
+            throw new IllegalArgumentException("No such page: " + id);
+        }
+
+        Page page = this.cache.get(id);
+        if (page != null) {
+            return page;
+        }
+
+        page = new Page(id, this.pageSize);
+        try {
+            ByteBuffer data = page.data.duplicate();
+            long position = (long) id * this.pageSize;
+
+            while (data.hasRemaining()) {
+                int read = this.channel.read(
+                    data,
+                    position + data.position()
+                );
+
+                if (read < 0) {
+                    throw new EOFException("Page file is truncated.");
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        this.reads++;
+        this.cache.put(id, page);
+        return page;
+    }
+
+    // Adds a zero-filled page to the end of the file
+    synchronized Page allocate() {
+        Page page = new Page(this.pageCount++, this.pageSize);
+        page.dirty = true;
+
+        this.cache.put(page.id, page);
+        return page;
+    }
+
+    // Writes every changed page back to the file
+    synchronized void flush() throws IOException {
+        try {
+            for (Page page : this.cache.values()) {
+                this.writeBack(page);
+            }
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        this.channel.force(false);
+    }
+
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    private void writeBack(final Page page) {
+        if (!page.dirty) {
+            return;
+        }
+
+        try {
+            ByteBuffer data = page.data.duplicate();
+            long position = (long) page.id * this.pageSize;
+
+            while (data.hasRemaining()) {
+                this.channel.write(data, position + data.position());
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        this.writes++;
+        page.dirty = false;
+    }
+
+    static final class Page {
+        private final int id;
+        private final ByteBuffer data;
+        private boolean dirty;
+
+        Page(final int id, final int size) {
+            this.id = id;
+            this.data = ByteBuffer.allocate(size)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        int getId() {
+            return this.id;
+        }
+
+        // Pages are only read and written with absolute offsets
+        ByteBuffer getData() {
+            return this.data;
+        }
+
+        void markDirty() {
+            this.dirty = true;
+        }
+    }
+}
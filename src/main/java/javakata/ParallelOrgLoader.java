@@ -0,0 +1,530 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+// Loads an org file on several threads. The file is split into
+// newline-aligned byte ranges, as ParallelUserLoader splits user files,
+// and each range is parsed into columns of org and parent identifiers.
+//
+// The tree is then built from the columns in a few linear passes: rows
+// are sorted by identifier to find duplicates and to look up parents,
+// children are grouped under their parents with a counting sort, and the
+// orgs beneath each root are added to the builder top-down. No parent is
+// ever pending, so the order of the file does not affect the cost. What
+// is left (orgs without a defined parent, or in a parent cycle) is added
+// afterwards in file order for the builder to resolve and report.
+//
+// Children are added in file order, so the collection is the same as a
+// sequential load's. A gzip file is parsed as one range.
+final class ParallelOrgLoader {
+    private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final ObservationCode[] CODES = ObservationCode.values();
+
+    private final Chunk[] chunks;
+    private final int threads;
+
+    private long lineCount;
+    private long byteCount;
+    private long pendingCount;
+
+    // records that could not be parsed
+    private long errorCount;
+
+    public ParallelOrgLoader(final File orgFile, final int parallelism)
+        throws FileNotFoundException {
+
+        this(orgFile, parallelism, MIN_CHUNK_SIZE);
+    }
+
+    ParallelOrgLoader(final File orgFile,
+                      final int parallelism,
+                      final long minChunkSize)
+        throws FileNotFoundException {
+
+        if (orgFile == null) {
+            throw new IllegalArgumentException("orgFile argument is null");
+        }
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(
+                "Parallelism must be greater than or equal to one."
+            );
+        }
+
+        if (minChunkSize < 1) {
+            throw new IllegalArgumentException(
+                "Chunk size must be greater than or equal to one."
+            );
+        }
+
+        if (GzipLineIterable.isGzip(orgFile)) {
+            this.chunks = new Chunk[] {
+                new Chunk(0, new GzipLineIterable(orgFile))
+            };
+        }
+        else {
+            long[] bounds = ParallelUserLoader.split(
+                orgFile,
+                (long) parallelism * CHUNKS_PER_THREAD,
+                minChunkSize
+            );
+
+            this.chunks = new Chunk[bounds.length - 1];
+            for (int i = 0; i < this.chunks.length; i++) {
+                this.chunks[i] = new Chunk(i, new MappedLineIterable(
+                    orgFile,
+                    bounds[i],
+                    bounds[i + 1],
+                    MappedLineIterable.DEFAULT_WINDOW_SIZE
+                ));
+            }
+        }
+
+        this.threads = Math.min(parallelism, this.chunks.length);
+    }
+
+    // Adds the orgs to the builder, leaving those whose parents were not
+    // added before them for resolveParents
+    public void load(final OrgCollectionBuilder orgs,
+                     final ObservationSink sink) {
+        if (orgs == null) {
+            throw new IllegalArgumentException("orgs argument is null");
+        }
+
+        if (sink == null) {
+            throw new IllegalArgumentException("sink argument is null");
+        }
+
+        this.forEachChunk((chunk, scanner) -> chunk.scan(scanner));
+
+        Rows rows = this.concatenate();
+        this.add(rows, orgs);
+
+        if (rows.rejectedCount > 0 || this.errorCount > 0) {
+            this.report(rows, sink);
+        }
+    }
+
+    // The number of lines read by load()
+    long getLineCount() {
+        return this.lineCount;
+    }
+
+    // The number of bytes of the lines read by load(), including their
+    // terminators
+    long getByteCount() {
+        return this.byteCount;
+    }
+
+    // The number of orgs added before their parents, which the builder
+    // has yet to resolve
+    long getPendingCount() {
+        return this.pendingCount;
+    }
+
+    // Runs the task on every chunk, each on one of the threads
+    private void forEachChunk(final BiConsumer<Chunk, RecordScanner> task) {
+        final AtomicInteger nextChunk = new AtomicInteger();
+
+        List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < this.threads; i++) {
+            workers.add(() -> {
+                RecordScanner scanner = new RecordScanner();
+                int index;
+                while ((index = nextChunk.getAndIncrement())
+                       < this.chunks.length) {
+                    task.accept(this.chunks[index], scanner);
+                }
+
+                return null;
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+
+        try {
+            for (Future<Void> result : executor.invokeAll(workers)) {
+                result.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Org data load interrupted", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new IllegalStateException(cause);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Joins the columns of the chunks, in file order
+    private Rows concatenate() {
+        int count = 0;
+        for (Chunk chunk : this.chunks) {
+            chunk.firstRow = count;
+            count += chunk.size;
+            this.lineCount += chunk.lineCount;
+            this.byteCount += chunk.byteCount;
+            this.errorCount += chunk.errorCount;
+        }
+
+        Rows rows = new Rows(count);
+
+        for (Chunk chunk : this.chunks) {
+            System.arraycopy(
+                chunk.ids,
+                0,
+                rows.ids,
+                chunk.firstRow,
+                chunk.size
+            );
+            System.arraycopy(
+                chunk.parents,
+                0,
+                rows.parents,
+                chunk.firstRow,
+                chunk.size
+            );
+
+            // only the observations are needed from here on
+            chunk.ids = null;
+            chunk.parents = null;
+        }
+
+        return rows;
+    }
+
+    private void add(final Rows rows, final OrgCollectionBuilder orgs) {
+        int count = rows.ids.length;
+
+        // the rows given to the builder or rejected
+        boolean[] handled = new boolean[count];
+
+        // rows sorted by identifier, then by file order; the first row
+        // of each identifier is the org, and the rest are duplicates
+        long[] sorted = new long[count];
+        int valid = 0;
+        for (int row = 0; row < count; row++) {
+            if (rows.ids[row] >= 1) {
+                sorted[valid++] = ((long) rows.ids[row] << 32) | row;
+            }
+        }
+
+        Arrays.parallelSort(sorted, 0, valid);
+
+        int[] orgIds = new int[valid];
+        int[] orgRows = new int[valid];
+        int orgCount = 0;
+
+        for (int i = 0; i < valid; i++) {
+            int id = (int) (sorted[i] >>> 32);
+            int row = (int) sorted[i];
+
+            if (orgCount > 0 && orgIds[orgCount - 1] == id) {
+                rows.reject(row, ObservationCode.ORG_DUPLICATE);
+                handled[row] = true;
+                continue;
+            }
+
+            orgIds[orgCount] = id;
+            orgRows[orgCount] = row;
+            orgCount++;
+        }
+
+        sorted = null;
+
+        // children grouped by parent row, in file order
+        int[] childStarts = new int[count + 1];
+        int[] parentRows = new int[count];
+        Arrays.fill(parentRows, -1);
+
+        for (int i = 0; i < orgCount; i++) {
+            int row = orgRows[i];
+            int parent = rows.parents[row];
+            if (parent == OrgCollectionBuilder.NO_PARENT) {
+                continue;
+            }
+
+            int found = Arrays.binarySearch(orgIds, 0, orgCount, parent);
+            if (found >= 0) {
+                parentRows[row] = orgRows[found];
+                childStarts[orgRows[found] + 1]++;
+            }
+        }
+
+        orgIds = null;
+        orgRows = null;
+
+        for (int row = 0; row < count; row++) {
+            childStarts[row + 1] += childStarts[row];
+        }
+
+        int[] children = new int[childStarts[count]];
+        int[] filled = Arrays.copyOf(childStarts, count);
+        for (int row = 0; row < count; row++) {
+            if (parentRows[row] >= 0) {
+                children[filled[parentRows[row]]++] = row;
+            }
+        }
+
+        filled = null;
+        parentRows = null;
+
+        // every org beneath a root, each added before its children; the
+        // roots are taken in file order
+        int[] stack = new int[16];
+
+        for (int root = 0; root < count; root++) {
+            if (rows.parents[root] != OrgCollectionBuilder.NO_PARENT
+                || rows.ids[root] < 1
+                || handled[root]) {
+                continue;
+            }
+
+            int depth = 0;
+            stack[depth++] = root;
+
+            while (depth > 0) {
+                int row = stack[--depth];
+                handled[row] = true;
+                rows.add(row, orgs);
+
+                int from = childStarts[row];
+                int to = childStarts[row + 1];
+                if (depth + (to - from) > stack.length) {
+                    stack = Arrays.copyOf(
+                        stack,
+                        Math.max(stack.length * 2, depth + (to - from))
+                    );
+                }
+
+                // pushed last to first, so they are added in file order
+                for (int c = to - 1; c >= from; c--) {
+                    stack[depth++] = children[c];
+                }
+            }
+        }
+
+        // the rest, in file order
+        for (int row = 0; row < count; row++) {
+            if (handled[row]) {
+                continue;
+            }
+
+            int parent = rows.parents[row];
+            boolean pending = parent != OrgCollectionBuilder.NO_PARENT
+                && !orgs.containsOrg(parent);
+
+            if (rows.add(row, orgs) && pending) {
+                this.pendingCount++;
+            }
+        }
+    }
+
+    // No records are kept, so the chunks with rejected rows or records
+    // that could not be parsed are read again to report them in line
+    // order, each chunk as soon as every chunk before it is done
+    private void report(final Rows rows, final ObservationSink sink) {
+        Arrays.sort(rows.rejections, 0, rows.rejectedCount);
+
+        final OrderedObservations observations =
+            new OrderedObservations(sink, this.chunks.length);
+
+        this.forEachChunk((chunk, scanner) -> {
+            int from = rows.firstRejectionAt(chunk.firstRow);
+            int to = rows.firstRejectionAt(chunk.firstRow + chunk.size);
+            if (from < to || chunk.errorCount > 0) {
+                chunk.rescan(
+                    scanner,
+                    rows,
+                    from,
+                    to,
+                    observations.chunk(chunk.index)
+                );
+            }
+
+            observations.finish(chunk.index, chunk.lineCount);
+        });
+    }
+
+    // The identifier columns of every parsed row, and the rows that could
+    // not be added
+    private static final class Rows {
+        final int[] ids;
+        final int[] parents;
+
+        // row << 32 | code ordinal
+        long[] rejections;
+        int rejectedCount;
+
+        Rows(final int count) {
+            this.ids = new int[count];
+            this.parents = new int[count];
+            this.rejections = new long[16];
+        }
+
+        // Returns whether the builder took the row
+        boolean add(final int row, final OrgCollectionBuilder orgs) {
+            ObservationCode error =
+                orgs.tryAddOrg(this.ids[row], this.parents[row]);
+
+            if (error != null) {
+                this.reject(row, error);
+                return false;
+            }
+
+            return true;
+        }
+
+        void reject(final int row, final ObservationCode code) {
+            if (this.rejectedCount == this.rejections.length) {
+                this.rejections = Arrays.copyOf(
+                    this.rejections,
+                    this.rejectedCount * 2
+                );
+            }
+
+            this.rejections[this.rejectedCount++] =
+                ((long) row << 32) | code.ordinal();
+        }
+
+        // The index of the first sorted rejection at or after the row
+        int firstRejectionAt(final int row) {
+            int found = Arrays.binarySearch(
+                this.rejections,
+                0,
+                this.rejectedCount,
+                (long) row << 32
+            );
+
+            return found >= 0 ? found : -(found + 1);
+        }
+
+        static int rowOf(final long rejection) {
+            return (int) (rejection >>> 32);
+        }
+
+        static ObservationCode codeOf(final long rejection) {
+            return CODES[(int) rejection];
+        }
+    }
+
+    // A range of the file, parsed into identifier columns. Records that
+    // could not be parsed are counted, and found again to be reported.
+    private static final class Chunk {
+        private final Iterable<ByteLine> lines;
+
+        final int index;
+        int[] ids;
+        int[] parents;
+        int size;
+        int firstRow;
+        long lineCount;
+        long byteCount;
+        long errorCount;
+
+        Chunk(final int index, final Iterable<ByteLine> lines) {
+            this.index = index;
+            this.lines = lines;
+            this.ids = new int[1024];
+            this.parents = new int[1024];
+        }
+
+        void scan(final RecordScanner scanner) {
+            long lineNumber = 0;
+            long bytes = 0;
+
+            for (ByteLine line : this.lines) {
+                lineNumber++;
+                bytes += line.getByteCount();
+
+                ObservationCode error =
+                    DataLoader.scanOrgRecord(scanner, line);
+
+                if (error != null) {
+                    this.errorCount++;
+                    continue;
+                }
+
+                if (this.size == this.ids.length) {
+                    this.ids = Arrays.copyOf(this.ids, this.size * 2);
+                    this.parents = Arrays.copyOf(this.parents, this.size * 2);
+                }
+
+                this.ids[this.size] = (int) scanner.getOrgId();
+                this.parents[this.size] = DataLoader.parentOf(scanner);
+                this.size++;
+            }
+
+            this.lineCount = lineNumber;
+            this.byteCount = bytes;
+        }
+
+        // Reads the range again to report the records that could not be
+        // parsed and those of the rejected rows from `from` to `to`, with
+        // line numbers counted from the chunk's first line
+        void rescan(final RecordScanner scanner,
+                    final Rows rows,
+                    final int from,
+                    final int to,
+                    final ObservationSink sink) {
+            int row = this.firstRow;
+            int next = from;
+            long lineNumber = 0;
+
+            for (ByteLine line : this.lines) {
+                lineNumber++;
+
+                ObservationCode error =
+                    DataLoader.scanOrgRecord(scanner, line);
+
+                if (error == null) {
+                    if (next < to
+                        && Rows.rowOf(rows.rejections[next]) == row) {
+                        error = Rows.codeOf(rows.rejections[next++]);
+                    }
+
+                    row++;
+                }
+
+                if (error != null) {
+                    sink.observe(error, lineNumber, line.getPosition(), line);
+                }
+            }
+        }
+    }
+}
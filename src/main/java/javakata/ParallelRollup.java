@@ -0,0 +1,153 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Computes the subtree totals of a forest of orgs on a fork/join pool.
+//
+// Subtrees of up to a threshold number of orgs are computed sequentially,
+// and are batched together until a batch holds about that many orgs; each
+// batch is forked, so idle threads steal whatever work remains. The orgs
+// above them (those whose subtrees are larger than the threshold) are
+// walked with an explicit stack, so that a deep tree does not nest tasks,
+// and are computed last, each after its children.
+//
+// Subtree sizes come from the collection's pre-order index, which must be
+// current. Each org's totals are written by one thread only, and joining
+// the batches makes them visible to the thread that sums their parents,
+// so the results are exactly those of a sequential computation.
+final class ParallelRollup {
+    static final int DEFAULT_THRESHOLD = 4096;
+
+    private final int threshold;
+    private final List<ForkJoinTask<Void>> batches;
+    private List<OrgImpl> batch;
+    private int batchSize;
+
+    private ParallelRollup(final int threshold) {
+        this.threshold = threshold;
+        this.batches = new ArrayList<ForkJoinTask<Void>>();
+        this.batch = new ArrayList<OrgImpl>();
+    }
+
+    public static void computeTotals(final List<OrgImpl> tops,
+                                     final int parallelism) {
+        computeTotals(tops, parallelism, DEFAULT_THRESHOLD);
+    }
+
+    static void computeTotals(final List<OrgImpl> tops,
+                              final int parallelism,
+                              final int threshold) {
+        if (tops == null) {
+            throw new IllegalArgumentException("tops argument is null");
+        }
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(
+                "Parallelism must be greater than or equal to one."
+            );
+        }
+
+        if (threshold < 1) {
+            throw new IllegalArgumentException(
+                "Threshold must be greater than or equal to one."
+            );
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        try {
+            pool.invoke(new RecursiveAction() {
+                protected void compute() {
+                    new ParallelRollup(threshold).run(tops);
+                }
+            });
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Runs in the pool, so the batches it forks are shared with the other
+    // threads
+    private void run(final List<OrgImpl> tops) {
+        // orgs above the threshold, parents before their children
+        List<OrgImpl> large = new ArrayList<OrgImpl>();
+
+        Deque<OrgImpl> stack = new ArrayDeque<OrgImpl>();
+        this.split(tops, stack);
+
+        while (!stack.isEmpty()) {
+            OrgImpl org = stack.pop();
+            large.add(org);
+            this.split(org.getChildren(), stack);
+        }
+
+        // the last batch is computed here rather than forked
+        for (OrgImpl org : this.batch) {
+            org.ensureTotals();
+        }
+
+        for (ForkJoinTask<Void> task : this.batches) {
+            task.join();
+        }
+
+        for (int i = large.size() - 1; i >= 0; i--) {
+            large.get(i).recomputeTotals();
+        }
+    }
+
+    // Stacks the dirty orgs whose subtrees are too large to compute
+    // sequentially, and batches the rest
+    private void split(final List<OrgImpl> orgs, final Deque<OrgImpl> stack) {
+        for (int i = 0; i < orgs.size(); i++) {
+            OrgImpl org = orgs.get(i);
+            if (!org.isDirty()) {
+                continue;
+            }
+
+            int size = org.getTreeEnd() - org.getTreeStart();
+            if (size > this.threshold) {
+                stack.push(org);
+                continue;
+            }
+
+            this.batch.add(org);
+            this.batchSize += size;
+
+            if (this.batchSize >= this.threshold) {
+                final List<OrgImpl> full = this.batch;
+                this.batches.add(ForkJoinTask.adapt(() -> {
+                    for (OrgImpl o : full) {
+                        o.ensureTotals();
+                    }
+                }, (Void) null).fork());
+
+                this.batch = new ArrayList<OrgImpl>();
+                this.batchSize = 0;
+            }
+        }
+    }
+}
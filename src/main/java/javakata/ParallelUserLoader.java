@@ -0,0 +1,570 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// Loads a user data file on several threads. The file is split into
+// newline-aligned byte ranges that are handed out to a fixed set of
+// workers; each worker sums users, files and bytes per org into its own
+// UserTotalsTable. Observations are passed on with their global line
+// numbers, in file order, as soon as every earlier range is done. Once
+// every range is done, the partial totals are applied to the orgs.
+//
+// A gzip file is split into runs of whole members instead, which the
+// workers decompress as they scan them. The lines that cross from one
+// run to the next are put back together and scanned once the runs on
+// both sides are done.
+//
+// Given a memory budget, the workers share it: a worker whose table holds
+// as many orgs as its share allows adds its totals to the builder, one
+// worker at a time, and starts over.
+final class ParallelUserLoader {
+    static final long MIN_CHUNK_SIZE = 1024 * 1024;
+
+    // Heap bytes per org a worker's table holds: the table grows once it
+    // is half full, so there are 2 slots per org, and each slot is 20
+    // bytes (an int key, int user and file counts and a long byte count)
+    static final int BYTES_PER_ORG = 2 * 20;
+
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final File userFile;
+    private final int parallelism;
+    private final long minChunkSize;
+
+    // orgs each worker may hold, or zero if there is no limit
+    private final int maxOrgsPerWorker;
+
+    // null for a gzip file, which is split as it is loaded
+    private final Chunk[] chunks;
+
+    private long lineCount;
+    private long byteCount;
+
+    public ParallelUserLoader(final File userFile, final int parallelism)
+        throws FileNotFoundException {
+
+        this(userFile, parallelism, MIN_CHUNK_SIZE, 0);
+    }
+
+    ParallelUserLoader(final File userFile,
+                       final int parallelism,
+                       final long minChunkSize)
+        throws FileNotFoundException {
+
+        this(userFile, parallelism, minChunkSize, 0);
+    }
+
+    // A memory budget of zero leaves the workers' tables unbounded
+    ParallelUserLoader(final File userFile,
+                       final int parallelism,
+                       final long minChunkSize,
+                       final long memoryBudget)
+        throws FileNotFoundException {
+
+        if (userFile == null) {
+            throw new IllegalArgumentException("userFile argument is null");
+        }
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(
+                "Parallelism must be greater than or equal to one."
+            );
+        }
+
+        if (minChunkSize < 1) {
+            throw new IllegalArgumentException(
+                "Chunk size must be greater than or equal to one."
+            );
+        }
+
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException(
+                "Memory budget cannot be negative."
+            );
+        }
+
+        this.userFile = userFile;
+        this.parallelism = parallelism;
+        this.minChunkSize = minChunkSize;
+
+        // a power of two fills the table without it growing
+        long share = Math.min(
+            Math.max(memoryBudget / parallelism / BYTES_PER_ORG, 1),
+            1 << 29
+        );
+
+        this.maxOrgsPerWorker =
+            memoryBudget == 0 ? 0 : Integer.highestOneBit((int) share);
+
+        if (GzipLineIterable.isGzip(userFile)) {
+            this.chunks = null;
+            return;
+        }
+
+        long[] bounds = split(
+            userFile,
+            (long) parallelism * CHUNKS_PER_THREAD,
+            minChunkSize
+        );
+
+        this.chunks = new Chunk[bounds.length - 1];
+        for (int i = 0; i < this.chunks.length; i++) {
+            this.chunks[i] = new Chunk(new MappedLineIterable(
+                userFile,
+                bounds[i],
+                bounds[i + 1],
+                MappedLineIterable.DEFAULT_WINDOW_SIZE
+            ));
+        }
+    }
+
+    public void load(final OrgCollectionBuilder orgs,
+                     final ObservationSink sink) {
+        if (orgs == null) {
+            throw new IllegalArgumentException("orgs argument is null");
+        }
+
+        if (sink == null) {
+            throw new IllegalArgumentException("sink argument is null");
+        }
+
+        ExecutorService executor =
+            Executors.newFixedThreadPool(this.parallelism);
+
+        try {
+            Chunk[] scanned = this.chunks;
+            Joiner joiner = null;
+            OrderedObservations observations;
+
+            if (scanned == null) {
+                List<GzipLineIterable> parts = GzipLineIterable.split(
+                    this.userFile,
+                    (long) this.parallelism * CHUNKS_PER_THREAD,
+                    this.minChunkSize,
+                    executor
+                );
+
+                scanned = new Chunk[parts.size()];
+                for (int i = 0; i < scanned.length; i++) {
+                    scanned[i] = new Chunk(parts.get(i));
+                }
+
+                joiner = new Joiner(parts, scanned, orgs);
+                observations =
+                    new OrderedObservations(sink, scanned.length, joiner);
+            }
+            else {
+                observations = new OrderedObservations(sink, scanned.length);
+            }
+
+            AtomicInteger nextChunk = new AtomicInteger();
+            int threads = Math.min(this.parallelism, scanned.length);
+
+            List<Worker> workers = new ArrayList<Worker>(threads);
+            for (int i = 0; i < threads; i++) {
+                workers.add(new Worker(
+                    scanned,
+                    nextChunk,
+                    orgs,
+                    observations,
+                    this.maxOrgsPerWorker
+                ));
+            }
+
+            List<UserTotalsTable> totals = new ArrayList<UserTotalsTable>();
+            for (Future<UserTotalsTable> result : executor.invokeAll(workers)) {
+                totals.add(result.get());
+            }
+
+            if (joiner != null) {
+                totals.add(joiner.totals);
+                this.byteCount += joiner.byteCount;
+            }
+            else {
+                for (Chunk chunk : scanned) {
+                    this.byteCount += chunk.getByteCount();
+                }
+            }
+
+            this.lineCount += observations.getLineCount();
+
+            for (UserTotalsTable table : totals) {
+                apply(table, orgs);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("User data load interrupted", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            if (cause instanceof IOException) {
+                throw new UncheckedIOException((IOException) cause);
+            }
+
+            throw new IllegalStateException(cause);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // The number of lines read by load()
+    long getLineCount() {
+        return this.lineCount;
+    }
+
+    // The number of bytes of the lines read by load(), including their
+    // terminators
+    long getByteCount() {
+        return this.byteCount;
+    }
+
+    // Returns the byte offsets that divide the file into at most `count`
+    // ranges, each starting at the beginning of a line.
+    static long[] split(final File file,
+                        final long count,
+                        final long minChunkSize)
+        throws FileNotFoundException {
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long size = raf.length();
+            long chunkSize = Math.max(
+                minChunkSize,
+                (size + count - 1) / Math.max(1, count)
+            );
+
+            List<Long> bounds = new ArrayList<Long>();
+            bounds.add(0L);
+
+            long position = chunkSize;
+            while (position < size) {
+                long aligned = nextLineStart(raf, position);
+                if (aligned >= size) {
+                    break;
+                }
+
+                bounds.add(aligned);
+                position = aligned + chunkSize;
+            }
+
+            bounds.add(size);
+
+            long[] result = new long[bounds.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = bounds.get(i);
+            }
+
+            return result;
+        }
+        catch (FileNotFoundException e) {
+            throw e;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Finds the start of the first line that begins at or after `position`,
+    // treating "\n", "\r" and "\r\n" as line terminators.
+    private static long nextLineStart(final RandomAccessFile raf,
+                                      final long position)
+        throws IOException {
+
+        byte[] buffer = new byte[8192];
+
+        // a terminator ending right before `position` means a line
+        // starts exactly there, unless it is the "\r" of a "\r\n"
+        long offset = position - 1;
+        boolean sawCarriageReturn = false;
+
+        while (true) {
+            raf.seek(offset);
+            int read = raf.read(buffer);
+            if (read <= 0) {
+                return raf.length();
+            }
+
+            for (int i = 0; i < read; i++) {
+                byte b = buffer[i];
+                if (sawCarriageReturn) {
+                    return b == '\n' ? offset + i + 1 : offset + i;
+                }
+
+                if (b == '\n') {
+                    return offset + i + 1;
+                }
+
+                if (b == '\r') {
+                    sawCarriageReturn = true;
+                }
+            }
+
+            if (sawCarriageReturn) {
+                // "\r" was the last byte read; peek at the next byte
+                raf.seek(offset + read);
+                int next = raf.read();
+                return next == '\n' ? offset + read + 1 : offset + read;
+            }
+
+            offset += read;
+        }
+    }
+
+    // Puts back together the lines that cross from one gzip part to the
+    // next, and scans them as chunks of their own into a table of their
+    // own. Each part is placed once it and every part before it are done,
+    // knowing then the decompressed position of its first byte.
+    private static final class Joiner
+        implements OrderedObservations.Placement {
+
+        private final List<GzipLineIterable> parts;
+        private final Chunk[] chunks;
+        private final OrgCollectionBuilder orgs;
+        private final RecordScanner scanner;
+        private final ByteArrayOutputStream crossing;
+
+        // read once the workers are done
+        final UserTotalsTable totals;
+        long byteCount;
+
+        private long crossingPosition;
+        private long position;
+
+        Joiner(final List<GzipLineIterable> parts,
+               final Chunk[] chunks,
+               final OrgCollectionBuilder orgs) {
+            this.parts = parts;
+            this.chunks = chunks;
+            this.orgs = orgs;
+            this.scanner = new RecordScanner();
+            this.crossing = new ByteArrayOutputStream();
+            this.totals = new UserTotalsTable();
+        }
+
+        public boolean place(final int index,
+                             final OrderedObservations observations) {
+            GzipLineIterable part = this.parts.get(index);
+            boolean last = index + 1 == this.parts.size();
+
+            if (index > 0) {
+                this.crossing.write(
+                    part.getFirst(),
+                    0,
+                    part.getFirst().length
+                );
+
+                // a part in which no line ends is all in the middle of one
+                if (!part.isTerminated() && !last) {
+                    this.position += part.getLength();
+                    return false;
+                }
+
+                final byte[] bytes = this.crossing.toByteArray();
+                Chunk joined = new Chunk(() -> new StreamLineIterator(
+                    new ByteArrayInputStream(bytes),
+                    false,
+                    false
+                ));
+
+                final long start = this.crossingPosition;
+                joined.scan(
+                    this.scanner,
+                    this.orgs,
+                    this.totals,
+                    0,
+                    (code, lineNumber, byteOffset, record) -> observations
+                        .report(code, lineNumber, start + byteOffset, record)
+                );
+
+                observations.skipLines(joined.getLineCount());
+                this.byteCount += joined.getByteCount();
+            }
+
+            observations.setStartPosition(index, this.position);
+            this.byteCount += this.chunks[index].getByteCount();
+
+            this.position += part.getLength();
+            this.crossingPosition = this.position - part.getLast().length;
+
+            this.crossing.reset();
+            this.crossing.write(part.getLast(), 0, part.getLast().length);
+
+            return true;
+        }
+    }
+
+    private static void apply(final UserTotalsTable totals,
+                              final OrgCollectionBuilder orgs) {
+        for (int slot = 0; slot < totals.getSlotCount(); slot++) {
+            int orgId = totals.getKey(slot);
+            if (orgId == 0) {
+                continue;
+            }
+
+            orgs.addUsers(
+                orgId,
+                totals.getUsers(slot),
+                totals.getFiles(slot),
+                totals.getBytes(slot)
+            );
+        }
+    }
+
+    // Adds a worker's totals to the builder, which one worker at a time
+    // updates while the others only look orgs up, and empties the table
+    private static void flush(final UserTotalsTable totals,
+                              final OrgCollectionBuilder orgs) {
+        synchronized (orgs) {
+            apply(totals, orgs);
+        }
+
+        totals.clear();
+    }
+
+    // Scans chunks until none are left, summing into one table per worker
+    // so memory grows with the number of threads rather than chunks.
+    private static final class Worker implements Callable<UserTotalsTable> {
+        private final Chunk[] chunks;
+        private final AtomicInteger nextChunk;
+        private final OrgCollectionBuilder orgs;
+        private final OrderedObservations observations;
+        private final int maxOrgs;
+
+        Worker(final Chunk[] chunks,
+               final AtomicInteger nextChunk,
+               final OrgCollectionBuilder orgs,
+               final OrderedObservations observations,
+               final int maxOrgs) {
+            this.chunks = chunks;
+            this.nextChunk = nextChunk;
+            this.orgs = orgs;
+            this.observations = observations;
+            this.maxOrgs = maxOrgs;
+        }
+
+        public UserTotalsTable call() {
+            UserTotalsTable totals = this.maxOrgs > 0
+                ? new UserTotalsTable(this.maxOrgs)
+                : new UserTotalsTable();
+            RecordScanner scanner = new RecordScanner();
+
+            while (true) {
+                int index = this.nextChunk.getAndIncrement();
+                if (index >= this.chunks.length) {
+                    return totals;
+                }
+
+                Chunk chunk = this.chunks[index];
+                chunk.scan(
+                    scanner,
+                    this.orgs,
+                    totals,
+                    this.maxOrgs,
+                    this.observations.chunk(index)
+                );
+
+                this.observations.finish(index, chunk.getLineCount());
+            }
+        }
+    }
+
+    private static final class Chunk {
+        private final Iterable<ByteLine> lines;
+
+        private long lineCount;
+        private long byteCount;
+
+        Chunk(final Iterable<ByteLine> lines) {
+            this.lines = lines;
+        }
+
+        // Line numbers given to the sink count from the chunk's first line.
+        // A table holding `maxOrgs` orgs is flushed to the builder, unless
+        // `maxOrgs` is zero.
+        void scan(final RecordScanner scanner,
+                  final OrgCollectionBuilder orgs,
+                  final UserTotalsTable totals,
+                  final int maxOrgs,
+                  final ObservationSink sink) {
+            long lineNumber = 0;
+            long bytes = 0;
+            for (ByteLine line : this.lines) {
+                lineNumber++;
+                bytes += line.getByteCount();
+
+                ObservationCode error;
+                if (!scanner.scanUser(line)) {
+                    error = ObservationCode.USER_MISMATCH;
+                }
+                else {
+                    error = DataLoader.checkUserRecord(scanner);
+                }
+
+                // orgs are fully loaded before any chunk is scanned, so
+                // lookups only run alongside other workers' flushes, which
+                // builders that share state between them synchronize
+                if (error == null
+                    && !orgs.containsOrg((int) scanner.getOrgId())) {
+                    error = ObservationCode.USER_UNKNOWN_ORG;
+                }
+
+                if (error != null) {
+                    sink.observe(error, lineNumber, line.getPosition(), line);
+                    continue;
+                }
+
+                totals.add(
+                    (int) scanner.getOrgId(),
+                    1,
+                    (int) scanner.getFiles(),
+                    scanner.getBytes()
+                );
+
+                if (totals.size() == maxOrgs) {
+                    flush(totals, orgs);
+                }
+            }
+
+            this.lineCount = lineNumber;
+            this.byteCount = bytes;
+        }
+
+        long getLineCount() {
+            return this.lineCount;
+        }
+
+        long getByteCount() {
+            return this.byteCount;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+// An immutable map from non-negative int keys to values, stored as a
+// bitmapped trie of 32-way nodes over the bits of the key. Seven levels of
+// five bits cover every non-negative int, so lookups take seven steps at
+// most and need no hashing; dense keys share their upper nodes.
+//
+// Changes are made through an Editor, which copies the path to each key it
+// changes the first time it touches a node, and then changes the copies
+// in place. Publishing the edits (persistent()) makes a new map that
+// shares every untouched node with the old one, so readers of an older
+// map are never affected by later edits.
+final class PersistentIntMap<V> {
+    private static final int BITS = 5;
+    private static final int TOP_SHIFT = 30;
+
+    private static final PersistentIntMap<?> EMPTY =
+        new PersistentIntMap<Object>(new Node(null, 0, new Object[0]), 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentIntMap(final Node root, final int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>) EMPTY;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public V get(final int key) {
+        return lookup(this.root, key);
+    }
+
+    public Editor<V> edit() {
+        return new Editor<V>(this.root, this.size);
+    }
+
+    // Changes a copy of a map. An editor is used by one thread at a time.
+    static final class Editor<V> {
+        private Object token = new Object();
+        private Node root;
+        private int size;
+
+        private Editor(final Node root, final int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        public V get(final int key) {
+            return lookup(this.root, key);
+        }
+
+        public void put(final int key, final V value) {
+            if (key < 0) {
+                throw new IllegalArgumentException(
+                    "Keys cannot be negative."
+                );
+            }
+
+            this.root = this.editable(this.root);
+
+            Node node = this.root;
+            for (int shift = TOP_SHIFT; ; shift -= BITS) {
+                int bit = 1 << ((key >>> shift) & 31);
+                int index = Integer.bitCount(node.bitmap & (bit - 1));
+
+                if ((node.bitmap & bit) == 0) {
+                    Object child = shift == 0
+                        ? value
+                        : this.emptyPath(key, shift - BITS, value);
+
+                    node.insert(index, bit, child);
+                    this.size++;
+                    return;
+                }
+
+                if (shift == 0) {
+                    node.array[index] = value;
+                    return;
+                }
+
+                Node child = this.editable((Node) node.array[index]);
+                node.array[index] = child;
+                node = child;
+            }
+        }
+
+        // Returns a map of the edits so far. Later edits copy whatever
+        // they change again, so the returned map never changes.
+        public PersistentIntMap<V> persistent() {
+            this.token = new Object();
+            return new PersistentIntMap<V>(this.root, this.size);
+        }
+
+        private Node editable(final Node node) {
+            if (node.token == this.token) {
+                return node;
+            }
+
+            return new Node(this.token, node.bitmap, node.array.clone());
+        }
+
+        // Builds the nodes below a new key, from the shift downwards
+        private Node emptyPath(final int key,
+                               final int shift,
+                               final Object value) {
+            Object child = value;
+            for (int s = 0; s <= shift; s += BITS) {
+                Node node = new Node(this.token, 0, new Object[1]);
+                node.bitmap = 1 << ((key >>> s) & 31);
+                node.array[0] = child;
+                child = node;
+            }
+
+            return (Node) child;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V lookup(final Node root, final int key) {
+        if (key < 0) {
+            return null;
+        }
+
+        Node node = root;
+        for (int shift = TOP_SHIFT; ; shift -= BITS) {
+            int bit = 1 << ((key >>> shift) & 31);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+
+            Object next = node.array[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (shift == 0) {
+                return (V) next;
+            }
+
+            node = (Node) next;
+        }
+    }
+
+    private static final class Node {
+        private final Object token;
+        private int bitmap;
+        private Object[] array;
+
+        Node(final Object token, final int bitmap, final Object[] array) {
+            this.token = token;
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        void insert(final int index, final int bit, final Object child) {
+            Object[] grown = new Object[this.array.length + 1];
+            System.arraycopy(this.array, 0, grown, 0, index);
+            grown[index] = child;
+            System.arraycopy(
+                this.array, index,
+                grown, index + 1,
+                this.array.length - index
+            );
+
+            this.array = grown;
+            this.bitmap |= bit;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+// Hand-written scanner for the org and user record grammars. It accepts
+// exactly the lines the original regular expressions accepted:
+//
+//   org:  \s* \d+ \s*,\s* (\d+|null) \s*,\s* [\w ]* \s*
+//   user: \s* \d+ \s*,\s* (\d+|null) \s*,\s* (\d+|null) \s*,\s* (\d+|null) \s*
+//
+// Numbers are accumulated directly from the characters of the line, so a
+// successful scan does not allocate. Field values are exposed as longs;
+// NULL_VALUE marks a `null` token and values too large for a long
+// saturate at Long.MAX_VALUE so callers can range check them.
+final class RecordScanner {
+    static final long NULL_VALUE = -1L;
+
+    private static final long NO_MATCH = -2L;
+    private static final long SATURATION_LIMIT = (Long.MAX_VALUE - 9) / 10;
+
+    private CharSequence line;
+    private int position;
+    private int end;
+
+    private long orgId;
+    private long parentOrgId;
+    private long files;
+    private long bytes;
+
+    public boolean scanOrg(final CharSequence text) {
+        this.reset(text);
+
+        this.skipWhitespace();
+
+        this.orgId = this.scanNumber(false);
+        if (this.orgId == NO_MATCH || !this.scanSeparator()) {
+            return false;
+        }
+
+        this.parentOrgId = this.scanNumber(true);
+        if (this.parentOrgId == NO_MATCH || !this.scanSeparator()) {
+            return false;
+        }
+
+        // name characters, followed by nothing but trailing whitespace
+        while (this.position < this.end
+            && isNameChar(this.line.charAt(this.position))) {
+            this.position++;
+        }
+
+        return this.scanEndOfLine();
+    }
+
+    public boolean scanUser(final CharSequence text) {
+        this.reset(text);
+
+        this.skipWhitespace();
+
+        // user identifiers are validated, but not retained
+        if (this.scanNumber(false) == NO_MATCH || !this.scanSeparator()) {
+            return false;
+        }
+
+        this.orgId = this.scanNumber(true);
+        if (this.orgId == NO_MATCH || !this.scanSeparator()) {
+            return false;
+        }
+
+        this.files = this.scanNumber(true);
+        if (this.files == NO_MATCH || !this.scanSeparator()) {
+            return false;
+        }
+
+        this.bytes = this.scanNumber(true);
+        if (this.bytes == NO_MATCH) {
+            return false;
+        }
+
+        return this.scanEndOfLine();
+    }
+
+    public long getOrgId() {
+        return this.orgId;
+    }
+
+    public long getParentOrgId() {
+        return this.parentOrgId;
+    }
+
+    public long getFiles() {
+        return this.files;
+    }
+
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    private void reset(final CharSequence text) {
+        if (text == null) {
+            throw new IllegalArgumentException("text argument is null");
+        }
+
+        this.line = text;
+        this.position = 0;
+        this.end = text.length();
+
+        this.orgId = NULL_VALUE;
+        this.parentOrgId = NULL_VALUE;
+        this.files = NULL_VALUE;
+        this.bytes = NULL_VALUE;
+    }
+
+    private long scanNumber(final boolean allowNull) {
+        int start = this.position;
+        long value = 0;
+
+        while (this.position < this.end) {
+            int digit = this.line.charAt(this.position) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+
+            value = value <= SATURATION_LIMIT
+                ? (value * 10) + digit
+                : Long.MAX_VALUE;
+
+            this.position++;
+        }
+
+        if (this.position > start) {
+            return value;
+        }
+
+        if (allowNull
+            && this.end - this.position >= 4
+            && this.line.charAt(this.position) == 'n'
+            && this.line.charAt(this.position + 1) == 'u'
+            && this.line.charAt(this.position + 2) == 'l'
+            && this.line.charAt(this.position + 3) == 'l') {
+            this.position += 4;
+            return NULL_VALUE;
+        }
+
+        return NO_MATCH;
+    }
+
+    private boolean scanSeparator() {
+        this.skipWhitespace();
+
+        if (this.position >= this.end
+            || this.line.charAt(this.position) != ',') {
+            return false;
+        }
+
+        this.position++;
+        this.skipWhitespace();
+        return true;
+    }
+
+    private boolean scanEndOfLine() {
+        this.skipWhitespace();
+        return this.position == this.end;
+    }
+
+    private void skipWhitespace() {
+        while (this.position < this.end
+            && isWhitespace(this.line.charAt(this.position))) {
+            this.position++;
+        }
+    }
+
+    // equivalent to \s in java.util.regex without UNICODE_CHARACTER_CLASS
+    private static boolean isWhitespace(final char c) {
+        return c == ' '
+            || c == '\t'
+            || c == '\n'
+            || c == '\u000B'
+            || c == '\f'
+            || c == '\r';
+    }
+
+    // equivalent to [\w ] in java.util.regex without UNICODE_CHARACTER_CLASS
+    private static boolean isNameChar(final char c) {
+        return (c >= 'a' && c <= 'z')
+            || (c >= 'A' && c <= 'Z')
+            || (c >= '0' && c <= '9')
+            || c == '_'
+            || c == ' ';
+    }
+}
@@ -0,0 +1,219 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+
+// Writes report lines of the form "- id, users, files, bytes" by encoding
+// them directly into a reusable byte array, which is drained to a channel
+// whenever it fills. Indentation is copied from a cached run of spaces
+// rather than built per line, so writing a line creates no objects.
+//
+// Numbers are written as plain ASCII digits, which is what
+// String.format("%d") produces in locales that use ASCII digits.
+final class ReportWriter {
+    static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    // The longest line content besides indentation and the line separator:
+    // "- " + three ", " separators + four numbers of up to 20 characters
+    private static final int MAX_CONTENT_LENGTH = 2 + 3 * 2 + 4 * 20;
+
+    private static final byte[] INDENT_UNIT = {' ', ' '};
+    private static final byte[] LONG_MIN_DIGITS =
+        Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    private final WritableByteChannel channel;
+    private final byte[] lineSeparator;
+    private final byte[] buffer;
+    private final ByteBuffer view;
+    private int position;
+    private long lineCount;
+    private long byteCount;
+
+    private byte[] indent;
+
+    public ReportWriter(final WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    ReportWriter(final WritableByteChannel channel, final int bufferSize) {
+        if (channel == null) {
+            throw new IllegalArgumentException("channel argument is null");
+        }
+
+        this.lineSeparator = System.getProperty("line.separator")
+            .getBytes(StandardCharsets.US_ASCII);
+
+        if (bufferSize < MAX_CONTENT_LENGTH + this.lineSeparator.length) {
+            throw new IllegalArgumentException(
+                "Buffer size is too small to hold a report line."
+            );
+        }
+
+        this.channel = channel;
+        this.buffer = new byte[bufferSize];
+        this.view = ByteBuffer.wrap(this.buffer);
+        this.indent = new byte[64];
+        Arrays.fill(this.indent, (byte) ' ');
+    }
+
+    public void writeOrg(final int level,
+                         final int id,
+                         final int users,
+                         final int files,
+                         final long bytes)
+        throws IOException {
+
+        this.writeIndent(level);
+
+        if (this.buffer.length - this.position
+            < MAX_CONTENT_LENGTH + this.lineSeparator.length) {
+            this.drain();
+        }
+
+        this.put((byte) '-');
+        this.put((byte) ' ');
+        this.putLong(id);
+        this.put((byte) ',');
+        this.put((byte) ' ');
+        this.putLong(users);
+        this.put((byte) ',');
+        this.put((byte) ' ');
+        this.putLong(files);
+        this.put((byte) ',');
+        this.put((byte) ' ');
+        this.putLong(bytes);
+
+        System.arraycopy(
+            this.lineSeparator, 0,
+            this.buffer, this.position,
+            this.lineSeparator.length
+        );
+        this.position += this.lineSeparator.length;
+        this.lineCount++;
+    }
+
+    // Writes any buffered output to the channel
+    public void flush() throws IOException {
+        this.drain();
+    }
+
+    // The number of org lines written so far
+    long getLineCount() {
+        return this.lineCount;
+    }
+
+    // The number of bytes written to the channel so far
+    long getByteCount() {
+        return this.byteCount;
+    }
+
+    private void writeIndent(final int level) throws IOException {
+        long length = (long) level * INDENT_UNIT.length;
+        if (length > this.indent.length) {
+            int capacity = (int) Math.min(
+                Math.max(length, this.indent.length * 2L),
+                this.buffer.length
+            );
+
+            if (capacity > this.indent.length) {
+                this.indent = new byte[capacity];
+                Arrays.fill(this.indent, (byte) ' ');
+            }
+        }
+
+        while (length > 0) {
+            if (this.position == this.buffer.length) {
+                this.drain();
+            }
+
+            int count = (int) Math.min(
+                Math.min(length, this.indent.length),
+                this.buffer.length - this.position
+            );
+
+            System.arraycopy(this.indent, 0, this.buffer, this.position, count);
+            this.position += count;
+            length -= count;
+        }
+    }
+
+    private void put(final byte value) {
+        this.buffer[this.position++] = value;
+    }
+
+    private void putLong(final long value) {
+        this.position = putLong(this.buffer, this.position, value);
+    }
+
+    // Writes the decimal digits of the value into the array, which must
+    // have room for 20 bytes, and returns the position after the last one
+    static int putLong(final byte[] buffer,
+                       final int position,
+                       final long value) {
+        if (value == Long.MIN_VALUE) {
+            System.arraycopy(
+                LONG_MIN_DIGITS, 0,
+                buffer, position,
+                LONG_MIN_DIGITS.length
+            );
+            return position + LONG_MIN_DIGITS.length;
+        }
+
+        int start = position;
+        long remaining = value;
+        if (remaining < 0) {
+            buffer[start++] = '-';
+            remaining = -remaining;
+        }
+
+        int digits = 1;
+        for (long bound = 10; digits < 19 && remaining >= bound; bound *= 10) {
+            digits++;
+        }
+
+        int end = start + digits;
+        for (int i = end - 1; i >= start; i--) {
+            buffer[i] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+
+        return end;
+    }
+
+    private void drain() throws IOException {
+        this.view.clear();
+        this.view.limit(this.position);
+
+        while (this.view.hasRemaining()) {
+            this.channel.write(this.view);
+        }
+
+        this.byteCount += this.position;
+        this.position = 0;
+    }
+}
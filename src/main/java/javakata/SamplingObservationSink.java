@@ -0,0 +1,85 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+// Passes on the first `limit` observations of each code and, after that,
+// one in every `interval` (or none, if the interval is zero). Everything
+// else is counted and dropped before any text is formatted.
+public final class SamplingObservationSink implements ObservationSink {
+    private final ObservationSink next;
+    private final long limit;
+    private final long interval;
+
+    private final long[] seen;
+    private final long[] suppressed;
+
+    public SamplingObservationSink(final ObservationSink next,
+                                   final long limit,
+                                   final long interval) {
+        if (next == null) {
+            throw new IllegalArgumentException("next argument is null");
+        }
+
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative.");
+        }
+
+        if (interval < 0) {
+            throw new IllegalArgumentException("Interval cannot be negative.");
+        }
+
+        int codes = ObservationCode.values().length;
+
+        this.next = next;
+        this.limit = limit;
+        this.interval = interval;
+        this.seen = new long[codes];
+        this.suppressed = new long[codes];
+    }
+
+    public void observe(final ObservationCode code,
+                        final long lineNumber,
+                        final long byteOffset,
+                        final CharSequence record) {
+        int index = code.ordinal();
+        long count = this.seen[index]++;
+
+        boolean sampled = count < this.limit
+            || (this.interval > 0 && (count - this.limit) % this.interval == 0);
+
+        if (sampled) {
+            this.next.observe(code, lineNumber, byteOffset, record);
+        }
+        else {
+            this.suppressed[index]++;
+        }
+    }
+
+    public long getSuppressedCount(final ObservationCode code) {
+        if (code == null) {
+            throw new IllegalArgumentException("code argument is null");
+        }
+
+        return this.suppressed[code.ordinal()];
+    }
+}
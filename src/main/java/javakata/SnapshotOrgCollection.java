@@ -0,0 +1,559 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+// A read-only OrgCollection answered straight from a memory-mapped snapshot
+// file. Opening a snapshot only maps the file, so it takes about the same
+// time whatever the size of the data, and the columns live in the page
+// cache rather than on the heap.
+//
+// A snapshot holds the columns of a ColumnarOrgCollection, in the same
+// pre-order index layout, so subtree totals are still the difference of
+// two prefix sums. It also holds an open-addressing hash table from org
+// identifier to index, so that getOrg reads one or two slots of the file.
+//
+// The file starts with a fixed size header, followed by each section in
+// the order below. Every value is little-endian.
+//
+//   header        magic, version, count, treeCount, rootCount,
+//                 childCount, slotCount, zero (8 ints)
+//   prefixBytes   long[count + 1]
+//   ids           int[count]
+//   subtreeEnds   int[count]
+//   childOffsets  int[count + 1]
+//   children      int[childCount]
+//   roots         int[rootCount]
+//   prefixUsers   int[count + 1]
+//   prefixFiles   int[count + 1]
+//   slots         int[slotCount * 2], pairs of (id, index); id 0 is empty
+final class SnapshotOrgCollection implements OrgCollection {
+    static final int MAGIC = 0x4A4B5350;
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+    private static final int MAX_SLOTS = 1 << 27;
+
+    private final int treeCount;
+    private final int mask;
+
+    private final LongBuffer prefixBytes;
+    private final IntBuffer ids;
+    private final IntBuffer subtreeEnds;
+    private final IntBuffer childOffsets;
+    private final IntBuffer children;
+    private final IntBuffer roots;
+    private final IntBuffer prefixUsers;
+    private final IntBuffer prefixFiles;
+    private final IntBuffer slots;
+
+    private SnapshotOrgCollection(final FileChannel channel,
+                                  final Layout layout)
+        throws IOException {
+
+        this.treeCount = layout.treeCount;
+        this.mask = layout.slotCount - 1;
+
+        this.prefixBytes = layout.map(channel, 8, layout.count + 1)
+            .asLongBuffer();
+        this.ids = layout.map(channel, 4, layout.count).asIntBuffer();
+        this.subtreeEnds = layout.map(channel, 4, layout.count).asIntBuffer();
+        this.childOffsets = layout.map(channel, 4, layout.count + 1)
+            .asIntBuffer();
+        this.children = layout.map(channel, 4, layout.childCount)
+            .asIntBuffer();
+        this.roots = layout.map(channel, 4, layout.rootCount).asIntBuffer();
+        this.prefixUsers = layout.map(channel, 4, layout.count + 1)
+            .asIntBuffer();
+        this.prefixFiles = layout.map(channel, 4, layout.count + 1)
+            .asIntBuffer();
+        this.slots = layout.map(channel, 8, layout.slotCount).asIntBuffer();
+    }
+
+    // Maps a snapshot file. The mapping stays valid after this returns,
+    // and is released when the collection is garbage collected.
+    public static SnapshotOrgCollection open(final File file)
+        throws IOException {
+
+        if (file == null) {
+            throw new IllegalArgumentException("file argument is null");
+        }
+
+        try (FileChannel channel =
+                 new RandomAccessFile(file, "r").getChannel()) {
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Not a snapshot file: " + file);
+                }
+            }
+
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(
+                    "Unsupported snapshot version " + version + ": " + file
+                );
+            }
+
+            Layout layout = new Layout(
+                header.getInt(),
+                header.getInt(),
+                header.getInt(),
+                header.getInt(),
+                header.getInt()
+            );
+
+            if (channel.size() != layout.size()) {
+                throw new IOException("Snapshot file is truncated: " + file);
+            }
+
+            return new SnapshotOrgCollection(channel, layout);
+        }
+    }
+
+    public Iterable<Org> getRootOrgs() {
+        return new OrgList(this.roots, 0, this.roots.limit());
+    }
+
+    public Org getOrg(final int orgId) {
+        int index = this.indexOf(orgId);
+        return index >= 0 ? new SnapshotOrg(index) : null;
+    }
+
+    public List<Org> getOrgTree(final int orgId, final boolean inclusive) {
+        int index = this.indexOf(orgId);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+
+        if (index >= this.treeCount) {
+            return this.walkOrgTree(index, inclusive);
+        }
+
+        return new OrgRange(
+            inclusive ? index : index + 1,
+            this.subtreeEnds.get(index)
+        );
+    }
+
+    public int size() {
+        return this.ids.limit();
+    }
+
+    private int indexOf(final int orgId) {
+        if (orgId < 1) {
+            return -1;
+        }
+
+        int slot = slotFor(orgId, this.mask);
+        while (true) {
+            int key = this.slots.get(slot * 2);
+            if (key == orgId) {
+                return this.slots.get(slot * 2 + 1);
+            }
+
+            if (key == 0) {
+                return -1;
+            }
+
+            slot = (slot + 1) & this.mask;
+        }
+    }
+
+    // Orgs outside of every tree are walked directly in pre-order. Each org
+    // is visited at most once, so the walk stops where a cycle closes.
+    private List<Org> walkOrgTree(final int index, final boolean inclusive) {
+        BitSet visited = new BitSet();
+
+        int[] tree = new int[16];
+        int treeSize = 0;
+
+        int[] stack = new int[16];
+        int depth = 0;
+        stack[depth++] = index;
+
+        while (depth > 0) {
+            int current = stack[--depth];
+            if (visited.get(current)) {
+                continue;
+            }
+
+            visited.set(current);
+
+            if (current != index || inclusive) {
+                if (treeSize == tree.length) {
+                    tree = Arrays.copyOf(tree, treeSize * 2);
+                }
+                tree[treeSize++] = current;
+            }
+
+            int first = this.childOffsets.get(current);
+            int last = this.childOffsets.get(current + 1);
+
+            if (depth + (last - first) > stack.length) {
+                stack = Arrays.copyOf(
+                    stack,
+                    Math.max(stack.length * 2, depth + (last - first))
+                );
+            }
+
+            for (int c = last - 1; c >= first; c--) {
+                stack[depth++] = this.children.get(c);
+            }
+        }
+
+        return new OrgList(IntBuffer.wrap(tree), 0, treeSize);
+    }
+
+    private static int slotFor(final int orgId, final int mask) {
+        int hash = orgId * HASH_MULTIPLIER;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    // Writes the columns of a ColumnarOrgCollection, in section order. The
+    // header is written last, so a partly written file is never mistaken
+    // for a snapshot.
+    static final class Writer implements Closeable {
+        private final FileChannel channel;
+        private final Layout layout;
+        private final ByteBuffer buffer;
+        private long position;
+
+        Writer(final File file,
+               final int count,
+               final int treeCount,
+               final int rootCount,
+               final int childCount) throws IOException {
+
+            this.layout = new Layout(
+                count,
+                treeCount,
+                rootCount,
+                childCount,
+                slotCountFor(count)
+            );
+
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+            this.channel.truncate(0);
+
+            this.buffer = ByteBuffer.allocateDirect(1 << 20)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            this.position = HEADER_SIZE;
+        }
+
+        void putLongs(final long[] values) throws IOException {
+            int length = values.length;
+            LongBuffer view = this.buffer.asLongBuffer();
+            for (int i = 0; i < length; i += view.capacity()) {
+                view.clear();
+                view.put(values, i, Math.min(view.capacity(), length - i));
+                this.drain(view.position() * 8);
+            }
+        }
+
+        void putInts(final int[] values) throws IOException {
+            int length = values.length;
+            IntBuffer view = this.buffer.asIntBuffer();
+            for (int i = 0; i < length; i += view.capacity()) {
+                view.clear();
+                view.put(values, i, Math.min(view.capacity(), length - i));
+                this.drain(view.position() * 4);
+            }
+        }
+
+        // Builds the hash table in place, in the mapped file, so that the
+        // table never needs to fit on the heap, then writes the header
+        void finish(final int[] ids) throws IOException {
+            if (this.position != this.layout.slotsOffset()) {
+                throw new IllegalStateException(
+                    "Snapshot columns were not all written."
+                );
+            }
+
+            IntBuffer table = this.layout
+                .map(this.channel, FileChannel.MapMode.READ_WRITE,
+                     this.position, 8, this.layout.slotCount)
+                .asIntBuffer();
+
+            int mask = this.layout.slotCount - 1;
+            for (int index = 0; index < this.layout.count; index++) {
+                int slot = slotFor(ids[index], mask);
+                while (table.get(slot * 2) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+
+                table.put(slot * 2, ids[index]);
+                table.put(slot * 2 + 1, index);
+            }
+
+            this.buffer.clear();
+            this.buffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(this.layout.count)
+                .putInt(this.layout.treeCount)
+                .putInt(this.layout.rootCount)
+                .putInt(this.layout.childCount)
+                .putInt(this.layout.slotCount)
+                .putInt(0);
+
+            this.position = 0;
+            this.drain(HEADER_SIZE);
+        }
+
+        public void close() throws IOException {
+            this.channel.close();
+        }
+
+        private void drain(final int length) throws IOException {
+            this.buffer.clear();
+            this.buffer.limit(length);
+
+            while (this.buffer.hasRemaining()) {
+                this.position += this.channel.write(
+                    this.buffer,
+                    this.position
+                );
+            }
+
+            // views taken later span the whole buffer again
+            this.buffer.clear();
+        }
+
+        // keeps the table at most three quarters full
+        private static int slotCountFor(final int count) {
+            long needed = Math.max(2L, (count * 4L + 2) / 3);
+            if (needed > MAX_SLOTS) {
+                throw new IllegalArgumentException(
+                    "Too many orgs for a snapshot."
+                );
+            }
+
+            return Integer.highestOneBit((int) needed - 1) << 1;
+        }
+    }
+
+    // The size of each section, and where it starts. Sections are mapped
+    // one at a time, in file order, as each may be up to 2GB.
+    private static final class Layout {
+        private final int count;
+        private final int treeCount;
+        private final int rootCount;
+        private final int childCount;
+        private final int slotCount;
+
+        private long next = HEADER_SIZE;
+
+        Layout(final int count,
+               final int treeCount,
+               final int rootCount,
+               final int childCount,
+               final int slotCount) throws IOException {
+
+            if (count < 0
+                || treeCount < 0
+                || treeCount > count
+                || rootCount < 0
+                || rootCount > count
+                || childCount < 0
+                || childCount > count
+                || slotCount < 2
+                || slotCount > MAX_SLOTS
+                || Integer.bitCount(slotCount) != 1) {
+                throw new IOException("Snapshot header is corrupt.");
+            }
+
+            this.count = count;
+            this.treeCount = treeCount;
+            this.rootCount = rootCount;
+            this.childCount = childCount;
+            this.slotCount = slotCount;
+        }
+
+        long slotsOffset() {
+            return HEADER_SIZE
+                + 8L * (this.count + 1)
+                + 4L * this.count * 2
+                + 4L * (this.count + 1) * 3
+                + 4L * this.childCount
+                + 4L * this.rootCount;
+        }
+
+        long size() {
+            return this.slotsOffset() + 8L * this.slotCount;
+        }
+
+        // Maps the next section of the file for reading
+        ByteBuffer map(final FileChannel channel,
+                       final int width,
+                       final int length) throws IOException {
+
+            ByteBuffer section = this.map(
+                channel,
+                FileChannel.MapMode.READ_ONLY,
+                this.next,
+                width,
+                length
+            );
+
+            this.next += (long) width * length;
+            return section;
+        }
+
+        ByteBuffer map(final FileChannel channel,
+                       final FileChannel.MapMode mode,
+                       final long offset,
+                       final int width,
+                       final int length) throws IOException {
+
+            return channel.map(mode, offset, (long) width * length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private final class SnapshotOrg implements Org {
+        private final int index;
+
+        SnapshotOrg(final int index) {
+            this.index = index;
+        }
+
+        public int getId() {
+            return SnapshotOrgCollection.this.ids.get(this.index);
+        }
+
+        public int getTotalNumUsers() {
+            IntBuffer prefix = SnapshotOrgCollection.this.prefixUsers;
+            return prefix.get(this.end()) - prefix.get(this.index);
+        }
+
+        public int getTotalNumFiles() {
+            IntBuffer prefix = SnapshotOrgCollection.this.prefixFiles;
+            return prefix.get(this.end()) - prefix.get(this.index);
+        }
+
+        public long getTotalNumBytes() {
+            LongBuffer prefix = SnapshotOrgCollection.this.prefixBytes;
+            return prefix.get(this.end()) - prefix.get(this.index);
+        }
+
+        private int end() {
+            return SnapshotOrgCollection.this.subtreeEnds.get(this.index);
+        }
+
+        public List<Org> getChildOrgs() {
+            IntBuffer offsets = SnapshotOrgCollection.this.childOffsets;
+
+            return new OrgList(
+                SnapshotOrgCollection.this.children,
+                offsets.get(this.index),
+                offsets.get(this.index + 1)
+            );
+        }
+
+        private SnapshotOrgCollection owner() {
+            return SnapshotOrgCollection.this;
+        }
+
+        public boolean equals(final Object other) {
+            if (!(other instanceof SnapshotOrg)) {
+                return false;
+            }
+
+            SnapshotOrg org = (SnapshotOrg) other;
+            return org.owner() == this.owner() && org.index == this.index;
+        }
+
+        public int hashCode() {
+            return this.index;
+        }
+
+        public String toString() {
+            return "Org " + Integer.toString(this.getId());
+        }
+    }
+
+    // A read-only list of org views over a range of an index column
+    private final class OrgList extends AbstractList<Org>
+        implements RandomAccess {
+
+        private final IntBuffer indexes;
+        private final int from;
+        private final int to;
+
+        OrgList(final IntBuffer indexes, final int from, final int to) {
+            this.indexes = indexes;
+            this.from = from;
+            this.to = to;
+        }
+
+        public Org get(final int i) {
+            if (i < 0 || i >= this.size()) {
+                throw new IndexOutOfBoundsException(Integer.toString(i));
+            }
+
+            return new SnapshotOrg(this.indexes.get(this.from + i));
+        }
+
+        public int size() {
+            return this.to - this.from;
+        }
+    }
+
+    // A read-only list of org views over a contiguous range of indexes
+    private final class OrgRange extends AbstractList<Org>
+        implements RandomAccess {
+
+        private final int from;
+        private final int to;
+
+        OrgRange(final int from, final int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        public Org get(final int i) {
+            if (i < 0 || i >= this.size()) {
+                throw new IndexOutOfBoundsException(Integer.toString(i));
+            }
+
+            return new SnapshotOrg(this.from + i);
+        }
+
+        public int size() {
+            return this.to - this.from;
+        }
+    }
+}
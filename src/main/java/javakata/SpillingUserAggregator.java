@@ -0,0 +1,367 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.io.*;
+import java.util.*;
+
+// Wraps an OrgCollectionBuilder, summing user data per org in a table of
+// fixed size before it reaches the target. When the table fills up, its
+// totals are sorted by org identifier and spilled to a temporary run file.
+// On build, the runs are merged, summing the totals of each org across
+// runs, and every org's totals are added to the target exactly once, in
+// identifier order.
+//
+// This bounds the memory used for user totals however many orgs the user
+// file refers to, and turns random updates of the target into sequential
+// ones, which matters most for a BTreeOrgCollection.
+final class SpillingUserAggregator implements OrgCollectionBuilder {
+    // Heap bytes per org held in memory: 2 table slots of 20 bytes, as
+    // for ParallelUserLoader.BYTES_PER_ORG, plus a long in the sort buffer
+    static final int BYTES_PER_ORG = 2 * 20 + 8;
+
+    private static final int RECORD_SIZE = 20;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_MERGE_WIDTH = 64;
+
+    private final OrgCollectionBuilder target;
+    private final File directory;
+    private final int maxOrgs;
+
+    private final UserTotalsTable table;
+    private final long[] sorted;
+    private final List<File> runs;
+
+    private long spilledRecords;
+
+    SpillingUserAggregator(final OrgCollectionBuilder target,
+                           final long memoryBudget) {
+        this(target, memoryBudget, null);
+    }
+
+    // Run files are created in the directory, or in the default temporary
+    // file directory if it is null
+    SpillingUserAggregator(final OrgCollectionBuilder target,
+                           final long memoryBudget,
+                           final File directory) {
+        if (target == null) {
+            throw new IllegalArgumentException("target argument is null");
+        }
+
+        if (memoryBudget < BYTES_PER_ORG * 2L) {
+            throw new IllegalArgumentException(
+                "Memory budget is too small."
+            );
+        }
+
+        // keep the table's capacity a power of two no larger than allowed
+        long orgs = Math.min(memoryBudget / BYTES_PER_ORG, 1 << 29);
+
+        this.target = target;
+        this.directory = directory;
+        this.maxOrgs = Integer.highestOneBit((int) orgs);
+        this.table = new UserTotalsTable(this.maxOrgs);
+        this.sorted = new long[this.maxOrgs];
+        this.runs = new ArrayList<File>();
+    }
+
+    public void addOrg(final int orgId, final int parentOrgId) {
+        this.target.addOrg(orgId, parentOrgId);
+    }
+
+    public ObservationCode tryAddOrg(final int orgId, final int parentOrgId) {
+        return this.target.tryAddOrg(orgId, parentOrgId);
+    }
+
+    public boolean containsOrg(final int orgId) {
+        return this.target.containsOrg(orgId);
+    }
+
+    public void resolveParents(final UnplacedOrgObserver observer) {
+        this.target.resolveParents(observer);
+    }
+
+    public boolean addUsers(final int orgId,
+                            final int users,
+                            final int files,
+                            final long bytes) {
+        if (!this.target.containsOrg(orgId)) {
+            return false;
+        }
+
+        this.table.add(orgId, users, files, bytes);
+        if (this.table.size() == this.maxOrgs) {
+            this.spill();
+        }
+
+        return true;
+    }
+
+    // Number of runs spilled to disk so far
+    int getRunCount() {
+        return this.runs.size();
+    }
+
+    long getSpilledRecords() {
+        return this.spilledRecords;
+    }
+
+    public OrgCollection build() {
+        try {
+            if (this.runs.isEmpty()) {
+                // everything fit, so there is nothing to merge
+                int count = this.sort();
+                for (int i = 0; i < count; i++) {
+                    int slot = (int) this.sorted[i];
+                    this.target.addUsers(
+                        this.table.getKey(slot),
+                        this.table.getUsers(slot),
+                        this.table.getFiles(slot),
+                        this.table.getBytes(slot)
+                    );
+                }
+            }
+            else {
+                if (this.table.size() > 0) {
+                    this.spill();
+                }
+
+                this.merge();
+            }
+        }
+        finally {
+            for (File run : this.runs) {
+                run.delete();
+            }
+            this.runs.clear();
+        }
+
+        return this.target.build();
+    }
+
+    public void computeTotals(final int parallelism) {
+        this.target.computeTotals(parallelism);
+    }
+
+    // Sorts the occupied slots of the table by org identifier, packing
+    // each as (identifier << 32 | slot). Returns the number of slots.
+    private int sort() {
+        int count = 0;
+        for (int slot = 0; slot < this.table.getSlotCount(); slot++) {
+            int orgId = this.table.getKey(slot);
+            if (orgId != 0) {
+                this.sorted[count++] = (long) orgId << 32 | slot;
+            }
+        }
+
+        Arrays.sort(this.sorted, 0, count);
+        return count;
+    }
+
+    private void spill() {
+        int count = this.sort();
+
+        File run = this.newRun();
+        try (DataOutputStream out = openRun(run)) {
+            for (int i = 0; i < count; i++) {
+                int slot = (int) this.sorted[i];
+
+                out.writeInt(this.table.getKey(slot));
+                out.writeInt(this.table.getUsers(slot));
+                out.writeInt(this.table.getFiles(slot));
+                out.writeLong(this.table.getBytes(slot));
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        this.spilledRecords += count;
+        this.table.clear();
+    }
+
+    // Merges runs in batches until few enough are left to read at once,
+    // then merges those into the target
+    private void merge() {
+        try {
+            while (this.runs.size() > MAX_MERGE_WIDTH) {
+                List<File> batch = new ArrayList<File>(
+                    this.runs.subList(0, MAX_MERGE_WIDTH)
+                );
+
+                File run = this.newRun();
+                try (DataOutputStream out = openRun(run)) {
+                    mergeRuns(batch, (orgId, users, files, bytes) -> {
+                        out.writeInt(orgId);
+                        out.writeInt(users);
+                        out.writeInt(files);
+                        out.writeLong(bytes);
+                    });
+                }
+
+                for (File merged : batch) {
+                    merged.delete();
+                }
+
+                this.runs.subList(0, MAX_MERGE_WIDTH).clear();
+            }
+
+            mergeRuns(this.runs, (orgId, users, files, bytes) ->
+                this.target.addUsers(orgId, users, files, bytes)
+            );
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // A k-way merge over the runs, which are each sorted by org identifier.
+    // Totals of the same org are summed before being passed on.
+    private static void mergeRuns(final List<File> runs,
+                                  final TotalsConsumer consumer)
+        throws IOException {
+
+        PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(
+            Math.max(1, runs.size()),
+            (a, b) -> Integer.compare(a.orgId, b.orgId)
+        );
+
+        try {
+            for (File run : runs) {
+                RunReader reader = new RunReader(run);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+                else {
+                    reader.close();
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+
+                int orgId = reader.orgId;
+                int users = 0;
+                int files = 0;
+                long bytes = 0;
+
+                while (true) {
+                    users += reader.users;
+                    files += reader.files;
+                    bytes += reader.bytes;
+
+                    if (reader.next()) {
+                        queue.add(reader);
+                    }
+                    else {
+                        reader.close();
+                    }
+
+                    if (queue.isEmpty() || queue.peek().orgId != orgId) {
+                        break;
+                    }
+
+                    reader = queue.poll();
+                }
+
+                consumer.accept(orgId, users, files, bytes);
+            }
+        }
+        finally {
+            for (RunReader reader : queue) {
+                reader.close();
+            }
+        }
+    }
+
+    private File newRun() {
+        try {
+            File run = File.createTempFile(
+                "javakata-users",
+                ".run",
+                this.directory
+            );
+
+            run.deleteOnExit();
+            this.runs.add(run);
+            return run;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static DataOutputStream openRun(final File run)
+        throws IOException {
+
+        return new DataOutputStream(
+            new BufferedOutputStream(
+                new FileOutputStream(run),
+                BUFFER_SIZE
+            )
+        );
+    }
+
+    private interface TotalsConsumer {
+        void accept(int orgId, int users, int files, long bytes)
+            throws IOException;
+    }
+
+    // Reads the records of a run one at a time
+    private static final class RunReader implements Closeable {
+        private final DataInputStream in;
+        private long remaining;
+
+        private int orgId;
+        private int users;
+        private int files;
+        private long bytes;
+
+        RunReader(final File run) throws IOException {
+            this.remaining = run.length() / RECORD_SIZE;
+            this.in = new DataInputStream(
+                new BufferedInputStream(
+                    new FileInputStream(run),
+                    BUFFER_SIZE
+                )
+            );
+        }
+
+        boolean next() throws IOException {
+            if (this.remaining == 0) {
+                return false;
+            }
+
+            this.orgId = this.in.readInt();
+            this.users = this.in.readInt();
+            this.files = this.in.readInt();
+            this.bytes = this.in.readLong();
+            this.remaining--;
+            return true;
+        }
+
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+}
@@ -0,0 +1,264 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+// Splits the bytes read from a stream into lines, terminated the same way
+// as MappedLineIterable's. Each call to next() returns the same ByteLine
+// instance, pointed at the line in a buffer that grows to hold the longest
+// line; each line's position is that of its first byte in the stream.
+//
+// An iterator over one part of a longer stream can leave out the part's
+// first line, which may have begun in the part before, and hold back its
+// last, which may end in the part after. Their bytes are kept so that the
+// lines crossing from one part to the next can be put back together.
+final class StreamLineIterator implements Iterator<ByteLine>, Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ByteLine line;
+    private final boolean skipFirst;
+    private final boolean keepLast;
+
+    private InputStream in;
+    private byte[] buffer;
+    private ByteBuffer wrapped;
+    private int start;
+    private int scan;
+    private int limit;
+    private long bufferPosition;
+    private boolean hasLine;
+
+    private byte[] first;
+    private byte[] last;
+    private boolean terminated;
+
+    StreamLineIterator(final InputStream in,
+                       final boolean skipFirst,
+                       final boolean keepLast) {
+        if (in == null) {
+            throw new IllegalArgumentException("in argument is null");
+        }
+
+        this.line = new ByteLine();
+        this.in = in;
+        this.skipFirst = skipFirst;
+        this.keepLast = keepLast;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.wrapped = ByteBuffer.wrap(this.buffer);
+    }
+
+    public boolean hasNext() {
+        if (!this.hasLine) {
+            this.advance();
+        }
+
+        return this.hasLine;
+    }
+
+    public ByteLine next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        this.hasLine = false;
+        return this.line;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("Remove not supported");
+    }
+
+    // The bytes left out before the first line, terminator included. If
+    // no line ended in the stream, this is all of it.
+    byte[] getFirst() {
+        return this.first == null ? new byte[0] : this.first;
+    }
+
+    // The bytes held back after the last line terminator
+    byte[] getLast() {
+        return this.last == null ? new byte[0] : this.last;
+    }
+
+    // Whether a line ended anywhere in the stream
+    boolean isTerminated() {
+        return this.terminated;
+    }
+
+    // The number of bytes read from the stream, once it is exhausted
+    long getLength() {
+        return this.bufferPosition + this.limit;
+    }
+
+    // Positions the shared line at the next line. This is deferred until
+    // the caller asks for another line, since the caller may still be
+    // using the line returned by the previous call to next().
+    private void advance() {
+        while (true) {
+            int i = this.scan;
+            while (i < this.limit
+                   && this.buffer[i] != '\n'
+                   && this.buffer[i] != '\r') {
+                i++;
+            }
+
+            this.scan = i;
+
+            int terminator = 0;
+            if (i < this.limit) {
+                terminator = 1;
+                if (this.buffer[i] == '\r') {
+                    if (i + 1 < this.limit) {
+                        if (this.buffer[i + 1] == '\n') {
+                            terminator = 2;
+                        }
+                    }
+                    else if (this.in != null) {
+                        // can't tell if a "\n" follows the "\r"
+                        terminator = -1;
+                    }
+                    else if (this.keepLast) {
+                        // it may be followed by one in the next part
+                        terminator = 0;
+                    }
+                }
+            }
+
+            if (terminator < 0 || (terminator == 0 && this.in != null)) {
+                this.fill();
+                continue;
+            }
+
+            if (terminator == 0) {
+                this.finish();
+                return;
+            }
+
+            int from = this.start;
+            this.start = i + terminator;
+            this.scan = this.start;
+            this.terminated = true;
+
+            if (this.skipFirst && this.first == null) {
+                this.first = Arrays.copyOfRange(this.buffer, from, this.start);
+                continue;
+            }
+
+            this.line.set(
+                this.wrapped,
+                from,
+                i - from,
+                this.bufferPosition + from,
+                terminator
+            );
+            this.hasLine = true;
+            return;
+        }
+    }
+
+    // Deals with the bytes after the last terminator once the stream is
+    // exhausted
+    private void finish() {
+        if (this.start == this.limit) {
+            return;
+        }
+
+        int from = this.start;
+        this.start = this.limit;
+        this.scan = this.limit;
+
+        if (this.skipFirst && this.first == null) {
+            this.first = Arrays.copyOfRange(this.buffer, from, this.limit);
+        }
+        else if (this.keepLast) {
+            this.last = Arrays.copyOfRange(this.buffer, from, this.limit);
+        }
+        else {
+            this.line.set(
+                this.wrapped,
+                from,
+                this.limit - from,
+                this.bufferPosition + from
+            );
+            this.hasLine = true;
+        }
+    }
+
+    // Reads more of the stream, first moving the unread bytes to the
+    // front of the buffer, or growing it if they already fill it
+    private void fill() {
+        if (this.start > 0) {
+            System.arraycopy(
+                this.buffer, this.start,
+                this.buffer, 0,
+                this.limit - this.start
+            );
+
+            this.bufferPosition += this.start;
+            this.limit -= this.start;
+            this.scan -= this.start;
+            this.start = 0;
+        }
+        else if (this.limit == this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+            this.wrapped = ByteBuffer.wrap(this.buffer);
+        }
+
+        try {
+            int read = this.in.read(
+                this.buffer,
+                this.limit,
+                this.buffer.length - this.limit
+            );
+
+            if (read < 0) {
+                this.close();
+            }
+            else {
+                this.limit += read;
+            }
+        }
+        catch (IOException e) {
+            this.close();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Closes the stream, which happens by itself once the last line is read
+    public void close() {
+        InputStream temp = this.in;
+        this.in = null;
+        if (temp == null) {
+            return;
+        }
+
+        try {
+            temp.close();
+        }
+        catch (IOException e) {
+            // everything needed has been read
+        }
+    }
+}
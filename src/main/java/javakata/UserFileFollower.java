@@ -0,0 +1,225 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+// Follows a user data file that is only ever appended to. Each poll reads
+// the complete lines appended since the previous poll and adds them to
+// their orgs, which update their cached totals and those of their
+// ancestors incrementally. The first poll reads the whole file.
+//
+// A line is only read once its terminator has been written, so a record
+// that is still being appended is picked up by a later poll. The orgs
+// whose totals changed are remembered until they are taken.
+final class UserFileFollower implements Closeable {
+    private static final int TAIL_SIZE = 4096;
+
+    private final File userFile;
+    private final OrgCollectionImpl orgs;
+    private final ObservationSink sink;
+    private final FileChannel channel;
+    private final RecordScanner scanner;
+
+    private long offset;
+    private long lineNumber;
+    private boolean skipNewline;
+
+    // own data added per org since the changed orgs were last taken
+    private UserTotalsTable changes;
+
+    UserFileFollower(final File userFile,
+                     final OrgCollectionImpl orgs,
+                     final ObservationSink sink)
+        throws FileNotFoundException {
+
+        if (userFile == null) {
+            throw new IllegalArgumentException("userFile argument is null");
+        }
+
+        if (orgs == null) {
+            throw new IllegalArgumentException("orgs argument is null");
+        }
+
+        if (sink == null) {
+            throw new IllegalArgumentException("sink argument is null");
+        }
+
+        this.userFile = userFile;
+        this.orgs = orgs;
+        this.sink = sink;
+        this.channel = new RandomAccessFile(userFile, "r").getChannel();
+        this.scanner = new RecordScanner();
+        this.changes = new UserTotalsTable();
+    }
+
+    // The number of bytes of the file read so far
+    long getOffset() {
+        return this.offset;
+    }
+
+    // Reads and applies the complete lines appended since the last poll.
+    // Returns the number of lines read.
+    long poll() throws IOException {
+        if (this.offset == 0 && GzipLineIterable.isGzip(this.userFile)) {
+            // appended lines would be compressed, not readable in place
+            throw new IOException(
+                "Compressed user files cannot be followed: " + this.userFile
+            );
+        }
+
+        long size = this.channel.size();
+        if (size < this.offset) {
+            throw new IOException(
+                "User file was truncated: " + this.userFile
+            );
+        }
+
+        if (this.skipNewline && size > this.offset) {
+            // the previous poll ended on "\r"; it may have been "\r\n"
+            if (this.byteAt(this.offset) == '\n') {
+                this.offset++;
+            }
+            this.skipNewline = false;
+        }
+
+        long end = this.endOfLastLine(size);
+        if (end <= this.offset) {
+            return 0;
+        }
+
+        this.skipNewline = this.byteAt(end - 1) == '\r';
+
+        MappedLineIterable lines = new MappedLineIterable(
+            this.userFile,
+            this.offset,
+            end,
+            MappedLineIterable.DEFAULT_WINDOW_SIZE
+        );
+
+        long read = 0;
+        for (ByteLine line : lines) {
+            read++;
+            this.lineNumber++;
+
+            ObservationCode error =
+                DataLoader.addUserRecord(this.scanner, line, this.orgs);
+
+            if (error != null) {
+                this.sink.observe(
+                    error,
+                    this.lineNumber,
+                    line.getPosition(),
+                    line
+                );
+                continue;
+            }
+
+            this.changes.add(
+                (int) this.scanner.getOrgId(),
+                1,
+                (int) this.scanner.getFiles(),
+                this.scanner.getBytes()
+            );
+        }
+
+        this.offset = end;
+        return read;
+    }
+
+    // Returns every org whose totals changed since the last call, ordered
+    // by identifier: the orgs that had users added, and their ancestors
+    List<Org> takeChangedOrgs() {
+        Set<OrgImpl> changed = Collections.newSetFromMap(
+            new IdentityHashMap<OrgImpl, Boolean>()
+        );
+
+        for (int slot = 0; slot < this.changes.getSlotCount(); slot++) {
+            int orgId = this.changes.getKey(slot);
+            if (orgId == 0) {
+                continue;
+            }
+
+            // stops where a parent cycle closes
+            OrgImpl org = this.orgs.getOrg(orgId);
+            while (org != null && changed.add(org)) {
+                org = org.getParent();
+            }
+        }
+
+        // start again with a small table, so the next call costs time in
+        // proportion to what changed rather than to the largest delta
+        this.changes = new UserTotalsTable();
+
+        List<Org> sorted = new ArrayList<Org>(changed);
+        sorted.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+        return sorted;
+    }
+
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    // Returns the position just after the last line terminator before the
+    // size, or the current offset if no line has been completed
+    private long endOfLastLine(final long size) throws IOException {
+        ByteBuffer tail = ByteBuffer.allocate(TAIL_SIZE);
+
+        long end = size;
+        while (end > this.offset) {
+            int length = (int) Math.min(TAIL_SIZE, end - this.offset);
+            long start = end - length;
+
+            tail.clear();
+            tail.limit(length);
+            while (tail.hasRemaining()) {
+                if (this.channel.read(tail, start + tail.position()) < 0) {
+                    throw new EOFException("User file was truncated.");
+                }
+            }
+
+            for (int i = length - 1; i >= 0; i--) {
+                byte b = tail.get(i);
+                if (b == '\n' || b == '\r') {
+                    return start + i + 1;
+                }
+            }
+
+            end = start;
+        }
+
+        return this.offset;
+    }
+
+    private byte byteAt(final long position) throws IOException {
+        ByteBuffer one = ByteBuffer.allocate(1);
+        if (this.channel.read(one, position) < 1) {
+            throw new EOFException("User file was truncated.");
+        }
+
+        return one.get(0);
+    }
+}
@@ -0,0 +1,158 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+
+// Open-addressing table of per-org user totals, keyed by org identifier.
+// Counts are kept in parallel primitive arrays so that aggregating a user
+// record does not allocate. Org identifiers are always >= 1, which lets
+// zero mark an empty slot.
+final class UserTotalsTable {
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
+    private int[] keys;
+    private int[] users;
+    private int[] files;
+    private long[] bytes;
+
+    private int size;
+    private int mask;
+
+    public UserTotalsTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public UserTotalsTable(final int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException(
+                "Expected size cannot be negative."
+            );
+        }
+
+        int capacity = Integer.highestOneBit(
+            Math.max(2, expectedSize) * 2 - 1
+        ) * 2;
+
+        this.allocate(capacity);
+    }
+
+    public void add(final int orgId,
+                    final int userCount,
+                    final int fileCount,
+                    final long byteCount) {
+        if (orgId < 1) {
+            throw new IllegalArgumentException(
+                "Org identifiers must be greater than or equal to one."
+            );
+        }
+
+        int slot = this.findSlot(orgId);
+        if (this.keys[slot] == 0) {
+            this.keys[slot] = orgId;
+            this.size++;
+
+            if (this.size * 2 > this.keys.length) {
+                this.rehash(this.keys.length * 2);
+                slot = this.findSlot(orgId);
+            }
+        }
+
+        this.users[slot] += userCount;
+        this.files[slot] += fileCount;
+        this.bytes[slot] += byteCount;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    // Empties the table, keeping its capacity
+    public void clear() {
+        Arrays.fill(this.keys, 0);
+        Arrays.fill(this.users, 0);
+        Arrays.fill(this.files, 0);
+        Arrays.fill(this.bytes, 0);
+        this.size = 0;
+    }
+
+    // Slots are exposed so that callers can walk the table without an
+    // iterator; empty slots have a key of zero.
+    public int getSlotCount() {
+        return this.keys.length;
+    }
+
+    public int getKey(final int slot) {
+        return this.keys[slot];
+    }
+
+    public int getUsers(final int slot) {
+        return this.users[slot];
+    }
+
+    public int getFiles(final int slot) {
+        return this.files[slot];
+    }
+
+    public long getBytes(final int slot) {
+        return this.bytes[slot];
+    }
+
+    private int findSlot(final int orgId) {
+        int hash = orgId * HASH_MULTIPLIER;
+        int slot = (hash ^ (hash >>> 16)) & this.mask;
+        while (this.keys[slot] != 0 && this.keys[slot] != orgId) {
+            slot = (slot + 1) & this.mask;
+        }
+
+        return slot;
+    }
+
+    private void allocate(final int capacity) {
+        this.keys = new int[capacity];
+        this.users = new int[capacity];
+        this.files = new int[capacity];
+        this.bytes = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    private void rehash(final int capacity) {
+        int[] oldKeys = this.keys;
+        int[] oldUsers = this.users;
+        int[] oldFiles = this.files;
+        long[] oldBytes = this.bytes;
+
+        this.allocate(capacity);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = this.findSlot(oldKeys[i]);
+                this.keys[slot] = oldKeys[i];
+                this.users[slot] = oldUsers[i];
+                this.files[slot] = oldFiles[i];
+                this.bytes[slot] = oldBytes[i];
+            }
+        }
+    }
+}
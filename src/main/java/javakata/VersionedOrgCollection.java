@@ -0,0 +1,600 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+
+// An OrgCollection that can be queried while it is being loaded or updated.
+// One writer thread adds orgs and users through the OrgCollectionBuilder
+// methods; readers on any number of threads query immutable versions of
+// the collection, which the writer publishes with a single volatile write.
+// Readers never lock or wait, and a version never changes once published.
+//
+// Orgs are kept in a PersistentIntMap, so a new version shares every org
+// that did not change with the version before it. The writer copies an
+// org the first time it changes after a publish, and changes the copy in
+// place until the next publish. Subtree totals are kept up to date as
+// users are added, by adding the change to each ancestor, so a version's
+// totals are always exact.
+//
+// Child lists are append-only arrays shared between the versions of an
+// org; each version only reads as many children as it had when it was
+// published, so appending to the array never affects older versions.
+//
+// The OrgCollection methods of this class query the latest version. Org
+// instances stay bound to the version they came from, so walking the
+// children of the orgs returned by one call sees a single version.
+final class VersionedOrgCollection
+    implements OrgCollection, OrgCollectionBuilder {
+
+    // the key of a pseudo-org whose children are the roots; no org can
+    // have zero as its identifier
+    private static final int ROOTS = 0;
+    private static final int NONE = 0;
+
+    private final PersistentIntMap.Editor<Node> editor;
+    private final long publishEvery;
+
+    private volatile Version current;
+
+    // Orgs added before their parents, in the order they were added. Each
+    // parent's entries are chained back from its last one, and an entry's
+    // parent becomes NONE once the org is linked.
+    private int[] pendingChildren;
+    private int[] pendingParents;
+    private int[] pendingPrevious;
+    private int pendingCount;
+    private IntIntMap lastPending;
+
+    // the child and parent of each link that closed a parent cycle
+    private int[] cycleLinks;
+    private int cycleLinkCount;
+
+    private Object token;
+    private long changes;
+    private long versionNumber;
+    private boolean cycles;
+
+    public VersionedOrgCollection() {
+        this(0);
+    }
+
+    // Publishes a new version after every publishEvery changes, if it is
+    // positive, so that readers see a load progress
+    public VersionedOrgCollection(final long publishEvery) {
+        if (publishEvery < 0) {
+            throw new IllegalArgumentException(
+                "Publish interval cannot be negative."
+            );
+        }
+
+        this.publishEvery = publishEvery;
+        this.editor = PersistentIntMap.<Node>empty().edit();
+        this.token = new Object();
+        this.editor.put(ROOTS, new Node(ROOTS, this.token));
+        this.publish();
+    }
+
+    // Returns the latest published version
+    public Version snapshot() {
+        return this.current;
+    }
+
+    // Makes every change so far visible to readers, as a new version
+    public Version publish() {
+        this.token = new Object();
+        this.changes = 0;
+
+        Version version = new Version(
+            this.editor.persistent(),
+            this.versionNumber++,
+            this.cycles
+        );
+
+        this.current = version;
+        return version;
+    }
+
+    public Iterable<Org> getRootOrgs() {
+        return this.current.getRootOrgs();
+    }
+
+    public Org getOrg(final int orgId) {
+        return this.current.getOrg(orgId);
+    }
+
+    public List<Org> getOrgTree(final int orgId, final boolean inclusive) {
+        return this.current.getOrgTree(orgId, inclusive);
+    }
+
+    public void addOrg(final int orgId, final int parentOrgId) {
+        ObservationCode error = this.tryAddOrg(orgId, parentOrgId);
+        if (error != null) {
+            throw new IllegalArgumentException(error.getDetail(orgId));
+        }
+    }
+
+    public ObservationCode tryAddOrg(final int orgId, final int parentOrgId) {
+        if (orgId < 1) {
+            return ObservationCode.ORG_INVALID_ID;
+        }
+
+        if (parentOrgId < 0 && parentOrgId != NO_PARENT) {
+            return ObservationCode.ORG_INVALID_PARENT;
+        }
+
+        if (this.editor.get(orgId) != null) {
+            return ObservationCode.ORG_DUPLICATE;
+        }
+
+        this.editor.put(orgId, new Node(orgId, this.token));
+
+        // children defined before their parent are linked now
+        if (this.lastPending != null) {
+            int last = this.lastPending.get(orgId);
+            if (last != IntIntMap.NO_VALUE) {
+                this.linkPending(last, orgId);
+            }
+        }
+
+        if (parentOrgId == NO_PARENT) {
+            this.editable(ROOTS).addChild(orgId);
+        }
+        else if (this.editor.get(parentOrgId) != null) {
+            this.link(orgId, parentOrgId);
+        }
+        else if (parentOrgId > 0) {
+            this.addForResolution(orgId, parentOrgId);
+        }
+
+        this.changed();
+        return null;
+    }
+
+    public boolean containsOrg(final int orgId) {
+        return orgId > 0 && this.editor.get(orgId) != null;
+    }
+
+    // Orgs are linked as soon as their parents are added, so that readers
+    // see them; this only reports the orgs whose parents never were, and
+    // those in parent cycles
+    public void resolveParents(final UnplacedOrgObserver observer) {
+        if (observer == null) {
+            return;
+        }
+
+        for (int i = 0; i < this.pendingCount; i++) {
+            if (this.pendingParents[i] != NONE) {
+                observer.unplaced(
+                    ObservationCode.ORG_UNKNOWN_PARENT,
+                    this.pendingChildren[i],
+                    this.pendingParents[i]
+                );
+            }
+        }
+
+        if (this.cycleLinkCount == 0) {
+            return;
+        }
+
+        IntIntMap deferred = new IntIntMap(this.pendingCount);
+        for (int i = 0; i < this.pendingCount; i++) {
+            deferred.putIfAbsent(this.pendingChildren[i], i);
+        }
+
+        for (int i = 0; i < this.cycleLinkCount; i += 2) {
+            this.reportCycle(
+                this.cycleLinks[i],
+                this.cycleLinks[i + 1],
+                deferred,
+                observer
+            );
+        }
+    }
+
+    // Reports the orgs of a cycle that were added before their parents, or
+    // the org if it is its own parent. The cycle runs up from the parent of
+    // the link that closed it to the child, whose parent was never set.
+    private void reportCycle(final int child,
+                             final int parent,
+                             final IntIntMap deferred,
+                             final UnplacedOrgObserver observer) {
+        if (child == parent) {
+            observer.unplaced(ObservationCode.ORG_PARENT_CYCLE, child, parent);
+            return;
+        }
+
+        int id = parent;
+        while (true) {
+            int idParent = id == child ? parent : this.editor.get(id).parent;
+            if (deferred.get(id) != IntIntMap.NO_VALUE) {
+                observer.unplaced(
+                    ObservationCode.ORG_PARENT_CYCLE,
+                    id,
+                    idParent
+                );
+            }
+
+            if (id == child) {
+                return;
+            }
+
+            id = idParent;
+        }
+    }
+
+    public boolean addUsers(final int orgId,
+                            final int users,
+                            final int files,
+                            final long bytes) {
+        if (!this.containsOrg(orgId)) {
+            return false;
+        }
+
+        Node org = this.editable(orgId);
+        org.users += users;
+        org.files += files;
+        org.bytes += bytes;
+
+        this.addToTotals(orgId, users, files, bytes);
+        this.changed();
+        return true;
+    }
+
+    public OrgCollection build() {
+        this.publish();
+        return this;
+    }
+
+    private void link(final int child, final int parent) {
+        // linking an org beneath one of its own descendants closes a cycle;
+        // the org is listed as a child, but its totals are not added
+        for (int id = parent; id != NONE; id = this.editor.get(id).parent) {
+            if (id == child) {
+                this.editable(parent).addChild(child);
+                this.cycles = true;
+                this.addCycleLink(child, parent);
+                return;
+            }
+        }
+
+        Node node = this.editable(child);
+        node.parent = parent;
+        this.editable(parent).addChild(child);
+
+        this.addToTotals(
+            parent,
+            node.totalUsers,
+            node.totalFiles,
+            node.totalBytes
+        );
+    }
+
+    private void addForResolution(final int orgId, final int parentOrgId) {
+        if (this.pendingChildren == null) {
+            this.pendingChildren = new int[16];
+            this.pendingParents = new int[16];
+            this.pendingPrevious = new int[16];
+            this.lastPending = new IntIntMap();
+        }
+        else if (this.pendingCount == this.pendingChildren.length) {
+            int capacity = this.pendingCount * 2;
+            this.pendingChildren =
+                Arrays.copyOf(this.pendingChildren, capacity);
+            this.pendingParents =
+                Arrays.copyOf(this.pendingParents, capacity);
+            this.pendingPrevious =
+                Arrays.copyOf(this.pendingPrevious, capacity);
+        }
+
+        int entry = this.pendingCount++;
+        this.pendingChildren[entry] = orgId;
+        this.pendingParents[entry] = parentOrgId;
+        this.pendingPrevious[entry] =
+            this.lastPending.put(parentOrgId, entry);
+    }
+
+    // Links the children waiting for the parent, in the order they were
+    // added, starting from the last one's entry
+    private void linkPending(final int last, final int parent) {
+        int count = 0;
+        for (int i = last; i != IntIntMap.NO_VALUE; ) {
+            count++;
+            i = this.pendingPrevious[i];
+        }
+
+        int[] entries = new int[count];
+        for (int i = last; i != IntIntMap.NO_VALUE; ) {
+            entries[--count] = i;
+            i = this.pendingPrevious[i];
+        }
+
+        for (int entry : entries) {
+            this.pendingParents[entry] = NONE;
+            this.link(this.pendingChildren[entry], parent);
+        }
+    }
+
+    private void addCycleLink(final int child, final int parent) {
+        if (this.cycleLinks == null) {
+            this.cycleLinks = new int[8];
+        }
+        else if (this.cycleLinkCount == this.cycleLinks.length) {
+            this.cycleLinks =
+                Arrays.copyOf(this.cycleLinks, this.cycleLinkCount * 2);
+        }
+
+        this.cycleLinks[this.cycleLinkCount++] = child;
+        this.cycleLinks[this.cycleLinkCount++] = parent;
+    }
+
+    private void addToTotals(final int orgId,
+                             final int users,
+                             final int files,
+                             final long bytes) {
+        for (int id = orgId; id != NONE; ) {
+            Node node = this.editable(id);
+            node.totalUsers += users;
+            node.totalFiles += files;
+            node.totalBytes += bytes;
+            id = node.parent;
+        }
+    }
+
+    // Returns the writer's own copy of an org, copying it first if it is
+    // part of a published version
+    private Node editable(final int orgId) {
+        Node node = this.editor.get(orgId);
+        if (node.token != this.token) {
+            node = new Node(node, this.token);
+            this.editor.put(orgId, node);
+        }
+
+        return node;
+    }
+
+    private void changed() {
+        if (this.publishEvery > 0 && ++this.changes >= this.publishEvery) {
+            this.publish();
+        }
+    }
+
+    // An immutable, point-in-time version of the collection
+    static final class Version implements OrgCollection {
+        private final PersistentIntMap<Node> orgs;
+        private final long number;
+        private final boolean cycles;
+
+        Version(final PersistentIntMap<Node> orgs,
+                final long number,
+                final boolean cycles) {
+            this.orgs = orgs;
+            this.number = number;
+            this.cycles = cycles;
+        }
+
+        // Versions are numbered from zero, in the order they are published
+        public long getNumber() {
+            return this.number;
+        }
+
+        public int size() {
+            return this.orgs.size() - 1;
+        }
+
+        public Iterable<Org> getRootOrgs() {
+            return new OrgList(this.orgs.get(ROOTS));
+        }
+
+        public Org getOrg(final int orgId) {
+            Node node = orgId > 0 ? this.orgs.get(orgId) : null;
+            return node != null ? new VersionedOrg(node) : null;
+        }
+
+        public List<Org> getOrgTree(final int orgId, final boolean inclusive) {
+            Node root = orgId > 0 ? this.orgs.get(orgId) : null;
+            if (root == null) {
+                return Collections.emptyList();
+            }
+
+            // only a version with a cycle can reach an org twice
+            Set<Node> visited = null;
+            if (this.cycles) {
+                visited = Collections.newSetFromMap(
+                    new IdentityHashMap<Node, Boolean>()
+                );
+            }
+
+            List<Org> tree = new ArrayList<Org>();
+
+            Node[] path = new Node[16];
+            int[] cursors = new int[16];
+            int depth = 0;
+
+            if (inclusive) {
+                tree.add(new VersionedOrg(root));
+            }
+
+            if (visited != null) {
+                visited.add(root);
+            }
+
+            path[depth] = root;
+            cursors[depth++] = 0;
+
+            while (depth > 0) {
+                int top = depth - 1;
+                Node node = path[top];
+
+                if (cursors[top] == node.childCount) {
+                    path[top] = null;
+                    depth--;
+                    continue;
+                }
+
+                Node child = this.orgs.get(node.children[cursors[top]++]);
+                if (visited != null && !visited.add(child)) {
+                    continue;
+                }
+
+                tree.add(new VersionedOrg(child));
+
+                if (depth == path.length) {
+                    path = Arrays.copyOf(path, depth * 2);
+                    cursors = Arrays.copyOf(cursors, depth * 2);
+                }
+
+                path[depth] = child;
+                cursors[depth++] = 0;
+            }
+
+            return tree;
+        }
+
+        private final class VersionedOrg implements Org {
+            private final Node node;
+
+            VersionedOrg(final Node node) {
+                this.node = node;
+            }
+
+            public int getId() {
+                return this.node.id;
+            }
+
+            public int getTotalNumUsers() {
+                return this.node.totalUsers;
+            }
+
+            public int getTotalNumFiles() {
+                return this.node.totalFiles;
+            }
+
+            public long getTotalNumBytes() {
+                return this.node.totalBytes;
+            }
+
+            public List<Org> getChildOrgs() {
+                return new OrgList(this.node);
+            }
+
+            private Version owner() {
+                return Version.this;
+            }
+
+            public boolean equals(final Object other) {
+                if (!(other instanceof VersionedOrg)) {
+                    return false;
+                }
+
+                VersionedOrg org = (VersionedOrg) other;
+                return org.owner() == this.owner() && org.node == this.node;
+            }
+
+            public int hashCode() {
+                return this.node.id;
+            }
+
+            public String toString() {
+                return "Org " + Integer.toString(this.node.id);
+            }
+        }
+
+        // A read-only list of the children of an org in this version
+        private final class OrgList extends AbstractList<Org>
+            implements RandomAccess {
+
+            private final int[] children;
+            private final int size;
+
+            OrgList(final Node parent) {
+                this.children = parent.children;
+                this.size = parent.childCount;
+            }
+
+            public Org get(final int i) {
+                if (i < 0 || i >= this.size) {
+                    throw new IndexOutOfBoundsException(Integer.toString(i));
+                }
+
+                return new VersionedOrg(
+                    Version.this.orgs.get(this.children[i])
+                );
+            }
+
+            public int size() {
+                return this.size;
+            }
+        }
+    }
+
+    // An org as of one or more versions. Only the writer changes a node,
+    // and only while its token is the writer's current token.
+    private static final class Node {
+        private static final int[] NO_CHILDREN = new int[0];
+
+        private final int id;
+        private final Object token;
+
+        private int parent = NONE;
+        private int users;
+        private int files;
+        private long bytes;
+        private int totalUsers;
+        private int totalFiles;
+        private long totalBytes;
+
+        private int[] children = NO_CHILDREN;
+        private int childCount;
+
+        Node(final int id, final Object token) {
+            this.id = id;
+            this.token = token;
+        }
+
+        Node(final Node node, final Object token) {
+            this.id = node.id;
+            this.token = token;
+            this.parent = node.parent;
+            this.users = node.users;
+            this.files = node.files;
+            this.bytes = node.bytes;
+            this.totalUsers = node.totalUsers;
+            this.totalFiles = node.totalFiles;
+            this.totalBytes = node.totalBytes;
+            this.children = node.children;
+            this.childCount = node.childCount;
+        }
+
+        void addChild(final int child) {
+            if (this.childCount == this.children.length) {
+                this.children = Arrays.copyOf(
+                    this.children,
+                    Math.max(4, this.childCount + (this.childCount >> 1))
+                );
+            }
+
+            this.children[this.childCount++] = child;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+import java.io.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class BTreeOrgCollectionTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void emptyCollectionHasCorrectInitialState() throws IOException {
+        BTreeOrgCollection col =
+            new BTreeOrgCollection.Builder(folder.newFile()).build();
+
+        assertFalse(col.getRootOrgs().iterator().hasNext());
+        assertNull(col.getOrg(42));
+        assertEquals(col.getOrgTree(42, true).size(), 0);
+    }
+
+    @Test
+    public void addOrgWithDuplicateIdThrowsException() throws IOException {
+        BTreeOrgCollection.Builder builder =
+            new BTreeOrgCollection.Builder(folder.newFile());
+
+        builder.addOrg(42, OrgCollectionBuilder.NO_PARENT);
+
+        thrown.expect(IllegalArgumentException.class);
+        builder.addOrg(42, OrgCollectionBuilder.NO_PARENT);
+    }
+
+    @Test
+    public void matchesOrgCollectionImplWithSmallCache() throws IOException {
+        Random random = new Random(42);
+
+        // enough orgs for trees several levels deep, with a cache that
+        // holds a fraction of the pages
+        int count = 20000;
+        List<Integer> order = new ArrayList<Integer>();
+        for (int id = 1; id <= count; id++) {
+            order.add(id);
+        }
+        Collections.shuffle(order, random);
+
+        OrgCollectionImpl expected = new OrgCollectionImpl();
+        File file = folder.newFile();
+        BTreeOrgCollection.Builder builder =
+            new BTreeOrgCollection.Builder(file, PageCache.MIN_CAPACITY);
+
+        for (int id : order) {
+            int parent = id <= 5
+                ? OrgCollectionBuilder.NO_PARENT
+                : 1 + random.nextInt(id - 1);
+
+            expected.addOrg(id, parent);
+            builder.addOrg(id, parent);
+        }
+
+        for (int i = 0; i < 50000; i++) {
+            int id = 1 + random.nextInt(count);
+            int files = random.nextInt(10);
+
+            expected.addUsers(id, 1, files, files * 7L);
+            builder.addUsers(id, 1, files, files * 7L);
+        }
+
+        BTreeOrgCollection actual = builder.build();
+        assertTrue(actual.getPageWrites() > 0);
+        assertEquals(report(actual), report(expected));
+        actual.close();
+
+        // the file can be opened again without loading anything
+        BTreeOrgCollection reopened =
+            BTreeOrgCollection.open(file, PageCache.MIN_CAPACITY);
+
+        assertEquals(reopened.size(), count);
+        for (int id = 1; id <= count; id += 97) {
+            assertEquals(ids(reopened.getOrgTree(id, true)),
+                         ids(expected.getOrgTree(id, true)));
+            assertEquals(reopened.getOrg(id).getTotalNumBytes(),
+                         expected.getOrg(id).getTotalNumBytes());
+        }
+
+        reopened.close();
+    }
+
+    @Test
+    public void orgsInParentCycleAreWalkedOnce() throws IOException {
+        BTreeOrgCollection.Builder builder =
+            new BTreeOrgCollection.Builder(folder.newFile());
+
+        builder.addOrg(1, 2);
+        builder.addOrg(2, 1);
+        builder.addOrg(3, 1);
+        builder.addOrg(4, 3);
+        builder.addOrg(5, 99);
+        builder.addOrg(6, 5);
+        builder.addUsers(3, 1, 2, 20);
+        builder.addUsers(4, 1, 3, 30);
+        builder.addUsers(6, 1, 4, 40);
+
+        BTreeOrgCollection col = builder.build();
+
+        assertEquals(ids(col.getOrgTree(1, true)), Arrays.asList(1, 2, 3, 4));
+        assertEquals(ids(col.getOrgTree(3, false)), Arrays.asList(4));
+        assertEquals(ids(col.getOrgTree(5, true)), Arrays.asList(5, 6));
+
+        // orgs in or beneath a cycle only count their own data
+        assertEquals(col.getOrg(3).getTotalNumFiles(), 2);
+        assertEquals(col.getOrg(4).getTotalNumBytes(), 30);
+        assertEquals(col.getOrg(5).getTotalNumBytes(), 40);
+        assertEquals(col.getOrg(1).getChildOrgs().size(), 2);
+    }
+
+    @Test
+    public void resolveParentsReportsUnplacedOrgsLikeInMemoryCollection()
+        throws IOException {
+
+        int[][] records = {
+            {1, OrgCollectionBuilder.NO_PARENT},
+            {5, 7}, {6, 5}, {7, 6},
+            {8, 8},
+            {10, 99}, {11, 10}, {12, 0}, {13, 99},
+            {20, 21}, {21, 1},
+            {30, 31}, {31, 30}, {32, 31}, {33, 34}, {34, 31}
+        };
+
+        BTreeOrgCollection.Builder actual =
+            new BTreeOrgCollection.Builder(folder.newFile());
+        OrgCollectionImpl expected = new OrgCollectionImpl();
+        for (int[] record : records) {
+            actual.addOrg(record[0], record[1]);
+            expected.addOrg(record[0], record[1]);
+        }
+
+        final Set<String> actualUnplaced = new TreeSet<String>();
+        actual.resolveParents((code, orgId, parentOrgId) ->
+            actualUnplaced.add(code + " " + orgId + " " + parentOrgId)
+        );
+
+        final Set<String> expectedUnplaced = new TreeSet<String>();
+        expected.resolveParents((code, orgId, parentOrgId) ->
+            expectedUnplaced.add(code + " " + orgId + " " + parentOrgId)
+        );
+
+        assertEquals(actualUnplaced, expectedUnplaced);
+        assertEquals(actualUnplaced.size(), 6);
+
+        // the marks left by the walks do not change the totals
+        actual.addUsers(6, 1, 2, 20);
+        assertEquals(actual.build().getOrg(6).getTotalNumFiles(), 2);
+    }
+
+    @Test
+    public void openFileThatIsNotACollectionThrowsException()
+        throws IOException {
+
+        thrown.expect(IOException.class);
+        BTreeOrgCollection.open(folder.newFile(), PageCache.MIN_CAPACITY);
+    }
+
+    private static List<Integer> ids(final List<Org> orgs) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Org org : orgs) {
+            ids.add(org.getId());
+        }
+
+        return ids;
+    }
+
+    private static String report(final OrgCollection col) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        DataTextReporter.writeReport(col, new PrintStream(baos));
+        return baos.toString();
+    }
+}
@@ -0,0 +1,209 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class CachingOrgCollectionTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void wrapVersionedCollectionThrowsException() {
+        thrown.expect(IllegalArgumentException.class);
+        new CachingOrgCollection(new VersionedOrgCollection(), 100);
+    }
+
+    @Test
+    public void repeatedQueriesAreHits() {
+        CachingOrgCollection col = tree(100);
+
+        List<Org> first = col.getOrgTree(1, true);
+        List<Org> second = col.getOrgTree(1, true);
+
+        assertSame(second, first);
+        assertEquals(ids(first), Arrays.asList(1, 2, 4, 3));
+        assertEquals(ids(col.getOrgTree(1, false)), Arrays.asList(2, 4, 3));
+        assertSame(col.getOrg(2), col.getOrg(2));
+
+        assertEquals(col.getHitCount(), 2);
+        assertEquals(col.getMissCount(), 3);
+        assertEquals(col.getWeight(), 5 + 4 + 1);
+        assertEquals(col.getOrgTree(99, true).size(), 0);
+    }
+
+    @Test
+    public void updatesInvalidateOnlyTheirAncestors() {
+        CachingOrgCollection col = tree(100);
+
+        col.getOrgTree(1, true);
+        col.getOrgTree(2, true);
+        col.getOrgTree(3, true);
+        col.getOrg(4);
+
+        col.addUsers(4, 1, 2, 30);
+        assertEquals(col.getInvalidationCount(), 3);
+
+        // org 3 is not above org 4
+        long misses = col.getMissCount();
+        col.getOrgTree(3, true);
+        assertEquals(col.getMissCount(), misses);
+
+        assertEquals(col.getOrg(4).getTotalNumBytes(), 30);
+        assertEquals(col.getOrgTree(1, true).get(0).getTotalNumBytes(), 30);
+
+        // a new org shows up in the trees above it
+        col.addOrg(5, 3);
+        assertEquals(ids(col.getOrgTree(1, true)),
+                     Arrays.asList(1, 2, 4, 3, 5));
+        assertEquals(ids(col.getOrgTree(3, false)), Arrays.asList(5));
+    }
+
+    @Test
+    public void frequentlyQueriedOrgsSurviveScans() {
+        CachingOrgCollection col = new CachingOrgCollection(
+            new OrgCollectionImpl(),
+            100
+        );
+
+        for (int id = 1; id <= 2000; id++) {
+            col.addOrg(id, OrgCollectionBuilder.NO_PARENT);
+        }
+        col.build();
+
+        for (int round = 0; round < 20; round++) {
+            for (int id = 1; id <= 10; id++) {
+                col.getOrg(id);
+            }
+        }
+
+        // a scan of orgs queried once each, among continued queries of the
+        // hot ones, does not push the hot ones out
+        for (int id = 11; id <= 2000; id++) {
+            col.getOrg(id);
+            col.getOrg(1 + id % 10);
+        }
+
+        long hits = col.getHitCount();
+        for (int id = 1; id <= 10; id++) {
+            col.getOrg(id);
+        }
+
+        assertEquals(col.getHitCount(), hits + 10);
+        assertTrue(col.getEvictionCount() > 1800);
+        assertTrue(col.getWeight() <= 100);
+    }
+
+    @Test
+    public void matchesTargetUnderUpdates() {
+        Random random = new Random(42);
+        OrgCollectionImpl expected = new OrgCollectionImpl();
+        CachingOrgCollection actual = new CachingOrgCollection(
+            new OrgCollectionImpl(),
+            500
+        );
+
+        for (int id = 1; id <= 300; id++) {
+            int parent = id <= 3
+                ? OrgCollectionBuilder.NO_PARENT
+                : 1 + random.nextInt(id - 1);
+
+            expected.addOrg(id, parent);
+            actual.addOrg(id, parent);
+        }
+
+        actual.build();
+
+        for (int i = 0; i < 5000; i++) {
+            // queries skewed towards the top of the hierarchy
+            int id = 1 + random.nextInt(1 + random.nextInt(300));
+
+            if (random.nextInt(10) == 0) {
+                expected.addUsers(id, 1, 1, i);
+                actual.addUsers(id, 1, 1, i);
+            }
+
+            boolean inclusive = random.nextBoolean();
+            assertEquals(totals(actual.getOrgTree(id, inclusive)),
+                         totals(expected.getOrgTree(id, inclusive)));
+            assertEquals(actual.getOrg(id).getTotalNumBytes(),
+                         expected.getOrg(id).getTotalNumBytes());
+        }
+
+        assertTrue(actual.getHitCount() > 0);
+        assertTrue(actual.getEvictionCount() > 0);
+    }
+
+    // 1 -> (2 -> 4), 3
+    @Test
+    public void computeTotalsIsPassedToTarget() {
+        OrgCollectionImpl target = new OrgCollectionImpl();
+        CachingOrgCollection col = new CachingOrgCollection(target, 100);
+
+        col.addOrg(1, OrgCollectionBuilder.NO_PARENT);
+        col.addOrg(2, 1);
+        col.addUsers(2, 1, 2, 3);
+        col.build();
+        col.computeTotals(2);
+
+        assertFalse(target.getOrg(1).isDirty());
+        assertEquals(col.getOrg(1).getTotalNumBytes(), 3);
+    }
+
+    private static CachingOrgCollection tree(final long maxWeight) {
+        CachingOrgCollection col = new CachingOrgCollection(
+            new OrgCollectionImpl(),
+            maxWeight
+        );
+
+        col.addOrg(1, OrgCollectionBuilder.NO_PARENT);
+        col.addOrg(2, 1);
+        col.addOrg(4, 2);
+        col.addOrg(3, 1);
+        col.build();
+        return col;
+    }
+
+    private static List<Integer> ids(final List<Org> orgs) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Org org : orgs) {
+            ids.add(org.getId());
+        }
+
+        return ids;
+    }
+
+    private static List<Long> totals(final List<Org> orgs) {
+        List<Long> totals = new ArrayList<Long>();
+        for (Org org : orgs) {
+            totals.add((long) org.getId());
+            totals.add(org.getTotalNumBytes());
+        }
+
+        return totals;
+    }
+}
@@ -0,0 +1,194 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+import java.io.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class ColumnarOrgCollectionTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void emptyCollectionHasCorrectInitialState() {
+        ColumnarOrgCollection col = new ColumnarOrgCollection.Builder()
+            .build();
+
+        assertFalse(col.getRootOrgs().iterator().hasNext());
+        assertNull(col.getOrg(42));
+        assertEquals(col.getOrgTree(42, true).size(), 0);
+    }
+
+    @Test
+    public void addOrgWithDuplicateIdThrowsException() {
+        ColumnarOrgCollection.Builder builder =
+            new ColumnarOrgCollection.Builder();
+
+        builder.addOrg(42, OrgCollectionBuilder.NO_PARENT);
+
+        thrown.expect(IllegalArgumentException.class);
+        builder.addOrg(42, OrgCollectionBuilder.NO_PARENT);
+    }
+
+    @Test
+    public void addOrgAfterBuildThrowsException() {
+        ColumnarOrgCollection.Builder builder =
+            new ColumnarOrgCollection.Builder();
+
+        builder.build();
+
+        thrown.expect(IllegalStateException.class);
+        builder.addOrg(42, OrgCollectionBuilder.NO_PARENT);
+    }
+
+    @Test
+    public void addMultipleOrgs() {
+        ColumnarOrgCollection.Builder builder =
+            new ColumnarOrgCollection.Builder();
+
+        // children are defined before their parents
+        builder.addOrg(42, 23);
+        builder.addOrg(108, 23);
+        builder.addOrg(8, 4);
+        builder.addOrg(15, 8);
+        builder.addOrg(16, 8);
+        builder.addOrg(23, 4);
+        builder.addOrg(4, OrgCollectionBuilder.NO_PARENT);
+        builder.addOrg(99, 1000);
+
+        assertTrue(builder.addUsers(108, 2, 84, 75));
+        assertTrue(builder.addUsers(8, 1, 4, 21));
+        assertFalse(builder.addUsers(1000, 1, 1, 1));
+
+        ColumnarOrgCollection col = builder.build();
+
+        List<Org> rootOrgs = new ArrayList<Org>();
+        col.getRootOrgs().forEach(rootOrgs::add);
+
+        assertEquals(rootOrgs, Arrays.asList(col.getOrg(4)));
+
+        assertEquals(ids(col.getOrgTree(4, true)),
+            Arrays.asList(4, 8, 15, 16, 23, 42, 108));
+        assertEquals(ids(col.getOrgTree(23, false)),
+            Arrays.asList(42, 108));
+
+        Org root = col.getOrg(4);
+        assertEquals(root.getTotalNumUsers(), 3);
+        assertEquals(root.getTotalNumFiles(), 88);
+        assertEquals(root.getTotalNumBytes(), 96);
+
+        // orgs with an undefined parent are not roots, but can be found
+        Org dangling = col.getOrg(99);
+        assertNotNull(dangling);
+        assertEquals(dangling.getId(), 99);
+        assertEquals(dangling.getChildOrgs().size(), 0);
+    }
+
+    @Test
+    public void matchesOrgCollectionImpl() {
+        Random random = new Random(42);
+
+        int count = 2000;
+        List<Integer> order = new ArrayList<Integer>();
+        for (int id = 1; id <= count; id++) {
+            order.add(id);
+        }
+        Collections.shuffle(order, random);
+
+        OrgCollectionImpl expected = new OrgCollectionImpl();
+        ColumnarOrgCollection.Builder builder =
+            new ColumnarOrgCollection.Builder(16);
+
+        for (int id : order) {
+            int parent = id <= 5
+                ? OrgCollectionBuilder.NO_PARENT
+                : 1 + random.nextInt(id - 1);
+
+            expected.addOrg(id, parent);
+            builder.addOrg(id, parent);
+        }
+
+        for (int i = 0; i < 5000; i++) {
+            int id = 1 + random.nextInt(count);
+            int files = random.nextInt(10);
+
+            expected.addUsers(id, 1, files, files * 7L);
+            builder.addUsers(id, 1, files, files * 7L);
+        }
+
+        ColumnarOrgCollection actual = builder.build();
+
+        assertEquals(report(expected), report(actual));
+
+        for (int id = 1; id <= count; id++) {
+            assertEquals(ids(expected.getOrgTree(id, true)),
+                         ids(actual.getOrgTree(id, true)));
+        }
+    }
+
+    @Test
+    public void orgsInParentCycleAreWalkedOnce() {
+        ColumnarOrgCollection.Builder builder =
+            new ColumnarOrgCollection.Builder();
+
+        builder.addOrg(1, 2);
+        builder.addOrg(2, 1);
+        builder.addOrg(3, 1);
+        builder.addOrg(4, 3);
+        builder.addOrg(5, 99);
+        builder.addOrg(6, 5);
+        builder.addUsers(3, 1, 2, 20);
+        builder.addUsers(4, 1, 3, 30);
+
+        ColumnarOrgCollection col = builder.build();
+
+        assertEquals(ids(col.getOrgTree(1, true)), Arrays.asList(1, 2, 3, 4));
+        assertEquals(ids(col.getOrgTree(3, false)), Arrays.asList(4));
+        assertEquals(ids(col.getOrgTree(5, true)), Arrays.asList(5, 6));
+
+        // orgs in or beneath a cycle only count their own data
+        assertEquals(col.getOrg(3).getTotalNumFiles(), 2);
+        assertEquals(col.getOrg(4).getTotalNumBytes(), 30);
+        assertEquals(col.getOrg(1).getChildOrgs().size(), 2);
+    }
+
+    private static List<Integer> ids(final List<Org> orgs) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Org org : orgs) {
+            ids.add(org.getId());
+        }
+
+        return ids;
+    }
+
+    private static String report(final OrgCollection col) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        DataTextReporter.writeReport(col, new PrintStream(baos));
+        return baos.toString();
+    }
+}
@@ -0,0 +1,145 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+import java.nio.file.*;
+import java.io.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class DataGeneratorTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sameSeedGeneratesSameFiles() throws IOException {
+        DataGenerator generator = dirtyGenerator();
+
+        File orgs1 = folder.newFile();
+        File users1 = folder.newFile();
+        generator.generate(orgs1, users1);
+
+        File orgs2 = folder.newFile();
+        File users2 = folder.newFile();
+        generator.generate(orgs2, users2);
+
+        assertArrayEquals(
+            Files.readAllBytes(orgs1.toPath()),
+            Files.readAllBytes(orgs2.toPath())
+        );
+        assertArrayEquals(
+            Files.readAllBytes(users1.toPath()),
+            Files.readAllBytes(users2.toPath())
+        );
+
+        generator.setSeed(2);
+        File orgs3 = folder.newFile();
+        generator.generate(orgs3, folder.newFile());
+
+        assertFalse(Arrays.equals(
+            Files.readAllBytes(orgs1.toPath()),
+            Files.readAllBytes(orgs3.toPath())
+        ));
+    }
+
+    @Test
+    public void cleanDataLoadsWithoutObservations() throws IOException {
+        DataGenerator generator = new DataGenerator();
+        generator.setOrgs(5000);
+        generator.setUsers(20000);
+        generator.setRoots(3);
+        generator.setMaxDepth(6);
+
+        File orgFile = folder.newFile();
+        File userFile = folder.newFile();
+        DataGenerator.Summary summary =
+            generator.generate(orgFile, userFile);
+
+        ObservationCounter counter = new ObservationCounter(null);
+        OrgCollection col = DataLoader.load(
+            orgFile, userFile, 1, new OrgCollectionImpl(), counter
+        );
+
+        assertEquals(counter.getTotal(), 0);
+        assertEquals(summary.getOrgs(), 5000);
+        assertEquals(summary.getDepth(), 6);
+
+        int roots = 0;
+        long users = 0;
+        for (Org root : col.getRootOrgs()) {
+            roots++;
+            users += root.getTotalNumUsers();
+        }
+
+        assertEquals(roots, summary.getRoots());
+        assertEquals(users, 20000);
+    }
+
+    @Test
+    public void dirtyDataIsReportedWhenLoaded() throws IOException {
+        File orgFile = folder.newFile();
+        File userFile = folder.newFile();
+        DataGenerator.Summary summary =
+            dirtyGenerator().generate(orgFile, userFile);
+
+        assertTrue(summary.getDuplicates() > 0);
+        assertTrue(summary.getMalformedOrgLines() > 0);
+        assertTrue(summary.getMalformedUserLines() > 0);
+
+        ObservationCounter counter = new ObservationCounter(null);
+        DataLoader.load(
+            orgFile, userFile, 1, new OrgCollectionImpl(), counter
+        );
+
+        assertEquals(counter.getCount(ObservationCode.ORG_DUPLICATE),
+                     summary.getDuplicates());
+        assertEquals(counter.getCount(ObservationCode.ORG_MISMATCH),
+                     summary.getMalformedOrgLines());
+        assertEquals(counter.getCount(ObservationCode.USER_MISMATCH),
+                     summary.getMalformedUserLines());
+    }
+
+    @Test
+    public void fractionOutOfRangeThrowsException() {
+        thrown.expect(IllegalArgumentException.class);
+        new DataGenerator().setOrphans(1.5);
+    }
+
+    private static DataGenerator dirtyGenerator() {
+        DataGenerator generator = new DataGenerator();
+        generator.setOrgs(2000);
+        generator.setUsers(10000);
+        generator.setOutOfOrder(0.2);
+        generator.setOrphans(0.05);
+        generator.setDuplicates(0.05);
+        generator.setMalformed(0.02);
+        generator.setSeed(7);
+        return generator;
+    }
+}
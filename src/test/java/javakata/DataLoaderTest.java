@@ -34,6 +34,9 @@ public final class DataLoaderTest {
     @Rule
     public ExpectedException thrown = ExpectedException.none();
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void loadWithNullOrgFileThrowsException() throws IOException {
             thrown.expect(IllegalArgumentException.class);
@@ -116,4 +119,218 @@ public final class DataLoaderTest {
         assertEquals(o.getTotalNumFiles(), 10);
         assertEquals(o.getTotalNumBytes(), 200);
     }
+
+    @Test
+    public void loadUserDataWithNullValuesIsReported() {
+        List<String> orgData = Arrays.asList(
+            "1, null, Foo"
+        );
+
+        List<String> userData = Arrays.asList(
+            "1, null, 10, 200",
+            "2, 1, 10, 200"
+        );
+
+        Result<OrgCollection, String> result =
+            DataLoader.load(orgData, userData);
+
+        List<String> observations = new LinkedList<String>();
+        result.getObservations().forEach(observations::add);
+
+        assertEquals(observations.size(), 1);
+        assertTrue(observations.get(0).startsWith("ERROR (line: 1)"));
+
+        Org o = result.getValue().getOrg(1);
+        assertEquals(o.getTotalNumUsers(), 1);
+    }
+
+    @Test
+    public void loadStreamsStructuredObservations() throws IOException {
+        File orgFile = folder.newFile();
+        Files.write(orgFile.toPath(), Arrays.asList(
+            "1, null, Foo",
+            "1, null, Duplicate",
+            "nonsense"
+        ));
+
+        File userFile = folder.newFile();
+        Files.write(userFile.toPath(), Arrays.asList(
+            "1, 1, 10, 200",
+            "2, 9, 10, 200",
+            "3, 1, 0, 5"
+        ));
+
+        final List<Observation> observations = new ArrayList<Observation>();
+        OrgCollection col = DataLoader.load(
+            orgFile,
+            userFile,
+            1,
+            new OrgCollectionImpl(),
+            (code, lineNumber, byteOffset, record) -> observations.add(
+                new Observation(code, lineNumber, byteOffset, record)
+            )
+        );
+
+        assertEquals(col.getOrg(1).getTotalNumFiles(), 10);
+        assertEquals(observations.size(), 4);
+
+        Observation duplicate = observations.get(0);
+        assertEquals(duplicate.getCode(), ObservationCode.ORG_DUPLICATE);
+        assertEquals(duplicate.getSeverity(), Severity.ERROR);
+        assertEquals(duplicate.getLineNumber(), 2);
+        assertEquals(duplicate.getByteOffset(), 13);
+        assertEquals(duplicate.getRecord(), "1, null, Duplicate");
+        assertEquals(
+            duplicate.getMessage(),
+            "ERROR (line: 2) - Organization record data could not be "
+          + "interpreted: '1, null, Duplicate'\n"
+          + "  Message: Duplicate organization detected. Id: 1"
+        );
+
+        assertEquals(observations.get(1).getCode(),
+                     ObservationCode.ORG_MISMATCH);
+        assertEquals(observations.get(1).getByteOffset(), 32);
+
+        assertEquals(observations.get(2).getCode(),
+                     ObservationCode.USER_UNKNOWN_ORG);
+        assertEquals(observations.get(2).getLineNumber(), 2);
+        assertEquals(observations.get(2).getByteOffset(), 14);
+
+        assertEquals(observations.get(3).getCode(),
+                     ObservationCode.USER_BYTES_WITHOUT_FILES);
+    }
+
+    @Test
+    public void loadReportsOrgsThatCannotBePlaced() throws IOException {
+        File orgFile = folder.newFile();
+        Files.write(orgFile.toPath(), Arrays.asList(
+            "1, null, Root",
+            "5, 4, Cycle",
+            "4, 5, Cycle",
+            "6, 6, Own Parent",
+            "7, 99, Orphan",
+            "8, 7, Beneath Orphan",
+            "2, 3, Before Parent",
+            "3, 1, Parent"
+        ));
+
+        File userFile = folder.newFile();
+        Files.write(userFile.toPath(), Arrays.asList(
+            "1, 2, 10, 200",
+            "2, 8, 10, 200"
+        ));
+
+        OrgCollectionBuilder[] builders = {
+            new OrgCollectionImpl(),
+            new ColumnarOrgCollection.Builder(),
+            new VersionedOrgCollection(),
+            new BTreeOrgCollection.Builder(folder.newFile())
+        };
+
+        for (OrgCollectionBuilder builder : builders) {
+            final List<Observation> observations =
+                new ArrayList<Observation>();
+
+            OrgCollection col = DataLoader.load(
+                orgFile,
+                userFile,
+                1,
+                builder,
+                (code, lineNumber, byteOffset, record) -> observations.add(
+                    new Observation(code, lineNumber, byteOffset, record)
+                )
+            );
+
+            List<Org> roots = new ArrayList<Org>();
+            col.getRootOrgs().forEach(roots::add);
+            assertEquals(roots.size(), 1);
+            assertEquals(roots.get(0).getTotalNumFiles(), 10);
+
+            assertEquals(observations.size(), 3);
+            assertEquals(observations.get(0).getCode(),
+                         ObservationCode.ORG_PARENT_CYCLE);
+            assertEquals(observations.get(0).getLineNumber(), 2);
+            assertEquals(observations.get(0).getByteOffset(), 14);
+            assertEquals(observations.get(0).getRecord(), "5, 4, Cycle");
+
+            assertEquals(observations.get(1).getCode(),
+                         ObservationCode.ORG_PARENT_CYCLE);
+            assertEquals(observations.get(1).getLineNumber(), 4);
+
+            Observation orphan = observations.get(2);
+            assertEquals(orphan.getCode(), ObservationCode.ORG_UNKNOWN_PARENT);
+            assertEquals(orphan.getSeverity(), Severity.WARNING);
+            assertEquals(orphan.getLineNumber(), 5);
+            assertEquals(orphan.getRecord(), "7, 99, Orphan");
+        }
+    }
+
+    @Test
+    public void unplacedOrgIsReportedAtTheRecordItWasAddedFrom() {
+        List<String> orgData = Arrays.asList(
+            "7, 99999999999, Out Of Range",
+            "7, 98, Orphan",
+            "7, 99, Duplicate"
+        );
+
+        final List<Observation> observations = new ArrayList<Observation>();
+        DataLoader.loadOrgData(
+            orgData,
+            new OrgCollectionImpl(),
+            (code, lineNumber, byteOffset, record) -> observations.add(
+                new Observation(code, lineNumber, byteOffset, record)
+            )
+        );
+
+        assertEquals(observations.size(), 3);
+        assertEquals(observations.get(2).getCode(),
+                     ObservationCode.ORG_UNKNOWN_PARENT);
+        assertEquals(observations.get(2).getLineNumber(), 2);
+        assertEquals(observations.get(2).getRecord(), "7, 98, Orphan");
+    }
+
+    @Test
+    public void orgDataThatChangesWhenReadAgainThrowsException() {
+        final List<String> first = Arrays.asList("7, 98, Orphan");
+        final List<String> second = Arrays.asList("7, 97, Orphan");
+        final int[] reads = new int[1];
+        Iterable<String> orgData =
+            () -> (reads[0]++ == 0 ? first : second).iterator();
+
+        thrown.expect(IllegalStateException.class);
+        DataLoader.loadOrgData(
+            orgData,
+            new OrgCollectionImpl(),
+            (code, lineNumber, byteOffset, record) -> { }
+        );
+    }
+
+    @Test
+    public void loadReportsSameTextAsStructuredObservations() {
+        List<String> orgData = Arrays.asList("0, null, Zero", "7, null, Ok");
+        List<String> userData = Arrays.asList("1, 7, 0, 5", "2, 7, 99");
+
+        List<String> expected = new ArrayList<String>();
+        ObservationCounter counter = new ObservationCounter(
+            (code, lineNumber, byteOffset, record) -> expected.add(
+                new Observation(code, lineNumber, byteOffset, record)
+                    .getMessage()
+            )
+        );
+
+        DataLoader.load(orgData, userData, new OrgCollectionImpl(), counter);
+
+        List<String> actual = new ArrayList<String>();
+        DataLoader.load(orgData, userData).getObservations()
+            .forEach(actual::add);
+
+        assertEquals(actual, expected);
+        assertEquals(counter.getTotal(), 3);
+        assertEquals(counter.getCount(ObservationCode.ORG_INVALID_ID), 1);
+        assertEquals(counter.getCount(ObservationCode.USER_MISMATCH), 1);
+        assertTrue(actual.get(1).endsWith(
+            "Message: Users cannot have a non-zero number of bytes "
+          + "with zero files."
+        ));
+    }
 }
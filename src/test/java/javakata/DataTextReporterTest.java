@@ -25,6 +25,7 @@ package javakata;
 import java.util.*;
 import java.nio.charset.*;
 import java.io.*;
+import java.nio.channels.*;
 
 import static org.junit.Assert.*;
 import org.junit.*;
@@ -79,4 +80,51 @@ public final class DataTextReporterTest {
 
         assertEquals(actual, expected);
     }
+
+    @Test
+    public void reportMatchesFormattedOutput() throws IOException {
+        List<String> orgData = new ArrayList<String>();
+        List<String> userData = new ArrayList<String>();
+
+        orgData.add("1, null, Root");
+        for (int id = 2; id <= 3000; id++) {
+            orgData.add(id + ", " + (id % 5 == 0 ? id / 5 : id - 1) + ", X");
+            userData.add(id + ", " + id + ", " + (id % 9) + ", " + (id % 9));
+        }
+
+        OrgCollection col = DataLoader.load(orgData, userData).getValue();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(expected);
+        for (Org org : col.getRootOrgs()) {
+            formatOrg(org, ps, 0);
+        }
+        ps.flush();
+
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        DataTextReporter.writeReport(col, new PrintStream(printed));
+
+        ByteArrayOutputStream channeled = new ByteArrayOutputStream();
+        DataTextReporter.writeReport(col, Channels.newChannel(channeled));
+
+        assertArrayEquals(printed.toByteArray(), expected.toByteArray());
+        assertArrayEquals(channeled.toByteArray(), expected.toByteArray());
+    }
+
+    // The original formatting-based report, as a reference
+    private static void formatOrg(final Org org,
+                                  final PrintStream dest,
+                                  final int level) {
+        dest.print(String.join("", Collections.nCopies(level, "  ")));
+        dest.println(String.format("- %d, %d, %d, %d",
+            org.getId(),
+            org.getTotalNumUsers(),
+            org.getTotalNumFiles(),
+            org.getTotalNumBytes()
+        ));
+
+        for (Org child : org.getChildOrgs()) {
+            formatOrg(child, dest, level + 1);
+        }
+    }
 }
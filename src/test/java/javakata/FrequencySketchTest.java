@@ -0,0 +1,72 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class FrequencySketchTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void constructWithNoKeysThrowsException() {
+        thrown.expect(IllegalArgumentException.class);
+        new FrequencySketch(0);
+    }
+
+    @Test
+    public void frequenciesAreCountedUpToFifteen() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+
+        for (int i = 0; i < 5; i++) {
+            sketch.increment(42);
+        }
+
+        assertEquals(sketch.frequency(42), 5);
+        assertEquals(sketch.frequency(43), 0);
+
+        for (int i = 0; i < 20; i++) {
+            sketch.increment(42);
+        }
+
+        assertEquals(sketch.frequency(42), 15);
+    }
+
+    @Test
+    public void frequenciesAreHalvedOverTime() {
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 8; i++) {
+            sketch.increment(-7);
+        }
+
+        // enough other keys to reach the sample size
+        for (long key = 1000; key < 1160; key++) {
+            sketch.increment(key);
+        }
+
+        assertTrue(sketch.frequency(-7) <= 4);
+        assertTrue(sketch.frequency(-7) >= 2);
+    }
+}
@@ -0,0 +1,149 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class GzipLineIterableTest {
+    private static final String TEXT =
+        "1, null, Foo\n"
+      + "2, 1, Bar\r\n"
+      + "\n"
+      + "3, 1, Carriage Return Only\r"
+      + "\r\n"
+      + "a much longer line that will cross more than one member\n"
+      + "5, 2, No Trailing Newline";
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void createWithMissingFileThrowsException() throws IOException {
+        thrown.expect(FileNotFoundException.class);
+        new GzipLineIterable(
+            new File("1a725b4c4929421b2063f1a0971ba30752ae46c9.gz")
+        );
+    }
+
+    @Test
+    public void gzipFilesAreRecognizedByContent() throws IOException {
+        File plain = this.write(TEXT.getBytes(StandardCharsets.UTF_8));
+        File gzip = this.write(compress(TEXT, TEXT.length()));
+
+        assertFalse(GzipLineIterable.isGzip(plain));
+        assertTrue(GzipLineIterable.isGzip(gzip));
+    }
+
+    @Test
+    public void linesMatchUncompressedDataForEveryMemberSize()
+        throws IOException {
+
+        File plain = this.write(TEXT.getBytes(StandardCharsets.UTF_8));
+        List<String> expected = read(new MappedLineIterable(plain));
+
+        for (int size = 1; size <= TEXT.length(); size++) {
+            File gzip = this.write(compress(TEXT, size));
+            GzipLineIterable lines = new GzipLineIterable(gzip);
+
+            // the lines can be read more than once
+            assertEquals("member size: " + size, read(lines), expected);
+            assertEquals("member size: " + size, read(lines), expected);
+        }
+    }
+
+    @Test
+    public void splitStartsEachPartAtAMember() throws Exception {
+        File gzip = this.write(compress(TEXT, 8));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            List<GzipLineIterable> parts =
+                GzipLineIterable.split(gzip, 4, 1, executor);
+
+            assertEquals(parts.size(), 4);
+
+            // every part decompresses, and together they make up the text
+            long length = 0;
+            for (GzipLineIterable part : parts) {
+                for (ByteLine line : part) {
+                    assertTrue(TEXT.contains(line.toString()));
+                }
+
+                length += part.getLength();
+            }
+
+            assertEquals(length, TEXT.length());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private File write(final byte[] bytes) throws IOException {
+        File f = folder.newFile();
+        Files.write(f.toPath(), bytes);
+        return f;
+    }
+
+    // Compresses the text as a series of members of the given size
+    private static byte[] compress(final String text, final int memberSize)
+        throws IOException {
+
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+
+        for (int start = 0; start < bytes.length; start += memberSize) {
+            try (GZIPOutputStream member = new GZIPOutputStream(members)) {
+                member.write(
+                    bytes,
+                    start,
+                    Math.min(memberSize, bytes.length - start)
+                );
+            }
+        }
+
+        return members.toByteArray();
+    }
+
+    // Each line with its position
+    private static List<String> read(final Iterable<ByteLine> lines) {
+        List<String> read = new ArrayList<String>();
+        for (ByteLine line : lines) {
+            read.add(line.getPosition() + ": " + line);
+        }
+
+        return read;
+    }
+}
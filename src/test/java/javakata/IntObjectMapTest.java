@@ -0,0 +1,118 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class IntObjectMapTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void putWithInvalidKeyThrowsException() {
+        IntObjectMap<String> map = new IntObjectMap<String>();
+
+        thrown.expect(IllegalArgumentException.class);
+        map.putIfAbsent(0, "zero");
+    }
+
+    @Test
+    public void lookupsOfInvalidKeysReturnNull() {
+        IntObjectMap<String> map = new IntObjectMap<String>();
+
+        assertNull(map.get(0));
+        assertNull(map.get(-42));
+        assertNull(map.remove(-42));
+    }
+
+    @Test
+    public void putIfAbsentKeepsExistingValue() {
+        IntObjectMap<String> map = new IntObjectMap<String>();
+
+        assertNull(map.putIfAbsent(42, "first"));
+        assertEquals(map.putIfAbsent(42, "second"), "first");
+        assertEquals(map.get(42), "first");
+        assertEquals(map.size(), 1);
+    }
+
+    @Test
+    public void compactKeysUseDenseStorage() {
+        IntObjectMap<Integer> map = new IntObjectMap<Integer>();
+
+        // shuffled, but compact
+        List<Integer> keys = new ArrayList<Integer>();
+        for (int key = 1; key <= 10000; key++) {
+            keys.add(key);
+        }
+        Collections.shuffle(keys, new Random(42));
+
+        for (int key : keys) {
+            map.putIfAbsent(key, key);
+        }
+
+        assertTrue(map.isDense());
+
+        // a far away key switches to hashing
+        map.putIfAbsent(Integer.MAX_VALUE, 0);
+        assertFalse(map.isDense());
+
+        for (int key = 1; key <= 10000; key++) {
+            assertEquals(map.get(key), Integer.valueOf(key));
+        }
+        assertEquals(map.get(Integer.MAX_VALUE), Integer.valueOf(0));
+    }
+
+    @Test
+    public void behavesLikeHashMap() {
+        Random random = new Random(42);
+
+        for (int bound : new int[] {100, 100000, Integer.MAX_VALUE}) {
+            IntObjectMap<Integer> actual = new IntObjectMap<Integer>();
+            Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+
+            for (int i = 0; i < 50000; i++) {
+                int key = 1 + random.nextInt(bound - 1);
+
+                if (random.nextInt(4) == 0) {
+                    assertEquals(expected.remove(key), actual.remove(key));
+                }
+                else {
+                    assertEquals(
+                        expected.putIfAbsent(key, i),
+                        actual.putIfAbsent(key, i)
+                    );
+                }
+
+                assertEquals(expected.size(), actual.size());
+            }
+
+            for (Map.Entry<Integer, Integer> e : expected.entrySet()) {
+                assertEquals(e.getValue(), actual.get(e.getKey()));
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+import java.io.*;
+import java.lang.management.*;
+import java.nio.file.*;
+import javax.management.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class LoadStatsTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void loadRecordsEachPhase() throws IOException {
+        LoadStats stats = this.load();
+
+        assertEquals(
+            new ArrayList<String>(stats.getPhaseMillis().keySet()),
+            Arrays.asList(
+                "orgParsing",
+                "parentResolution",
+                "userAggregation",
+                "build"
+            )
+        );
+
+        assertEquals(stats.getPhaseRows().get("orgParsing"), (Long) 4L);
+        assertEquals(stats.getPhaseBytes().get("orgParsing"), (Long) 54L);
+        assertEquals(stats.getPhaseRows().get("userAggregation"), (Long) 3L);
+        assertEquals(stats.getPhaseBytes().get("userAggregation"), (Long) 38L);
+        assertEquals(stats.getPendingParents(), 2);
+        assertEquals(stats.getPhase(), "");
+
+        Map<String, Long> observations = new HashMap<String, Long>();
+        observations.put("ORG_UNKNOWN_PARENT", 1L);
+        observations.put("USER_UNKNOWN_ORG", 1L);
+        assertEquals(stats.getObservations(), observations);
+
+        String json = stats.toJson();
+        assertTrue(json.startsWith("{\"phases\":{\"orgParsing\":{"));
+        assertTrue(json.contains("\"pendingParents\":2,"));
+    }
+
+    @Test
+    public void registeredStatsCanBeReadOverJmx() throws Exception {
+        LoadStats stats = this.load();
+        stats.register();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(LoadStats.OBJECT_NAME);
+
+        try {
+            assertEquals(server.getAttribute(name, "PendingParents"), 2L);
+            assertNotNull(server.getAttribute(name, "PhaseRowsPerSecond"));
+
+            // a later load replaces the registered stats
+            new LoadStats().register();
+            assertEquals(server.getAttribute(name, "PendingParents"), 0L);
+        }
+        finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void bytesIncludeLineTerminators() throws IOException {
+        File orgFile = folder.newFile();
+        Files.write(
+            orgFile.toPath(),
+            "1, null, Root\r\n2, 1, Child\r3, 1, Child\n4, 3, Last"
+                .getBytes("UTF-8")
+        );
+
+        File userFile = folder.newFile();
+        Files.write(
+            userFile.toPath(),
+            "1, 2, 10, 200\r\n2, 1, 5, 100\r\n".getBytes("UTF-8")
+        );
+
+        for (int parallelism : new int[] {1, 2}) {
+            LoadStats stats = new LoadStats();
+            DataLoader.load(
+                orgFile,
+                userFile,
+                parallelism,
+                new OrgCollectionImpl(),
+                (code, lineNumber, byteOffset, record) -> { },
+                stats
+            );
+
+            assertEquals(
+                stats.getPhaseBytes().get("orgParsing"),
+                (Long) orgFile.length()
+            );
+            assertEquals(
+                stats.getPhaseBytes().get("userAggregation"),
+                (Long) userFile.length()
+            );
+        }
+    }
+
+    @Test
+    public void finishPhaseThatIsNotRunningThrowsException() {
+        LoadStats stats = new LoadStats();
+        stats.start(LoadStats.Phase.BUILD);
+
+        thrown.expect(IllegalStateException.class);
+        stats.finish(LoadStats.Phase.REPORT, 0, 0);
+    }
+
+    private LoadStats load() throws IOException {
+        File orgFile = folder.newFile();
+        Files.write(orgFile.toPath(), Arrays.asList(
+            "2, 1, Child",
+            "1, null, Root",
+            "3, 99, Orphan",
+            "4, 3, Beneath"
+        ));
+
+        File userFile = folder.newFile();
+        Files.write(userFile.toPath(), Arrays.asList(
+            "1, 2, 10, 200",
+            "2, 1, 5, 100",
+            "3, 7, 1, 1"
+        ));
+
+        LoadStats stats = new LoadStats();
+        DataLoader.load(
+            orgFile,
+            userFile,
+            1,
+            new OrgCollectionImpl(),
+            (code, lineNumber, byteOffset, record) -> { },
+            stats
+        );
+
+        return stats;
+    }
+}
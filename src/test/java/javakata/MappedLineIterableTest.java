@@ -0,0 +1,144 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.io.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class MappedLineIterableTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void createWithMissingFileThrowsException() throws IOException {
+        thrown.expect(FileNotFoundException.class);
+        new MappedLineIterable(
+            new File("1a725b4c4929421b2063f1a0971ba30752ae46c9")
+        );
+    }
+
+    @Test
+    public void emptyFileHasNoLines() throws IOException {
+        File f = this.write("");
+
+        assertEquals(readMapped(f, 0, Long.MAX_VALUE, 16).size(), 0);
+    }
+
+    @Test
+    public void linesMatchReadLineForEveryWindowSize() throws IOException {
+        String text =
+            "1, null, Foo\n"
+          + "2, 1, Bar\r\n"
+          + "\n"
+          + "3, 1, Carriage Return Only\r"
+          + "\r\n"
+          + "a much longer line that will not fit in a small window\n"
+          + "5, 2, No Trailing Newline";
+
+        File f = this.write(text);
+        List<String> expected = readLines(f);
+
+        for (int window = 1; window <= text.length() + 1; window++) {
+            assertEquals(
+                "window: " + window,
+                expected,
+                readMapped(f, 0, Long.MAX_VALUE, window)
+            );
+        }
+    }
+
+    @Test
+    public void byteRangeIsRespected() throws IOException {
+        File f = this.write("1, null, Foo\n2, 1, Bar\n3, 2, Baz\n");
+
+        List<String> lines = readMapped(f, 13, 23, 4);
+
+        assertEquals(lines, Arrays.asList("2, 1, Bar"));
+    }
+
+    @Test
+    public void linesCanBeReadAgain() throws IOException {
+        File f = this.write("1, null, Foo\n2, 1, Bar\n");
+        MappedLineIterable iterable =
+            new MappedLineIterable(f, 0, Long.MAX_VALUE, 4);
+
+        for (int pass = 0; pass < 2; pass++) {
+            List<String> lines = new ArrayList<String>();
+            for (ByteLine line : iterable) {
+                lines.add(line.toString());
+            }
+
+            assertEquals(lines, Arrays.asList("1, null, Foo", "2, 1, Bar"));
+        }
+    }
+
+    @Test
+    public void iteratorLeftEarlyCanBeClosed() throws IOException {
+        File f = this.write("1, null, Foo\n2, 1, Bar\n");
+        Iterator<ByteLine> lines = new MappedLineIterable(f).iterator();
+
+        assertEquals(lines.next().toString(), "1, null, Foo");
+        assertTrue(lines instanceof Closeable);
+
+        ((Closeable) lines).close();
+        assertFalse(lines.hasNext());
+
+        // closing again, or after the last line, does nothing
+        ((Closeable) lines).close();
+    }
+
+    private File write(final String text) throws IOException {
+        File f = folder.newFile();
+        Files.write(f.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return f;
+    }
+
+    private static List<String> readLines(final File f) throws IOException {
+        // read as a BufferedReader reads them, ending lines at "\n", "\r"
+        // and "\r\n"
+        return Files.readAllLines(f.toPath(), StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readMapped(final File f,
+                                           final long start,
+                                           final long end,
+                                           final int window)
+        throws IOException {
+
+        List<String> lines = new ArrayList<String>();
+        for (ByteLine line : new MappedLineIterable(f, start, end, window)) {
+            lines.add(line.toString());
+        }
+
+        return lines;
+    }
+}
@@ -0,0 +1,110 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class OrderedObservationsTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void createWithNullSinkThrowsException() {
+        thrown.expect(IllegalArgumentException.class);
+
+        new OrderedObservations(null, 1);
+    }
+
+    @Test
+    public void firstUnfinishedChunkReportsStraightAway() {
+        List<String> seen = new ArrayList<String>();
+        OrderedObservations observations = new OrderedObservations(
+            (code, line, offset, record) -> seen.add(line + ":" + record),
+            3
+        );
+
+        observations.chunk(1).observe(ObservationCode.USER_MISMATCH, 2, 0, "b");
+        observations.chunk(0).observe(ObservationCode.USER_MISMATCH, 1, 0, "a");
+        assertEquals(seen, Arrays.asList("1:a"));
+
+        // the second chunk's observation waits for the first chunk only
+        observations.chunk(2).observe(ObservationCode.USER_MISMATCH, 1, 0, "c");
+        observations.finish(0, 10);
+        assertEquals(seen, Arrays.asList("1:a", "12:b"));
+
+        observations.chunk(1).observe(ObservationCode.USER_MISMATCH, 4, 0, "d");
+        assertEquals(seen, Arrays.asList("1:a", "12:b", "14:d"));
+
+        observations.finish(2, 3);
+        observations.finish(1, 5);
+        assertEquals(seen, Arrays.asList("1:a", "12:b", "14:d", "16:c"));
+        assertEquals(observations.getLineCount(), 18);
+    }
+
+    @Test
+    public void placementPositionsChunksInFileOrder() {
+        List<String> seen = new ArrayList<String>();
+        final List<Integer> placed = new ArrayList<Integer>();
+        OrderedObservations observations = new OrderedObservations(
+            (code, line, offset, record) ->
+                seen.add(line + "@" + offset + ":" + record),
+            3,
+            (chunk, o) -> {
+                placed.add(chunk);
+                if (chunk == 1) {
+                    // the middle chunk is left out
+                    return false;
+                }
+
+                if (chunk == 2) {
+                    o.report(ObservationCode.USER_MISMATCH, 1, 95, "x");
+                    o.skipLines(1);
+                }
+
+                o.setStartPosition(chunk, chunk * 100);
+                return true;
+            }
+        );
+
+        // nothing is reported before the chunk is placed
+        observations.chunk(0).observe(ObservationCode.USER_MISMATCH, 2, 5, "a");
+        observations.chunk(2).observe(ObservationCode.USER_MISMATCH, 1, 7, "c");
+        assertEquals(seen, Collections.emptyList());
+
+        observations.finish(2, 4);
+        observations.finish(1, 9);
+        assertEquals(placed, Collections.emptyList());
+
+        observations.finish(0, 3);
+        assertEquals(placed, Arrays.asList(0, 1, 2));
+        assertEquals(
+            seen,
+            Arrays.asList("2@5:a", "4@95:x", "5@207:c")
+        );
+        assertEquals(observations.getLineCount(), 8);
+    }
+}
@@ -133,4 +133,131 @@ public final class OrgCollectionImplTest {
         assertEquals(orgTree.get(1), org2_2);
 
     }
+
+    @Test
+    public void getOrgTreeReflectsOrgsAddedAfterPreviousCall() {
+        OrgCollectionImpl col = new OrgCollectionImpl();
+
+        col.addOrg(1, OrgCollectionBuilder.NO_PARENT);
+        col.addOrg(2, 1);
+        assertEquals(col.getOrgTree(1, true).size(), 2);
+
+        col.addOrg(3, 2);
+        col.addOrg(4, 1);
+
+        List<Org> orgTree = col.getOrgTree(1, false);
+        assertEquals(orgTree.size(), 3);
+        assertEquals(orgTree.get(0).getId(), 2);
+        assertEquals(orgTree.get(1).getId(), 3);
+        assertEquals(orgTree.get(2).getId(), 4);
+
+        assertEquals(col.getOrgTree(2, true).size(), 2);
+        assertEquals(col.getOrgTree(4, false).size(), 0);
+    }
+
+    @Test
+    public void getOrgTreeIncludesSubtreesOfUnresolvedParents() {
+        OrgCollectionImpl col = new OrgCollectionImpl();
+
+        col.addOrg(5, 99);
+        col.addOrg(6, 5);
+        col.addOrg(7, 0);
+
+        List<Org> orgTree = col.getOrgTree(5, true);
+        assertEquals(orgTree.size(), 2);
+        assertEquals(orgTree.get(1).getId(), 6);
+
+        assertEquals(col.getOrgTree(7, true).size(), 1);
+    }
+
+    @Test
+    public void concurrentReadsOfBuiltCollectionAgree() throws Exception {
+        final OrgCollectionImpl col = new OrgCollectionImpl();
+
+        // children are added before their parents, so every link is left
+        // for build() to resolve
+        for (int id = 1000; id > 1; id--) {
+            col.addOrg(id, id / 2);
+        }
+        col.addOrg(1, OrgCollectionBuilder.NO_PARENT);
+        col.build();
+
+        final List<Throwable> errors =
+            Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(() -> {
+                try {
+                    for (int id = 1; id <= 1000; id++) {
+                        col.getOrgTree(id, true).size();
+                    }
+                    assertEquals(col.getOrgTree(1, true).size(), 1000);
+                }
+                catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+            readers[i].start();
+        }
+
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertEquals(errors, Collections.emptyList());
+        assertEquals(col.getOrgTree(2, false).size(), 510);
+    }
+
+    @Test
+    public void getOrgTreeOfParentCycleLeavesOutTheCycle() {
+        OrgCollectionImpl col = new OrgCollectionImpl();
+
+        col.addOrg(1, 2);
+        col.addOrg(2, 1);
+        col.addOrg(3, 1);
+
+        List<Org> orgTree = col.getOrgTree(1, true);
+        assertEquals(orgTree.size(), 2);
+        assertEquals(orgTree.get(0).getId(), 1);
+        assertEquals(orgTree.get(1).getId(), 3);
+
+        assertEquals(col.getOrgTree(2, true).size(), 1);
+    }
+
+    @Test
+    public void parentCycleOrgsHaveOwnTotals() {
+        OrgCollectionImpl col = new OrgCollectionImpl();
+
+        col.addOrg(1, 2);
+        col.addOrg(2, 1);
+        col.addOrg(3, OrgCollectionBuilder.NO_PARENT);
+        col.addUsers(1, 1, 2, 30);
+        col.addUsers(2, 4, 5, 60);
+
+        List<String> unplaced = new ArrayList<String>();
+        col.resolveParents((code, orgId, parentOrgId) ->
+            unplaced.add(code + " " + orgId));
+
+        assertEquals(unplaced,
+                     Arrays.asList("ORG_PARENT_CYCLE 1"));
+
+        assertEquals(col.getOrg(1).getTotalNumUsers(), 1);
+        assertEquals(col.getOrg(1).getTotalNumBytes(), 30);
+        assertEquals(col.getOrg(2).getTotalNumFiles(), 5);
+
+        // users added later stay with their own org
+        col.addUsers(2, 1, 1, 1);
+        assertEquals(col.getOrg(2).getTotalNumUsers(), 5);
+        assertEquals(col.getOrg(1).getTotalNumUsers(), 1);
+        assertEquals(col.getOrg(3).getTotalNumUsers(), 0);
+    }
+
+    @Test
+    public void getOrgTreeIsReadOnly() {
+        OrgCollectionImpl col = new OrgCollectionImpl();
+        col.addOrg(1, OrgCollectionBuilder.NO_PARENT);
+
+        thrown.expect(UnsupportedOperationException.class);
+        col.getOrgTree(1, true).clear();
+    }
 }
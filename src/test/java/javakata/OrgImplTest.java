@@ -147,4 +147,49 @@ public final class OrgImplTest {
         assertEquals(org2.getTotalNumFiles(), 84);
         assertEquals(org2.getTotalNumBytes(), 75);
     }
+
+    @Test
+    public void addChildOrgWithExistingParentThrowsException() {
+        OrgImpl a = new OrgImpl(4);
+        OrgImpl b = new OrgImpl(8);
+        OrgImpl child = new OrgImpl(15);
+
+        a.addChildOrg(child);
+
+        thrown.expect(IllegalArgumentException.class);
+        b.addChildOrg(child);
+    }
+
+    @Test
+    public void totalsIncludeChildrenResolvedLate() {
+        OrgCollectionImpl col = new OrgCollectionImpl();
+
+        OrgImpl leaf = new OrgImpl(15);
+        OrgImpl branch = new OrgImpl(8);
+        OrgImpl root = new OrgImpl(4);
+
+        // children arrive before their parents
+        col.addOrg(leaf, 8);
+        leaf.addUser(3, 30);
+        assertEquals(leaf.getTotalNumUsers(), 1);
+
+        col.addOrg(branch, 4);
+        branch.addUsers(2, 5, 50);
+        col.addOrg(root, null);
+
+        // orgs added before their parents are linked once all are added
+        col.build();
+        assertEquals(branch.getTotalNumFiles(), 8);
+
+        assertEquals(root.getTotalNumUsers(), 3);
+        assertEquals(root.getTotalNumFiles(), 8);
+        assertEquals(root.getTotalNumBytes(), 80);
+
+        // cached totals are kept up to date
+        leaf.addUser(1, 1);
+
+        assertEquals(root.getTotalNumUsers(), 4);
+        assertEquals(branch.getTotalNumFiles(), 9);
+        assertEquals(leaf.getTotalNumBytes(), 31);
+    }
 }
@@ -0,0 +1,277 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class OrgQueryServerTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private OrgQueryServer server;
+
+    @After
+    public void stopServer() {
+        if (this.server != null) {
+            this.server.close();
+        }
+    }
+
+    @Test
+    public void constructWithNullCollectionThrowsException()
+        throws IOException {
+
+        thrown.expect(IllegalArgumentException.class);
+        new OrgQueryServer(null, new InetSocketAddress(0));
+    }
+
+    @Test
+    public void servesOrgsAsJson() throws IOException {
+        OrgCollectionImpl col = new OrgCollectionImpl();
+        col.addOrg(1, OrgCollectionBuilder.NO_PARENT);
+        col.addOrg(2, 1);
+        col.addOrg(3, OrgCollectionBuilder.NO_PARENT);
+        col.addUsers(2, 1, 10, 200);
+
+        this.start(col);
+
+        assertEquals(
+            this.get("/orgs/1").body,
+            "{\"id\":1,\"totalNumUsers\":1,\"totalNumFiles\":10,"
+          + "\"totalNumBytes\":200}"
+        );
+        assertEquals(
+            this.get("/orgs/1/children").body,
+            "[{\"id\":2,\"totalNumUsers\":1,\"totalNumFiles\":10,"
+          + "\"totalNumBytes\":200}]"
+        );
+        assertEquals(
+            this.get("/orgs").body,
+            "[{\"id\":1,\"totalNumUsers\":1,\"totalNumFiles\":10,"
+          + "\"totalNumBytes\":200},{\"id\":3,\"totalNumUsers\":0,"
+          + "\"totalNumFiles\":0,\"totalNumBytes\":0}]"
+        );
+        assertEquals(this.get("/orgs/2/children").body, "[]");
+        assertEquals(this.get("/orgs/1/tree?inclusive=false").body,
+                     this.get("/orgs/1/children").body);
+        assertEquals(this.get("/orgs/1/tree?x=1&inclusive=false&y=2").body,
+                     this.get("/orgs/1/children").body);
+        assertEquals(this.get("/orgs/1/tree?inclusive=true&x=1").body,
+                     this.get("/orgs/1/tree").body);
+    }
+
+    @Test
+    public void invalidTreeQueryIsRejected() throws IOException {
+        OrgCollectionImpl col = new OrgCollectionImpl();
+        col.addOrg(1, OrgCollectionBuilder.NO_PARENT);
+
+        this.start(col);
+
+        assertEquals(this.get("/orgs/1/tree?inclusive=False").status, 400);
+        assertEquals(this.get("/orgs/1/tree?inclusive=").status, 400);
+        assertEquals(this.get("/orgs/1/tree?inclusive=no&x=1").status, 400);
+    }
+
+    @Test
+    public void unknownOrgsAndMethodsAreRejected() throws IOException {
+        OrgCollectionImpl col = new OrgCollectionImpl();
+        col.addOrg(1, OrgCollectionBuilder.NO_PARENT);
+
+        this.start(col);
+
+        assertEquals(this.get("/orgs/2").status, 404);
+        assertEquals(this.get("/orgs/abc").status, 404);
+        assertEquals(this.get("/orgs/1/parent").status, 404);
+        assertEquals(this.get("/orgs/1/tree/2").status, 404);
+
+        HttpURLConnection connection = this.open("/orgs/1");
+        connection.setRequestMethod("DELETE");
+        assertEquals(connection.getResponseCode(), 405);
+        assertEquals(connection.getHeaderField("Allow"), "GET");
+        connection.disconnect();
+    }
+
+    @Test
+    public void servesTopOrgs() throws IOException {
+        OrgCollectionImpl col = new OrgCollectionImpl();
+        col.addOrg(1, OrgCollectionBuilder.NO_PARENT);
+        col.addOrg(2, 1);
+        col.addOrg(3, 1);
+        col.addUsers(2, 1, 10, 200);
+        col.addUsers(3, 2, 5, 300);
+
+        this.start(col);
+
+        assertEquals(
+            this.get("/orgs/top?by=files&count=1").body,
+            "[{\"id\":2,\"totalNumUsers\":1,\"totalNumFiles\":10,"
+          + "\"totalNumBytes\":200}]"
+        );
+        assertEquals(
+            this.get("/orgs/top?under=1&depth=1&count=1").body,
+            "[{\"id\":3,\"totalNumUsers\":2,\"totalNumFiles\":5,"
+          + "\"totalNumBytes\":300}]"
+        );
+        assertEquals(this.get("/orgs/top?by=size").status, 400);
+        assertEquals(this.get("/orgs/top?depth=-1").status, 400);
+        assertEquals(this.get("/orgs/top?under=4").status, 404);
+    }
+
+    @Test
+    public void largeTreeIsStreamed() throws IOException {
+        OrgCollectionImpl col = new OrgCollectionImpl();
+        col.addOrg(1, OrgCollectionBuilder.NO_PARENT);
+        for (int id = 2; id <= 5000; id++) {
+            col.addOrg(id, id / 2);
+            col.addUsers(id, 1, 1, id);
+        }
+
+        this.start(col);
+
+        HttpURLConnection connection = this.open("/orgs/1/tree");
+        assertEquals(connection.getResponseCode(), 200);
+        assertNull(connection.getHeaderField("Content-Length"));
+        assertEquals(connection.getHeaderField("Transfer-Encoding"),
+                     "chunked");
+
+        String body = read(connection.getInputStream());
+        StringBuilder expected = new StringBuilder("[");
+        for (Org org : col.getOrgTree(1, true)) {
+            if (expected.length() > 1) {
+                expected.append(',');
+            }
+
+            expected.append(String.format(
+                "{\"id\":%d,\"totalNumUsers\":%d,\"totalNumFiles\":%d,"
+              + "\"totalNumBytes\":%d}",
+                org.getId(),
+                org.getTotalNumUsers(),
+                org.getTotalNumFiles(),
+                org.getTotalNumBytes()
+            ));
+        }
+
+        assertEquals(body, expected.append(']').toString());
+    }
+
+    @Test
+    public void unchangedDataIsNotSentAgain() throws IOException {
+        VersionedOrgCollection col = new VersionedOrgCollection();
+        col.addOrg(1, OrgCollectionBuilder.NO_PARENT);
+        col.publish();
+
+        this.start(col);
+
+        HttpURLConnection first = this.open("/orgs/1");
+        assertEquals(first.getResponseCode(), 200);
+        String etag = first.getHeaderField("ETag");
+        read(first.getInputStream());
+
+        HttpURLConnection second = this.open("/orgs/1");
+        second.setRequestProperty("If-None-Match", etag);
+        assertEquals(second.getResponseCode(), 304);
+
+        // publishing a new version changes the tag
+        col.addUsers(1, 1, 1, 1);
+        col.publish();
+
+        HttpURLConnection third = this.open("/orgs/1");
+        third.setRequestProperty("If-None-Match", etag);
+        assertEquals(third.getResponseCode(), 200);
+        assertNotEquals(third.getHeaderField("ETag"), etag);
+        assertTrue(read(third.getInputStream())
+            .contains("\"totalNumBytes\":1"));
+    }
+
+    // The collection is built, with its totals computed, before it is
+    // served, as DataLoader does
+    private void start(final OrgCollectionImpl col) throws IOException {
+        col.build();
+        col.computeTotals(1);
+        this.start((OrgCollection) col);
+    }
+
+    private void start(final OrgCollection col) throws IOException {
+        this.server = new OrgQueryServer(
+            col,
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)
+        );
+        this.server.start();
+    }
+
+    private HttpURLConnection open(final String path) throws IOException {
+        URL url = new URL(
+            "http",
+            InetAddress.getLoopbackAddress().getHostAddress(),
+            this.server.getPort(),
+            path
+        );
+
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    private Response get(final String path) throws IOException {
+        HttpURLConnection connection = this.open(path);
+        int status = connection.getResponseCode();
+
+        InputStream in = status < 400
+            ? connection.getInputStream()
+            : connection.getErrorStream();
+
+        return new Response(status, read(in));
+    }
+
+    private static String read(final InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+
+        try {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        finally {
+            in.close();
+        }
+
+        return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    private static final class Response {
+        final int status;
+        final String body;
+
+        Response(final int status, final String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class OrgRankingTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void createWithNullCollectionThrowsException() {
+        thrown.expect(IllegalArgumentException.class);
+        new OrgRanking(null);
+    }
+
+    @Test
+    public void negativeCountThrowsException() {
+        OrgRanking ranking = new OrgRanking(new OrgCollectionImpl());
+
+        thrown.expect(IllegalArgumentException.class);
+        ranking.getTopOrgs(OrgMetric.BYTES, -1);
+    }
+
+    @Test
+    public void emptyCollectionHasNoTopOrgs() {
+        OrgRanking ranking = new OrgRanking(new OrgCollectionImpl());
+
+        assertEquals(ranking.getTopOrgs(OrgMetric.BYTES, 10).size(), 0);
+        assertEquals(ranking.getTopOrgs(OrgMetric.BYTES, 10, 1, 0).size(), 0);
+    }
+
+    @Test
+    public void directMetricsLeaveOutChildren() {
+        OrgCollectionImpl col = new OrgCollectionImpl();
+        col.addOrg(1, OrgCollectionBuilder.NO_PARENT);
+        col.addOrg(2, 1);
+        col.addOrg(3, 1);
+        col.addUsers(1, 1, 1, 50);
+        col.addUsers(2, 1, 1, 100);
+        col.addUsers(3, 1, 1, 70);
+
+        OrgRanking ranking = new OrgRanking(col);
+
+        assertEquals(ids(ranking.getTopOrgs(OrgMetric.TOTAL_BYTES, 2)),
+                     Arrays.asList(1, 2));
+        assertEquals(ids(ranking.getTopOrgs(OrgMetric.BYTES, 3)),
+                     Arrays.asList(2, 3, 1));
+    }
+
+    @Test
+    public void topOrgsMatchSortedOrgs() {
+        Random random = new Random(7);
+        OrgCollectionImpl col = new OrgCollectionImpl();
+
+        // narrow values, so that many orgs tie
+        for (int id = 1; id <= 3000; id++) {
+            int parent = id % 500 == 1
+                ? OrgCollectionBuilder.NO_PARENT
+                : id - 1 - random.nextInt(Math.min(id - 1, 20));
+
+            col.addOrg(id, parent);
+            col.addUsers(id, random.nextInt(3), random.nextInt(4),
+                         random.nextInt(50));
+        }
+
+        // unplaced orgs are not ranked
+        col.addOrg(5000, 6000);
+        col.addUsers(5000, 100, 100, 100000);
+
+        OrgRanking ranking = new OrgRanking(col);
+        assertEquals(ranking.size(), 3000);
+
+        int[] scopes = {OrgRanking.ALL_ORGS, 1, 501, 777, 2999};
+        int[] depths = {OrgRanking.ANY_DEPTH, 0, 1, 3, 40};
+
+        for (OrgMetric metric : OrgMetric.values()) {
+            for (int scope : scopes) {
+                for (int depth : depths) {
+                    for (int count : new int[] {0, 1, 17, 5000}) {
+                        List<Org> top =
+                            ranking.getTopOrgs(metric, count, scope, depth);
+
+                        assertEquals(
+                            metric + " " + scope + " " + depth + " " + count,
+                            ids(top),
+                            sorted(col, metric, count, scope, depth)
+                        );
+                    }
+                }
+            }
+        }
+    }
+
+    // Ranks the orgs by sorting every org in scope
+    private static List<Integer> sorted(final OrgCollection col,
+                                        final OrgMetric metric,
+                                        final int count,
+                                        final int scope,
+                                        final int depth) {
+        final Map<Org, Integer> depths = new HashMap<Org, Integer>();
+        final List<Org> orgs = new ArrayList<Org>();
+
+        OrgTraversal.Visitor<Org> visitor = new OrgTraversal.Visitor<Org>() {
+            public boolean preVisit(final Org org, final int level) {
+                depths.put(org, level);
+                orgs.add(org);
+                return true;
+            }
+
+            public void postVisit(final Org org, final int level) {
+                // nothing to do
+            }
+        };
+
+        OrgTraversal<Org> traversal =
+            new OrgTraversal<Org>(Org::getChildOrgs);
+
+        if (scope == OrgRanking.ALL_ORGS) {
+            for (Org root : col.getRootOrgs()) {
+                traversal.traverse(root, visitor);
+            }
+        }
+        else {
+            traversal.traverse(col.getOrg(scope), visitor);
+        }
+
+        List<Org> ranked = new ArrayList<Org>();
+        for (Org org : orgs) {
+            if (depth == OrgRanking.ANY_DEPTH || depths.get(org) == depth) {
+                ranked.add(org);
+            }
+        }
+
+        ranked.sort((a, b) -> {
+            int byValue = Long.compare(value(b, metric), value(a, metric));
+            return byValue != 0
+                ? byValue
+                : Integer.compare(a.getId(), b.getId());
+        });
+
+        return ids(ranked.subList(0, Math.min(count, ranked.size())));
+    }
+
+    private static long value(final Org org, final OrgMetric metric) {
+        long value = metric.totalOf(org);
+        if (!metric.isTotal()) {
+            for (Org child : org.getChildOrgs()) {
+                value -= metric.totalOf(child);
+            }
+        }
+
+        return value;
+    }
+
+    private static List<Integer> ids(final List<Org> orgs) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Org org : orgs) {
+            ids.add(org.getId());
+        }
+
+        return ids;
+    }
+}
@@ -0,0 +1,144 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class OrgTraversalTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void visitsInPreOrderAndPostOrder() {
+        OrgImpl root = tree();
+        final List<String> visits = new ArrayList<String>();
+
+        new OrgTraversal<OrgImpl>(OrgImpl::getChildren).traverse(
+            root,
+            new OrgTraversal.Visitor<OrgImpl>() {
+                public boolean preVisit(final OrgImpl org, final int depth) {
+                    visits.add("pre " + org.getId() + "@" + depth);
+                    return true;
+                }
+
+                public void postVisit(final OrgImpl org, final int depth) {
+                    visits.add("post " + org.getId() + "@" + depth);
+                }
+            }
+        );
+
+        assertEquals(visits, Arrays.asList(
+            "pre 1@0", "pre 2@1", "pre 4@2", "post 4@2", "post 2@1",
+            "pre 3@1", "post 3@1", "post 1@0"
+        ));
+    }
+
+    @Test
+    public void skippedOrgsAreNotDescendedOrPostVisited() {
+        OrgImpl root = tree();
+        final List<Integer> visits = new ArrayList<Integer>();
+
+        new OrgTraversal<OrgImpl>(OrgImpl::getChildren).traverse(
+            root,
+            new OrgTraversal.Visitor<OrgImpl>() {
+                public boolean preVisit(final OrgImpl org, final int depth) {
+                    visits.add(org.getId());
+                    return org.getId() != 2;
+                }
+
+                public void postVisit(final OrgImpl org, final int depth) {
+                    visits.add(-org.getId());
+                }
+            }
+        );
+
+        assertEquals(visits, Arrays.asList(1, 2, 3, -3, -1));
+    }
+
+    @Test
+    public void deepHierarchyDoesNotOverflowStack() {
+        OrgImpl root = new OrgImpl(1);
+        OrgImpl current = root;
+        for (int id = 2; id <= 200000; id++) {
+            OrgImpl child = new OrgImpl(id);
+            current.addChildOrg(child);
+            current = child;
+        }
+
+        current.addUser(3, 5);
+
+        final int[] maxDepth = new int[1];
+        OrgTraversal<OrgImpl> traversal =
+            new OrgTraversal<OrgImpl>(OrgImpl::getChildren);
+        OrgTraversal.Visitor<OrgImpl> visitor =
+            new OrgTraversal.Visitor<OrgImpl>() {
+                public boolean preVisit(final OrgImpl org, final int depth) {
+                    maxDepth[0] = Math.max(maxDepth[0], depth);
+                    return true;
+                }
+
+                public void postVisit(final OrgImpl org, final int depth) {
+                }
+            };
+
+        traversal.traverse(root, visitor);
+        traversal.traverse(root, visitor);
+
+        assertEquals(maxDepth[0], 199999);
+        assertEquals(root.getTotalNumFiles(), 3);
+        assertEquals(root.getTotalNumBytes(), 5);
+    }
+
+    @Test
+    public void reentrantTraversalThrowsException() {
+        final OrgTraversal<OrgImpl> traversal =
+            new OrgTraversal<OrgImpl>(OrgImpl::getChildren);
+
+        thrown.expect(IllegalStateException.class);
+        traversal.traverse(tree(), new OrgTraversal.Visitor<OrgImpl>() {
+            public boolean preVisit(final OrgImpl org, final int depth) {
+                traversal.traverse(org, this);
+                return true;
+            }
+
+            public void postVisit(final OrgImpl org, final int depth) {
+            }
+        });
+    }
+
+    // 1 -> (2 -> 4), 3
+    private static OrgImpl tree() {
+        OrgImpl root = new OrgImpl(1);
+        OrgImpl two = new OrgImpl(2);
+
+        root.addChildOrg(two);
+        root.addChildOrg(new OrgImpl(3));
+        two.addChildOrg(new OrgImpl(4));
+
+        return root;
+    }
+}
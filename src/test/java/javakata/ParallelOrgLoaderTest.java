@@ -0,0 +1,189 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.io.*;
+import java.util.zip.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class ParallelOrgLoaderTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void createWithInvalidParallelismThrowsException()
+        throws IOException {
+
+        File f = this.write("");
+
+        thrown.expect(IllegalArgumentException.class);
+        new ParallelOrgLoader(f, 0);
+    }
+
+    @Test
+    public void parallelLoadMatchesSequentialLoad() throws IOException {
+        File f = this.write(orgText());
+
+        assertEquals(
+            loadParallel(f, new OrgCollectionImpl()),
+            loadSequential(f, new OrgCollectionImpl())
+        );
+        assertEquals(
+            loadParallel(f, new ColumnarOrgCollection.Builder()),
+            loadSequential(f, new ColumnarOrgCollection.Builder())
+        );
+    }
+
+    @Test
+    public void gzipFileLoadsLikeUncompressedFile() throws IOException {
+        String text = orgText();
+        File plain = this.write(text);
+
+        File gzip = folder.newFile();
+        try (GZIPOutputStream out =
+                 new GZIPOutputStream(new FileOutputStream(gzip))) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertEquals(
+            loadParallel(gzip, new OrgCollectionImpl()),
+            loadSequential(plain, new OrgCollectionImpl())
+        );
+    }
+
+    @Test
+    public void orgsAddedBeforeTheirParentsAreCounted() throws IOException {
+        File f = this.write(
+            "1, null, Root\n"
+          + "2, 1, Child\n"
+          + "3, 9, Orphan\n"
+          + "4, 5, Cycle\n"
+          + "5, 4, Cycle\n"
+        );
+
+        ParallelOrgLoader loader = new ParallelOrgLoader(f, 2, 1);
+        loader.load(new OrgCollectionImpl(), (code, line, offset, r) -> { });
+
+        assertEquals(loader.getLineCount(), 5);
+        assertEquals(loader.getPendingCount(), 2);
+    }
+
+    // Children come before their parents, and a few hundred records are
+    // malformed, duplicated, orphaned or in parent cycles
+    private static String orgText() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 1000; i >= 1; i--) {
+            String line;
+            if (i % 97 == 0) {
+                line = "not an org record";
+            }
+            else if (i % 89 == 0) {
+                line = (i / 2) + ", null, Duplicate";
+            }
+            else if (i % 83 == 0) {
+                line = i + ", " + (5000 + i) + ", Orphan";
+            }
+            else if (i % 79 == 0) {
+                line = i + ", " + (i + 1) + ", Cycle";
+            }
+            else if (i % 73 == 0) {
+                line = "0, 1, Invalid";
+            }
+            else if (i % 10 == 0) {
+                line = i + ", null, Root";
+            }
+            else {
+                line = i + ", " + (i - i % 10 + 10 * (i % 3)) + ", Child";
+            }
+
+            text.append(line).append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+
+        // closes the cycles
+        for (int i = 79; i <= 1000; i += 79) {
+            text.append(i + 1).append(", ").append(i).append(", Cycle\n");
+        }
+
+        return text.toString();
+    }
+
+    // The report and every observation with its line and byte offset
+    private static List<String> loadParallel(final File f,
+                                             final OrgCollectionBuilder b)
+        throws IOException {
+
+        List<String> seen = new ArrayList<String>();
+        DataLoader.loadOrgData(
+            f,
+            new ParallelOrgLoader(f, 4, 64),
+            b,
+            recordInto(seen),
+            new LoadStats()
+        );
+
+        return report(b, seen);
+    }
+
+    private static List<String> loadSequential(final File f,
+                                               final OrgCollectionBuilder b)
+        throws IOException {
+
+        List<String> seen = new ArrayList<String>();
+        DataLoader.loadOrgData(
+            new MappedLineIterable(f),
+            b,
+            recordInto(seen)
+        );
+
+        return report(b, seen);
+    }
+
+    private static ObservationSink recordInto(final List<String> seen) {
+        return (code, lineNumber, byteOffset, record) ->
+            seen.add(code + " " + lineNumber + " " + byteOffset);
+    }
+
+    private static List<String> report(final OrgCollectionBuilder b,
+                                       final List<String> seen) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataTextReporter.writeReport(b.build(), new PrintStream(baos));
+
+        seen.add(new String(baos.toByteArray(), StandardCharsets.UTF_8));
+        return seen;
+    }
+
+    private File write(final String text) throws IOException {
+        File f = folder.newFile();
+        Files.write(f.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return f;
+    }
+}
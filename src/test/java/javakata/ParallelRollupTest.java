@@ -0,0 +1,111 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class ParallelRollupTest {
+    private static final int ORG_COUNT = 60000;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void computeWithInvalidThresholdThrowsException() {
+        thrown.expect(IllegalArgumentException.class);
+        ParallelRollup.computeTotals(new ArrayList<OrgImpl>(), 2, 0);
+    }
+
+    @Test
+    public void totalsMatchSequentialComputation() {
+        OrgCollectionImpl expected = createCollection();
+        OrgCollectionImpl actual = createCollection();
+
+        // builds the pre-order index the subtree sizes come from
+        actual.getOrgTree(1, true);
+
+        List<OrgImpl> tops = new ArrayList<OrgImpl>();
+        for (Org org : actual.getRootOrgs()) {
+            tops.add((OrgImpl) org);
+        }
+        tops.add(actual.getOrg(ORG_COUNT + 1));
+
+        ParallelRollup.computeTotals(tops, 4, 16);
+
+        for (int id = 1; id <= ORG_COUNT + 1; id++) {
+            Org e = expected.getOrg(id);
+            Org a = actual.getOrg(id);
+
+            assertEquals(a.getTotalNumUsers(), e.getTotalNumUsers());
+            assertEquals(a.getTotalNumFiles(), e.getTotalNumFiles());
+            assertEquals(a.getTotalNumBytes(), e.getTotalNumBytes());
+        }
+    }
+
+    @Test
+    public void totalsStayCurrentAfterComputation() {
+        OrgCollectionImpl col = createCollection();
+        col.computeTotals(4);
+
+        long before = col.getOrg(1).getTotalNumBytes();
+        col.addUsers(5000, 1, 2, 3);
+
+        assertEquals(col.getOrg(1).getTotalNumBytes(), before + 3);
+    }
+
+    // Org 1 heads a chain of ten thousand orgs, each with a few children
+    // of its own, among a forest of wide trees. The orphan ORG_COUNT + 1
+    // heads a tree of its own, and the last two orgs are in a cycle, which
+    // is left out of the computation.
+    private static OrgCollectionImpl createCollection() {
+        Random random = new Random(42);
+        OrgCollectionImpl col = new OrgCollectionImpl();
+
+        for (int id = 1; id <= ORG_COUNT; id++) {
+            int parent;
+            if (id == 1 || (id > 10000 && id % 1000 == 0)) {
+                parent = OrgCollectionBuilder.NO_PARENT;
+            }
+            else if (id <= 10000) {
+                parent = id - 1;
+            }
+            else {
+                parent = 1 + random.nextInt(id - 1);
+            }
+
+            col.addOrg(id, parent);
+            col.addUsers(id, 1 + id % 3, id % 7, id * 11L);
+        }
+
+        col.addOrg(ORG_COUNT + 1, ORG_COUNT + 10);
+        col.addOrg(ORG_COUNT + 2, ORG_COUNT + 3);
+        col.addOrg(ORG_COUNT + 3, ORG_COUNT + 2);
+        col.addUsers(ORG_COUNT + 1, 1, 1, 1);
+
+        return col;
+    }
+}
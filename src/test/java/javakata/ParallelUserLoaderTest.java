@@ -0,0 +1,263 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.io.*;
+import java.util.zip.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class ParallelUserLoaderTest {
+    private static final List<String> ORG_DATA = Arrays.asList(
+        "1, null, Foo",
+        "2, 1, Bar",
+        "4, 3, Baz",
+        "5, 2, Qux",
+        "3, null, Xyzzy"
+    );
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void createWithInvalidParallelismThrowsException()
+        throws IOException {
+
+        File f = this.write("");
+
+        thrown.expect(IllegalArgumentException.class);
+        new ParallelUserLoader(f, 0);
+    }
+
+    @Test
+    public void splitAlignsRangesToLineStarts() throws IOException {
+        File f = this.write("1, 1, 1, 1\r\n2, 2, 2, 2\r3, 3, 3, 3\n4");
+
+        long[] bounds = ParallelUserLoader.split(f, 100, 1);
+
+        assertEquals(bounds[0], 0);
+        assertEquals(bounds[bounds.length - 1], f.length());
+
+        for (int i = 1; i + 1 < bounds.length; i++) {
+            assertTrue(bounds[i] > bounds[i - 1]);
+            assertTrue(bounds[i] == 12 || bounds[i] == 23
+                    || bounds[i] == 34);
+        }
+    }
+
+    @Test
+    public void parallelLoadMatchesSequentialLoad() throws IOException {
+        StringBuilder text = new StringBuilder();
+        List<String> userData = new ArrayList<String>();
+
+        for (int i = 0; i < 500; i++) {
+            String line;
+            if (i % 37 == 0) {
+                line = "not a user record";
+            }
+            else if (i % 41 == 0) {
+                line = i + ", 42, 1, 1";
+            }
+            else if (i % 43 == 0) {
+                line = i + ", 2, 0, 10";
+            }
+            else {
+                line = i + ", " + (1 + (i % 5)) + ", " + (i % 7) + ", "
+                     + (i % 7 == 0 ? 0 : i * 3);
+            }
+
+            userData.add(line);
+            text.append(line).append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+
+        File f = this.write(text.toString());
+
+        OrgCollectionImpl expected = new OrgCollectionImpl();
+        List<String> expectedObservations = new ArrayList<String>();
+        ObservationSink expectedSink =
+            DataLoader.collectInto(expectedObservations);
+        DataLoader.loadOrgData(ORG_DATA, expected, expectedSink);
+        DataLoader.loadUserData(userData, expected, expectedSink);
+
+        OrgCollectionImpl actual = new OrgCollectionImpl();
+        List<String> actualObservations = new ArrayList<String>();
+        ObservationSink actualSink =
+            DataLoader.collectInto(actualObservations);
+        DataLoader.loadOrgData(ORG_DATA, actual, actualSink);
+        new ParallelUserLoader(f, 4, 64).load(actual, actualSink);
+
+        assertEquals(expectedObservations, actualObservations);
+
+        for (int id = 1; id <= 5; id++) {
+            Org e = expected.getOrg(id);
+            Org a = actual.getOrg(id);
+
+            assertEquals(e.getTotalNumUsers(), a.getTotalNumUsers());
+            assertEquals(e.getTotalNumFiles(), a.getTotalNumFiles());
+            assertEquals(e.getTotalNumBytes(), a.getTotalNumBytes());
+        }
+    }
+
+    @Test
+    public void boundedWorkersAddTheirTotalsAsTheyFill() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            text.append(i).append(", ").append(1 + (i % 5)).append(", 1, ")
+                .append(i).append('\n');
+        }
+
+        File f = this.write(text.toString());
+
+        OrgCollectionImpl expected = new OrgCollectionImpl();
+        DataLoader.loadOrgData(ORG_DATA, expected, (c, l, o, r) -> { });
+        new ParallelUserLoader(f, 4, 64).load(expected, (c, l, o, r) -> { });
+
+        // each worker holds two orgs, and the aggregator spills every two
+        OrgCollectionImpl actual = new OrgCollectionImpl();
+        SpillingUserAggregator aggregator = new SpillingUserAggregator(
+            actual,
+            SpillingUserAggregator.BYTES_PER_ORG * 2,
+            folder.newFolder()
+        );
+
+        DataLoader.loadOrgData(ORG_DATA, aggregator, (c, l, o, r) -> { });
+        new ParallelUserLoader(f, 4, 64, ParallelUserLoader.BYTES_PER_ORG * 8)
+            .load(aggregator, (c, l, o, r) -> { });
+
+        // holding every org, the four workers would add at most 20 totals
+        assertTrue(aggregator.getSpilledRecords() > 20);
+        aggregator.build();
+
+        for (int id = 1; id <= 5; id++) {
+            Org e = expected.getOrg(id);
+            Org a = actual.getOrg(id);
+
+            assertEquals(a.getTotalNumUsers(), e.getTotalNumUsers());
+            assertEquals(a.getTotalNumFiles(), e.getTotalNumFiles());
+            assertEquals(a.getTotalNumBytes(), e.getTotalNumBytes());
+        }
+    }
+
+    @Test
+    public void boundedWorkersCanFillDiskBuilderDirectly() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            text.append(i).append(", ").append(1 + (i % 5)).append(", 1, ")
+                .append(i).append('\n');
+        }
+
+        File f = this.write(text.toString());
+
+        OrgCollectionImpl expected = new OrgCollectionImpl();
+        DataLoader.loadOrgData(ORG_DATA, expected, (c, l, o, r) -> { });
+        new ParallelUserLoader(f, 4, 64).load(expected, (c, l, o, r) -> { });
+
+        // workers flush into the builder while the others look orgs up
+        BTreeOrgCollection.Builder builder = new BTreeOrgCollection.Builder(
+            folder.newFile(),
+            PageCache.MIN_CAPACITY
+        );
+
+        DataLoader.loadOrgData(ORG_DATA, builder, (c, l, o, r) -> { });
+        new ParallelUserLoader(f, 4, 64, ParallelUserLoader.BYTES_PER_ORG * 2)
+            .load(builder, (c, l, o, r) -> { });
+
+        BTreeOrgCollection actual = builder.build();
+        for (int id = 1; id <= 5; id++) {
+            Org e = expected.getOrg(id);
+            Org a = actual.getOrg(id);
+
+            assertEquals(a.getTotalNumUsers(), e.getTotalNumUsers());
+            assertEquals(a.getTotalNumFiles(), e.getTotalNumFiles());
+            assertEquals(a.getTotalNumBytes(), e.getTotalNumBytes());
+        }
+
+        actual.close();
+    }
+
+    @Test
+    public void gzipMembersLoadLikeUncompressedFile() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            text.append(i % 37 == 0 ? "not a user record" : i + ", 2, 1, 3")
+                .append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        // members end mid-line, and between the "\r" and "\n" of a line
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        for (int start = 0; start < bytes.length; start += 29) {
+            try (GZIPOutputStream member = new GZIPOutputStream(members)) {
+                member.write(
+                    bytes,
+                    start,
+                    Math.min(29, bytes.length - start)
+                );
+            }
+        }
+
+        File plain = this.write(text.toString());
+        File gzip = folder.newFile();
+        Files.write(gzip.toPath(), members.toByteArray());
+
+        List<String> expected = new ArrayList<String>();
+        OrgCollectionImpl expectedOrgs = loadParallel(plain, expected);
+
+        List<String> actual = new ArrayList<String>();
+        OrgCollectionImpl actualOrgs = loadParallel(gzip, actual);
+
+        assertEquals(actual.size(), 14);
+        assertEquals(actual, expected);
+        assertEquals(actualOrgs.getOrg(2).getTotalNumBytes(),
+                     expectedOrgs.getOrg(2).getTotalNumBytes());
+    }
+
+    // Records each observation's line number and byte offset
+    private static OrgCollectionImpl loadParallel(final File f,
+                                                  final List<String> seen)
+        throws IOException {
+
+        OrgCollectionImpl orgs = new OrgCollectionImpl();
+        ObservationSink sink = (code, lineNumber, byteOffset, record) ->
+            seen.add(code + " " + lineNumber + " " + byteOffset);
+
+        DataLoader.loadOrgData(ORG_DATA, orgs, sink);
+        new ParallelUserLoader(f, 4, 64).load(orgs, sink);
+        return orgs;
+    }
+
+    private File write(final String text) throws IOException {
+        File f = folder.newFile();
+        Files.write(f.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return f;
+    }
+}
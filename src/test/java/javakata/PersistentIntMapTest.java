@@ -0,0 +1,84 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class PersistentIntMapTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void putWithNegativeKeyThrowsException() {
+        PersistentIntMap.Editor<String> editor =
+            PersistentIntMap.<String>empty().edit();
+
+        thrown.expect(IllegalArgumentException.class);
+        editor.put(-1, "negative");
+    }
+
+    @Test
+    public void editsDoNotChangePublishedMaps() {
+        Random random = new Random(42);
+        PersistentIntMap.Editor<Integer> editor =
+            PersistentIntMap.<Integer>empty().edit();
+
+        List<PersistentIntMap<Integer>> versions =
+            new ArrayList<PersistentIntMap<Integer>>();
+        List<Map<Integer, Integer>> expected =
+            new ArrayList<Map<Integer, Integer>>();
+        Map<Integer, Integer> current = new HashMap<Integer, Integer>();
+
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 500; i++) {
+                // a mix of nearby and far apart keys, with overwrites
+                int key = i % 2 == 0
+                    ? random.nextInt(2000)
+                    : random.nextInt(Integer.MAX_VALUE);
+
+                editor.put(key, round);
+                current.put(key, round);
+            }
+
+            versions.add(editor.persistent());
+            expected.add(new HashMap<Integer, Integer>(current));
+        }
+
+        for (int v = 0; v < versions.size(); v++) {
+            PersistentIntMap<Integer> map = versions.get(v);
+            assertEquals(map.size(), expected.get(v).size());
+
+            for (Map.Entry<Integer, Integer> e : expected.get(v).entrySet()) {
+                assertEquals(map.get(e.getKey()), e.getValue());
+            }
+        }
+
+        assertNull(versions.get(0).get(Integer.MAX_VALUE - 1));
+        assertNull(versions.get(0).get(-5));
+        assertEquals(PersistentIntMap.<Integer>empty().size(), 0);
+    }
+}
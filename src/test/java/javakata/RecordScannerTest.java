@@ -0,0 +1,165 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+import java.util.regex.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class RecordScannerTest {
+    // the regular expressions the scanner replaced; kept here as an oracle
+    private static final Pattern ORG_LINE_PATTERN = Pattern.compile(
+        "^\\s*"
+      + "(?<orgId>\\d+)\\s*,\\s*"
+      + "(?<parentOrgId>(\\d+|null))\\s*,\\s*"
+      + "(?<name>[\\w ]*?)\\s*?\\r?(\\n|$)"
+    );
+
+    private static final Pattern USER_LINE_PATTERN = Pattern.compile(
+        "^\\s*"
+      + "(?<userId>\\d+)\\s*,\\s*"
+      + "(?<orgId>(\\d+|null))\\s*,\\s*"
+      + "(?<files>(\\d+|null))\\s*,\\s*"
+      + "(?<bytes>(\\d+|null))\\s*?\\r?(\\n|$)"
+    );
+
+    private static final String[] ORG_LINES = {
+        "1, null, Foo",
+        "2, 1, Bar",
+        "  42 ,  7 ,  Name With Spaces  ",
+        "3,null,Xyzzy\r",
+        "3,null,Xyzzy\r\n",
+        "3,null,Xyzzy\n",
+        "3,null,\t",
+        "3,null,",
+        "3, null, under_score 99",
+        "0, 0, zero",
+        "007, 0008, leading zeros",
+        "99999999999999999999999, null, huge",
+        "",
+        " ",
+        "1",
+        "1,",
+        "1, null",
+        "1 2, null, Foo",
+        "a, null, Foo",
+        "1, nul, Foo",
+        "1, nullx, Foo",
+        "1, NULL, Foo",
+        "1, null, Foo-Bar",
+        "1, null, Foo\tBar",
+        "1, null, Foo, Bar",
+        "1, -2, Foo",
+        "\t1\t,\tnull\t,\tFoo\t",
+        "1, null, Fo\u00e9",
+        "1, null, Foo \r \n",
+        "1, 2, 3, 4"
+    };
+
+    private static final String[] USER_LINES = {
+        "1, 1, 10, 200",
+        "1,1,10,200",
+        "  1 , 1 , 10 , 200  \r\n",
+        "1, null, 10, 200",
+        "1, 1, null, null",
+        "null, 1, 10, 200",
+        "1, 1, 10",
+        "1, 1, 10, 200, 5",
+        "1, 1, 10, 2 00",
+        "1, 1, -10, 200",
+        "1, 1, 10, 200x",
+        "1, 1, 0, 0",
+        "1, 1, 99999999999999999999, 1",
+        "",
+        "1, 1, 10, nullnull",
+        "\u000B1,\f1,\r10,\n200"
+    };
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void scanWithNullTextThrowsException() {
+        RecordScanner scanner = new RecordScanner();
+
+        thrown.expect(IllegalArgumentException.class);
+        scanner.scanOrg(null);
+    }
+
+    @Test
+    public void orgScanMatchesRegularExpression() {
+        RecordScanner scanner = new RecordScanner();
+
+        for (String line : ORG_LINES) {
+            Matcher match = ORG_LINE_PATTERN.matcher(line);
+            boolean expected = match.matches();
+
+            assertEquals(line, expected, scanner.scanOrg(line));
+            if (!expected) {
+                continue;
+            }
+
+            assertEquals(line,
+                parse(match.group("orgId")),
+                scanner.getOrgId());
+            assertEquals(line,
+                parse(match.group("parentOrgId")),
+                scanner.getParentOrgId());
+        }
+    }
+
+    @Test
+    public void userScanMatchesRegularExpression() {
+        RecordScanner scanner = new RecordScanner();
+
+        for (String line : USER_LINES) {
+            Matcher match = USER_LINE_PATTERN.matcher(line);
+            boolean expected = match.matches();
+
+            assertEquals(line, expected, scanner.scanUser(line));
+            if (!expected) {
+                continue;
+            }
+
+            assertEquals(line, parse(match.group("orgId")), scanner.getOrgId());
+            assertEquals(line, parse(match.group("files")), scanner.getFiles());
+            assertEquals(line, parse(match.group("bytes")), scanner.getBytes());
+        }
+    }
+
+    private static long parse(final String value) {
+        if (value.equals("null")) {
+            return RecordScanner.NULL_VALUE;
+        }
+
+        try {
+            return Long.parseLong(value);
+        }
+        catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
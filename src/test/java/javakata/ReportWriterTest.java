@@ -0,0 +1,92 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class ReportWriterTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void createWithTooSmallBufferThrowsException() {
+        thrown.expect(IllegalArgumentException.class);
+
+        new ReportWriter(Channels.newChannel(new ByteArrayOutputStream()), 8);
+    }
+
+    @Test
+    public void linesMatchFormattedOutput() throws IOException {
+        long[] values = {
+            0, 7, 10, 99, 1000, Integer.MAX_VALUE, Integer.MIN_VALUE, -42,
+            999999999999999999L, 1000000000000000000L,
+            Long.MAX_VALUE, Long.MIN_VALUE
+        };
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ReportWriter writer =
+            new ReportWriter(Channels.newChannel(baos), 128);
+
+        StringBuilder expected = new StringBuilder();
+        String ls = System.getProperty("line.separator");
+
+        for (int i = 0; i < values.length; i++) {
+            int level = i * 7;
+            int small = (int) values[i];
+
+            writer.writeOrg(level, small, small, small, values[i]);
+
+            expected.append(String.join("", Collections.nCopies(level, "  ")));
+            expected.append(String.format("- %d, %d, %d, %d",
+                small, small, small, values[i]
+            ));
+            expected.append(ls);
+        }
+
+        writer.flush();
+
+        assertEquals(
+            new String(baos.toByteArray(), StandardCharsets.US_ASCII),
+            expected.toString()
+        );
+    }
+
+    @Test
+    public void nothingIsWrittenUntilFlush() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ReportWriter writer = new ReportWriter(Channels.newChannel(baos));
+
+        writer.writeOrg(0, 1, 2, 3, 4);
+        assertEquals(baos.size(), 0);
+
+        writer.flush();
+        assertTrue(baos.size() > 0);
+    }
+}
@@ -0,0 +1,79 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class SamplingObservationSinkTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void createWithNegativeLimitThrowsException() {
+        thrown.expect(IllegalArgumentException.class);
+
+        new SamplingObservationSink(new ObservationCounter(), -1, 0);
+    }
+
+    @Test
+    public void forwardsFirstObservationsOfEachCode() {
+        ObservationCounter counter = new ObservationCounter();
+        SamplingObservationSink sink =
+            new SamplingObservationSink(counter, 2, 0);
+
+        for (int i = 1; i <= 5; i++) {
+            sink.observe(ObservationCode.USER_MISMATCH, i, -1, "x");
+        }
+        sink.observe(ObservationCode.USER_UNKNOWN_ORG, 6, -1, "y");
+
+        assertEquals(counter.getCount(ObservationCode.USER_MISMATCH), 2);
+        assertEquals(counter.getCount(ObservationCode.USER_UNKNOWN_ORG), 1);
+        assertEquals(
+            sink.getSuppressedCount(ObservationCode.USER_MISMATCH), 3
+        );
+        assertEquals(
+            sink.getSuppressedCount(ObservationCode.USER_UNKNOWN_ORG), 0
+        );
+    }
+
+    @Test
+    public void samplesObservationsBeyondLimit() {
+        final List<Long> lines = new ArrayList<Long>();
+        SamplingObservationSink sink = new SamplingObservationSink(
+            (code, lineNumber, byteOffset, record) -> lines.add(lineNumber),
+            1,
+            3
+        );
+
+        for (long i = 1; i <= 10; i++) {
+            sink.observe(ObservationCode.ORG_MISMATCH, i, -1, "x");
+        }
+
+        assertEquals(lines, Arrays.asList(1L, 2L, 5L, 8L));
+        assertEquals(sink.getSuppressedCount(ObservationCode.ORG_MISMATCH), 6);
+    }
+}
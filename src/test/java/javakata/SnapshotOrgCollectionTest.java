@@ -0,0 +1,155 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class SnapshotOrgCollectionTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void emptySnapshotHasCorrectInitialState() throws IOException {
+        File file = folder.newFile();
+        new ColumnarOrgCollection.Builder().build().writeSnapshot(file);
+
+        SnapshotOrgCollection col = SnapshotOrgCollection.open(file);
+
+        assertFalse(col.getRootOrgs().iterator().hasNext());
+        assertNull(col.getOrg(42));
+        assertEquals(col.getOrgTree(42, true).size(), 0);
+    }
+
+    @Test
+    public void snapshotMatchesCollection() throws IOException {
+        Random random = new Random(42);
+
+        int count = 2000;
+        ColumnarOrgCollection.Builder builder =
+            new ColumnarOrgCollection.Builder();
+
+        for (int id = count; id >= 1; id--) {
+            int parent = id <= 5
+                ? OrgCollectionBuilder.NO_PARENT
+                : 1 + random.nextInt(id - 1);
+
+            builder.addOrg(id, parent);
+        }
+
+        for (int i = 0; i < 5000; i++) {
+            int id = 1 + random.nextInt(count);
+            int files = random.nextInt(10);
+
+            builder.addUsers(id, 1, files, files * 7L);
+        }
+
+        ColumnarOrgCollection expected = builder.build();
+
+        File file = folder.newFile();
+        expected.writeSnapshot(file);
+        SnapshotOrgCollection actual = SnapshotOrgCollection.open(file);
+
+        assertEquals(actual.size(), count);
+        assertEquals(report(actual), report(expected));
+
+        for (int id = 1; id <= count; id++) {
+            assertEquals(ids(actual.getOrgTree(id, false)),
+                         ids(expected.getOrgTree(id, false)));
+            assertEquals(actual.getOrg(id).getTotalNumBytes(),
+                         expected.getOrg(id).getTotalNumBytes());
+        }
+
+        assertNull(actual.getOrg(count + 1));
+    }
+
+    @Test
+    public void orgsInParentCycleAreWalkedOnce() throws IOException {
+        ColumnarOrgCollection.Builder builder =
+            new ColumnarOrgCollection.Builder();
+
+        builder.addOrg(1, 2);
+        builder.addOrg(2, 1);
+        builder.addOrg(3, 1);
+        builder.addOrg(4, 3);
+        builder.addUsers(4, 1, 3, 30);
+
+        File file = folder.newFile();
+        builder.build().writeSnapshot(file);
+        SnapshotOrgCollection col = SnapshotOrgCollection.open(file);
+
+        assertEquals(ids(col.getOrgTree(1, true)), Arrays.asList(1, 2, 3, 4));
+        assertEquals(col.getOrg(4).getTotalNumBytes(), 30);
+    }
+
+    @Test
+    public void openFileThatIsNotASnapshotThrowsException()
+        throws IOException {
+
+        File file = folder.newFile();
+        Files.write(file.toPath(), Arrays.asList("1, null, Foo"));
+
+        thrown.expect(IOException.class);
+        SnapshotOrgCollection.open(file);
+    }
+
+    @Test
+    public void openTruncatedSnapshotThrowsException() throws IOException {
+        ColumnarOrgCollection.Builder builder =
+            new ColumnarOrgCollection.Builder();
+        builder.addOrg(1, OrgCollectionBuilder.NO_PARENT);
+
+        File file = folder.newFile();
+        builder.build().writeSnapshot(file);
+
+        byte[] data = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(data, data.length - 4));
+
+        thrown.expect(IOException.class);
+        SnapshotOrgCollection.open(file);
+    }
+
+    private static List<Integer> ids(final List<Org> orgs) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Org org : orgs) {
+            ids.add(org.getId());
+        }
+
+        return ids;
+    }
+
+    private static String report(final OrgCollection col) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        DataTextReporter.writeReport(col, new PrintStream(baos));
+        return baos.toString();
+    }
+}
@@ -0,0 +1,124 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+import java.io.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class SpillingUserAggregatorTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void budgetTooSmallThrowsException() {
+        thrown.expect(IllegalArgumentException.class);
+        new SpillingUserAggregator(new OrgCollectionImpl(), 10);
+    }
+
+    @Test
+    public void usersOfUnknownOrgsAreRejected() {
+        SpillingUserAggregator aggregator =
+            new SpillingUserAggregator(new OrgCollectionImpl(), 1 << 20);
+
+        aggregator.addOrg(1, OrgCollectionBuilder.NO_PARENT);
+
+        assertTrue(aggregator.addUsers(1, 1, 2, 3));
+        assertFalse(aggregator.addUsers(2, 1, 2, 3));
+
+        Org org = aggregator.build().getOrg(1);
+        assertEquals(org.getTotalNumFiles(), 2);
+        assertEquals(aggregator.getRunCount(), 0);
+    }
+
+    @Test
+    public void computeTotalsIsPassedToTarget() {
+        OrgCollectionImpl target = new OrgCollectionImpl();
+        SpillingUserAggregator aggregator =
+            new SpillingUserAggregator(target, 1 << 20);
+
+        aggregator.addOrg(1, OrgCollectionBuilder.NO_PARENT);
+        aggregator.addOrg(2, 1);
+        aggregator.addUsers(2, 1, 2, 3);
+        aggregator.build();
+        aggregator.computeTotals(2);
+
+        assertFalse(target.getOrg(1).isDirty());
+        assertEquals(target.getOrg(1).getTotalNumBytes(), 3);
+    }
+
+    @Test
+    public void spilledTotalsMatchDirectTotals() throws IOException {
+        Random random = new Random(42);
+        int count = 3000;
+
+        OrgCollectionImpl expected = new OrgCollectionImpl();
+
+        // room for 16 orgs, so many runs are spilled and merged in batches
+        File directory = folder.newFolder();
+        SpillingUserAggregator aggregator = new SpillingUserAggregator(
+            new OrgCollectionImpl(),
+            SpillingUserAggregator.BYTES_PER_ORG * 16L,
+            directory
+        );
+
+        for (int id = 1; id <= count; id++) {
+            int parent = id <= 3
+                ? OrgCollectionBuilder.NO_PARENT
+                : 1 + random.nextInt(id - 1);
+
+            expected.addOrg(id, parent);
+            aggregator.addOrg(id, parent);
+        }
+
+        for (int i = 0; i < 20000; i++) {
+            int id = 1 + random.nextInt(count);
+            int files = random.nextInt(10);
+
+            expected.addUsers(id, 1, files, files * 7L);
+            aggregator.addUsers(id, 1, files, files * 7L);
+        }
+
+        assertTrue(aggregator.getRunCount() > 64);
+
+        OrgCollection actual = aggregator.build();
+
+        for (int id = 1; id <= count; id++) {
+            Org org = actual.getOrg(id);
+            Org direct = expected.getOrg(id);
+
+            assertEquals(org.getTotalNumUsers(), direct.getTotalNumUsers());
+            assertEquals(org.getTotalNumFiles(), direct.getTotalNumFiles());
+            assertEquals(org.getTotalNumBytes(), direct.getTotalNumBytes());
+        }
+
+        // run files are removed once merged
+        assertEquals(directory.list().length, 0);
+    }
+}
@@ -0,0 +1,125 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class UserFileFollowerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void appendedRecordsUpdateTotals() throws IOException {
+        OrgCollectionImpl orgs = new OrgCollectionImpl();
+        orgs.addOrg(1, OrgCollectionBuilder.NO_PARENT);
+        orgs.addOrg(2, 1);
+        orgs.addOrg(3, 1);
+
+        File userFile = folder.newFile();
+        append(userFile, "1, 2, 10, 100\n2, 3, 5, 50\n");
+
+        List<Observation> observations = new ArrayList<Observation>();
+        UserFileFollower follower = new UserFileFollower(
+            userFile,
+            orgs,
+            (code, lineNumber, byteOffset, record) -> observations.add(
+                new Observation(code, lineNumber, byteOffset, record)
+            )
+        );
+
+        assertEquals(follower.poll(), 2);
+        assertEquals(orgs.getOrg(1).getTotalNumFiles(), 15);
+        follower.takeChangedOrgs();
+
+        // the last record is not complete yet, so it is left for later
+        append(userFile, "3, 2, 1, 1\r");
+        append(userFile, "4, 9, 1, 1\r\n5, 2, 7");
+
+        assertEquals(follower.poll(), 2);
+        assertEquals(orgs.getOrg(1).getTotalNumFiles(), 16);
+        assertEquals(ids(follower.takeChangedOrgs()), Arrays.asList(1, 2));
+
+        assertEquals(observations.size(), 1);
+        assertEquals(observations.get(0).getCode(),
+                     ObservationCode.USER_UNKNOWN_ORG);
+        assertEquals(observations.get(0).getLineNumber(), 4);
+
+        assertEquals(follower.poll(), 0);
+
+        append(userFile, ", 70\n");
+        assertEquals(follower.poll(), 1);
+        assertEquals(orgs.getOrg(2).getTotalNumBytes(), 171);
+        assertEquals(orgs.getOrg(1).getTotalNumUsers(), 4);
+        assertEquals(follower.getOffset(), userFile.length());
+
+        follower.close();
+    }
+
+    @Test
+    public void newlineAfterCarriageReturnIsSkipped() throws IOException {
+        OrgCollectionImpl orgs = new OrgCollectionImpl();
+        orgs.addOrg(1, OrgCollectionBuilder.NO_PARENT);
+
+        File userFile = folder.newFile();
+        append(userFile, "1, 1, 1, 1\r");
+
+        ObservationCounter counter = new ObservationCounter(null);
+        UserFileFollower follower =
+            new UserFileFollower(userFile, orgs, counter);
+
+        assertEquals(follower.poll(), 1);
+
+        append(userFile, "\n2, 1, 1, 1\n");
+        assertEquals(follower.poll(), 1);
+        assertEquals(counter.getTotal(), 0);
+        assertEquals(orgs.getOrg(1).getTotalNumUsers(), 2);
+
+        follower.close();
+    }
+
+    private static void append(final File file, final String text)
+        throws IOException {
+
+        Files.write(
+            file.toPath(),
+            text.getBytes(StandardCharsets.US_ASCII),
+            StandardOpenOption.APPEND
+        );
+    }
+
+    private static List<Integer> ids(final List<Org> orgs) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Org org : orgs) {
+            ids.add(org.getId());
+        }
+
+        return ids;
+    }
+}
@@ -0,0 +1,234 @@
+// The MIT License
+//
+// Copyright (c) 2016 Jordan E. Terrell
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission not0ice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package javakata;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.io.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+public final class VersionedOrgCollectionTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void emptyCollectionHasCorrectInitialState() {
+        VersionedOrgCollection col = new VersionedOrgCollection();
+
+        assertFalse(col.getRootOrgs().iterator().hasNext());
+        assertNull(col.getOrg(42));
+        assertEquals(col.getOrgTree(42, true).size(), 0);
+        assertEquals(col.snapshot().getNumber(), 0);
+    }
+
+    @Test
+    public void addOrgWithDuplicateIdThrowsException() {
+        VersionedOrgCollection col = new VersionedOrgCollection();
+        col.addOrg(42, OrgCollectionBuilder.NO_PARENT);
+
+        thrown.expect(IllegalArgumentException.class);
+        col.addOrg(42, OrgCollectionBuilder.NO_PARENT);
+    }
+
+    @Test
+    public void matchesOrgCollectionImpl() {
+        Random random = new Random(42);
+
+        List<Integer> order = new ArrayList<Integer>();
+        for (int id = 1; id <= 5000; id++) {
+            order.add(id);
+        }
+        Collections.shuffle(order, random);
+
+        OrgCollectionImpl expected = new OrgCollectionImpl();
+        VersionedOrgCollection actual = new VersionedOrgCollection(100);
+
+        for (int id : order) {
+            int parent = id <= 5
+                ? OrgCollectionBuilder.NO_PARENT
+                : 1 + random.nextInt(id - 1);
+
+            expected.addOrg(id, parent);
+            actual.addOrg(id, parent);
+        }
+
+        for (int i = 0; i < 20000; i++) {
+            int id = 1 + random.nextInt(5000);
+            int files = random.nextInt(10);
+
+            expected.addUsers(id, 1, files, files * 7L);
+            actual.addUsers(id, 1, files, files * 7L);
+        }
+
+        assertEquals(report(actual.build()), report(expected));
+        assertEquals(actual.snapshot().size(), 5000);
+    }
+
+    @Test
+    public void publishedVersionsDoNotChange() {
+        VersionedOrgCollection col = new VersionedOrgCollection();
+        col.addOrg(1, OrgCollectionBuilder.NO_PARENT);
+        col.addOrg(2, 1);
+        col.addUsers(2, 1, 3, 30);
+
+        VersionedOrgCollection.Version first = col.publish();
+        Org root = first.getOrg(1);
+
+        col.addOrg(3, 2);
+        col.addUsers(3, 1, 4, 40);
+        col.addOrg(4, OrgCollectionBuilder.NO_PARENT);
+
+        // nothing is visible to readers until it is published
+        assertNull(col.getOrg(3));
+        VersionedOrgCollection.Version second = col.publish();
+
+        assertEquals(root.getTotalNumBytes(), 30);
+        assertEquals(ids(first.getOrgTree(1, true)), Arrays.asList(1, 2));
+        assertEquals(first.getOrg(2).getChildOrgs().size(), 0);
+        assertEquals(count(first.getRootOrgs()), 1);
+
+        assertEquals(second.getOrg(1).getTotalNumBytes(), 70);
+        assertEquals(ids(second.getOrgTree(1, true)), Arrays.asList(1, 2, 3));
+        assertEquals(count(second.getRootOrgs()), 2);
+        assertEquals(second.getNumber(), first.getNumber() + 1);
+    }
+
+    @Test
+    public void readersSeeConsistentTotalsWhileLoading() throws Exception {
+        final VersionedOrgCollection col = new VersionedOrgCollection(50);
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<String> failure = new AtomicReference<String>();
+
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                VersionedOrgCollection.Version version = col.snapshot();
+                for (Org org : version.getOrgTree(1, true)) {
+                    long sum = 0;
+                    for (Org child : org.getChildOrgs()) {
+                        sum += child.getTotalNumBytes();
+                    }
+
+                    // every org has 1 byte of its own data
+                    if (org.getTotalNumBytes() != sum + 1) {
+                        failure.set("Inconsistent totals in " + org);
+                        return;
+                    }
+                }
+            }
+        });
+        reader.start();
+
+        Random random = new Random(42);
+        col.addOrg(1, OrgCollectionBuilder.NO_PARENT);
+        col.addUsers(1, 1, 1, 1);
+        for (int id = 2; id <= 20000; id++) {
+            col.addOrg(id, 1 + random.nextInt(id - 1));
+            col.addUsers(id, 1, 1, 1);
+        }
+
+        col.build();
+        done.set(true);
+        reader.join();
+
+        assertNull(failure.get());
+        assertEquals(col.getOrg(1).getTotalNumBytes(), 20000);
+    }
+
+    @Test
+    public void orgsInParentCycleAreWalkedOnce() {
+        VersionedOrgCollection col = new VersionedOrgCollection();
+
+        col.addOrg(1, 2);
+        col.addOrg(2, 1);
+        col.addOrg(3, 1);
+        col.addOrg(4, 3);
+        col.addUsers(3, 1, 2, 20);
+        col.addUsers(4, 1, 3, 30);
+        col.build();
+
+        assertEquals(ids(col.getOrgTree(1, true)), Arrays.asList(1, 2, 3, 4));
+        assertEquals(ids(col.getOrgTree(2, false)), Arrays.asList(1, 3, 4));
+        assertEquals(col.getOrg(2).getTotalNumBytes(), 50);
+        assertFalse(col.getRootOrgs().iterator().hasNext());
+    }
+
+    @Test
+    public void resolveParentsReportsUnplacedOrgsLikeInMemoryCollection() {
+        int[][] records = {
+            {1, OrgCollectionBuilder.NO_PARENT},
+            {5, 7}, {6, 5}, {7, 6},
+            {8, 8},
+            {10, 99}, {11, 10}, {12, 98}, {13, 99},
+            {20, 21}, {21, 1},
+            {30, 31}, {31, 30}, {32, 31}
+        };
+
+        VersionedOrgCollection actual = new VersionedOrgCollection();
+        OrgCollectionImpl expected = new OrgCollectionImpl();
+        for (int[] record : records) {
+            actual.addOrg(record[0], record[1]);
+            expected.addOrg(record[0], record[1]);
+        }
+
+        final Set<String> actualUnplaced = new TreeSet<String>();
+        actual.resolveParents((code, orgId, parentOrgId) ->
+            actualUnplaced.add(code + " " + orgId + " " + parentOrgId)
+        );
+
+        final Set<String> expectedUnplaced = new TreeSet<String>();
+        expected.resolveParents((code, orgId, parentOrgId) ->
+            expectedUnplaced.add(code + " " + orgId + " " + parentOrgId)
+        );
+
+        assertEquals(actualUnplaced, expectedUnplaced);
+        assertEquals(actualUnplaced.size(), 6);
+    }
+
+    private static int count(final Iterable<Org> orgs) {
+        int count = 0;
+        for (Org org : orgs) {
+            count++;
+        }
+
+        return count;
+    }
+
+    private static List<Integer> ids(final List<Org> orgs) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Org org : orgs) {
+            ids.add(org.getId());
+        }
+
+        return ids;
+    }
+
+    private static String report(final OrgCollection col) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        DataTextReporter.writeReport(col, new PrintStream(baos));
+        return baos.toString();
+    }
+}